@@ -29,6 +29,22 @@ function App() {
     setLoading(false);
   }, []);
 
+  // Access tokens are short-lived; renew from the refresh cookie before giving up
+  const refreshSession = () =>
+    axios.post(`${API_BASE}/api/auth/refresh`, null, { withCredentials: true })
+      .then(response => {
+        localStorage.setItem("jwt", response.data.accessToken);
+        setJwt(response.data.accessToken);
+        return true;
+      })
+      .catch(() => false);
+
+  const clearSession = () => {
+    setUser(null);
+    setJwt(null);
+    localStorage.removeItem("jwt");
+  };
+
   // Validate JWT if present
   useEffect(() => {
     if (jwt) {
@@ -57,15 +73,15 @@ function App() {
             };
             setUser(transformedUser);
           } else {
-            setUser(null);
-            setJwt(null);
-            localStorage.removeItem("jwt");
+            refreshSession().then(refreshed => {
+              if (!refreshed) {
+                clearSession();
+              }
+            });
           }
         })
         .catch(() => {
-          setUser(null);
-          setJwt(null);
-          localStorage.removeItem("jwt");
+          clearSession();
         })
         .finally(() => {
           setLoading(false);
@@ -9,9 +9,13 @@ const SamlProviderList = () => {
   const [providers, setProviders] = useState([]);
   const [loading, setLoading] = useState(true);
   const [error, setError] = useState(null);
+  // Registration errors by provider id, as reported by the event stream
+  const [buildErrors, setBuildErrors] = useState({});
 
-  const fetchProviders = async () => {
-    setLoading(true);
+  const fetchProviders = async (showSpinner = true) => {
+    if (showSpinner) {
+      setLoading(true);
+    }
     try {
       const response = await axios.get(`${API_BASE}/api/admin/saml/providers`);
       setProviders(response.data);
@@ -26,6 +30,43 @@ const SamlProviderList = () => {
 
   useEffect(() => {
     fetchProviders();
+
+    // Server-sent provider changes patch the list in place; the browser resumes
+    // from the last event id after a reconnect and RESYNC asks for a full reload
+    const events = new EventSource(`${API_BASE}/api/admin/saml/events`);
+    events.onmessage = (message) => {
+      const event = JSON.parse(message.data);
+      switch (event.type) {
+        case 'PROVIDER_UPSERTED':
+          if (event.provider) {
+            setProviders(current => {
+              const index = current.findIndex(p => p.id === event.providerId);
+              if (index < 0) {
+                return [...current, event.provider];
+              }
+              const updated = [...current];
+              updated[index] = { ...updated[index], ...event.provider };
+              return updated;
+            });
+          }
+          break;
+        case 'PROVIDER_DELETED':
+          setProviders(current => current.filter(p => p.id !== event.providerId));
+          break;
+        case 'REGISTRATION_BUILT':
+          setBuildErrors(({ [event.providerId]: _, ...rest }) => rest);
+          break;
+        case 'REGISTRATION_FAILED':
+          setBuildErrors(current => ({ ...current, [event.providerId]: event.error }));
+          break;
+        case 'RESYNC':
+          fetchProviders(false);
+          break;
+        default:
+          break;
+      }
+    };
+    return () => events.close();
   }, []);
 
   const handleDelete = async (id) => {
@@ -35,7 +76,7 @@ const SamlProviderList = () => {
     
     try {
       await axios.delete(`${API_BASE}/api/admin/saml/providers/${id}`);
-      fetchProviders();
+      setProviders(current => current.filter(p => p.id !== id));
     } catch (err) {
       setError('Failed to delete provider');
       console.error('Error deleting provider:', err);
@@ -97,6 +138,11 @@ const SamlProviderList = () => {
                   ) : (
                     <Badge bg="danger">Disabled</Badge>
                   )}
+                  {buildErrors[provider.id] && (
+                    <Badge bg="warning" text="dark" className="ms-1" title={buildErrors[provider.id]}>
+                      Registration failed
+                    </Badge>
+                  )}
                 </td>
                 <td className="text-truncate" style={{maxWidth: '200px'}}>
                   {provider.idpLoginUrl}
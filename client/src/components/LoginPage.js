@@ -1,6 +1,6 @@
 import React, { useState, useEffect } from 'react';
 import axios from 'axios';
-import { Card, Button, Spinner, Alert } from 'react-bootstrap';
+import { Card, Button, Spinner, Alert, Form } from 'react-bootstrap';
 import './LoginPage.css';
 
 const API_BASE = process.env.REACT_APP_API_BASE || '';
@@ -10,6 +10,7 @@ const LoginPage = () => {
   const [providers, setProviders] = useState([]);
   const [loading, setLoading] = useState(true);
   const [error, setError] = useState(null);
+  const [email, setEmail] = useState('');
 
   useEffect(() => {
     console.log("Fetching login options from:", `${API_BASE}/api/auth/options`);
@@ -33,6 +34,22 @@ const LoginPage = () => {
     window.location.href = `${API_BASE}/api/auth/custom-login?redirectUri=${encodeURIComponent(redirectUri)}&provider=${providerId}`;
   };
 
+  // Home-realm discovery: the backend picks the provider from the email domain
+  const handleEmailLogin = async (e) => {
+    e.preventDefault();
+    setError(null);
+    try {
+      const response = await axios.get(`${API_BASE}/api/auth/options/discover`, {
+        params: { login_hint: email }
+      });
+      window.location.href = `${API_BASE}/api/auth/custom-login?redirectUri=${encodeURIComponent(redirectUri)}&provider=${response.data.id}`;
+    } catch (err) {
+      setError(err.response?.status === 404
+        ? "No sign-in provider is configured for this email domain"
+        : "Failed to look up your sign-in provider");
+    }
+  };
+
   if (loading) {
     return (
       <div className="text-center my-5">
@@ -52,6 +69,19 @@ const LoginPage = () => {
         
         <Card.Body>
           {error && <Alert variant="danger">{error}</Alert>}
+
+          <Form onSubmit={handleEmailLogin} className="mb-3">
+            <Form.Control
+              type="email"
+              placeholder="Work email"
+              value={email}
+              onChange={(e) => setEmail(e.target.value)}
+              className="mb-2"
+            />
+            <Button type="submit" variant="primary" className="w-100" disabled={!email}>
+              Continue
+            </Button>
+          </Form>
           
           {providers.length === 0 ? (
             <Alert variant="warning">
@@ -0,0 +1,72 @@
+#!/usr/bin/env bash
+# Compares time-to-ready and resident memory of the plain jar, the CDS build and the native image.
+#
+# Build the variants first (any missing one is skipped):
+#   mvn -B package                        -> target/flutto-*.jar
+#   mvn -B -Pcds package                  -> target/cds/flutto-*.jar + target/cds/flutto.jsa
+#   mvn -B -Pnative native:compile        -> target/flutto
+#
+# Usage: scripts/startup-comparison.sh [runs]
+set -euo pipefail
+
+cd "$(dirname "$0")/.."
+
+RUNS="${1:-5}"
+PORT="${PORT:-18080}"
+READY_URL="http://localhost:${PORT}/actuator/health/readiness"
+APP_ARGS=(--server.port="${PORT}")
+
+now_ms() {
+    date +%s%3N
+}
+
+# Starts the command, waits until readiness reports UP, prints "<ms> <rss-kb>" and stops it
+measure() {
+    local start pid rss
+    start=$(now_ms)
+    "$@" "${APP_ARGS[@]}" > /dev/null 2>&1 &
+    pid=$!
+    until curl -fs "${READY_URL}" 2> /dev/null | grep -q '"UP"'; do
+        if ! kill -0 "${pid}" 2> /dev/null; then
+            echo "process exited before becoming ready: $*" >&2
+            return 1
+        fi
+        sleep 0.05
+    done
+    local elapsed=$(( $(now_ms) - start ))
+    rss=$(ps -o rss= -p "${pid}" | tr -d ' ')
+    kill "${pid}"
+    wait "${pid}" 2> /dev/null || true
+    echo "${elapsed} ${rss}"
+}
+
+run_variant() {
+    local name="$1"
+    shift
+    local total_ms=0 total_rss=0 best_ms=""
+    for ((i = 0; i < RUNS; i++)); do
+        read -r ms rss < <(measure "$@")
+        total_ms=$(( total_ms + ms ))
+        total_rss=$(( total_rss + rss ))
+        if [[ -z "${best_ms}" || ${ms} -lt ${best_ms} ]]; then
+            best_ms=${ms}
+        fi
+    done
+    printf '%-10s %12d %12d %14d\n' "${name}" "$(( total_ms / RUNS ))" "${best_ms}" "$(( total_rss / RUNS / 1024 ))"
+}
+
+printf '%-10s %12s %12s %14s\n' "variant" "avg ready ms" "min ready ms" "avg RSS MiB"
+
+JAR=$(ls target/flutto-*.jar 2> /dev/null | grep -v -- '-plain' | head -n 1 || true)
+if [[ -n "${JAR}" ]]; then
+    run_variant jvm java -jar "${JAR}"
+fi
+
+CDS_JAR=$(ls target/cds/flutto-*.jar 2> /dev/null | head -n 1 || true)
+if [[ -n "${CDS_JAR}" && -f target/cds/flutto.jsa ]]; then
+    run_variant cds java -XX:SharedArchiveFile=target/cds/flutto.jsa -Dspring.aot.enabled=true -jar "${CDS_JAR}"
+fi
+
+if [[ -x target/flutto ]]; then
+    run_variant native target/flutto
+fi
@@ -0,0 +1,190 @@
+package com.example.flutto.config;
+
+import com.example.flutto.model.CompiledSamlProvider;
+import com.example.flutto.model.ConfigChangeEvent;
+import com.example.flutto.model.SamlProviderConfig;
+import com.example.flutto.service.AuthnRequestSigner;
+import com.example.flutto.service.ConfigChangeBus;
+import com.example.flutto.service.MetadataRefreshScheduler;
+import com.example.flutto.service.ProviderEventStream;
+import com.example.flutto.service.RegistrationRefreshService;
+import com.example.flutto.service.ResponseDecrypter;
+import com.example.flutto.service.SamlConfigurationService;
+import com.example.flutto.service.SamlMetadataService;
+import com.example.flutto.service.SamlProviderCompiler;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.openjdk.jcstress.annotations.Actor;
+import org.openjdk.jcstress.annotations.JCStressTest;
+import org.openjdk.jcstress.annotations.Outcome;
+import org.openjdk.jcstress.annotations.State;
+import org.openjdk.jcstress.infra.results.II_Result;
+import org.springframework.security.saml2.provider.service.registration.IterableRelyingPartyRegistrationRepository;
+import org.springframework.security.saml2.provider.service.registration.RelyingPartyRegistration;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.openjdk.jcstress.annotations.Expect.ACCEPTABLE;
+import static org.openjdk.jcstress.annotations.Expect.FORBIDDEN;
+
+/**
+ * A login resolving its registration through the repository the login filters
+ * use while {@link DynamicSamlConfig#refreshRegistrations} drops a deleted
+ * provider and rebuilds a changed one. The lookup must see the old or the new
+ * registration, never none, and iterating must not fail.
+ */
+@JCStressTest
+@Outcome(id = {"1, 2", "1, 1", "2, 2", "2, 1"}, expect = ACCEPTABLE, desc = "Old or new registration, deleted one seen or not")
+@Outcome(id = "0, .*", expect = FORBIDDEN, desc = "Registration missing during its replacement")
+@Outcome(id = "-1, .*", expect = FORBIDDEN, desc = "Iteration failed during the refresh")
+@Outcome(expect = FORBIDDEN, desc = "Iteration saw a registration twice or none")
+@State
+public class RegistrationRepositoryStress {
+
+    private static final String OLD_SSO_URL = "https://idp.example.com/old";
+    private static final String NEW_SSO_URL = "https://idp.example.com/new";
+
+    // Providers carry their own signing keys, so building a registration never generates one
+    private static final CompiledSamlProvider OLD;
+    private static final CompiledSamlProvider NEW;
+    private static final CompiledSamlProvider DELETED;
+
+    // Listeners registered on these are replaced, not added, so every state can share them
+    private static final ConfigChangeBus BUS = new ConfigChangeBus() {
+        @Override
+        public void publish(ConfigChangeEvent event) {
+        }
+
+        @Override
+        public void subscribe(Consumer<ConfigChangeEvent> listener) {
+        }
+    };
+    private static final MetadataRefreshScheduler SCHEDULER;
+    private static final RegistrationRefreshService REFRESHES = new RegistrationRefreshService(1);
+    private static final ProviderEventStream EVENTS;
+
+    static {
+        KeyPair keyPair = keyPair();
+        String certificate = certificatePem(keyPair);
+        String privateKey = pem("PRIVATE KEY", keyPair.getPrivate().getEncoded());
+        SamlProviderCompiler compiler = new SamlProviderCompiler();
+        OLD = compiler.compile(provider("okta", OLD_SSO_URL, certificate, privateKey));
+        NEW = compiler.compile(provider("okta", NEW_SSO_URL, certificate, privateKey));
+        DELETED = compiler.compile(provider("azure", "https://idp.example.com/azure", certificate, privateKey));
+
+        SamlConfigurationService unused = new SamlConfigurationService(BUS, compiler, "node-1");
+        SCHEDULER = new MetadataRefreshScheduler(unused, new SamlMetadataService(null),
+            300_000, 86_400_000, 14_400_000, 60_000, 30_000, 3_600_000, 0.1, 1);
+        EVENTS = new ProviderEventStream(unused, BUS, 1, 60_000, 60_000, 2);
+    }
+
+    private final Store store = new Store(List.of(OLD, DELETED));
+    private final DynamicSamlConfig samlConfig = new DynamicSamlConfig(store, BUS, SCHEDULER,
+        new AuthnRequestSigner(), REFRESHES, EVENTS, new ResponseDecrypter());
+    private final IterableRelyingPartyRegistrationRepository repository =
+        (IterableRelyingPartyRegistrationRepository) samlConfig.relyingPartyRegistrationRepository();
+    private final RelyingPartyRegistration old = repository.findByRegistrationId("okta");
+
+    @Actor
+    public void refresh() {
+        store.providers = List.of(NEW);
+        samlConfig.refreshRegistrations();
+    }
+
+    @Actor
+    public void login(II_Result result) {
+        RelyingPartyRegistration found = repository.findByRegistrationId("okta");
+        if (found == null) {
+            result.r1 = 0;
+        } else if (found == old) {
+            result.r1 = 1;
+        } else {
+            String ssoUrl = found.getAssertingPartyDetails().getSingleSignOnServiceLocation();
+            result.r1 = NEW_SSO_URL.equals(ssoUrl) ? 2 : 0;
+        }
+        try {
+            int seen = 0;
+            for (RelyingPartyRegistration registration : repository) {
+                seen += registration != null ? 1 : 0;
+            }
+            result.r2 = seen;
+        } catch (RuntimeException e) {
+            result.r1 = -1;
+        }
+    }
+
+    /**
+     * The compiled providers a store would serve, without the YAML file behind it
+     */
+    private static final class Store extends SamlConfigurationService {
+        private volatile List<CompiledSamlProvider> providers;
+
+        private Store(List<CompiledSamlProvider> providers) {
+            super(BUS, null, "node-1");
+            this.providers = providers;
+        }
+
+        @Override
+        public List<CompiledSamlProvider> getEnabledProviders() {
+            return providers;
+        }
+
+        @Override
+        public List<CompiledSamlProvider> getCompiledProviders() {
+            return providers;
+        }
+
+        @Override
+        public long getConfigVersion() {
+            return providers.size() == 1 ? 2 : 1;
+        }
+    }
+
+    private static SamlProviderConfig provider(String id, String ssoUrl, String certificate, String privateKey) {
+        SamlProviderConfig provider = new SamlProviderConfig();
+        provider.setId(id);
+        provider.setSpEntityId("http://localhost:8080/saml2/service-provider-metadata/" + id);
+        provider.setIdpLoginUrl(ssoUrl);
+        provider.setIdpCertificate(certificate);
+        provider.setSignAuthnRequests(true);
+        provider.setSpCertificate(certificate);
+        provider.setSpPrivateKey(privateKey);
+        return provider;
+    }
+
+    private static KeyPair keyPair() {
+        try {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(2048);
+            return generator.generateKeyPair();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String certificatePem(KeyPair keyPair) {
+        try {
+            long now = System.currentTimeMillis();
+            X500Name name = new X500Name("CN=stress");
+            JcaX509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(name, BigInteger.valueOf(now),
+                new Date(now - 60_000), new Date(now + 365L * 24 * 3600 * 1000), name, keyPair.getPublic());
+            return pem("CERTIFICATE",
+                builder.build(new JcaContentSignerBuilder("SHA256withRSA").build(keyPair.getPrivate())).getEncoded());
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String pem(String type, byte[] der) {
+        return "-----BEGIN " + type + "-----\n"
+            + Base64.getMimeEncoder(64, new byte[] {'\n'}).encodeToString(der)
+            + "\n-----END " + type + "-----\n";
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.flutto.model;
+
+import org.openjdk.jcstress.annotations.Actor;
+import org.openjdk.jcstress.annotations.Arbiter;
+import org.openjdk.jcstress.annotations.JCStressTest;
+import org.openjdk.jcstress.annotations.Outcome;
+import org.openjdk.jcstress.annotations.State;
+import org.openjdk.jcstress.infra.results.JJ_Result;
+
+import static org.openjdk.jcstress.annotations.Expect.ACCEPTABLE;
+import static org.openjdk.jcstress.annotations.Expect.FORBIDDEN;
+
+/**
+ * Two changes folded into the same queued refresh job: both must be counted
+ * and the job must end up asking for the newer config version.
+ */
+@JCStressTest
+@Outcome(id = "3, 7", expect = ACCEPTABLE, desc = "Both requests counted, newest version kept")
+@Outcome(expect = FORBIDDEN, desc = "A request or the newest config version was lost")
+@State
+public class RefreshJobCoalesceStress {
+
+    private final RefreshJob job = new RefreshJob(1, "queued", 1);
+
+    @Actor
+    public void adminChange() {
+        job.coalesce("admin change", 7);
+    }
+
+    @Actor
+    public void metadataUpdate() {
+        job.coalesce("metadata update", 3);
+    }
+
+    @Arbiter
+    public void arbiter(JJ_Result result) {
+        result.r1 = job.getRequests();
+        result.r2 = job.getRequestedConfigVersion();
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.flutto.config;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.saml2.provider.service.authentication.AbstractSaml2AuthenticationRequest;
+import org.springframework.security.saml2.provider.service.registration.RelyingPartyRegistration;
+import org.springframework.security.saml2.provider.service.registration.Saml2MessageBinding;
+import org.springframework.security.saml2.provider.service.web.authentication.OpenSaml4AuthenticationRequestResolver;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Redirect-binding AuthnRequests per second for one registration: the framework
+ * resolver (OpenSAML objects, DOM, serializer, Deflater) against the
+ * precompiled template.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+@State(Scope.Thread)
+public class AuthnRequestTemplateBenchmark {
+
+    private OpenSaml4AuthenticationRequestResolver framework;
+    private TemplateAuthenticationRequestResolver templates;
+    private MockHttpServletRequest request;
+
+    @Setup
+    public void setUp() {
+        RelyingPartyRegistration registration = RelyingPartyRegistration.withRegistrationId("tenant")
+            .entityId("{baseUrl}/saml2/service-provider-metadata/{registrationId}")
+            .assertionConsumerServiceLocation("{baseUrl}/login/saml2/sso/tenant")
+            .assertionConsumerServiceBinding(Saml2MessageBinding.POST)
+            .assertingPartyDetails(party -> party.entityId("https://idp.example.com")
+                .singleSignOnServiceLocation("https://idp.example.com/saml2/sso?idpid=tenant")
+                .singleSignOnServiceBinding(Saml2MessageBinding.REDIRECT))
+            .build();
+        DynamicRelyingPartyRegistrationRepository repository =
+            new DynamicRelyingPartyRegistrationRepository(Map.of("tenant", registration));
+        framework = new OpenSaml4AuthenticationRequestResolver(repository);
+        templates = new TemplateAuthenticationRequestResolver(framework, repository);
+
+        request = new MockHttpServletRequest("GET", "/saml2/authenticate/tenant");
+        request.setScheme("https");
+        request.setServerName("sp.example.com");
+        request.setServerPort(443);
+    }
+
+    @Benchmark
+    public AbstractSaml2AuthenticationRequest framework() {
+        return framework.resolve(request);
+    }
+
+    @Benchmark
+    public AbstractSaml2AuthenticationRequest template() {
+        return templates.resolve(request);
+    }
+}
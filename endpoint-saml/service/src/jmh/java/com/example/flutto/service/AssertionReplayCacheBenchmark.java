@@ -0,0 +1,63 @@
+package com.example.flutto.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Throughput of the replay check on the ACS path with many concurrent logins.
+ * Compare the stripe counts against a single stripe (effectively one lock).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(16)
+@State(Scope.Benchmark)
+public class AssertionReplayCacheBenchmark {
+
+    @Param({"1", "64"})
+    int stripes;
+
+    private AssertionReplayCache cache;
+    private final AtomicLong threadIds = new AtomicLong();
+
+    @Setup
+    public void setUp() {
+        // Short retention so the benchmark measures steady state rather than filling up
+        cache = new AssertionReplayCache(200_000, stripes, 100, 1_000, 0);
+    }
+
+    @State(Scope.Thread)
+    public static class Ids {
+        String prefix;
+        long next;
+        String[] registrations = {"zenv", "google", "okta", "azure"};
+
+        @Setup
+        public void setUp(AssertionReplayCacheBenchmark benchmark) {
+            prefix = "_" + benchmark.threadIds.incrementAndGet() + "-";
+        }
+    }
+
+    @Benchmark
+    public AssertionReplayCache.Outcome markConsumed(Ids ids) {
+        long n = ids.next++;
+        return cache.markConsumed(ids.registrations[(int) (n & 3)], ids.prefix + n,
+            Instant.ofEpochMilli(System.currentTimeMillis() + 500));
+    }
+}
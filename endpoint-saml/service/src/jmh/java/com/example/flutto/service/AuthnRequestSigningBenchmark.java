@@ -0,0 +1,76 @@
+package com.example.flutto.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Redirect-binding AuthnRequest signing throughput per algorithm: the pooled
+ * per-thread signer against looking up and initializing a Signature per request.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class AuthnRequestSigningBenchmark {
+
+    @Param({"RSA-SHA1", "RSA-SHA256", "RSA-SHA512", "ECDSA-SHA256", "ECDSA-SHA384"})
+    String algorithm;
+
+    private final AuthnRequestSigner signer = new AuthnRequestSigner();
+    private KeyPair keyPair;
+    private String jcaName;
+    private byte[] query;
+
+    @Setup
+    public void setUp() throws GeneralSecurityException {
+        if (algorithm.startsWith("ECDSA")) {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+            generator.initialize(algorithm.endsWith("384") ? 384 : 256);
+            keyPair = generator.generateKeyPair();
+        } else {
+            keyPair = SamlProviderFixtures.keyPair();
+        }
+        jcaName = signer.register("tenant", algorithm, keyPair.getPrivate()).getJcaName();
+
+        // Deflated and encoded AuthnRequests are around 600 bytes
+        StringBuilder samlRequest = new StringBuilder();
+        while (samlRequest.length() < 600) {
+            samlRequest.append("fZJNT8MwDIbv%2FIoq9y5tmMaI1k1jExISh2kTB27BddWiNg5xOuDfk3VsAgm4xn7s5%2FWrzd%2B7Nu");
+        }
+        query = ("SAMLRequest=" + samlRequest + "&RelayState=abc123&SigAlg=" + signer.algorithmUri("tenant"))
+            .getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] pooled() {
+        return signer.sign("tenant", query);
+    }
+
+    @Benchmark
+    public byte[] perRequest() throws GeneralSecurityException {
+        Signature signature = Signature.getInstance(jcaName);
+        signature.initSign(keyPair.getPrivate());
+        signature.update(query);
+        return signature.sign();
+    }
+}
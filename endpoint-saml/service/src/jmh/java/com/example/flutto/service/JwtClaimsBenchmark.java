@@ -0,0 +1,72 @@
+package com.example.flutto.service;
+
+import io.jsonwebtoken.Claims;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.core.GrantedAuthority;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Issuing an access token, and the per-request verification and authority
+ * decoding of one, for each claim profile. Token sizes are printed at setup.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class JwtClaimsBenchmark {
+
+    @Param({"standard", "compact", "compact+deflate"})
+    String profile;
+
+    private JwtService jwtService;
+    private Map<String, Object> claims;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        boolean compact = profile.startsWith("compact");
+        jwtService = new JwtService(new TokenRevocationService(900_000, 60_000, 100_000, 1_000_000),
+            "benchmarkSecretKeyForJWTTokenGenerationMustBeAtLeast256BitsLong", 900_000,
+            compact, profile.endsWith("deflate"), 1, List.of("ROLE_USER", "ROLE_ADMIN"));
+        claims = new HashMap<>();
+        claims.put("username", "alice@example.com");
+        claims.put("email", "alice@example.com");
+        claims.put("firstName", "Alice");
+        claims.put("lastName", "Example");
+        claims.put("name", "Alice Example");
+        claims.put("department", "Engineering");
+        claims.put("roles", List.of("ROLE_USER", "ROLE_ADMIN"));
+        token = jwtService.generateAccessToken("alice@example.com", claims);
+        System.out.println();
+        System.out.println(profile + " token: " + token.length() + " characters");
+    }
+
+    @Benchmark
+    public String issue() {
+        return jwtService.generateAccessToken("alice@example.com", claims);
+    }
+
+    @Benchmark
+    public List<GrantedAuthority> verifyAndDecode() {
+        Claims valid = jwtService.validClaims(token);
+        return jwtService.authorities(valid);
+    }
+}
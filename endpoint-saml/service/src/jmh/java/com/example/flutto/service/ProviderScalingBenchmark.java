@@ -0,0 +1,213 @@
+package com.example.flutto.service;
+
+import ch.qos.logback.classic.Level;
+import com.example.flutto.config.DynamicSamlConfig;
+import com.example.flutto.controller.AuthOptionsController;
+import com.example.flutto.model.SamlProviderConfig;
+import com.example.flutto.model.SamlProvidersConfig;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.saml2.provider.service.registration.RelyingPartyRegistration;
+import org.springframework.security.saml2.provider.service.registration.RelyingPartyRegistrationRepository;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How startup, registration builds, refreshes and the per-request lookups cost
+ * as the provider store grows from 10 to 10,000 tenants. Whole-store operations
+ * are expected to grow linearly and per-request lookups to stay flat;
+ * {@link ProviderScalingReport} runs this suite and flags anything growing faster.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProviderScalingBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    int providerCount;
+
+    private Path directory;
+    private FileSystemResource yamlResource;
+    private SamlConfigurationService configService;
+    private MetadataRefreshScheduler refreshScheduler;
+    private ProviderEventStream providerEvents;
+    private RegistrationRefreshService refreshService;
+    private DynamicSamlConfig samlConfig;
+    private RelyingPartyRegistrationRepository repository;
+    private AuthOptionsController optionsController;
+    private String[] ids;
+    private int next;
+    private int revision;
+
+    @Setup
+    public void setUp() throws IOException {
+        // Spring Boot is not there to configure logging, and per-provider debug
+        // lines would be most of what gets measured
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+
+        List<SamlProviderConfig> providers = SamlProviderFixtures.providerSet(providerCount, 16);
+        SamlProvidersConfig store = new SamlProvidersConfig();
+        store.setVersion(1);
+        store.setProviders(providers);
+        directory = Files.createTempDirectory("provider-scaling");
+        yamlResource = new FileSystemResource(directory.resolve("saml-providers.yaml"));
+        new ObjectMapper(new YAMLFactory()).writeValue(yamlResource.getFile(), store);
+        ids = providers.stream().map(SamlProviderConfig::getId).toArray(String[]::new);
+
+        InProcessConfigChangeBus bus = new InProcessConfigChangeBus();
+        configService = configService(bus, true);
+        configService.reloadProviders();
+        refreshScheduler = new MetadataRefreshScheduler(configService, new SamlMetadataService(null),
+            300_000, 86_400_000, 14_400_000, 60_000, 30_000, 3_600_000, 0.1, 1);
+        providerEvents = new ProviderEventStream(configService, bus, 100, 60_000, 60_000, 256);
+        refreshService = new RegistrationRefreshService(20);
+        samlConfig = newSamlConfig();
+        repository = samlConfig.relyingPartyRegistrationRepository();
+        optionsController = new AuthOptionsController(configService);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        refreshService.shutdown();
+        refreshScheduler.shutdown();
+        providerEvents.shutdown();
+        FileSystemUtils.deleteRecursively(directory);
+    }
+
+    /**
+     * Startup load of the store from YAML: parse and compile every provider
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public long startupFromYaml() throws IOException {
+        SamlConfigurationService loaded = configService(new InProcessConfigChangeBus(), false);
+        loaded.reloadProviders();
+        return loaded.getConfigVersion();
+    }
+
+    /**
+     * Startup load when the binary snapshot matches the YAML
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public long startupFromSnapshot() throws IOException {
+        SamlConfigurationService loaded = configService(new InProcessConfigChangeBus(), true);
+        loaded.reloadProviders();
+        return loaded.getConfigVersion();
+    }
+
+    /**
+     * Building every registration from scratch, as at startup
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public long buildRegistrations() {
+        DynamicSamlConfig fresh = newSamlConfig();
+        fresh.refreshRegistrations();
+        return fresh.getGeneration();
+    }
+
+    /**
+     * A refresh that finds every registration up to date
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public long refreshUnchanged() {
+        samlConfig.refreshRegistrations();
+        return samlConfig.getGeneration();
+    }
+
+    /**
+     * An admin edit of one provider: store write, recompile, and the refresh
+     * that rebuilds its registration
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public long editOneProvider() throws IOException {
+        SamlProviderConfig provider = configService.getProviderById(ids[0]).orElseThrow();
+        provider.setSpEntityId(provider.getSpEntityId().replaceAll("\\?revision=\\d+$", "") + "?revision=" + ++revision);
+        configService.saveProvider(provider);
+        samlConfig.refreshRegistrations();
+        return samlConfig.getGeneration();
+    }
+
+    /**
+     * Admin read of one provider with its raw configuration
+     */
+    @Benchmark
+    public Optional<SamlProviderConfig> getProviderById() {
+        return configService.getProviderById(nextId());
+    }
+
+    /**
+     * Registration lookup on the login and ACS paths
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public RelyingPartyRegistration findByRegistrationId() {
+        return repository.findByRegistrationId(nextId());
+    }
+
+    /**
+     * GET /api/auth/options, which lists every enabled provider
+     */
+    @Benchmark
+    public ResponseEntity<List<Map<String, String>>> loginOptions() {
+        return optionsController.getLoginOptions();
+    }
+
+    /**
+     * What a running service holds for the provider set: the compiled providers
+     * and every registration
+     */
+    Object retainedState() {
+        return List.of(configService, samlConfig);
+    }
+
+    private String nextId() {
+        String id = ids[next];
+        next = next + 1 < ids.length ? next + 1 : 0;
+        return id;
+    }
+
+    private SamlConfigurationService configService(ConfigChangeBus bus, boolean snapshotEnabled) {
+        SamlConfigurationService service = new SamlConfigurationService(bus, new SamlProviderCompiler(), "node-1");
+        ReflectionTestUtils.setField(service, "yamlResource", yamlResource);
+        ReflectionTestUtils.setField(service, "snapshotEnabled", snapshotEnabled);
+        ReflectionTestUtils.setField(service, "sourceFile", directory.resolve("absent/saml-providers.yaml").toFile());
+        return service;
+    }
+
+    private DynamicSamlConfig newSamlConfig() {
+        // A bus of its own, so discarded instances do not stay subscribed
+        return new DynamicSamlConfig(configService, new InProcessConfigChangeBus(), refreshScheduler,
+            new AuthnRequestSigner(), refreshService, providerEvents, new ResponseDecrypter());
+    }
+}
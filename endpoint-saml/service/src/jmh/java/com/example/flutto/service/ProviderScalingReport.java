@@ -0,0 +1,129 @@
+package com.example.flutto.service;
+
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.ref.Reference;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Runs {@link ProviderScalingBenchmark}, measures the heap the provider state
+ * retains, and prints each measurement's growth exponent between neighbouring
+ * provider counts: 1.0 is linear, 0 is flat. A step from 100 providers upward
+ * that grows faster than expected by more than {@link #TOLERANCE} is flagged,
+ * and the process then exits with status 1.
+ *
+ * mvn -Pbenchmark verify -Dbenchmark.main=com.example.flutto.service.ProviderScalingReport
+ */
+public final class ProviderScalingReport {
+
+    private static final int[] PROVIDER_COUNTS = {10, 100, 1000, 10000};
+
+    private static final double TOLERANCE = 0.3;
+
+    // Growth each measurement is expected to show: linear for the store-wide
+    // operations, flat for per-request lookups and raw reads of one provider
+    private static final Map<String, Double> EXPECTED_EXPONENTS = Map.of(
+        "startupFromYaml", 1.0,
+        "startupFromSnapshot", 1.0,
+        "buildRegistrations", 1.0,
+        "refreshUnchanged", 1.0,
+        "editOneProvider", 1.0,
+        "getProviderById", 0.0,
+        "findByRegistrationId", 0.0,
+        "loginOptions", 1.0,
+        "retainedHeap", 1.0);
+
+    private ProviderScalingReport() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, Map<Integer, Double>> scores = new TreeMap<>();
+        Map<String, String> units = new TreeMap<>();
+
+        Options options = new OptionsBuilder()
+            .include(ProviderScalingBenchmark.class.getName() + "\\.")
+            .build();
+        Collection<RunResult> results = new Runner(options).run();
+        for (RunResult result : results) {
+            String benchmark = result.getParams().getBenchmark();
+            String name = benchmark.substring(benchmark.lastIndexOf('.') + 1);
+            int providerCount = Integer.parseInt(result.getParams().getParam("providerCount"));
+            scores.computeIfAbsent(name, n -> new TreeMap<>()).put(providerCount, result.getPrimaryResult().getScore());
+            units.put(name, result.getPrimaryResult().getScoreUnit());
+        }
+
+        for (int providerCount : PROVIDER_COUNTS) {
+            scores.computeIfAbsent("retainedHeap", n -> new TreeMap<>())
+                .put(providerCount, (double) retainedBytes(providerCount));
+        }
+        units.put("retainedHeap", "bytes");
+
+        boolean flagged = false;
+        System.out.println();
+        System.out.printf("%-22s %8s %16s %12s %10s  %s%n", "measurement", "count", "score", "per provider", "exponent",
+            "unit");
+        for (Map.Entry<String, Map<Integer, Double>> entry : scores.entrySet()) {
+            String name = entry.getKey();
+            double expected = EXPECTED_EXPONENTS.getOrDefault(name, 1.0);
+            Integer previousCount = null;
+            for (Map.Entry<Integer, Double> point : entry.getValue().entrySet()) {
+                int count = point.getKey();
+                double score = point.getValue();
+                String exponent = "";
+                if (previousCount != null) {
+                    double previous = entry.getValue().get(previousCount);
+                    double slope = Math.log(score / previous) / Math.log((double) count / previousCount);
+                    exponent = String.format("%.2f", slope);
+                    if (previousCount >= 100 && slope > expected + TOLERANCE) {
+                        exponent += " !";
+                        flagged = true;
+                    }
+                }
+                System.out.printf("%-22s %8d %16.3f %12.4f %10s  %s%n", name, count, score, score / count, exponent,
+                    units.get(name));
+                previousCount = count;
+            }
+        }
+        System.out.println();
+        if (flagged) {
+            System.out.println("Measurements marked ! grew faster than expected");
+            System.exit(1);
+        }
+        System.out.println("All measurements grew as expected");
+    }
+
+    /**
+     * Heap still in use after loading the providers and building their
+     * registrations, over what was in use before
+     */
+    private static long retainedBytes(int providerCount) throws Exception {
+        ProviderScalingBenchmark benchmark = new ProviderScalingBenchmark();
+        benchmark.providerCount = providerCount;
+        long before = usedAfterGc();
+        benchmark.setUp();
+        Object state = benchmark.retainedState();
+        long after = usedAfterGc();
+        Reference.reachabilityFence(state);
+        benchmark.tearDown();
+        return Math.max(0, after - before);
+    }
+
+    private static long usedAfterGc() throws InterruptedException {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long used = Long.MAX_VALUE;
+        // Collections can leave floating garbage behind; take the lowest of a few
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            Thread.sleep(50);
+            used = Math.min(used, memory.getHeapMemoryUsage().getUsed());
+        }
+        return used;
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.flutto.service;
+
+import com.example.flutto.model.SamlProvidersConfig;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Startup cost of loading the provider store: YAML parse against the binary
+ * snapshot, as the provider count grows.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProviderStoreLoadBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    int providerCount;
+
+    private final ObjectMapper yamlMapper = new ObjectMapper(new YAMLFactory());
+    private final ProviderSnapshotStore snapshotStore = new ProviderSnapshotStore();
+    private Path directory;
+    private Path yamlFile;
+
+    @Setup
+    public void setUp() throws IOException {
+        List<String> idpCertificates = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            idpCertificates.add(SamlProviderFixtures.certificatePem(SamlProviderFixtures.keyPair(), "idp-" + i));
+        }
+        SamlProvidersConfig config = new SamlProvidersConfig();
+        config.setVersion(1);
+        for (int i = 0; i < providerCount; i++) {
+            config.getProviders().add(SamlProviderFixtures.provider("tenant-" + i, idpCertificates.get(i % 10)));
+        }
+
+        directory = Files.createTempDirectory("provider-store");
+        yamlFile = directory.resolve("saml-providers.yaml");
+        yamlMapper.writeValue(yamlFile.toFile(), config);
+        snapshotStore.write(yamlFile, config);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(ProviderSnapshotStore.snapshotPath(yamlFile));
+        Files.deleteIfExists(yamlFile);
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public SamlProvidersConfig yaml() throws IOException {
+        return yamlMapper.readValue(yamlFile.toFile(), SamlProvidersConfig.class);
+    }
+
+    @Benchmark
+    public SamlProvidersConfig snapshot() {
+        return snapshotStore.read(yamlFile).orElseThrow();
+    }
+}
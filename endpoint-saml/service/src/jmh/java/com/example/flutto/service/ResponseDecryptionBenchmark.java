@@ -0,0 +1,78 @@
+package com.example.flutto.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.saml2.core.Saml2X509Credential;
+import org.springframework.security.saml2.provider.service.authentication.OpenSaml4AuthenticationProvider;
+import org.springframework.security.saml2.provider.service.authentication.Saml2AuthenticationToken;
+import org.springframework.security.saml2.provider.service.registration.RelyingPartyRegistration;
+
+import java.security.KeyPair;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ACS throughput for a signed response with a plaintext or an encrypted
+ * assertion: parsing, signature verification, decryption and the default
+ * validation. The replay check is left out so one response can be replayed.
+ * With encryption off the decrypters are never called, so both decrypter
+ * variants measure the same path there.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class ResponseDecryptionBenchmark {
+
+    @Param({"false", "true"})
+    boolean encrypted;
+
+    @Param({"cached", "framework"})
+    String decrypter;
+
+    private OpenSaml4AuthenticationProvider provider;
+    private RelyingPartyRegistration registration;
+    private String response;
+
+    @Setup
+    public void setUp() {
+        KeyPair idpKeys = SamlProviderFixtures.keyPair();
+        X509Certificate idpCertificate = SamlProviderFixtures.certificate(idpKeys, "idp");
+        KeyPair spKeys = SamlProviderFixtures.keyPair();
+        X509Certificate spCertificate = SamlProviderFixtures.certificate(spKeys, "sp");
+
+        registration = SamlResponseFixtures.registration("tenant", idpCertificate)
+            .mutate()
+            .decryptionX509Credentials(c -> c.add(Saml2X509Credential.decryption(spKeys.getPrivate(), spCertificate)))
+            .build();
+        response = SamlResponseFixtures.response(registration, "user@example.com",
+            SamlResponseFixtures.signingCredential(idpKeys, idpCertificate), encrypted ? spCertificate : null);
+
+        provider = new OpenSaml4AuthenticationProvider();
+        if ("cached".equals(decrypter)) {
+            ResponseDecrypter responseDecrypter = new ResponseDecrypter();
+            responseDecrypter.register("tenant", spKeys.getPrivate(), spCertificate);
+            provider.setResponseElementsDecrypter(responseDecrypter::decryptResponseElements);
+            provider.setAssertionElementsDecrypter(responseDecrypter::decryptAssertionElements);
+        }
+    }
+
+    @Benchmark
+    public Authentication authenticate() {
+        return provider.authenticate(new Saml2AuthenticationToken(registration, response));
+    }
+}
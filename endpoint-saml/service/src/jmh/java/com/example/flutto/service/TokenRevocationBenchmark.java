@@ -0,0 +1,71 @@
+package com.example.flutto.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the per-request revocation check performed by JwtService.validClaims.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class TokenRevocationBenchmark {
+
+    @Param({"0", "10000", "100000"})
+    int revokedCount;
+
+    private TokenRevocationService service;
+    private String[] liveIds;
+    private String[] revokedIds;
+
+    @Setup
+    public void setUp() {
+        service = new TokenRevocationService(86_400_000L, 60_000L, 100_000, 1_000_000L);
+        long expiresAt = System.currentTimeMillis() + 3_600_000L;
+        revokedIds = new String[Math.max(1, revokedCount)];
+        for (int i = 0; i < revokedCount; i++) {
+            revokedIds[i] = UUID.randomUUID().toString();
+            service.revoke(revokedIds[i], expiresAt);
+        }
+        if (revokedCount == 0) {
+            revokedIds[0] = UUID.randomUUID().toString();
+        }
+        liveIds = new String[1024];
+        for (int i = 0; i < liveIds.length; i++) {
+            liveIds[i] = UUID.randomUUID().toString();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Benchmark
+    public boolean notRevoked(Cursor cursor) {
+        return service.isRevoked(liveIds[cursor.next++ & 1023]);
+    }
+
+    @Benchmark
+    public boolean revoked(Cursor cursor) {
+        int index = cursor.next++ & Integer.MAX_VALUE;
+        return service.isRevoked(revokedIds[index % revokedIds.length]);
+    }
+}
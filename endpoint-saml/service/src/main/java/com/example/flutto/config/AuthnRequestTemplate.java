@@ -0,0 +1,210 @@
+package com.example.flutto.config;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.zip.Deflater;
+
+/**
+ * An unsigned AuthnRequest prepared once per registration for the HTTP-Redirect
+ * binding. Only the ID and IssueInstant change between requests, so the text
+ * around them is deflated up front into byte-aligned blocks, and rendering a
+ * request just splices the two values in between as stored blocks. A login
+ * builds no XML objects and runs no compressor.
+ *
+ * The document carries the same attributes the framework resolver sets.
+ */
+public final class AuthnRequestTemplate {
+
+    // "ARQ" plus a UUID without its first character, as the framework generates them
+    static final int ID_LENGTH = 38;
+    // IssueInstant as yyyy-MM-ddTHH:mm:ss.SSSZ
+    static final int INSTANT_LENGTH = 24;
+    // A stored block header is one byte for BFINAL/BTYPE, then LEN and NLEN
+    private static final int STORED_HEADER = 5;
+
+    private static final String ID_SLOT = "I".repeat(ID_LENGTH);
+    private static final String INSTANT_SLOT = "T".repeat(INSTANT_LENGTH);
+
+    // Logins in the same second share the formatted date and time
+    private static volatile FormattedSecond lastSecond = new FormattedSecond(Long.MIN_VALUE, new byte[19]);
+
+    private final byte[] xml;
+    private final int idOffset;
+    private final int instantOffset;
+    private final byte[] beforeId;
+    private final byte[] beforeInstant;
+    private final byte[] afterInstant;
+
+    private AuthnRequestTemplate(byte[] xml, int idOffset, int instantOffset) {
+        this.xml = xml;
+        this.idOffset = idOffset;
+        this.instantOffset = instantOffset;
+        this.beforeId = deflate(xml, 0, idOffset, false);
+        this.beforeInstant = deflate(xml, idOffset + ID_LENGTH, instantOffset, false);
+        this.afterInstant = deflate(xml, instantOffset + INSTANT_LENGTH, xml.length, true);
+    }
+
+    /**
+     * Serializes the request with placeholders in the ID and IssueInstant slots
+     */
+    public static AuthnRequestTemplate compile(String destination, String assertionConsumerServiceUrl,
+                                               String protocolBinding, String issuer, String nameIdFormat) {
+        StringBuilder xml = new StringBuilder(512)
+            .append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>")
+            .append("<saml2p:AuthnRequest xmlns:saml2p=\"urn:oasis:names:tc:SAML:2.0:protocol\"")
+            .append(" AssertionConsumerServiceURL=\"").append(escape(assertionConsumerServiceUrl)).append('"')
+            .append(" Destination=\"").append(escape(destination)).append('"')
+            .append(" ForceAuthn=\"false\"")
+            .append(" ID=\"").append(ID_SLOT).append('"')
+            .append(" IsPassive=\"false\"")
+            .append(" IssueInstant=\"").append(INSTANT_SLOT).append('"')
+            .append(" ProtocolBinding=\"").append(escape(protocolBinding)).append('"')
+            .append(" Version=\"2.0\">")
+            .append("<saml2:Issuer xmlns:saml2=\"urn:oasis:names:tc:SAML:2.0:assertion\">")
+            .append(escape(issuer))
+            .append("</saml2:Issuer>");
+        if (nameIdFormat != null) {
+            xml.append("<saml2p:NameIDPolicy Format=\"").append(escape(nameIdFormat)).append("\"/>");
+        }
+        xml.append("</saml2p:AuthnRequest>");
+
+        String text = xml.toString();
+        int idOffset = text.indexOf(ID_SLOT);
+        int instantOffset = text.indexOf(INSTANT_SLOT);
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        // Values before the slots may contain multi-byte characters
+        int idByteOffset = text.substring(0, idOffset).getBytes(StandardCharsets.UTF_8).length;
+        int instantByteOffset = idByteOffset + (instantOffset - idOffset);
+        return new AuthnRequestTemplate(bytes, idByteOffset, instantByteOffset);
+    }
+
+    /**
+     * The deflated and Base64-encoded request with the given ID, issued now
+     */
+    public String render(String id) {
+        return render(id, System.currentTimeMillis());
+    }
+
+    String render(String id, long issueInstantMillis) {
+        checkId(id);
+        byte[] deflated = new byte[beforeId.length + STORED_HEADER + ID_LENGTH
+            + beforeInstant.length + STORED_HEADER + INSTANT_LENGTH + afterInstant.length];
+        int position = append(deflated, 0, beforeId);
+        position = storedHeader(deflated, position, ID_LENGTH);
+        for (int i = 0; i < ID_LENGTH; i++) {
+            deflated[position++] = (byte) id.charAt(i);
+        }
+        position = append(deflated, position, beforeInstant);
+        position = storedHeader(deflated, position, INSTANT_LENGTH);
+        writeInstant(issueInstantMillis, deflated, position);
+        append(deflated, position + INSTANT_LENGTH, afterInstant);
+        return Base64.getEncoder().encodeToString(deflated);
+    }
+
+    /**
+     * The request as it reads once inflated, for tests and diagnostics
+     */
+    String xml(String id, long issueInstantMillis) {
+        checkId(id);
+        byte[] filled = Arrays.copyOf(xml, xml.length);
+        System.arraycopy(id.getBytes(StandardCharsets.US_ASCII), 0, filled, idOffset, ID_LENGTH);
+        writeInstant(issueInstantMillis, filled, instantOffset);
+        return new String(filled, StandardCharsets.UTF_8);
+    }
+
+    private static void checkId(String id) {
+        if (id.length() != ID_LENGTH) {
+            throw new IllegalArgumentException("AuthnRequest ID must be " + ID_LENGTH + " characters: " + id);
+        }
+    }
+
+    private static int append(byte[] target, int position, byte[] bytes) {
+        System.arraycopy(bytes, 0, target, position, bytes.length);
+        return position + bytes.length;
+    }
+
+    // Non-final stored block; the preceding block ends on a byte boundary after a sync flush
+    private static int storedHeader(byte[] target, int position, int length) {
+        target[position] = 0;
+        target[position + 1] = (byte) length;
+        target[position + 2] = (byte) (length >>> 8);
+        target[position + 3] = (byte) ~length;
+        target[position + 4] = (byte) (~length >>> 8);
+        return position + STORED_HEADER;
+    }
+
+    /**
+     * Raw DEFLATE of one constant part: flushed to a byte boundary so a stored
+     * block can follow, or finished if it is the last part
+     */
+    private static byte[] deflate(byte[] bytes, int from, int to, boolean last) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+        try {
+            deflater.setInput(bytes, from, to - from);
+            if (last) {
+                deflater.finish();
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream(to - from);
+            byte[] chunk = new byte[512];
+            while (true) {
+                int count = last ? deflater.deflate(chunk) : deflater.deflate(chunk, 0, chunk.length, Deflater.SYNC_FLUSH);
+                out.write(chunk, 0, count);
+                if (last ? deflater.finished() : count < chunk.length) {
+                    return out.toByteArray();
+                }
+            }
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static void writeInstant(long millis, byte[] target, int offset) {
+        long epochSecond = Math.floorDiv(millis, 1000);
+        FormattedSecond formatted = lastSecond;
+        if (formatted.epochSecond != epochSecond) {
+            String text = LocalDateTime.ofEpochSecond(epochSecond, 0, ZoneOffset.UTC).toString();
+            // LocalDateTime leaves out ":00" seconds; the slot needs all of yyyy-MM-ddTHH:mm:ss
+            if (text.length() == 16) {
+                text += ":00";
+            }
+            formatted = new FormattedSecond(epochSecond, text.getBytes(StandardCharsets.US_ASCII));
+            lastSecond = formatted;
+        }
+        System.arraycopy(formatted.text, 0, target, offset, 19);
+        int milli = (int) Math.floorMod(millis, 1000);
+        target[offset + 19] = '.';
+        target[offset + 20] = (byte) ('0' + milli / 100);
+        target[offset + 21] = (byte) ('0' + milli / 10 % 10);
+        target[offset + 22] = (byte) ('0' + milli % 10);
+        target[offset + 23] = 'Z';
+    }
+
+    private static String escape(String value) {
+        StringBuilder escaped = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '&' -> escaped.append("&amp;");
+                case '<' -> escaped.append("&lt;");
+                case '>' -> escaped.append("&gt;");
+                case '"' -> escaped.append("&quot;");
+                default -> escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    private static final class FormattedSecond {
+        private final long epochSecond;
+        private final byte[] text;
+
+        FormattedSecond(long epochSecond, byte[] text) {
+            this.epochSecond = epochSecond;
+            this.text = text;
+        }
+    }
+}
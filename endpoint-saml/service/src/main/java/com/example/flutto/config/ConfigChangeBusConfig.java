@@ -0,0 +1,72 @@
+package com.example.flutto.config;
+
+import com.example.flutto.service.ConfigChangeBus;
+import com.example.flutto.service.InProcessConfigChangeBus;
+import com.example.flutto.service.SharedDirectoryConfigChangeBus;
+import com.example.flutto.service.SocketConfigChangeBus;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Selects the transport used to propagate provider changes between nodes.
+ * To run more than one instance, either set saml.cluster.bus=socket and list
+ * the other nodes in saml.cluster.bus.socket.peers, or set
+ * saml.cluster.bus=directory and point saml.cluster.bus.directory at a local
+ * directory the nodes share. The directory bus relies on the OS file watcher,
+ * which does not see writes from other hosts; across hosts use the socket bus,
+ * or give the directory bus a poll interval as a fallback.
+ * AOT-processed builds (-Pnative, -Pcds) fix this choice at build time, so pass
+ * the property to the build as well.
+ */
+@Configuration
+public class ConfigChangeBusConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "saml.cluster.bus", havingValue = "in-process", matchIfMissing = true)
+    public ConfigChangeBus inProcessConfigChangeBus() {
+        return new InProcessConfigChangeBus();
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "saml.cluster.bus", havingValue = "directory")
+    public ConfigChangeBus sharedDirectoryConfigChangeBus(
+            @Value("${saml.cluster.bus.directory}") String directory,
+            @Value("${saml.cluster.bus.retention-ms:60000}") long retentionMillis,
+            @Value("${saml.cluster.bus.poll-interval-ms:0}") long pollIntervalMillis) throws IOException {
+        return new SharedDirectoryConfigChangeBus(Path.of(directory), retentionMillis, pollIntervalMillis);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "saml.cluster.bus", havingValue = "socket")
+    public ConfigChangeBus socketConfigChangeBus(
+            @Value("${saml.cluster.bus.socket.bind-address:0.0.0.0}") String bindAddress,
+            @Value("${saml.cluster.bus.socket.port:7600}") int port,
+            @Value("${saml.cluster.bus.socket.peers:}") String peers,
+            @Value("${saml.cluster.bus.socket.secret:}") String secret,
+            @Value("${saml.cluster.bus.socket.connect-timeout-ms:1000}") int connectTimeoutMillis,
+            @Value("${saml.cluster.bus.socket.retry-interval-ms:1000}") long retryIntervalMillis) throws IOException {
+        List<InetSocketAddress> peerAddresses = new ArrayList<>();
+        for (String peer : peers.split(",")) {
+            String hostAndPort = peer.trim();
+            if (hostAndPort.isEmpty()) {
+                continue;
+            }
+            int colon = hostAndPort.lastIndexOf(':');
+            if (colon < 0) {
+                throw new IllegalArgumentException("Config change peer '" + hostAndPort + "' is not host:port");
+            }
+            peerAddresses.add(InetSocketAddress.createUnresolved(hostAndPort.substring(0, colon),
+                Integer.parseInt(hostAndPort.substring(colon + 1))));
+        }
+        return new SocketConfigChangeBus(new InetSocketAddress(bindAddress, port), peerAddresses, secret,
+            connectTimeoutMillis, retryIntervalMillis);
+    }
+}
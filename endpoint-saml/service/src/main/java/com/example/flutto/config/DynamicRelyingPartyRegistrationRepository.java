@@ -0,0 +1,30 @@
+package com.example.flutto.config;
+
+import org.springframework.security.saml2.provider.service.registration.IterableRelyingPartyRegistrationRepository;
+import org.springframework.security.saml2.provider.service.registration.RelyingPartyRegistration;
+
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Live view over the registrations maintained by {@link DynamicSamlConfig}, so
+ * refreshes take effect for the SAML filters without rebuilding the security chain.
+ */
+public class DynamicRelyingPartyRegistrationRepository implements IterableRelyingPartyRegistrationRepository {
+
+    private final Map<String, RelyingPartyRegistration> registrations;
+
+    public DynamicRelyingPartyRegistrationRepository(Map<String, RelyingPartyRegistration> registrations) {
+        this.registrations = registrations;
+    }
+
+    @Override
+    public RelyingPartyRegistration findByRegistrationId(String registrationId) {
+        return registrations.get(registrationId);
+    }
+
+    @Override
+    public Iterator<RelyingPartyRegistration> iterator() {
+        return registrations.values().iterator();
+    }
+}
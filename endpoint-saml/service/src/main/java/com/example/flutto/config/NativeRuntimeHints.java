@@ -0,0 +1,145 @@
+package com.example.flutto.config;
+
+import com.example.flutto.model.ConfigChangeEvent;
+import com.example.flutto.model.SamlProviderConfig;
+import com.example.flutto.model.SamlProvidersConfig;
+import jakarta.servlet.http.HttpServletRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import org.springframework.aot.hint.TypeReference;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reachability hints for the native image build. Runs at AOT processing time on
+ * the JVM, so it can read the OpenSAML provider configuration files and register
+ * every builder, marshaller and unmarshaller they name for reflection.
+ */
+public class NativeRuntimeHints implements RuntimeHintsRegistrar {
+    private static final Logger logger = LoggerFactory.getLogger(NativeRuntimeHints.class);
+
+    private static final Pattern CLASS_NAME = Pattern.compile("className=\"([\\w.$]+)\"");
+
+    private static final String[] JJWT_TYPES = {
+        "io.jsonwebtoken.impl.DefaultJwtBuilder",
+        "io.jsonwebtoken.impl.DefaultJwtParserBuilder",
+        "io.jsonwebtoken.impl.DefaultClaimsBuilder",
+        "io.jsonwebtoken.impl.security.KeysBridge",
+        "io.jsonwebtoken.impl.security.StandardSecureDigestAlgorithms",
+        "io.jsonwebtoken.impl.security.StandardKeyAlgorithms",
+        "io.jsonwebtoken.impl.security.StandardEncryptionAlgorithms",
+        "io.jsonwebtoken.impl.io.StandardCompressionAlgorithms",
+        "io.jsonwebtoken.jackson.io.JacksonSerializer",
+        "io.jsonwebtoken.jackson.io.JacksonDeserializer"
+    };
+
+    private static final String[] BOUNCY_CASTLE_TYPES = {
+        "org.bouncycastle.jce.provider.BouncyCastleProvider",
+        "org.bouncycastle.jcajce.provider.asymmetric.rsa.KeyFactorySpi",
+        "org.bouncycastle.jcajce.provider.asymmetric.rsa.KeyPairGeneratorSpi",
+        "org.bouncycastle.jcajce.provider.asymmetric.rsa.DigestSignatureSpi$SHA256",
+        "org.bouncycastle.jcajce.provider.asymmetric.ec.KeyFactorySpi$EC",
+        "org.bouncycastle.jcajce.provider.asymmetric.ec.SignatureSpi$ecDSA256",
+        "org.bouncycastle.jcajce.provider.asymmetric.x509.CertificateFactory",
+        "org.bouncycastle.jcajce.provider.digest.SHA256$Digest"
+    };
+
+    @Override
+    public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+        // Bound from YAML and JSON by Jackson
+        for (Class<?> type : new Class<?>[] {SamlProvidersConfig.class, SamlProviderConfig.class,
+                ConfigChangeEvent.class, ConfigChangeEvent.Type.class}) {
+            hints.reflection().registerType(type, MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS,
+                MemberCategory.INVOKE_PUBLIC_METHODS, MemberCategory.DECLARED_FIELDS);
+        }
+
+        // JJWT finds its implementation and serializer through Class.forName and ServiceLoader
+        registerByName(hints, classLoader, JJWT_TYPES);
+        hints.resources().registerPattern("META-INF/services/io.jsonwebtoken.*");
+
+        // Provider services are looked up by class name when the algorithm is first requested
+        registerByName(hints, classLoader, BOUNCY_CASTLE_TYPES);
+
+        // OpenSAML bootstraps from initializer services, XML object configs and schemas
+        hints.resources().registerPattern("META-INF/services/org.opensaml.*");
+        hints.resources().registerPattern("META-INF/services/net.shibboleth.*");
+        hints.resources().registerPattern("*-config.xml");
+        hints.resources().registerPattern("schema/*.xsd");
+        hints.resources().registerPattern("credential-criteria-registry.properties");
+        hints.resources().registerPattern("saml-providers.yaml");
+        registerInitializers(hints, classLoader);
+        registerXmlObjectProviders(hints, classLoader);
+
+        // Warm-up hands the AuthnRequest resolver a proxied login request
+        hints.proxies().registerJdkProxy(HttpServletRequest.class);
+    }
+
+    private void registerInitializers(RuntimeHints hints, ClassLoader classLoader) {
+        Set<String> classNames = new LinkedHashSet<>();
+        for (Resource resource : resources(classLoader, "classpath*:META-INF/services/org.opensaml.core.config.Initializer")) {
+            for (String line : read(resource).split("\\R")) {
+                String name = line.replaceAll("#.*", "").trim();
+                if (!name.isEmpty()) {
+                    classNames.add(name);
+                }
+            }
+        }
+        registerByName(hints, classLoader, classNames.toArray(String[]::new));
+    }
+
+    private void registerXmlObjectProviders(RuntimeHints hints, ClassLoader classLoader) {
+        Set<String> classNames = new LinkedHashSet<>();
+        for (Resource resource : resources(classLoader, "classpath*:*-config.xml")) {
+            String content = read(resource);
+            if (!content.contains("XMLTooling")) {
+                continue;
+            }
+            Matcher matcher = CLASS_NAME.matcher(content);
+            while (matcher.find()) {
+                classNames.add(matcher.group(1));
+            }
+        }
+        registerByName(hints, classLoader, classNames.toArray(String[]::new));
+        logger.debug("Registered {} OpenSAML provider classes for reflection", classNames.size());
+    }
+
+    private static void registerByName(RuntimeHints hints, ClassLoader classLoader, String[] classNames) {
+        for (String className : classNames) {
+            try {
+                Class.forName(className, false, classLoader);
+            } catch (ClassNotFoundException | LinkageError e) {
+                continue;
+            }
+            hints.reflection().registerType(TypeReference.of(className),
+                MemberCategory.INVOKE_DECLARED_CONSTRUCTORS, MemberCategory.INVOKE_PUBLIC_METHODS);
+        }
+    }
+
+    private static Resource[] resources(ClassLoader classLoader, String pattern) {
+        try {
+            return new PathMatchingResourcePatternResolver(classLoader).getResources(pattern);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to scan " + pattern, e);
+        }
+    }
+
+    private static String read(Resource resource) {
+        try (InputStream in = resource.getInputStream()) {
+            return StreamUtils.copyToString(in, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read " + resource, e);
+        }
+    }
+}
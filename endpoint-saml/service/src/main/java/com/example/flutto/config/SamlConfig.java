@@ -1,8 +1,10 @@
 package com.example.flutto.config;
 
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.ImportRuntimeHints;
 
 @Configuration
+@ImportRuntimeHints(NativeRuntimeHints.class)
 public class SamlConfig {
     
-}
\ No newline at end of file
+}
@@ -1,39 +1,83 @@
 package com.example.flutto.config;
 
+import com.example.flutto.filter.AuthCookies;
 import com.example.flutto.filter.JwtAuthenticationFilter;
+import com.example.flutto.jfr.AcsValidationEvent;
+import com.example.flutto.jfr.PrincipalExtractionEvent;
+import com.example.flutto.jfr.TokenIssueEvent;
+import com.example.flutto.model.AttributeClaimResolver;
+import com.example.flutto.model.AuditEvent;
+import com.example.flutto.model.CompiledSamlProvider;
+import com.example.flutto.model.RoleMapper;
 //import com.example.flutto.filter.SamlRedirectUriFilter;
+import com.example.flutto.service.AssertionReplayCache;
+import com.example.flutto.service.AuditLog;
 import com.example.flutto.service.JwtService;
-import jakarta.servlet.http.Cookie;
+import com.example.flutto.service.RefreshTokenService;
+import com.example.flutto.service.ResponseDecrypter;
+import com.example.flutto.service.ResponsePolicy;
+import com.example.flutto.service.SamlConfigurationService;
 import jakarta.servlet.http.HttpSession;
 //import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.opensaml.saml.saml2.assertion.SAML2AssertionValidationParameters;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.authentication.ProviderManager;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.authentication.AuthenticationFailureHandler;
 import org.springframework.security.web.authentication.AuthenticationSuccessHandler;
+import org.springframework.security.web.authentication.SimpleUrlAuthenticationFailureHandler;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 import org.springframework.security.web.csrf.CookieCsrfTokenRepository;
 import org.springframework.security.web.csrf.CsrfTokenRequestAttributeHandler;
+import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import org.springframework.security.saml2.core.Saml2ResponseValidatorResult;
+import org.springframework.security.saml2.provider.service.authentication.OpenSaml4AuthenticationProvider;
+import org.springframework.security.saml2.provider.service.authentication.Saml2AuthenticatedPrincipal;
+import org.springframework.security.saml2.provider.service.authentication.Saml2Authentication;
+import org.springframework.security.saml2.provider.service.authentication.Saml2AuthenticationException;
+import org.springframework.security.saml2.provider.service.authentication.Saml2AuthenticationToken;
 import org.springframework.security.saml2.provider.service.registration.RelyingPartyRegistrationRepository;
+import org.springframework.security.saml2.provider.service.web.authentication.Saml2AuthenticationRequestResolver;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
 
 @Configuration
 @EnableWebSecurity
 public class SecurityConfig {
 
     private final JwtService jwtService;
+    private final RefreshTokenService refreshTokenService;
+    private final AssertionReplayCache assertionReplayCache;
     private final JwtAuthenticationFilter jwtAuthenticationFilter;
     private final RelyingPartyRegistrationRepository relyingPartyRegistrationRepository;
+    private final Saml2AuthenticationRequestResolver authenticationRequestResolver;
+    private final SamlConfigurationService samlConfigurationService;
+    private final AuditLog auditLog;
+    private final ResponseDecrypter responseDecrypter;
 
-    public SecurityConfig(JwtService jwtService, JwtAuthenticationFilter jwtAuthenticationFilter, RelyingPartyRegistrationRepository relyingPartyRegistrationRepository) {
+    public SecurityConfig(JwtService jwtService, RefreshTokenService refreshTokenService, AssertionReplayCache assertionReplayCache, JwtAuthenticationFilter jwtAuthenticationFilter, RelyingPartyRegistrationRepository relyingPartyRegistrationRepository, Saml2AuthenticationRequestResolver authenticationRequestResolver, SamlConfigurationService samlConfigurationService, AuditLog auditLog, ResponseDecrypter responseDecrypter) {
         this.jwtService = jwtService;
+        this.refreshTokenService = refreshTokenService;
+        this.assertionReplayCache = assertionReplayCache;
         this.jwtAuthenticationFilter = jwtAuthenticationFilter;
         this.relyingPartyRegistrationRepository = relyingPartyRegistrationRepository;
+        this.authenticationRequestResolver = authenticationRequestResolver;
+        this.samlConfigurationService = samlConfigurationService;
+        this.auditLog = auditLog;
+        this.responseDecrypter = responseDecrypter;
     }
 
     @Bean
@@ -42,19 +86,28 @@ public class SecurityConfig {
             .csrf(csrf -> csrf.disable())
             .addFilterBefore(jwtAuthenticationFilter, UsernamePasswordAuthenticationFilter.class)
             .authorizeHttpRequests(authz -> authz
+                // Per-user login, IP and token history; matched before the admin permitAll below
+                .requestMatchers("/api/admin/audit/**").hasRole("ADMIN")
                 .requestMatchers(
                     "/", "/login", "/error", "/css/**", "/js/**", "/favicon.ico",
                     "/api/auth/custom-login",
                     "/api/auth/validate",
                     "/api/auth/custom-logout",
+                    "/api/auth/refresh",
                     "/api/auth/options",
+                    "/api/auth/options/discover",
+                    "/actuator/health/**",
+                    "/saml2/service-provider-metadata", "/saml2/service-provider-metadata/*",
                     "/api/admin/**"  // Add this line to permit access to admin endpoints
                 ).permitAll()
                 .anyRequest().authenticated()
             )
             .saml2Login(saml2 -> saml2
                 .relyingPartyRegistrationRepository(relyingPartyRegistrationRepository)
+                .authenticationRequestResolver(authenticationRequestResolver)
+                .authenticationManager(samlAuthenticationManager())
                 .successHandler(samlSuccessHandler())
+                .failureHandler(samlFailureHandler())
             )
             .logout(logout -> logout
                 .logoutUrl("/logout")
@@ -63,10 +116,21 @@ public class SecurityConfig {
                 .clearAuthentication(true)
                 .deleteCookies("jwt", "JSESSIONID")
                 .addLogoutHandler((request, response, authentication) -> {
-                    Cookie cookie = new Cookie("jwt", null);
-                    cookie.setMaxAge(0);
-                    cookie.setPath("/");
-                    response.addCookie(cookie);
+                    String user = authentication != null ? authentication.getName() : null;
+                    String jwt = JwtAuthenticationFilter.resolveToken(request);
+                    if (jwt != null) {
+                        String revoked = jwtService.revokeToken(jwt);
+                        if (revoked != null) {
+                            user = revoked;
+                            auditLog.record(AuditEvent.Type.TOKEN_REVOKED, revoked, null, request.getRemoteAddr(), "logout");
+                        }
+                    }
+                    String refreshToken = AuthCookies.read(request, AuthCookies.REFRESH_TOKEN);
+                    if (refreshToken != null) {
+                        refreshTokenService.revoke(refreshToken);
+                    }
+                    auditLog.record(AuditEvent.Type.LOGOUT, user, null, request.getRemoteAddr(), null);
+                    AuthCookies.clear(response);
                     SecurityContextHolder.clearContext();
                 })
             );
@@ -74,26 +138,145 @@ public class SecurityConfig {
         return http.build();
     }
 
+    /**
+     * Authenticates the responses posted to the ACS. A bean so warm-up can run
+     * the same validation path before the first login.
+     */
+    @Bean
+    public AuthenticationManager samlAuthenticationManager() {
+        return new ProviderManager(recordingAcsValidation(samlAuthenticationProvider()));
+    }
+
+    /**
+     * Default OpenSAML validation, plus the provider's signing and encryption
+     * requirements and a replay check so each assertion id can only be consumed
+     * once per registration. Encrypted elements are decrypted with keys bound
+     * once per provider.
+     *
+     * The replay check runs in the authentication converter, which the provider
+     * only calls once every validator has passed, so responses with bad
+     * signatures or conditions never take up room in the replay cache.
+     */
+    private OpenSaml4AuthenticationProvider samlAuthenticationProvider() {
+        OpenSaml4AuthenticationProvider provider = new OpenSaml4AuthenticationProvider();
+        provider.setResponseElementsDecrypter(responseDecrypter::decryptResponseElements);
+        provider.setAssertionElementsDecrypter(responseDecrypter::decryptAssertionElements);
+
+        Converter<OpenSaml4AuthenticationProvider.ResponseToken, Saml2Authentication> defaultAuthenticationConverter =
+            OpenSaml4AuthenticationProvider.createDefaultResponseAuthenticationConverter();
+        provider.setResponseAuthenticationConverter(responseToken -> {
+            Saml2ResponseValidatorResult replay = assertionReplayCache.consume(responseToken.getResponse(),
+                responseToken.getToken().getRelyingPartyRegistration().getRegistrationId());
+            if (replay.hasErrors()) {
+                throw new Saml2AuthenticationException(replay.getErrors().iterator().next());
+            }
+
+            PrincipalExtractionEvent event = new PrincipalExtractionEvent();
+            event.begin();
+            // ROLE_USER from the default converter, plus the roles the provider maps the user's groups to
+            String registrationId = responseToken.getToken().getRelyingPartyRegistration().getRegistrationId();
+            Saml2Authentication authentication = samlConfigurationService.getCompiledProvider(registrationId)
+                .map(CompiledSamlProvider::getRoleMapper)
+                .orElse(RoleMapper.NONE)
+                .grant(defaultAuthenticationConverter.convert(responseToken));
+            if (event.shouldCommit()) {
+                Map<String, List<Object>> attributes =
+                    ((Saml2AuthenticatedPrincipal) authentication.getPrincipal()).getAttributes();
+                event.registrationId = registrationId;
+                event.attributeCount = attributes.size();
+                event.valueCount = attributes.values().stream().mapToInt(List::size).sum();
+                event.commit();
+            }
+            return authentication;
+        });
+
+        Converter<OpenSaml4AuthenticationProvider.ResponseToken, Saml2ResponseValidatorResult> defaultResponseValidator =
+            OpenSaml4AuthenticationProvider.createDefaultResponseValidator();
+        provider.setResponseValidator(responseToken -> defaultResponseValidator.convert(responseToken)
+            .concat(checkResponsePolicy(responseToken)));
+
+        // Same skew the replay cache keeps entries for past NotOnOrAfter
+        Duration clockSkew = assertionReplayCache.getClockSkew();
+        provider.setAssertionValidator(OpenSaml4AuthenticationProvider.createDefaultAssertionValidatorWithParameters(
+            parameters -> parameters.put(SAML2AssertionValidationParameters.CLOCK_SKEW, clockSkew)));
+        return provider;
+    }
+
+    /**
+     * Records each ACS response validation, from parsing to the authenticated
+     * principal, as a JFR event
+     */
+    private static AuthenticationProvider recordingAcsValidation(AuthenticationProvider delegate) {
+        return new AuthenticationProvider() {
+            @Override
+            public Authentication authenticate(Authentication authentication) {
+                AcsValidationEvent event = new AcsValidationEvent();
+                event.begin();
+                try {
+                    Authentication result = delegate.authenticate(authentication);
+                    event.success = true;
+                    return result;
+                } catch (Saml2AuthenticationException e) {
+                    event.errorCode = e.getSaml2Error().getErrorCode();
+                    throw e;
+                } finally {
+                    if (authentication instanceof Saml2AuthenticationToken token && event.shouldCommit()) {
+                        event.registrationId = token.getRelyingPartyRegistration().getRegistrationId();
+                        event.responseBytes = token.getSaml2Response().length();
+                        event.commit();
+                    }
+                }
+            }
+
+            @Override
+            public boolean supports(Class<?> authentication) {
+                return delegate.supports(authentication);
+            }
+        };
+    }
+
+    // Looks up the provider's signing and encryption requirements for the response
+    private Saml2ResponseValidatorResult checkResponsePolicy(OpenSaml4AuthenticationProvider.ResponseToken responseToken) {
+        String registrationId = responseToken.getToken().getRelyingPartyRegistration().getRegistrationId();
+        return ResponsePolicy.check(responseToken.getResponse(), registrationId,
+            samlConfigurationService.getCompiledProvider(registrationId).orElse(null));
+    }
+
     @Bean
     public AuthenticationSuccessHandler samlSuccessHandler() {
         return (request, response, authentication) -> {
             Logger logger = LoggerFactory.getLogger(SecurityConfig.class);
 
-            String jwt = jwtService.generateToken(authentication);
-
-            Cookie jwtCookie = new Cookie("jwt", jwt);
-            jwtCookie.setHttpOnly(true);
-            jwtCookie.setSecure(false); // Set to true in production with HTTPS
-            jwtCookie.setPath("/");
-            jwtCookie.setMaxAge(86400); // 24 hours
+            Saml2AuthenticatedPrincipal principal = (Saml2AuthenticatedPrincipal) authentication.getPrincipal();
+            String registrationId = principal.getRelyingPartyRegistrationId();
+            TokenIssueEvent tokenEvent = new TokenIssueEvent();
+            tokenEvent.begin();
+            // Attribute names differ per IdP; the provider's compiled mappings pick the claims out
+            AttributeClaimResolver claimResolver = samlConfigurationService
+                .getCompiledProvider(registrationId)
+                .map(CompiledSamlProvider::getClaimResolver)
+                .orElse(AttributeClaimResolver.DEFAULT);
+            Map<String, Object> claims = jwtService.buildClaims(authentication, claimResolver);
+            String jwt = jwtService.generateAccessToken(principal.getName(), claims);
+            if (tokenEvent.shouldCommit()) {
+                tokenEvent.registrationId = registrationId;
+                tokenEvent.claimCount = claims.size();
+                tokenEvent.tokenBytes = jwt.length();
+                tokenEvent.commit();
+            }
+            auditLog.record(AuditEvent.Type.LOGIN_SUCCESS, principal.getName(), registrationId, request.getRemoteAddr(), null);
+            auditLog.record(AuditEvent.Type.TOKEN_ISSUED, principal.getName(), registrationId, request.getRemoteAddr(), "saml-login");
 
-            response.addCookie(jwtCookie);
+            // Short-lived access token; the refresh token renews it without another SAML login
+            AuthCookies.setAccessToken(response, jwt, jwtService.getAccessTokenExpiration());
+            AuthCookies.setRefreshToken(response, refreshTokenService.issue(principal.getName(), claims),
+                refreshTokenService.getRefreshExpiration());
 
             String redirectUri = null;
             HttpSession session = request.getSession(false);
             if (session != null) {
                 redirectUri = (String) session.getAttribute("SAML_REDIRECT_URI");
-                logger.info("SAML SuccessHandler: Found redirectUri in session: {}", redirectUri);
+                logger.debug("SAML SuccessHandler: Found redirectUri in session: {}", redirectUri);
                 session.removeAttribute("SAML_REDIRECT_URI");
             }
             if (redirectUri == null || redirectUri.isBlank()) {
@@ -101,9 +284,24 @@ public class SecurityConfig {
                 logger.warn("SAML SuccessHandler: No redirectUri found, using fallback: /");
             }
 
-            String redirectWithJwt = redirectUri + (redirectUri.contains("?") ? "&" : "?") + "jwt=" + jwt;
-            logger.info("SAML SuccessHandler: Redirecting to: {}", redirectWithJwt);
-            response.sendRedirect(redirectWithJwt);
+            // The URL carries the token, so only the target is logged
+            logger.debug("SAML SuccessHandler: Redirecting to: {}", redirectUri);
+            response.sendRedirect(redirectUri + (redirectUri.contains("?") ? "&" : "?") + "jwt=" + jwt);
+        };
+    }
+
+    /**
+     * Records the failed login, then shows the login page with an error as before
+     */
+    private AuthenticationFailureHandler samlFailureHandler() {
+        SimpleUrlAuthenticationFailureHandler delegate = new SimpleUrlAuthenticationFailureHandler("/login?error");
+        return (request, response, exception) -> {
+            // The ACS path ends with the registration id
+            String uri = request.getRequestURI();
+            String registrationId = uri.substring(uri.lastIndexOf('/') + 1);
+            auditLog.record(AuditEvent.Type.LOGIN_FAILURE, null, registrationId, request.getRemoteAddr(),
+                exception.getMessage());
+            delegate.onAuthenticationFailure(request, response, exception);
         };
     }
 
@@ -126,6 +324,7 @@ public class SecurityConfig {
                         "https://northern-dealer-many-dubai.trycloudflare.com"
                     )
                     .allowedMethods("GET", "POST", "PUT", "DELETE", "OPTIONS")
+                    .exposedHeaders("Location", "X-Refresh-Job", "X-Config-Version")
                     .allowCredentials(true);
             }
         };
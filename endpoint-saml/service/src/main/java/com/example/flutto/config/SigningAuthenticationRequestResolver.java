@@ -0,0 +1,88 @@
+package com.example.flutto.config;
+
+import com.example.flutto.jfr.AuthnRequestEvent;
+import com.example.flutto.service.AuthnRequestSigner;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.security.saml2.provider.service.authentication.AbstractSaml2AuthenticationRequest;
+import org.springframework.security.saml2.provider.service.authentication.Saml2RedirectAuthenticationRequest;
+import org.springframework.security.saml2.provider.service.registration.RelyingPartyRegistration;
+import org.springframework.security.saml2.provider.service.registration.RelyingPartyRegistrationRepository;
+import org.springframework.security.saml2.provider.service.web.authentication.Saml2AuthenticationRequestResolver;
+import org.springframework.web.util.UriUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Signs the HTTP-Redirect AuthnRequests built by the framework with the
+ * provider's configured algorithm and pooled signing key.
+ *
+ * The delegate works against registrations that do not ask for signing, so it
+ * only builds and encodes the request; the signature is added here over the
+ * same query string the redirect filter sends.
+ */
+public class SigningAuthenticationRequestResolver implements Saml2AuthenticationRequestResolver {
+
+    private final Saml2AuthenticationRequestResolver delegate;
+    private final RelyingPartyRegistrationRepository registrations;
+    private final AuthnRequestSigner signer;
+
+    public SigningAuthenticationRequestResolver(Saml2AuthenticationRequestResolver delegate,
+                                                RelyingPartyRegistrationRepository registrations,
+                                                AuthnRequestSigner signer) {
+        this.delegate = delegate;
+        this.registrations = registrations;
+        this.signer = signer;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T extends AbstractSaml2AuthenticationRequest> T resolve(HttpServletRequest request) {
+        AuthnRequestEvent event = new AuthnRequestEvent();
+        event.begin();
+        AbstractSaml2AuthenticationRequest resolved = sign(delegate.resolve(request));
+        // Null for every request that is not a login start
+        if (resolved != null && event.shouldCommit()) {
+            event.registrationId = resolved.getRelyingPartyRegistrationId();
+            event.signed = resolved instanceof Saml2RedirectAuthenticationRequest redirect && redirect.getSignature() != null;
+            event.requestBytes = resolved.getSamlRequest().length();
+            event.commit();
+        }
+        return (T) resolved;
+    }
+
+    private AbstractSaml2AuthenticationRequest sign(AbstractSaml2AuthenticationRequest resolved) {
+        // Registrations always use the redirect binding for SSO
+        if (!(resolved instanceof Saml2RedirectAuthenticationRequest unsigned)
+                || !signer.isSigning(unsigned.getRelyingPartyRegistrationId())) {
+            return resolved;
+        }
+        String registrationId = unsigned.getRelyingPartyRegistrationId();
+        RelyingPartyRegistration registration = registrations.findByRegistrationId(registrationId);
+        if (registration == null) {
+            return resolved;
+        }
+
+        String sigAlg = signer.algorithmUri(registrationId);
+        StringBuilder query = new StringBuilder(unsigned.getSamlRequest().length() + 256)
+            .append("SAMLRequest=").append(encode(unsigned.getSamlRequest()));
+        if (unsigned.getRelayState() != null) {
+            query.append("&RelayState=").append(encode(unsigned.getRelayState()));
+        }
+        query.append("&SigAlg=").append(encode(sigAlg));
+        byte[] signature = signer.sign(registrationId, query.toString().getBytes(StandardCharsets.UTF_8));
+
+        return Saml2RedirectAuthenticationRequest.withRelyingPartyRegistration(registration)
+            .id(unsigned.getId())
+            .samlRequest(unsigned.getSamlRequest())
+            .relayState(unsigned.getRelayState())
+            .sigAlg(sigAlg)
+            .signature(Base64.getEncoder().encodeToString(signature))
+            .build();
+    }
+
+    // Matches the encoding Saml2WebSsoAuthenticationRequestFilter uses for the redirect
+    private static String encode(String value) {
+        return UriUtils.encode(value, StandardCharsets.ISO_8859_1);
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.flutto.config;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.security.saml2.provider.service.authentication.AbstractSaml2AuthenticationRequest;
+import org.springframework.security.saml2.provider.service.authentication.Saml2RedirectAuthenticationRequest;
+import org.springframework.security.saml2.provider.service.registration.RelyingPartyRegistration;
+import org.springframework.security.saml2.provider.service.registration.RelyingPartyRegistrationRepository;
+import org.springframework.security.saml2.provider.service.registration.Saml2MessageBinding;
+import org.springframework.security.saml2.provider.service.web.authentication.Saml2AuthenticationRequestResolver;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Builds unsigned HTTP-Redirect AuthnRequests from an {@link AuthnRequestTemplate}
+ * per registration instead of through OpenSAML. Anything else (POST binding,
+ * registrations that want the request signed here, URL templates other than
+ * {baseUrl} and {registrationId}) goes to the framework resolver as before.
+ *
+ * A template is kept until its registration is replaced or the request arrives
+ * on a different base URL, the same rule SP metadata caching follows.
+ */
+public class TemplateAuthenticationRequestResolver implements Saml2AuthenticationRequestResolver {
+
+    private static final String AUTHENTICATE_PATH = "/saml2/authenticate/";
+
+    private final Saml2AuthenticationRequestResolver delegate;
+    private final RelyingPartyRegistrationRepository registrations;
+    private final Map<String, CachedTemplate> templates = new ConcurrentHashMap<>();
+
+    public TemplateAuthenticationRequestResolver(Saml2AuthenticationRequestResolver delegate,
+                                                 RelyingPartyRegistrationRepository registrations) {
+        this.delegate = delegate;
+        this.registrations = registrations;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T extends AbstractSaml2AuthenticationRequest> T resolve(HttpServletRequest request) {
+        String registrationId = registrationId(request);
+        if (registrationId == null) {
+            return delegate.resolve(request);
+        }
+        RelyingPartyRegistration registration = registrations.findByRegistrationId(registrationId);
+        if (registration == null) {
+            templates.remove(registrationId);
+            return delegate.resolve(request);
+        }
+        AuthnRequestTemplate template = template(registration, baseUrl(request));
+        if (template == null) {
+            return delegate.resolve(request);
+        }
+
+        String id = "ARQ" + UUID.randomUUID().toString().substring(1);
+        return (T) Saml2RedirectAuthenticationRequest.withRelyingPartyRegistration(registration)
+            .id(id)
+            .samlRequest(template.render(id))
+            .relayState(UUID.randomUUID().toString())
+            .build();
+    }
+
+    private AuthnRequestTemplate template(RelyingPartyRegistration registration, String baseUrl) {
+        CachedTemplate cached = templates.get(registration.getRegistrationId());
+        if (cached != null && cached.source == registration && cached.baseUrl.equals(baseUrl)) {
+            return cached.template;
+        }
+        CachedTemplate compiled = new CachedTemplate(registration, baseUrl, compile(registration, baseUrl));
+        templates.put(registration.getRegistrationId(), compiled);
+        return compiled.template;
+    }
+
+    // Null when the framework has to build the request
+    static AuthnRequestTemplate compile(RelyingPartyRegistration registration, String baseUrl) {
+        RelyingPartyRegistration.AssertingPartyDetails party = registration.getAssertingPartyDetails();
+        if (party.getSingleSignOnServiceBinding() != Saml2MessageBinding.REDIRECT
+                || party.getWantAuthnRequestsSigned() || registration.isAuthnRequestsSigned()) {
+            return null;
+        }
+        String issuer = resolveTemplate(registration.getEntityId(), registration, baseUrl);
+        String acsUrl = resolveTemplate(registration.getAssertionConsumerServiceLocation(), registration, baseUrl);
+        String destination = party.getSingleSignOnServiceLocation();
+        if (issuer == null || acsUrl == null || destination == null
+                || issuer.contains("{") || acsUrl.contains("{") || destination.contains("{")) {
+            return null;
+        }
+        return AuthnRequestTemplate.compile(destination, acsUrl,
+            registration.getAssertionConsumerServiceBinding().getUrn(), issuer, registration.getNameIdFormat());
+    }
+
+    // Same path the framework's request filter serves: /saml2/authenticate/{registrationId}
+    private static String registrationId(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        if (!path.startsWith(AUTHENTICATE_PATH)) {
+            return null;
+        }
+        String registrationId = path.substring(AUTHENTICATE_PATH.length());
+        return registrationId.isEmpty() || registrationId.indexOf('/') >= 0 ? null : registrationId;
+    }
+
+    // Same base URL the framework resolves {baseUrl} to
+    private static String baseUrl(HttpServletRequest request) {
+        return ServletUriComponentsBuilder.fromContextPath(request).replaceQuery(null).build().toUriString();
+    }
+
+    private static String resolveTemplate(String template, RelyingPartyRegistration registration, String baseUrl) {
+        if (template == null) {
+            return null;
+        }
+        return template.replace("{baseUrl}", baseUrl)
+            .replace("{registrationId}", registration.getRegistrationId());
+    }
+
+    private static final class CachedTemplate {
+        private final RelyingPartyRegistration source;
+        private final String baseUrl;
+        private final AuthnRequestTemplate template;
+
+        CachedTemplate(RelyingPartyRegistration source, String baseUrl, AuthnRequestTemplate template) {
+            this.source = source;
+            this.baseUrl = baseUrl;
+            this.template = template;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.flutto.controller;
+
+import com.example.flutto.model.AuditEvent;
+import com.example.flutto.service.AuditLog;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/admin/audit")
+public class AuditController {
+
+    private static final int MAX_LIMIT = 1000;
+
+    private final AuditLog auditLog;
+    private final Duration maxWindow;
+
+    public AuditController(AuditLog auditLog,
+                           @Value("${saml.audit.query.max-window-hours:168}") long maxWindowHours) {
+        this.auditLog = auditLog;
+        this.maxWindow = Duration.ofHours(maxWindowHours);
+    }
+
+    /**
+     * Audit events, newest first, within a required ISO-8601 time window of at
+     * most saml.audit.query.max-window-hours, filtered by user, provider and
+     * type. A page holds 1 to 1000 events; the next page is the same query with
+     * to set just before the oldest event returned.
+     */
+    @GetMapping("/events")
+    public ResponseEntity<List<AuditEvent>> events(
+            @RequestParam(required = false) String user,
+            @RequestParam(required = false) String provider,
+            @RequestParam(required = false) AuditEvent.Type type,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to,
+            @RequestParam int limit) {
+        if (to.isBefore(from) || Duration.between(from, to).compareTo(maxWindow) > 0
+                || limit < 1 || limit > MAX_LIMIT) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(auditLog.query(user, provider, type, from.toEpochMilli(), to.toEpochMilli(), limit));
+    }
+}
@@ -1,8 +1,15 @@
 package com.example.flutto.controller;
 
+import com.example.flutto.filter.AuthCookies;
+import com.example.flutto.model.AuditEvent;
+import com.example.flutto.model.CompiledSamlProvider;
+import com.example.flutto.filter.JwtAuthenticationFilter;
+import com.example.flutto.service.AuditLog;
 import com.example.flutto.service.JwtService;
+import com.example.flutto.service.RefreshTokenService;
 import com.example.flutto.service.SamlConfigurationService;
 import io.jsonwebtoken.Claims;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -12,7 +19,7 @@ import jakarta.servlet.http.HttpSession;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
-import jakarta.servlet.http.Cookie;
+import java.util.Optional;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -21,26 +28,32 @@ import org.slf4j.LoggerFactory;
 public class AuthApiController {
 
     private final JwtService jwtService;
+    private final RefreshTokenService refreshTokenService;
     private final SamlConfigurationService configService;
+    private final AuditLog auditLog;
     private static final Logger logger = LoggerFactory.getLogger(AuthApiController.class);
+    // Used when a login names no provider and none can be discovered
+    private static final String DEFAULT_PROVIDER = "google";
 
-    public AuthApiController(JwtService jwtService, SamlConfigurationService configService) {
+    public AuthApiController(JwtService jwtService, RefreshTokenService refreshTokenService,
+                             SamlConfigurationService configService, AuditLog auditLog) {
         this.jwtService = jwtService;
+        this.refreshTokenService = refreshTokenService;
         this.configService = configService;
+        this.auditLog = auditLog;
     }
 
     @GetMapping("/validate")
     public ResponseEntity<?> validate(@RequestParam String token) {
         Map<String, Object> response = new HashMap<>();
-        if (token == null || !jwtService.isTokenValid(token)) {
+        Claims claims = token != null ? jwtService.validClaims(token) : null;
+        if (claims == null) {
             response.put("valid", false);
             return ResponseEntity.ok(response);
         }
-        Claims claims = jwtService.extractClaims(token);
+        // Same fields for standard and compact tokens
+        response.putAll(jwtService.userInfo(claims));
         response.put("valid", true);
-        response.put("username", claims.get("username"));
-        response.put("email", claims.get("email"));
-        response.put("roles", claims.get("roles"));
         return ResponseEntity.ok(response);
     }
 
@@ -57,20 +70,82 @@ public class AuthApiController {
             logger.info("No session to invalidate.");
         }
 
-        Cookie cookie = new Cookie("jwt", null);
-        cookie.setMaxAge(0);
-        cookie.setPath("/");
-        response.addCookie(cookie);
+        // Clearing the cookie alone leaves a copied token usable until it expires
+        String user = null;
+        String jwt = JwtAuthenticationFilter.resolveToken(request);
+        if (jwt != null) {
+            user = jwtService.revokeToken(jwt);
+            if (user != null) {
+                auditLog.record(AuditEvent.Type.TOKEN_REVOKED, user, null, request.getRemoteAddr(), "logout");
+            }
+        }
+        String refreshToken = AuthCookies.read(request, AuthCookies.REFRESH_TOKEN);
+        if (refreshToken != null) {
+            refreshTokenService.revoke(refreshToken);
+        }
+        auditLog.record(AuditEvent.Type.LOGOUT, user, null, request.getRemoteAddr(), null);
+
+        AuthCookies.clear(response);
 
         response.sendRedirect(redirectUri);
     }
 
-    // Custom login endpoint
+    // Re-issues an access token from the refresh token cookie without a SAML round trip
+    @PostMapping("/refresh")
+    public ResponseEntity<?> refresh(@RequestParam(name = "refresh_token", required = false) String refreshTokenParam,
+                                     HttpServletRequest request,
+                                     HttpServletResponse response) {
+        // Non-browser clients may post the token instead of keeping a cookie jar
+        String refreshToken = refreshTokenParam != null ? refreshTokenParam
+                : AuthCookies.read(request, AuthCookies.REFRESH_TOKEN);
+        Map<String, Object> body = new HashMap<>();
+        if (refreshToken == null) {
+            body.put("error", "missing_refresh_token");
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(body);
+        }
+
+        Optional<RefreshTokenService.TokenPair> tokens = refreshTokenService.refresh(refreshToken);
+        if (tokens.isEmpty()) {
+            AuthCookies.clear(response);
+            body.put("error", "invalid_refresh_token");
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(body);
+        }
+
+        RefreshTokenService.TokenPair pair = tokens.get();
+        auditLog.record(AuditEvent.Type.TOKEN_ISSUED, pair.getSubject(), null, request.getRemoteAddr(), "refresh");
+        AuthCookies.setAccessToken(response, pair.getAccessToken(), pair.getAccessTokenExpiresIn());
+        AuthCookies.setRefreshToken(response, pair.getRefreshToken(), pair.getRefreshTokenExpiresIn());
+
+        body.put("accessToken", pair.getAccessToken());
+        body.put("expiresIn", pair.getAccessTokenExpiresIn() / 1000);
+        if (refreshTokenParam != null) {
+            body.put("refreshToken", pair.getRefreshToken());
+        }
+        return ResponseEntity.ok(body);
+    }
+
+    // Custom login endpoint. Without an explicit provider, the provider is discovered
+    // from login_hint (an email address), domain, or the host the request came in on.
     @GetMapping("/custom-login")
     public void customLogin(@RequestParam String redirectUri,
-                            @RequestParam(required = false, defaultValue = "google") String provider,
+                            @RequestParam(required = false) String provider,
+                            @RequestParam(name = "login_hint", required = false) String loginHint,
+                            @RequestParam(required = false) String domain,
                             HttpServletRequest request,
                             HttpServletResponse response) throws IOException {
+        if (provider == null || provider.isEmpty()) {
+            Optional<CompiledSamlProvider> discovered =
+                configService.discoverProvider(loginHint, domain, request.getServerName());
+            if (discovered.isPresent()) {
+                provider = discovered.get().getId();
+            } else if (loginHint != null || domain != null) {
+                response.sendError(HttpServletResponse.SC_NOT_FOUND, "No identity provider is configured for this domain");
+                return;
+            } else {
+                provider = DEFAULT_PROVIDER;
+            }
+        }
+
         // Store redirect URI in session
         HttpSession session = request.getSession(true);
         session.setAttribute("SAML_REDIRECT_URI", redirectUri);
@@ -1,11 +1,13 @@
 package com.example.flutto.controller;
 
-import com.example.flutto.model.SamlProviderConfig;
+import com.example.flutto.model.CompiledSamlProvider;
 import com.example.flutto.service.SamlConfigurationService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.util.Collections;
@@ -32,7 +34,7 @@ public class AuthOptionsController {
         Logger logger = LoggerFactory.getLogger(AuthOptionsController.class);
         logger.info("Fetching login options");
         
-        List<SamlProviderConfig> providers = configService.getEnabledProviders();
+        List<CompiledSamlProvider> providers = configService.getEnabledProviders();
         logger.info("Found {} enabled providers", providers.size());
         
         // If no providers, add a default one for testing
@@ -51,14 +53,33 @@ public class AuthOptionsController {
         
         // Original code
         List<Map<String, String>> options = providers.stream()
-                .map(provider -> Map.of(
-                    "id", provider.getId(),
-                    "displayName", provider.getDisplayName(),
-                    "type", "saml",
-                    "iconUrl", provider.getCustomIconUrl() != null ? provider.getCustomIconUrl() : ""
-                ))
+                .map(AuthOptionsController::toOption)
                 .collect(Collectors.toList());
         
         return ResponseEntity.ok(options);
     }
+    
+    /**
+     * The one login option for a user's email address, a domain, or the host the
+     * request came in on, so clients need not download every tenant's option
+     */
+    @GetMapping("/discover")
+    public ResponseEntity<Map<String, String>> discover(
+            @RequestParam(name = "login_hint", required = false) String loginHint,
+            @RequestParam(required = false) String domain,
+            HttpServletRequest request) {
+        return configService.discoverProvider(loginHint, domain, request.getServerName())
+                .map(AuthOptionsController::toOption)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+    
+    private static Map<String, String> toOption(CompiledSamlProvider provider) {
+        return Map.of(
+            "id", provider.getId(),
+            "displayName", provider.getDisplayName(),
+            "type", "saml",
+            "iconUrl", provider.getCustomIconUrl() != null ? provider.getCustomIconUrl() : ""
+        );
+    }
 }
\ No newline at end of file
@@ -1,7 +1,10 @@
 package com.example.flutto.controller;
 
 import com.example.flutto.config.DynamicSamlConfig;
+import com.example.flutto.model.RefreshJob;
 import com.example.flutto.model.SamlProviderConfig;
+import com.example.flutto.service.ProviderEventStream;
+import com.example.flutto.service.RegistrationRefreshService;
 import com.example.flutto.service.SamlConfigurationService;
 import com.example.flutto.service.SamlMetadataService;
 import jakarta.validation.Valid;
@@ -10,11 +13,15 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.env.Environment;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
 import java.io.IOException;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -30,6 +37,8 @@ public class SamlAdminController {
     private final SamlConfigurationService configService;
     private final SamlMetadataService metadataService;
     private final DynamicSamlConfig samlConfig;
+    private final RegistrationRefreshService refreshService;
+    private final ProviderEventStream providerEvents;
     private final Environment environment;
     
     @Autowired
@@ -40,10 +49,14 @@ public class SamlAdminController {
             SamlConfigurationService configService,
             SamlMetadataService metadataService,
             DynamicSamlConfig samlConfig,
+            RegistrationRefreshService refreshService,
+            ProviderEventStream providerEvents,
             Environment environment) {
         this.configService = configService;
         this.metadataService = metadataService;
         this.samlConfig = samlConfig;
+        this.refreshService = refreshService;
+        this.providerEvents = providerEvents;
         this.environment = environment;
     }
     
@@ -95,11 +108,10 @@ public class SamlAdminController {
             SamlProviderConfig savedProvider = configService.saveProvider(provider);
             logger.info("Provider saved successfully");
             
-            // Refresh SAML configurations
-            samlConfig.refreshRegistrations();
-            logger.info("SAML registrations refreshed");
+            // Rebuild the registrations in the background
+            RefreshJob job = refreshService.submit("create " + savedProvider.getId(), configService.getConfigVersion());
             
-            return ResponseEntity.ok(savedProvider);
+            return accepted(job).body(savedProvider);
         } catch (Exception e) {
             logger.error("Error creating SAML provider: {}", e.getMessage(), e);
             return ResponseEntity.badRequest().body(null);
@@ -116,7 +128,7 @@ public class SamlAdminController {
                 return ResponseEntity.badRequest().build();
             }
             
-            if (!configService.getProviderById(id).isPresent()) {
+            if (!configService.getCompiledProvider(id).isPresent()) {
                 return ResponseEntity.notFound().build();
             }
             
@@ -147,10 +159,10 @@ public class SamlAdminController {
             
             SamlProviderConfig savedProvider = configService.saveProvider(provider);
             
-            // Refresh SAML configurations
-            samlConfig.refreshRegistrations();
+            // Rebuild the registrations in the background
+            RefreshJob job = refreshService.submit("update " + id, configService.getConfigVersion());
             
-            return ResponseEntity.ok(savedProvider);
+            return accepted(job).body(savedProvider);
         } catch (Exception e) {
             logger.error("Error updating SAML provider", e);
             return ResponseEntity.badRequest().body(null);
@@ -158,14 +170,14 @@ public class SamlAdminController {
     }
     
     @DeleteMapping("/providers/{id}")
-    public ResponseEntity<Void> deleteProvider(@PathVariable String id) {
+    public ResponseEntity<RefreshJob> deleteProvider(@PathVariable String id) {
         try {
             boolean deleted = configService.deleteProvider(id);
             
             if (deleted) {
-                // Refresh SAML configurations
-                samlConfig.refreshRegistrations();
-                return ResponseEntity.ok().build();
+                // Rebuild the registrations in the background
+                RefreshJob job = refreshService.submit("delete " + id, configService.getConfigVersion());
+                return accepted(job).body(job);
             } else {
                 return ResponseEntity.notFound().build();
             }
@@ -211,9 +223,52 @@ public class SamlAdminController {
     }
     
     @PostMapping("/refresh")
-    public ResponseEntity<Void> refreshProviders() {
-        samlConfig.refreshRegistrations();
-        return ResponseEntity.ok().build();
+    public ResponseEntity<RefreshJob> refreshProviders() {
+        RefreshJob job = refreshService.submit("manual refresh", configService.getConfigVersion());
+        return accepted(job).body(job);
+    }
+    
+    @GetMapping("/refresh/jobs/{jobId}")
+    public ResponseEntity<RefreshJob> getRefreshJob(@PathVariable long jobId) {
+        return refreshService.getJob(jobId)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+    
+    /**
+     * What is being served now, what is being built and how recent refreshes went
+     */
+    @GetMapping("/refresh/status")
+    public ResponseEntity<Map<String, Object>> getRefreshStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("servedGeneration", samlConfig.getGeneration());
+        status.put("configVersion", configService.getConfigVersion());
+        status.put("running", refreshService.getRunningJob().orElse(null));
+        status.put("pending", refreshService.getPendingJob().orElse(null));
+        status.put("recentJobs", refreshService.getRecentJobs());
+        return ResponseEntity.ok(status);
+    }
+    
+    /**
+     * Provider changes and registration results as server-sent events. Clients
+     * resume with Last-Event-ID (or lastEventId where they cannot set headers).
+     */
+    @GetMapping(path = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamEvents(
+            @RequestHeader(name = "Last-Event-ID", required = false) String lastEventIdHeader,
+            @RequestParam(name = "lastEventId", required = false) String lastEventIdParam) {
+        return providerEvents.subscribe(lastEventIdHeader != null ? lastEventIdHeader : lastEventIdParam);
+    }
+    
+    // 202 pointing at the refresh job that will apply the change
+    private ResponseEntity.BodyBuilder accepted(RefreshJob job) {
+        return ResponseEntity.status(HttpStatus.ACCEPTED)
+                .header("X-Refresh-Job", String.valueOf(job.getId()))
+                .header("X-Config-Version", String.valueOf(configService.getConfigVersion()))
+                .location(ServletUriComponentsBuilder.fromCurrentContextPath()
+                        .path("/api/admin/saml/refresh/jobs/{jobId}")
+                        .buildAndExpand(job.getId())
+                        .toUri());
     }
     
     private String generateProviderId(String displayName) {
@@ -224,7 +279,7 @@ public class SamlAdminController {
                 .replaceAll("^-|-$", "");
         
         // Ensure uniqueness by adding a random suffix if needed
-        if (configService.getProviderById(baseId).isPresent()) {
+        if (configService.getCompiledProvider(baseId).isPresent()) {
             return baseId + "-" + UUID.randomUUID().toString().substring(0, 8);
         }
         
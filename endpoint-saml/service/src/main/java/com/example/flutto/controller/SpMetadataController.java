@@ -0,0 +1,113 @@
+package com.example.flutto.controller;
+
+import com.example.flutto.service.SpMetadataService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Serves SP metadata from {@link SpMetadataService}'s cache with a strong ETag,
+ * so pollers that send If-None-Match get a 304 without anything being rendered.
+ *
+ * URLs in the metadata are built from saml.service-provider.base-url. Only then
+ * may shared caches keep the response: a base URL taken from the request's Host
+ * header would let one client plant its own host in what every IdP downloads.
+ */
+@RestController
+@RequestMapping("/saml2/service-provider-metadata")
+public class SpMetadataController {
+
+    private static final MediaType SAML_METADATA = MediaType.parseMediaType("application/samlmetadata+xml");
+    private static final byte[] ENTITIES_START = ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+        + "<md:EntitiesDescriptor xmlns:md=\"urn:oasis:names:tc:SAML:2.0:metadata\">\n").getBytes(StandardCharsets.UTF_8);
+    private static final byte[] ENTITIES_END = "</md:EntitiesDescriptor>\n".getBytes(StandardCharsets.UTF_8);
+
+    private final SpMetadataService metadataService;
+    private final CacheControl cacheControl;
+    private final String configuredBaseUrl;
+
+    @Autowired
+    public SpMetadataController(SpMetadataService metadataService,
+                                @Value("${saml.sp-metadata.max-age-seconds:3600}") long maxAgeSeconds,
+                                @Value("${saml.service-provider.base-url:}") String configuredBaseUrl) {
+        this.metadataService = metadataService;
+        this.configuredBaseUrl = trimTrailingSlash(configuredBaseUrl.trim());
+        CacheControl maxAge = CacheControl.maxAge(Duration.ofSeconds(maxAgeSeconds));
+        this.cacheControl = this.configuredBaseUrl.isEmpty() ? maxAge.cachePrivate() : maxAge.cachePublic();
+    }
+
+    @GetMapping("/{registrationId}")
+    public ResponseEntity<byte[]> metadata(@PathVariable String registrationId, WebRequest request) {
+        return metadataService.metadata(registrationId, baseUrl())
+            .map(metadata -> {
+                if (request.checkNotModified(metadata.getEtag())) {
+                    return null;
+                }
+                return ResponseEntity.ok()
+                    .contentType(SAML_METADATA)
+                    .eTag(metadata.getEtag())
+                    .cacheControl(cacheControl)
+                    .body(metadata.getXml());
+            })
+            .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    /**
+     * All SP descriptors in one EntitiesDescriptor. Documents come from the cache
+     * and are streamed one after another rather than assembled in memory.
+     */
+    @GetMapping
+    public ResponseEntity<StreamingResponseBody> aggregate(WebRequest request) {
+        List<SpMetadataService.RenderedMetadata> all = metadataService.allMetadata(baseUrl());
+
+        // The aggregate changes exactly when one of its documents does
+        ByteArrayOutputStream etags = new ByteArrayOutputStream(all.size() * 48);
+        for (SpMetadataService.RenderedMetadata metadata : all) {
+            etags.writeBytes(metadata.getEtag().getBytes(StandardCharsets.US_ASCII));
+        }
+        String etag = "\"" + SpMetadataService.digest(etags.toByteArray()) + "\"";
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
+
+        StreamingResponseBody body = out -> {
+            out.write(ENTITIES_START);
+            for (SpMetadataService.RenderedMetadata metadata : all) {
+                metadata.writeElementTo(out);
+                out.write('\n');
+            }
+            out.write(ENTITIES_END);
+        };
+        return ResponseEntity.ok()
+            .contentType(SAML_METADATA)
+            .eTag(etag)
+            .cacheControl(cacheControl)
+            .body(body);
+    }
+
+    // The configured base URL, else the one the SAML filters resolve {baseUrl} to
+    private String baseUrl() {
+        if (!configuredBaseUrl.isEmpty()) {
+            return configuredBaseUrl;
+        }
+        return ServletUriComponentsBuilder.fromCurrentContextPath().build().toUriString();
+    }
+
+    private static String trimTrailingSlash(String url) {
+        return url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+    }
+}
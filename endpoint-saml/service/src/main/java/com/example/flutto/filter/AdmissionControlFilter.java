@@ -0,0 +1,254 @@
+package com.example.flutto.filter;
+
+import com.example.flutto.service.SamlConfigurationService;
+import com.example.flutto.service.TokenBucketLimiter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Admission control for the unauthenticated login, ACS and token validation
+ * endpoints. Runs ahead of the security chain, so a rejected request costs a
+ * few map lookups and never reaches SAML parsing, signature verification or
+ * JWT work.
+ *
+ * Each endpoint class has a token bucket per client IP (already resolved from
+ * X-Forwarded-For by Tomcat), one per registration id where the endpoint has
+ * one, and a cap on requests in flight. Exceeding a rate answers 429 with
+ * Retry-After; exceeding the concurrency cap sheds the request with 503.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 10)
+public class AdmissionControlFilter extends OncePerRequestFilter implements MeterBinder {
+    private static final Logger logger = LoggerFactory.getLogger(AdmissionControlFilter.class);
+
+    // Registration ids that are not configured share a single bucket
+    private static final String UNKNOWN_REGISTRATION = "\u0000unknown";
+
+    private final SamlConfigurationService configService;
+    private final List<EndpointClass> endpoints;
+
+    public AdmissionControlFilter(SamlConfigurationService configService, Environment environment) {
+        this.configService = configService;
+        int cpus = Runtime.getRuntime().availableProcessors();
+        this.endpoints = List.of(
+            // Logins are limited per registration where they land, on /saml2/authenticate
+            EndpointClass.from(environment, "login", 5, 20, 0, 0, 100,
+                null,
+                "/api/auth/custom-login"),
+            EndpointClass.from(environment, "authenticate", 5, 20, 100, 200, 100,
+                request -> lastSegment(request, "/saml2/authenticate/"),
+                "/saml2/authenticate/**"),
+            // Responses are signature-checked XML, so ACS concurrency follows the CPU count
+            EndpointClass.from(environment, "acs", 5, 20, 100, 200, cpus * 4,
+                request -> lastSegment(request, "/login/saml2/sso/"),
+                "/login/saml2/sso/**"),
+            EndpointClass.from(environment, "validate", 50, 100, 0, 0, 200,
+                null,
+                "/api/auth/validate"));
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return match(pathWithinApplication(request)) == null;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        EndpointClass endpoint = match(pathWithinApplication(request));
+        if (endpoint == null || !endpoint.enabled) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        if (endpoint.perClient != null) {
+            long wait = endpoint.perClient.tryAcquire(request.getRemoteAddr());
+            if (wait > 0) {
+                endpoint.clientRateRejections.incrementAndGet();
+                tooManyRequests(response, wait);
+                return;
+            }
+        }
+        if (endpoint.perRegistration != null) {
+            long wait = endpoint.perRegistration.tryAcquire(registrationKey(endpoint.registrationId.apply(request)));
+            if (wait > 0) {
+                endpoint.registrationRateRejections.incrementAndGet();
+                tooManyRequests(response, wait);
+                return;
+            }
+        }
+        if (!endpoint.enter()) {
+            endpoint.shed.incrementAndGet();
+            logger.debug("Shedding {} request from {}: {} in flight", endpoint.name, request.getRemoteAddr(),
+                endpoint.inFlight.get());
+            response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            response.setHeader("Retry-After", "1");
+            return;
+        }
+        try {
+            endpoint.admitted.incrementAndGet();
+            filterChain.doFilter(request, response);
+        } finally {
+            endpoint.inFlight.decrementAndGet();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        for (EndpointClass endpoint : endpoints) {
+            FunctionCounter.builder("saml.admission.admitted", endpoint.admitted, AtomicLong::get)
+                .tag("endpoint", endpoint.name)
+                .register(registry);
+            FunctionCounter.builder("saml.admission.rejected", endpoint.clientRateRejections, AtomicLong::get)
+                .tag("endpoint", endpoint.name)
+                .tag("reason", "client-rate")
+                .register(registry);
+            FunctionCounter.builder("saml.admission.rejected", endpoint.registrationRateRejections, AtomicLong::get)
+                .tag("endpoint", endpoint.name)
+                .tag("reason", "registration-rate")
+                .register(registry);
+            FunctionCounter.builder("saml.admission.rejected", endpoint.shed, AtomicLong::get)
+                .tag("endpoint", endpoint.name)
+                .tag("reason", "overload")
+                .register(registry);
+            if (endpoint.perClient != null) {
+                // Clients admitted unlimited because the per-client key cap was reached
+                FunctionCounter.builder("saml.admission.untracked", endpoint.perClient,
+                        TokenBucketLimiter::untrackedCount)
+                    .tag("endpoint", endpoint.name)
+                    .register(registry);
+            }
+            Gauge.builder("saml.admission.in-flight", endpoint.inFlight, AtomicInteger::get)
+                .tag("endpoint", endpoint.name)
+                .register(registry);
+        }
+    }
+
+    private EndpointClass match(String path) {
+        for (EndpointClass endpoint : endpoints) {
+            if (endpoint.paths.matches(path)) {
+                return endpoint;
+            }
+        }
+        return null;
+    }
+
+    // Random ids must not be able to create buckets of their own
+    private String registrationKey(String registrationId) {
+        if (registrationId == null || registrationId.isEmpty()
+                || configService.getCompiledProvider(registrationId).isEmpty()) {
+            return UNKNOWN_REGISTRATION;
+        }
+        return registrationId;
+    }
+
+    private static void tooManyRequests(HttpServletResponse response, long waitNanos) {
+        response.setStatus(429);
+        response.setHeader("Retry-After", String.valueOf(Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos) + 1)));
+    }
+
+    private static String lastSegment(HttpServletRequest request, String prefix) {
+        String path = pathWithinApplication(request);
+        if (!path.startsWith(prefix)) {
+            return null;
+        }
+        int end = path.indexOf('/', prefix.length());
+        return end < 0 ? path.substring(prefix.length()) : path.substring(prefix.length(), end);
+    }
+
+    private static String pathWithinApplication(HttpServletRequest request) {
+        String uri = request.getRequestURI();
+        String contextPath = request.getContextPath();
+        if (contextPath == null || contextPath.isEmpty() || !uri.startsWith(contextPath)) {
+            return uri;
+        }
+        return uri.substring(contextPath.length());
+    }
+
+    /**
+     * Limits for one group of endpoints, read from saml.admission.&lt;name&gt;.*.
+     * A rate or concurrency of 0 turns that limit off.
+     */
+    private static final class EndpointClass {
+        private final String name;
+        private final PathPrefixMatcher paths;
+        private final boolean enabled;
+        private final TokenBucketLimiter perClient;
+        private final TokenBucketLimiter perRegistration;
+        private final Function<HttpServletRequest, String> registrationId;
+        private final int maxConcurrent;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicLong admitted = new AtomicLong();
+        private final AtomicLong clientRateRejections = new AtomicLong();
+        private final AtomicLong registrationRateRejections = new AtomicLong();
+        private final AtomicLong shed = new AtomicLong();
+
+        private EndpointClass(String name, PathPrefixMatcher paths, boolean enabled, TokenBucketLimiter perClient,
+                              TokenBucketLimiter perRegistration, Function<HttpServletRequest, String> registrationId,
+                              int maxConcurrent) {
+            this.name = name;
+            this.paths = paths;
+            this.enabled = enabled;
+            this.perClient = perClient;
+            this.perRegistration = perRegistration;
+            this.registrationId = registrationId;
+            this.maxConcurrent = maxConcurrent;
+        }
+
+        static EndpointClass from(Environment environment, String name,
+                                  double clientRate, int clientBurst,
+                                  double registrationRate, int registrationBurst, int maxConcurrent,
+                                  Function<HttpServletRequest, String> registrationId, String... paths) {
+            String prefix = "saml.admission." + name + ".";
+            boolean enabled = environment.getProperty("saml.admission.enabled", Boolean.class, true);
+            int maxClients = environment.getProperty("saml.admission.max-clients", Integer.class, 100_000);
+            double perClientRate = environment.getProperty(prefix + "client-rate", Double.class, clientRate);
+            double perRegistrationRate = environment.getProperty(prefix + "registration-rate", Double.class,
+                registrationRate);
+            return new EndpointClass(name, new PathPrefixMatcher(paths), enabled,
+                perClientRate > 0
+                    ? new TokenBucketLimiter(perClientRate,
+                        environment.getProperty(prefix + "client-burst", Integer.class, clientBurst), maxClients)
+                    : null,
+                registrationId != null && perRegistrationRate > 0
+                    ? new TokenBucketLimiter(perRegistrationRate,
+                        environment.getProperty(prefix + "registration-burst", Integer.class, registrationBurst),
+                        maxClients)
+                    : null,
+                registrationId,
+                environment.getProperty(prefix + "max-concurrent", Integer.class, maxConcurrent));
+        }
+
+        boolean enter() {
+            while (true) {
+                int current = inFlight.get();
+                if (maxConcurrent > 0 && current >= maxConcurrent) {
+                    return false;
+                }
+                if (inFlight.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.flutto.filter;
+
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.util.Enumeration;
+
+/**
+ * Names and attributes of the cookies carrying the access and refresh tokens
+ */
+public final class AuthCookies {
+
+    public static final String ACCESS_TOKEN = "jwt";
+    public static final String REFRESH_TOKEN = "refresh_token";
+
+    // The refresh token is only ever sent to the refresh and logout endpoints
+    public static final String REFRESH_TOKEN_PATH = "/api/auth";
+
+    private AuthCookies() {
+    }
+
+    public static void setAccessToken(HttpServletResponse response, String token, long lifetimeMillis) {
+        response.addCookie(create(ACCESS_TOKEN, token, "/", (int) (lifetimeMillis / 1000)));
+    }
+
+    public static void setRefreshToken(HttpServletResponse response, String token, long lifetimeMillis) {
+        response.addCookie(create(REFRESH_TOKEN, token, REFRESH_TOKEN_PATH, (int) (lifetimeMillis / 1000)));
+    }
+
+    public static void clear(HttpServletResponse response) {
+        response.addCookie(create(ACCESS_TOKEN, null, "/", 0));
+        response.addCookie(create(REFRESH_TOKEN, null, REFRESH_TOKEN_PATH, 0));
+    }
+
+    /**
+     * Returns the value of the named cookie, or null if the request has none.
+     * Scans the raw Cookie headers instead of {@link HttpServletRequest#getCookies()},
+     * which would parse every cookie on the request into a Cookie object.
+     */
+    public static String read(HttpServletRequest request, String name) {
+        Enumeration<String> headers = request.getHeaders("Cookie");
+        if (headers == null) {
+            return null;
+        }
+        while (headers.hasMoreElements()) {
+            String value = find(headers.nextElement(), name);
+            if (value != null) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds name=value in a Cookie header ("a=1; b=2"); only the value is allocated
+     */
+    static String find(String header, String name) {
+        int length = header.length();
+        int position = 0;
+        while (position < length) {
+            // Skip separators and whitespace before the cookie name
+            char c = header.charAt(position);
+            if (c == ' ' || c == '\t' || c == ';' || c == ',') {
+                position++;
+                continue;
+            }
+
+            int end = header.indexOf(';', position);
+            if (end < 0) {
+                end = length;
+            }
+            int nameEnd = position + name.length();
+            if (nameEnd < end && header.charAt(nameEnd) == '='
+                    && header.regionMatches(position, name, 0, name.length())) {
+                int valueStart = nameEnd + 1;
+                int valueEnd = end;
+                while (valueEnd > valueStart && header.charAt(valueEnd - 1) == ' ') {
+                    valueEnd--;
+                }
+                // RFC 6265 allows the value to be wrapped in double quotes
+                if (valueEnd - valueStart >= 2 && header.charAt(valueStart) == '"'
+                        && header.charAt(valueEnd - 1) == '"') {
+                    valueStart++;
+                    valueEnd--;
+                }
+                return header.substring(valueStart, valueEnd);
+            }
+            position = end + 1;
+        }
+        return null;
+    }
+
+    private static Cookie create(String name, String value, String path, int maxAgeSeconds) {
+        Cookie cookie = new Cookie(name, value);
+        cookie.setHttpOnly(true);
+        cookie.setSecure(false); // Set to true in production with HTTPS
+        cookie.setPath(path);
+        cookie.setMaxAge(maxAgeSeconds);
+        return cookie;
+    }
+}
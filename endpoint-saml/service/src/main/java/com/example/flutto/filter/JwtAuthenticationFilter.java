@@ -1,65 +1,102 @@
 package com.example.flutto.filter;
 
+import com.example.flutto.jfr.TokenVerificationEvent;
 import com.example.flutto.service.JwtService;
 import io.jsonwebtoken.Claims;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
-import jakarta.servlet.http.Cookie;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
-import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
-import java.util.Arrays;
 import java.util.List;
-import java.util.stream.Collectors;
 
 @Component
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
+    private static final String BEARER_PREFIX = "Bearer ";
+
     private final JwtService jwtService;
+    private final PathPrefixMatcher skippedPaths;
 
-    public JwtAuthenticationFilter(JwtService jwtService) {
+    public JwtAuthenticationFilter(JwtService jwtService,
+                                   @Value("${jwt.filter.skip-paths:/css/**,/js/**,/favicon.ico,/actuator/health/**,"
+                                       + "/api/auth/options/**,/api/auth/validate,/api/auth/refresh,"
+                                       + "/saml2/**,/login/saml2/**}") String[] skippedPaths) {
         this.jwtService = jwtService;
+        this.skippedPaths = new PathPrefixMatcher(skippedPaths);
+    }
+
+    /**
+     * Public resources and endpoints that never look at the authenticated user
+     * skip token parsing and verification entirely.
+     */
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return skippedPaths.matches(pathWithinApplication(request));
     }
 
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, 
                                   FilterChain filterChain) throws ServletException, IOException {
         
-        String jwt = extractJwtFromCookie(request);
+        String jwt = resolveToken(request);
         
-        if (jwt != null && jwtService.isTokenValid(jwt)) {
-            Claims claims = jwtService.extractClaims(jwt);
-            String username = claims.getSubject();
-            
-            @SuppressWarnings("unchecked")
-            List<String> roles = (List<String>) claims.get("roles");
-            List<SimpleGrantedAuthority> authorities = roles != null ? 
-                roles.stream().map(SimpleGrantedAuthority::new).collect(Collectors.toList()) :
-                List.of(new SimpleGrantedAuthority("ROLE_USER"));
-            
-            UsernamePasswordAuthenticationToken authToken = 
-                new UsernamePasswordAuthenticationToken(username, null, authorities);
+        if (jwt != null) {
+            TokenVerificationEvent event = new TokenVerificationEvent();
+            event.begin();
+            // Verified and parsed once; roles come back as shared authority instances
+            Claims claims = jwtService.validClaims(jwt);
+            List<GrantedAuthority> authorities = claims != null ? jwtService.authorities(claims) : null;
+            if (event.shouldCommit()) {
+                event.tokenBytes = jwt.length();
+                event.valid = claims != null;
+                event.commit();
+            }
             
-            SecurityContextHolder.getContext().setAuthentication(authToken);
+            if (claims != null) {
+                UsernamePasswordAuthenticationToken authToken = 
+                    new UsernamePasswordAuthenticationToken(claims.getSubject(), null, authorities);
+                
+                SecurityContextHolder.getContext().setAuthentication(authToken);
+            }
         }
         
         filterChain.doFilter(request, response);
     }
 
-    private String extractJwtFromCookie(HttpServletRequest request) {
-        if (request.getCookies() != null) {
-            return Arrays.stream(request.getCookies())
-                    .filter(cookie -> "jwt".equals(cookie.getName()))
-                    .map(Cookie::getValue)
-                    .findFirst()
-                    .orElse(null);
+    /**
+     * Returns the access token from an Authorization: Bearer header (API clients)
+     * or else from the jwt cookie (browsers), or null if the request carries neither
+     */
+    public static String resolveToken(HttpServletRequest request) {
+        String header = request.getHeader("Authorization");
+        if (header != null && header.length() > BEARER_PREFIX.length()
+                && header.regionMatches(true, 0, BEARER_PREFIX, 0, BEARER_PREFIX.length())) {
+            return header.substring(BEARER_PREFIX.length()).trim();
+        }
+        return extractJwtFromCookie(request);
+    }
+
+    /**
+     * Returns the value of the jwt cookie, or null if the request has none
+     */
+    public static String extractJwtFromCookie(HttpServletRequest request) {
+        return AuthCookies.read(request, AuthCookies.ACCESS_TOKEN);
+    }
+
+    private static String pathWithinApplication(HttpServletRequest request) {
+        String uri = request.getRequestURI();
+        String contextPath = request.getContextPath();
+        if (contextPath == null || contextPath.isEmpty() || !uri.startsWith(contextPath)) {
+            return uri;
         }
-        return null;
+        return uri.substring(contextPath.length());
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,50 @@
+package com.example.flutto.filter;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Matches request paths against exact paths ("/favicon.ico") and subtree
+ * patterns ("/css/**"), compiled once into a hash set and a prefix array so a
+ * lookup does not allocate.
+ */
+final class PathPrefixMatcher {
+
+    private final Set<String> exactPaths = new HashSet<>();
+    private final String[] prefixes;
+
+    PathPrefixMatcher(String... patterns) {
+        List<String> prefixList = new ArrayList<>();
+        for (String pattern : patterns) {
+            String trimmed = pattern.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            if (trimmed.endsWith("/**")) {
+                String base = trimmed.substring(0, trimmed.length() - 3);
+                // "/css/**" also matches "/css" itself, as in Spring's path patterns
+                exactPaths.add(base);
+                prefixList.add(base + "/");
+            } else if (trimmed.contains("*")) {
+                throw new IllegalArgumentException("Only exact paths and trailing /** are supported: " + trimmed);
+            } else {
+                exactPaths.add(trimmed);
+            }
+        }
+        this.prefixes = prefixList.toArray(new String[0]);
+    }
+
+    boolean matches(String path) {
+        if (exactPaths.contains(path)) {
+            return true;
+        }
+        for (String prefix : prefixes) {
+            if (path.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
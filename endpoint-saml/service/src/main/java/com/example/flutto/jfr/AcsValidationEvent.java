@@ -0,0 +1,36 @@
+package com.example.flutto.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Validating a SAML response posted to the ACS endpoint: parsing, signature
+ * checks, decryption, assertion validation and principal extraction
+ */
+@Name("com.example.flutto.AcsValidation")
+@Label("ACS Response Validation")
+@Category({"Flutto", "SAML"})
+@Description("Authenticating a SAML response received on the ACS endpoint")
+@StackTrace(false)
+public class AcsValidationEvent extends Event {
+
+    @Label("Registration Id")
+    public String registrationId;
+
+    @Label("Response Size")
+    @Description("Decoded SAMLResponse XML")
+    @DataAmount
+    public long responseBytes;
+
+    @Label("Success")
+    public boolean success;
+
+    @Label("Error Code")
+    @Description("SAML error code when validation failed")
+    public String errorCode;
+}
@@ -0,0 +1,33 @@
+package com.example.flutto.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Building, and where configured signing, the AuthnRequest that starts a
+ * SAML login
+ */
+@Name("com.example.flutto.AuthnRequest")
+@Label("AuthnRequest Creation")
+@Category({"Flutto", "SAML"})
+@Description("Building an AuthnRequest for the redirect to the IdP")
+@StackTrace(false)
+public class AuthnRequestEvent extends Event {
+
+    @Label("Registration Id")
+    public String registrationId;
+
+    @Label("Signed")
+    @Description("A signature was added for the redirect binding")
+    public boolean signed;
+
+    @Label("Request Size")
+    @Description("Encoded SAMLRequest parameter")
+    @DataAmount
+    public long requestBytes;
+}
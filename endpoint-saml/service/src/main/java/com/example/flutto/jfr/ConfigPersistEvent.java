@@ -0,0 +1,38 @@
+package com.example.flutto.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Writing the provider store after an admin change: the YAML file, its
+ * binary snapshot, the source-tree copy and installing the compiled providers
+ */
+@Name("com.example.flutto.ConfigPersist")
+@Label("Configuration Persistence")
+@Category({"Flutto", "Configuration"})
+@Description("Saving the provider store and installing the new version")
+@StackTrace(false)
+public class ConfigPersistEvent extends Event {
+
+    @Label("Registration Id")
+    @Description("Provider the change was made to")
+    public String registrationId;
+
+    @Label("Version")
+    public long version;
+
+    @Label("Providers")
+    public int providerCount;
+
+    @Label("YAML Size")
+    @DataAmount
+    public long yamlBytes;
+
+    @Label("Snapshot Written")
+    public boolean snapshot;
+}
@@ -0,0 +1,40 @@
+package com.example.flutto.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Downloading IdP metadata. The body is parsed as it streams in, so the
+ * duration includes the XML parse.
+ */
+@Name("com.example.flutto.MetadataFetch")
+@Label("Metadata Fetch")
+@Category({"Flutto", "Metadata"})
+@Description("Downloading and parsing IdP metadata over HTTP")
+@StackTrace(false)
+public class MetadataFetchEvent extends Event {
+
+    @Label("Registration Id")
+    @Description("Provider being refreshed; empty for an admin import")
+    public String registrationId;
+
+    @Label("Host")
+    public String host;
+
+    @Label("Status")
+    @Description("HTTP status, or 0 when no response arrived")
+    public int status;
+
+    @Label("Response Size")
+    @Description("Bytes of the body read")
+    @DataAmount
+    public long responseBytes;
+
+    @Label("Success")
+    public boolean success;
+}
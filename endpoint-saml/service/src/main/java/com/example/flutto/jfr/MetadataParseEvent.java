@@ -0,0 +1,32 @@
+package com.example.flutto.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Reading the IdP details out of a metadata document
+ */
+@Name("com.example.flutto.MetadataParse")
+@Label("Metadata Parse")
+@Category({"Flutto", "Metadata"})
+@Description("Extracting the IdP entity id, endpoints and certificate from metadata")
+@StackTrace(false)
+public class MetadataParseEvent extends Event {
+
+    @Label("Registration Id")
+    @Description("Provider the metadata belongs to; empty for an admin import")
+    public String registrationId;
+
+    @Label("Metadata Size")
+    @Description("Characters of XML parsed here; 0 when the document arrived already parsed")
+    @DataAmount
+    public long metadataBytes;
+
+    @Label("Success")
+    public boolean success;
+}
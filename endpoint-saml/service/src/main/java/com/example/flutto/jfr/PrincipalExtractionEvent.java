@@ -0,0 +1,29 @@
+package com.example.flutto.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Turning a validated assertion into the authenticated principal and its
+ * attributes; nested inside the {@link AcsValidationEvent} of the same response
+ */
+@Name("com.example.flutto.PrincipalExtraction")
+@Label("Principal Extraction")
+@Category({"Flutto", "SAML"})
+@Description("Extracting the principal and its attributes from a validated assertion")
+@StackTrace(false)
+public class PrincipalExtractionEvent extends Event {
+
+    @Label("Registration Id")
+    public String registrationId;
+
+    @Label("Attributes")
+    public int attributeCount;
+
+    @Label("Attribute Values")
+    public int valueCount;
+}
@@ -0,0 +1,37 @@
+package com.example.flutto.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Building one provider's RelyingPartyRegistration during a refresh
+ */
+@Name("com.example.flutto.RegistrationBuild")
+@Label("Registration Build")
+@Category({"Flutto", "Configuration"})
+@Description("Building the relying party registration of one provider")
+@StackTrace(false)
+public class RegistrationBuildEvent extends Event {
+
+    @Label("Registration Id")
+    public String registrationId;
+
+    @Label("Signing")
+    @Description("AuthnRequests are signed for this provider")
+    public boolean signing;
+
+    @Label("Encryption")
+    @Description("Responses must be encrypted to the SP key")
+    public boolean encryption;
+
+    @Label("Credentials")
+    @Description("Signing, decryption and verification credentials on the registration")
+    public int credentialCount;
+
+    @Label("Success")
+    public boolean success;
+}
@@ -0,0 +1,30 @@
+package com.example.flutto.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Mapping claims and signing the access token after a SAML login
+ */
+@Name("com.example.flutto.TokenIssue")
+@Label("JWT Issuance")
+@Category({"Flutto", "JWT"})
+@Description("Building claims and issuing the access token after a SAML login")
+@StackTrace(false)
+public class TokenIssueEvent extends Event {
+
+    @Label("Registration Id")
+    public String registrationId;
+
+    @Label("Claims")
+    public int claimCount;
+
+    @Label("Token Size")
+    @DataAmount
+    public long tokenBytes;
+}
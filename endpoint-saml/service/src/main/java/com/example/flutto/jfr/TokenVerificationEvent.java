@@ -0,0 +1,27 @@
+package com.example.flutto.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Verifying the access token of a request and decoding its authorities
+ */
+@Name("com.example.flutto.TokenVerification")
+@Label("JWT Verification")
+@Category({"Flutto", "JWT"})
+@Description("Verifying a request's access token in the JWT filter")
+@StackTrace(false)
+public class TokenVerificationEvent extends Event {
+
+    @Label("Token Size")
+    @DataAmount
+    public long tokenBytes;
+
+    @Label("Valid")
+    public boolean valid;
+}
@@ -0,0 +1,112 @@
+package com.example.flutto.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiled form of a provider's attributeMappings (claim name to the assertion
+ * attributes that may carry it, best first).
+ *
+ * Each claim gets a slot and each attribute name is hashed once to the slots it
+ * can fill together with its rank, so resolving the claims of an assertion is
+ * a single pass over its attributes. When several attributes carry the same
+ * claim, the one listed first in the mapping wins.
+ */
+public final class AttributeClaimResolver {
+
+    /**
+     * Used for providers without attributeMappings: the claim URIs ADFS and Entra ID
+     * send, plus the LDAP-style names other IdPs use
+     */
+    public static final AttributeClaimResolver DEFAULT = new AttributeClaimResolver(Map.of(
+        "email", List.of("http://schemas.xmlsoap.org/ws/2005/05/identity/claims/emailaddress", "mail", "email"),
+        "name", List.of("http://schemas.xmlsoap.org/ws/2005/05/identity/claims/name", "displayName"),
+        "firstName", List.of("http://schemas.xmlsoap.org/ws/2005/05/identity/claims/givenname", "givenName"),
+        "lastName", List.of("http://schemas.xmlsoap.org/ws/2005/05/identity/claims/surname", "sn", "surname")));
+
+    private final Map<String, List<String>> mappings;
+    private final String[] claims;
+    // Attribute name -> (slot, rank) pairs
+    private final Map<String, int[]> targets;
+
+    public AttributeClaimResolver(Map<String, List<String>> mappings) {
+        Map<String, List<String>> copy = new LinkedHashMap<>();
+        List<String> claimNames = new ArrayList<>();
+        Map<String, int[]> byAttribute = new HashMap<>();
+        if (mappings != null) {
+            for (Map.Entry<String, List<String>> mapping : mappings.entrySet()) {
+                List<String> attributes = mapping.getValue() != null ? List.copyOf(mapping.getValue()) : List.of();
+                copy.put(mapping.getKey(), attributes);
+                int slot = claimNames.size();
+                claimNames.add(mapping.getKey());
+                for (int rank = 0; rank < attributes.size(); rank++) {
+                    int[] previous = byAttribute.get(attributes.get(rank));
+                    int[] pairs = previous == null ? new int[2] : Arrays.copyOf(previous, previous.length + 2);
+                    pairs[pairs.length - 2] = slot;
+                    pairs[pairs.length - 1] = rank;
+                    byAttribute.put(attributes.get(rank), pairs);
+                }
+            }
+        }
+        this.mappings = Collections.unmodifiableMap(copy);
+        this.claims = claimNames.toArray(new String[0]);
+        this.targets = byAttribute;
+    }
+
+    /**
+     * Picks the claim values out of the assertion's attributes. Claims with no
+     * matching attribute are left out.
+     */
+    public Map<String, Object> resolve(Map<String, List<Object>> attributes) {
+        Object[] values = new Object[claims.length];
+        int[] ranks = new int[claims.length];
+        Arrays.fill(ranks, Integer.MAX_VALUE);
+
+        for (Map.Entry<String, List<Object>> attribute : attributes.entrySet()) {
+            int[] pairs = targets.get(attribute.getKey());
+            if (pairs == null) {
+                continue;
+            }
+            Object value = firstValue(attribute.getValue());
+            if (value == null) {
+                continue;
+            }
+            for (int i = 0; i < pairs.length; i += 2) {
+                int slot = pairs[i];
+                if (pairs[i + 1] < ranks[slot]) {
+                    ranks[slot] = pairs[i + 1];
+                    values[slot] = value;
+                }
+            }
+        }
+
+        Map<String, Object> resolved = new HashMap<>();
+        for (int slot = 0; slot < claims.length; slot++) {
+            if (values[slot] != null) {
+                resolved.put(claims[slot], values[slot]);
+            }
+        }
+        return resolved;
+    }
+
+    private static Object firstValue(List<Object> values) {
+        if (values == null) {
+            return null;
+        }
+        for (Object value : values) {
+            if (value != null) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    public Map<String, List<String>> getMappings() {
+        return mappings;
+    }
+}
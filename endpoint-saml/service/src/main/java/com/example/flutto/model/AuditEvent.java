@@ -0,0 +1,93 @@
+package com.example.flutto.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * One authentication audit record. Written as a JSON line to the audit segments
+ * and read back from them by the query API.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class AuditEvent {
+
+    public enum Type {
+        LOGIN_SUCCESS,
+        LOGIN_FAILURE,
+        LOGOUT,
+        TOKEN_ISSUED,
+        TOKEN_REVOKED
+    }
+
+    private long timestamp;
+    private Type type;
+    private String user;
+    private String provider;
+    private String clientIp;
+    private String detail;
+
+    public AuditEvent() {
+    }
+
+    public AuditEvent(Type type, String user, String provider, String clientIp, String detail) {
+        this.timestamp = System.currentTimeMillis();
+        this.type = type;
+        this.user = user;
+        this.provider = provider;
+        this.clientIp = clientIp;
+        this.detail = detail;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public void setType(Type type) {
+        this.type = type;
+    }
+
+    public String getUser() {
+        return user;
+    }
+
+    public void setUser(String user) {
+        this.user = user;
+    }
+
+    public String getProvider() {
+        return provider;
+    }
+
+    public void setProvider(String provider) {
+        this.provider = provider;
+    }
+
+    public String getClientIp() {
+        return clientIp;
+    }
+
+    public void setClientIp(String clientIp) {
+        this.clientIp = clientIp;
+    }
+
+    public String getDetail() {
+        return detail;
+    }
+
+    public void setDetail(String detail) {
+        this.detail = detail;
+    }
+
+    @Override
+    public String toString() {
+        return type + " user=" + user + " provider=" + provider + " at " + timestamp;
+    }
+}
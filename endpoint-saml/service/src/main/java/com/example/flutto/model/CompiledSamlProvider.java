@@ -0,0 +1,276 @@
+package com.example.flutto.model;
+
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Runtime form of a {@link SamlProviderConfig}. Certificates and keys are held
+ * decoded (and shared between providers using the same certificate); the raw
+ * metadata XML and PEM text are not kept, the admin API reads them from the store.
+ */
+public final class CompiledSamlProvider {
+
+    private final String id;
+    private final String displayName;
+    private final String metadataSource;
+    private final String metadataUrl;
+    private final String spEntityId;
+    private final String idpLoginUrl;
+    private final String idpLogoutUrl;
+    private final String nameIdFormat;
+    private final String customIconUrl;
+    private final String digestAlgorithm;
+    private final String signatureAlgorithm;
+    private final boolean enabled;
+    private final boolean limitSelfRegistration;
+    private final boolean signAuthnRequests;
+    private final boolean requireSignedResponses;
+    private final boolean requireEncryptedResponses;
+    private final List<X509Certificate> idpCertificates;
+    private final X509Certificate spCertificate;
+    private final PrivateKey spPrivateKey;
+    private final AttributeClaimResolver claimResolver;
+    private final RoleMapper roleMapper;
+    private final Map<String, Map<String, String>> requestedAttributes;
+    private final List<String> emailDomains;
+    private final List<String> hostnames;
+    private final Instant metadataValidUntil;
+    private final String error;
+    private final int fingerprint;
+
+    public CompiledSamlProvider(SamlProviderConfig config, List<X509Certificate> idpCertificates,
+                                X509Certificate spCertificate, PrivateKey spPrivateKey,
+                                AttributeClaimResolver claimResolver, Instant metadataValidUntil, String error) {
+        this.id = config.getId();
+        this.displayName = config.getDisplayName();
+        this.metadataSource = intern(config.getMetadataSource());
+        this.metadataUrl = config.getMetadataUrl();
+        this.spEntityId = config.getSpEntityId();
+        this.idpLoginUrl = config.getIdpLoginUrl();
+        this.idpLogoutUrl = config.getIdpLogoutUrl();
+        this.nameIdFormat = intern(config.getNameIdFormat());
+        this.customIconUrl = config.getCustomIconUrl();
+        this.digestAlgorithm = intern(config.getDigestAlgorithm());
+        this.signatureAlgorithm = intern(config.getSignatureAlgorithm());
+        this.enabled = config.isEnabled();
+        this.limitSelfRegistration = config.isLimitSelfRegistration();
+        this.signAuthnRequests = config.isSignAuthnRequests();
+        this.requireSignedResponses = config.isRequireSignedResponses();
+        this.requireEncryptedResponses = config.isRequireEncryptedResponses();
+        this.idpCertificates = idpCertificates != null ? List.copyOf(idpCertificates) : List.of();
+        this.spCertificate = spCertificate;
+        this.spPrivateKey = spPrivateKey;
+        this.claimResolver = claimResolver;
+        this.roleMapper = config.getRoleMappings() == null || config.getRoleMappings().isEmpty()
+            ? RoleMapper.NONE : new RoleMapper(config.getGroupsAttribute(), config.getRoleMappings());
+        this.requestedAttributes = copy(config.getRequestedAttributes());
+        this.emailDomains = domainNames(config.getEmailDomains());
+        this.hostnames = domainNames(config.getHostnames());
+        this.metadataValidUntil = metadataValidUntil;
+        this.error = error;
+        this.fingerprint = Objects.hash(id, spEntityId, idpLoginUrl, idpLogoutUrl, this.idpCertificates, nameIdFormat,
+            signAuthnRequests, requireSignedResponses, requireEncryptedResponses, spCertificate, spPrivateKey,
+            digestAlgorithm, signatureAlgorithm, claimResolver.getMappings());
+    }
+
+    // Low-cardinality values repeated across every provider
+    private static String intern(String value) {
+        return value != null ? value.intern() : null;
+    }
+
+    // Lower-cased, without blanks or a trailing dot, as the discovery index compares them
+    private static List<String> domainNames(List<String> names) {
+        if (names == null || names.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<String> normalized = new ArrayList<>(names.size());
+        for (String name : names) {
+            String value = HomeRealmIndex.normalize(name);
+            if (value != null && !normalized.contains(value)) {
+                normalized.add(value);
+            }
+        }
+        return Collections.unmodifiableList(normalized);
+    }
+
+    private static <V> Map<String, V> copy(Map<String, V> map) {
+        if (map == null || map.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        return Collections.unmodifiableMap(new LinkedHashMap<>(map));
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    public String getMetadataSource() {
+        return metadataSource;
+    }
+
+    public String getMetadataUrl() {
+        return metadataUrl;
+    }
+
+    public String getSpEntityId() {
+        return spEntityId;
+    }
+
+    public String getIdpLoginUrl() {
+        return idpLoginUrl;
+    }
+
+    public String getIdpLogoutUrl() {
+        return idpLogoutUrl;
+    }
+
+    public String getNameIdFormat() {
+        return nameIdFormat;
+    }
+
+    public String getCustomIconUrl() {
+        return customIconUrl;
+    }
+
+    public String getDigestAlgorithm() {
+        return digestAlgorithm;
+    }
+
+    public String getSignatureAlgorithm() {
+        return signatureAlgorithm;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean isLimitSelfRegistration() {
+        return limitSelfRegistration;
+    }
+
+    public boolean isSignAuthnRequests() {
+        return signAuthnRequests;
+    }
+
+    public boolean isRequireSignedResponses() {
+        return requireSignedResponses;
+    }
+
+    public boolean isRequireEncryptedResponses() {
+        return requireEncryptedResponses;
+    }
+
+    /**
+     * The first trusted IdP signing certificate, or null if none is configured
+     */
+    public X509Certificate getIdpCertificate() {
+        return idpCertificates.isEmpty() ? null : idpCertificates.get(0);
+    }
+
+    /**
+     * Every trusted IdP signing certificate; more than one while the IdP rolls its key
+     */
+    public List<X509Certificate> getIdpCertificates() {
+        return idpCertificates;
+    }
+
+    public X509Certificate getSpCertificate() {
+        return spCertificate;
+    }
+
+    public PrivateKey getSpPrivateKey() {
+        return spPrivateKey;
+    }
+
+    public Map<String, List<String>> getAttributeMappings() {
+        return claimResolver.getMappings();
+    }
+
+    /**
+     * Turns this provider's assertion attributes into token claims
+     */
+    public AttributeClaimResolver getClaimResolver() {
+        return claimResolver;
+    }
+
+    /**
+     * Grants the roles this provider maps the user's groups to
+     */
+    public RoleMapper getRoleMapper() {
+        return roleMapper;
+    }
+
+    public Map<String, Map<String, String>> getRequestedAttributes() {
+        return requestedAttributes;
+    }
+
+    /**
+     * Email domains whose users sign in with this provider
+     */
+    public List<String> getEmailDomains() {
+        return emailDomains;
+    }
+
+    /**
+     * Hostnames on which this provider is the sign-in provider
+     */
+    public List<String> getHostnames() {
+        return hostnames;
+    }
+
+    /**
+     * validUntil of the stored metadata XML, or null if it has none
+     */
+    public Instant getMetadataValidUntil() {
+        return metadataValidUntil;
+    }
+
+    /**
+     * Why the provider could not be compiled, or null if it compiled cleanly
+     */
+    public String getError() {
+        return error;
+    }
+
+    /**
+     * Changes whenever anything that goes into the relying party registration
+     * changes. Only 32 bits, so equal fingerprints still need
+     * {@link #hasSameRegistrationSettings} to rule out a collision.
+     */
+    public int getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * True if both would build the same relying party registration; compares
+     * exactly the settings the fingerprint covers
+     */
+    public boolean hasSameRegistrationSettings(CompiledSamlProvider other) {
+        return fingerprint == other.fingerprint
+            && Objects.equals(id, other.id)
+            && Objects.equals(spEntityId, other.spEntityId)
+            && Objects.equals(idpLoginUrl, other.idpLoginUrl)
+            && Objects.equals(idpLogoutUrl, other.idpLogoutUrl)
+            && idpCertificates.equals(other.idpCertificates)
+            && Objects.equals(nameIdFormat, other.nameIdFormat)
+            && signAuthnRequests == other.signAuthnRequests
+            && requireSignedResponses == other.requireSignedResponses
+            && requireEncryptedResponses == other.requireEncryptedResponses
+            && Objects.equals(spCertificate, other.spCertificate)
+            && Objects.equals(spPrivateKey, other.spPrivateKey)
+            && Objects.equals(digestAlgorithm, other.digestAlgorithm)
+            && Objects.equals(signatureAlgorithm, other.signatureAlgorithm)
+            && claimResolver.getMappings().equals(other.claimResolver.getMappings());
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.flutto.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+/**
+ * A versioned notification that the provider configuration changed on some node.
+ * The version is the store version written alongside the providers, so receivers
+ * can skip events they have already applied. The same bus carries access token
+ * revocations, which are not versioned.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class ConfigChangeEvent {
+
+    public enum Type {
+        UPSERT,
+        DELETE,
+        // Receiver may have missed events and should reload everything
+        RESYNC,
+        // An access token id revoked on some node, with the token's expiry
+        TOKEN_REVOKED
+    }
+
+    private long version;
+    private Type type;
+    private String providerId;
+    private String originNodeId;
+    private long timestamp;
+    private String tokenId;
+    private long tokenExpiresAt;
+
+    public ConfigChangeEvent() {
+    }
+
+    public ConfigChangeEvent(long version, Type type, String providerId, String originNodeId) {
+        this.version = version;
+        this.type = type;
+        this.providerId = providerId;
+        this.originNodeId = originNodeId;
+        this.timestamp = System.currentTimeMillis();
+    }
+
+    /**
+     * Revocation of an access token id until the token expires
+     */
+    public static ConfigChangeEvent tokenRevoked(String tokenId, long tokenExpiresAt) {
+        ConfigChangeEvent event = new ConfigChangeEvent(0, Type.TOKEN_REVOKED, null, null);
+        event.tokenId = tokenId;
+        event.tokenExpiresAt = tokenExpiresAt;
+        return event;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public void setType(Type type) {
+        this.type = type;
+    }
+
+    public String getProviderId() {
+        return providerId;
+    }
+
+    public void setProviderId(String providerId) {
+        this.providerId = providerId;
+    }
+
+    public String getOriginNodeId() {
+        return originNodeId;
+    }
+
+    public void setOriginNodeId(String originNodeId) {
+        this.originNodeId = originNodeId;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    public String getTokenId() {
+        return tokenId;
+    }
+
+    public void setTokenId(String tokenId) {
+        this.tokenId = tokenId;
+    }
+
+    public long getTokenExpiresAt() {
+        return tokenExpiresAt;
+    }
+
+    public void setTokenExpiresAt(long tokenExpiresAt) {
+        this.tokenExpiresAt = tokenExpiresAt;
+    }
+
+    @Override
+    public String toString() {
+        return "ConfigChangeEvent{version=" + version + ", type=" + type + ", providerId=" + providerId
+                + ", originNodeId=" + originNodeId + "}";
+    }
+}
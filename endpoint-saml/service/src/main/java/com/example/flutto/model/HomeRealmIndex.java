@@ -0,0 +1,269 @@
+package com.example.flutto.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Home-realm discovery: finds the provider for a user's email domain or for the
+ * host a login arrives on, without the caller knowing registration ids.
+ *
+ * Exact names ("example.com") live in a hash map. Wildcards ("*.example.com")
+ * live in a trie keyed by labels from the right (com, example, ...), so the most
+ * specific wildcard for a name is found in one walk over its labels. Exact
+ * names win over wildcards.
+ *
+ * The index is immutable. {@link #update} reuses everything belonging to
+ * providers whose names did not change: trie nodes off the changed paths are
+ * shared, and an update that changes no names returns the same index.
+ */
+public final class HomeRealmIndex {
+
+    public static final HomeRealmIndex EMPTY = new HomeRealmIndex(Map.of(), DomainTable.EMPTY, DomainTable.EMPTY);
+
+    // What each indexed provider claimed, to work out what an update changes
+    private final Map<String, Claims> claims;
+    private final DomainTable emailDomains;
+    private final DomainTable hostnames;
+
+    private HomeRealmIndex(Map<String, Claims> claims, DomainTable emailDomains, DomainTable hostnames) {
+        this.claims = claims;
+        this.emailDomains = emailDomains;
+        this.hostnames = hostnames;
+    }
+
+    /**
+     * Index over the enabled providers in the list, reusing this index's
+     * entries for providers that claim the same names as before
+     */
+    public HomeRealmIndex update(List<CompiledSamlProvider> providers) {
+        Map<String, Claims> next = new HashMap<>();
+        for (CompiledSamlProvider provider : providers) {
+            if (provider.isEnabled()
+                    && (!provider.getEmailDomains().isEmpty() || !provider.getHostnames().isEmpty())) {
+                next.put(provider.getId(), new Claims(provider.getEmailDomains(), provider.getHostnames()));
+            }
+        }
+        if (next.equals(claims)) {
+            return this;
+        }
+
+        DomainTable.Editor emails = emailDomains.edit();
+        DomainTable.Editor hosts = hostnames.edit();
+        for (Map.Entry<String, Claims> entry : claims.entrySet()) {
+            if (!entry.getValue().equals(next.get(entry.getKey()))) {
+                entry.getValue().emailDomains.forEach(name -> emails.remove(name, entry.getKey()));
+                entry.getValue().hostnames.forEach(name -> hosts.remove(name, entry.getKey()));
+            }
+        }
+        for (Map.Entry<String, Claims> entry : next.entrySet()) {
+            if (!entry.getValue().equals(claims.get(entry.getKey()))) {
+                entry.getValue().emailDomains.forEach(name -> emails.add(name, entry.getKey()));
+                entry.getValue().hostnames.forEach(name -> hosts.add(name, entry.getKey()));
+            }
+        }
+        return new HomeRealmIndex(Map.copyOf(next), emails.build(), hosts.build());
+    }
+
+    /**
+     * Provider for an email address ("alice@example.com") or a bare domain
+     */
+    public Optional<String> providerForEmail(String emailOrDomain) {
+        if (emailOrDomain == null) {
+            return Optional.empty();
+        }
+        int at = emailOrDomain.lastIndexOf('@');
+        return emailDomains.lookup(normalize(at >= 0 ? emailOrDomain.substring(at + 1) : emailOrDomain));
+    }
+
+    /**
+     * Provider for a request host, with or without a port
+     */
+    public Optional<String> providerForHost(String host) {
+        if (host == null) {
+            return Optional.empty();
+        }
+        int colon = host.indexOf(':');
+        return hostnames.lookup(normalize(colon >= 0 ? host.substring(0, colon) : host));
+    }
+
+    /**
+     * The form names are indexed and looked up in: lower case, no surrounding
+     * blanks or trailing dot. Returns null for a blank name.
+     */
+    public static String normalize(String name) {
+        if (name == null) {
+            return null;
+        }
+        String value = name.trim().toLowerCase(Locale.ROOT);
+        if (value.endsWith(".")) {
+            value = value.substring(0, value.length() - 1);
+        }
+        return value.isEmpty() ? null : value;
+    }
+
+    private static final class Claims {
+        private final List<String> emailDomains;
+        private final List<String> hostnames;
+
+        Claims(List<String> emailDomains, List<String> hostnames) {
+            this.emailDomains = emailDomains;
+            this.hostnames = hostnames;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Claims claims
+                && emailDomains.equals(claims.emailDomains) && hostnames.equals(claims.hostnames);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(emailDomains, hostnames);
+        }
+    }
+
+    /**
+     * Exact names plus the wildcard trie for one kind of name. When several
+     * providers claim the same name, the smallest id wins, so the outcome does
+     * not depend on the order providers were added in.
+     */
+    private static final class DomainTable {
+        static final DomainTable EMPTY = new DomainTable(Map.of(), Node.EMPTY);
+
+        private final Map<String, String[]> exact;
+        private final Node wildcards;
+
+        DomainTable(Map<String, String[]> exact, Node wildcards) {
+            this.exact = exact;
+            this.wildcards = wildcards;
+        }
+
+        Optional<String> lookup(String name) {
+            if (name == null) {
+                return Optional.empty();
+            }
+            String[] owners = exact.get(name);
+            if (owners != null) {
+                return Optional.of(owners[0]);
+            }
+            // Walk the labels right to left; a wildcard on a node covers names with more labels below it
+            Node node = wildcards;
+            String[] best = null;
+            int end = name.length();
+            while (end > 0 && node != null) {
+                if (node.owners != null) {
+                    best = node.owners;
+                }
+                int dot = name.lastIndexOf('.', end - 1);
+                node = node.children.get(name.substring(dot + 1, end));
+                end = dot;
+            }
+            return best != null ? Optional.of(best[0]) : Optional.empty();
+        }
+
+        Editor edit() {
+            return new Editor(this);
+        }
+
+        static final class Editor {
+            private final Map<String, String[]> exact;
+            private Node wildcards;
+
+            Editor(DomainTable table) {
+                this.exact = new HashMap<>(table.exact);
+                this.wildcards = table.wildcards;
+            }
+
+            void add(String name, String providerId) {
+                if (name.startsWith("*.")) {
+                    wildcards = wildcards.with(labels(name.substring(2)), 0, providerId, true);
+                } else {
+                    exact.put(name, Node.withOwner(exact.get(name), providerId));
+                }
+            }
+
+            void remove(String name, String providerId) {
+                if (name.startsWith("*.")) {
+                    wildcards = wildcards.with(labels(name.substring(2)), 0, providerId, false);
+                } else {
+                    String[] owners = Node.withoutOwner(exact.get(name), providerId);
+                    if (owners == null) {
+                        exact.remove(name);
+                    } else {
+                        exact.put(name, owners);
+                    }
+                }
+            }
+
+            DomainTable build() {
+                return new DomainTable(Map.copyOf(exact), wildcards);
+            }
+
+            // "login.example.com" -> [com, example, login]
+            private static String[] labels(String name) {
+                List<String> labels = new ArrayList<>(Arrays.asList(name.split("\\.")));
+                Collections.reverse(labels);
+                return labels.toArray(new String[0]);
+            }
+        }
+    }
+
+    /**
+     * Immutable trie node; a change copies only the nodes on its path
+     */
+    private static final class Node {
+        static final Node EMPTY = new Node(Map.of(), null);
+
+        private final Map<String, Node> children;
+        private final String[] owners;
+
+        Node(Map<String, Node> children, String[] owners) {
+            this.children = children;
+            this.owners = owners;
+        }
+
+        Node with(String[] labels, int depth, String providerId, boolean add) {
+            if (depth == labels.length) {
+                String[] updated = add ? withOwner(owners, providerId) : withoutOwner(owners, providerId);
+                return new Node(children, updated);
+            }
+            Node child = children.getOrDefault(labels[depth], EMPTY);
+            Node updatedChild = child.with(labels, depth + 1, providerId, add);
+            Map<String, Node> updatedChildren = new HashMap<>(children);
+            if (updatedChild.owners == null && updatedChild.children.isEmpty()) {
+                updatedChildren.remove(labels[depth]);
+            } else {
+                updatedChildren.put(labels[depth], updatedChild);
+            }
+            return new Node(Map.copyOf(updatedChildren), owners);
+        }
+
+        static String[] withOwner(String[] owners, String providerId) {
+            if (owners == null) {
+                return new String[] { providerId };
+            }
+            if (Arrays.asList(owners).contains(providerId)) {
+                return owners;
+            }
+            String[] updated = Arrays.copyOf(owners, owners.length + 1);
+            updated[owners.length] = providerId;
+            Arrays.sort(updated);
+            return updated;
+        }
+
+        static String[] withoutOwner(String[] owners, String providerId) {
+            if (owners == null) {
+                return null;
+            }
+            String[] updated = Arrays.stream(owners).filter(owner -> !owner.equals(providerId)).toArray(String[]::new);
+            return updated.length == 0 ? null : updated;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.flutto.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.Map;
+
+/**
+ * A change to a provider as pushed to admin clients. Upserts carry the same
+ * summary the provider list shows, so clients can patch their list in place.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ProviderEvent {
+
+    public enum Type {
+        PROVIDER_UPSERTED,
+        PROVIDER_DELETED,
+        REGISTRATION_BUILT,
+        REGISTRATION_FAILED,
+        // Events were missed; the client should reload the full list
+        RESYNC
+    }
+
+    private final String id;
+    private final Type type;
+    private final String providerId;
+    private final long configVersion;
+    private final long timestamp;
+    private final Map<String, Object> provider;
+    private final String error;
+
+    public ProviderEvent(String id, Type type, String providerId, long configVersion,
+                         Map<String, Object> provider, String error) {
+        this.id = id;
+        this.type = type;
+        this.providerId = providerId;
+        this.configVersion = configVersion;
+        this.timestamp = System.currentTimeMillis();
+        this.provider = provider;
+        this.error = error;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getProviderId() {
+        return providerId;
+    }
+
+    public long getConfigVersion() {
+        return configVersion;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public Map<String, Object> getProvider() {
+        return provider;
+    }
+
+    public String getError() {
+        return error;
+    }
+}
@@ -0,0 +1,154 @@
+package com.example.flutto.model;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One asynchronous rebuild of the relying-party registrations and its progress.
+ *
+ * Requests that arrive while a job is queued join it instead of starting another
+ * one: a queued job reads the configuration only when it starts, so it already
+ * covers every change made before then.
+ */
+public class RefreshJob {
+
+    public enum State {
+        QUEUED,
+        RUNNING,
+        SUCCEEDED,
+        FAILED
+    }
+
+    private final long id;
+    private final Instant submittedAt = Instant.now();
+    private final AtomicInteger requests = new AtomicInteger(1);
+    private final Map<String, String> providerErrors = new ConcurrentHashMap<>();
+    private volatile State state = State.QUEUED;
+    private volatile long requestedConfigVersion;
+    private volatile String reason;
+    private volatile long appliedConfigVersion;
+    private volatile long generation;
+    private volatile int providersTotal;
+    private final AtomicInteger providersCompleted = new AtomicInteger();
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    private volatile String error;
+
+    public RefreshJob(long id, String reason, long requestedConfigVersion) {
+        this.id = id;
+        this.reason = reason;
+        this.requestedConfigVersion = requestedConfigVersion;
+    }
+
+    /**
+     * Folds a later request into this still queued job
+     */
+    public synchronized void coalesce(String reason, long configVersion) {
+        requests.incrementAndGet();
+        this.reason = reason;
+        this.requestedConfigVersion = Math.max(requestedConfigVersion, configVersion);
+    }
+
+    public void started(long configVersion, int providers) {
+        this.appliedConfigVersion = configVersion;
+        this.providersTotal = providers;
+        this.startedAt = Instant.now();
+        this.state = State.RUNNING;
+    }
+
+    public void providerCompleted() {
+        providersCompleted.incrementAndGet();
+    }
+
+    public void providerFailed(String providerId, String message) {
+        providerErrors.put(providerId, message != null ? message : "unknown error");
+        providersCompleted.incrementAndGet();
+    }
+
+    public void succeeded(long generation) {
+        this.generation = generation;
+        this.finishedAt = Instant.now();
+        this.state = State.SUCCEEDED;
+    }
+
+    public void failed(String error) {
+        this.error = error;
+        this.finishedAt = Instant.now();
+        this.state = State.FAILED;
+    }
+
+    public boolean isDone() {
+        return state == State.SUCCEEDED || state == State.FAILED;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    /**
+     * Number of refresh requests this job serves, including coalesced ones
+     */
+    public int getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * Highest config version any of the coalesced requests was made at
+     */
+    public long getRequestedConfigVersion() {
+        return requestedConfigVersion;
+    }
+
+    /**
+     * Config version the job read when it started
+     */
+    public long getAppliedConfigVersion() {
+        return appliedConfigVersion;
+    }
+
+    /**
+     * Registration generation being served when the job finished
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    public int getProvidersTotal() {
+        return providersTotal;
+    }
+
+    public int getProvidersCompleted() {
+        return providersCompleted.get();
+    }
+
+    public Map<String, String> getProviderErrors() {
+        return Collections.unmodifiableMap(providerErrors);
+    }
+
+    public Instant getSubmittedAt() {
+        return submittedAt;
+    }
+
+    public Instant getStartedAt() {
+        return startedAt;
+    }
+
+    public Instant getFinishedAt() {
+        return finishedAt;
+    }
+
+    public String getError() {
+        return error;
+    }
+}
@@ -0,0 +1,143 @@
+package com.example.flutto.model;
+
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Numbered list of the roles access tokens may carry, so a compact token names
+ * its roles as a bitset instead of a list of strings: bit i stands for the
+ * i-th role. The dictionary version travels with the token, since a bitset
+ * means nothing against another list.
+ *
+ * Decoded authorities are interned: every token with the same roles resolves
+ * to the same immutable list of shared {@link GrantedAuthority} instances.
+ */
+public final class RoleDictionary {
+
+    /**
+     * Bitsets stay within the integers a JSON number holds exactly, so browser
+     * clients can read them too
+     */
+    public static final int MAX_ROLES = 53;
+
+    // Interning is for the handful of role sets in use; past this, lists are built per call
+    private static final int MAX_INTERNED = 1024;
+
+    private final int version;
+    private final List<String> roles;
+    private final Map<String, Integer> bits = new HashMap<>();
+    private final GrantedAuthority[] authorities;
+    private final Map<Long, List<GrantedAuthority>> byBitset = new ConcurrentHashMap<>();
+    private final Map<String, GrantedAuthority> interned = new ConcurrentHashMap<>();
+
+    public RoleDictionary(int version, List<String> roles) {
+        if (roles.size() > MAX_ROLES) {
+            throw new IllegalArgumentException("A role dictionary holds at most " + MAX_ROLES + " roles, got " + roles.size());
+        }
+        this.version = version;
+        this.roles = List.copyOf(roles);
+        this.authorities = new GrantedAuthority[this.roles.size()];
+        for (int i = 0; i < this.roles.size(); i++) {
+            String role = this.roles.get(i);
+            if (bits.putIfAbsent(role, i) != null) {
+                throw new IllegalArgumentException("Role " + role + " appears twice in the role dictionary");
+            }
+            authorities[i] = new SimpleGrantedAuthority(role);
+            interned.put(role, authorities[i]);
+        }
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public List<String> getRoles() {
+        return roles;
+    }
+
+    /**
+     * Bitset of the given roles that the dictionary knows
+     */
+    public long encode(Collection<String> roleNames) {
+        long bitset = 0;
+        for (String role : roleNames) {
+            Integer bit = bits.get(role);
+            if (bit != null) {
+                bitset |= 1L << bit;
+            }
+        }
+        return bitset;
+    }
+
+    /**
+     * The given roles that the dictionary has no bit for, in their original order
+     */
+    public List<String> unknown(Collection<String> roleNames) {
+        List<String> unknown = null;
+        for (String role : roleNames) {
+            if (!bits.containsKey(role)) {
+                if (unknown == null) {
+                    unknown = new ArrayList<>();
+                }
+                unknown.add(role);
+            }
+        }
+        return unknown != null ? unknown : List.of();
+    }
+
+    /**
+     * Shared authorities for a bitset; bits beyond the dictionary are ignored
+     */
+    public List<GrantedAuthority> authorities(long bitset) {
+        long known = bitset & ((1L << authorities.length) - 1);
+        List<GrantedAuthority> cached = byBitset.get(known);
+        if (cached != null) {
+            return cached;
+        }
+        List<GrantedAuthority> decoded = new ArrayList<>(Long.bitCount(known));
+        for (long rest = known; rest != 0; rest &= rest - 1) {
+            decoded.add(authorities[Long.numberOfTrailingZeros(rest)]);
+        }
+        decoded = Collections.unmodifiableList(decoded);
+        if (byBitset.size() < MAX_INTERNED) {
+            List<GrantedAuthority> raced = byBitset.putIfAbsent(known, decoded);
+            return raced != null ? raced : decoded;
+        }
+        return decoded;
+    }
+
+    /**
+     * The shared authority for a role, whether or not the dictionary lists it
+     */
+    public GrantedAuthority authority(String role) {
+        GrantedAuthority authority = interned.get(role);
+        if (authority != null) {
+            return authority;
+        }
+        authority = new SimpleGrantedAuthority(role);
+        if (interned.size() < MAX_INTERNED) {
+            GrantedAuthority raced = interned.putIfAbsent(role, authority);
+            return raced != null ? raced : authority;
+        }
+        return authority;
+    }
+
+    /**
+     * Shared authorities for a list of role names
+     */
+    public List<GrantedAuthority> authorities(Collection<String> roleNames) {
+        List<GrantedAuthority> decoded = new ArrayList<>(roleNames.size());
+        for (String role : roleNames) {
+            decoded.add(authority(role));
+        }
+        return decoded;
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.flutto.model;
+
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.saml2.provider.service.authentication.Saml2AuthenticatedPrincipal;
+import org.springframework.security.saml2.provider.service.authentication.Saml2Authentication;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiled form of a provider's roleMappings (role to the groups that grant
+ * it), read from the assertion attribute named by groupsAttribute. Mapped
+ * roles are granted on top of the ROLE_USER every SAML login gets, and carry
+ * into the access token's roles claim.
+ *
+ * Role names without the ROLE_ prefix get it, so "ADMIN" and "ROLE_ADMIN"
+ * both satisfy hasRole("ADMIN").
+ */
+public final class RoleMapper {
+
+    /**
+     * Used for providers without roleMappings: grants nothing beyond ROLE_USER
+     */
+    public static final RoleMapper NONE = new RoleMapper(null, null);
+
+    private static final String ROLE_PREFIX = "ROLE_";
+
+    private final String groupsAttribute;
+    private final Map<String, List<String>> mappings;
+    // Group -> roles it grants
+    private final Map<String, List<String>> rolesByGroup;
+
+    public RoleMapper(String groupsAttribute, Map<String, List<String>> mappings) {
+        Map<String, List<String>> copy = new LinkedHashMap<>();
+        Map<String, List<String>> byGroup = new HashMap<>();
+        if (mappings != null) {
+            for (Map.Entry<String, List<String>> mapping : mappings.entrySet()) {
+                String role = mapping.getKey().startsWith(ROLE_PREFIX) ? mapping.getKey() : ROLE_PREFIX + mapping.getKey();
+                List<String> groups = mapping.getValue() != null ? List.copyOf(mapping.getValue()) : List.of();
+                copy.put(role, groups);
+                for (String group : groups) {
+                    List<String> roles = byGroup.computeIfAbsent(group, g -> new ArrayList<>(1));
+                    if (!roles.contains(role)) {
+                        roles.add(role);
+                    }
+                }
+            }
+        }
+        this.groupsAttribute = groupsAttribute;
+        this.mappings = Collections.unmodifiableMap(copy);
+        this.rolesByGroup = byGroup;
+    }
+
+    /**
+     * Roles granted by the groups the assertion lists, in mapping order of
+     * their groups; empty when nothing matches
+     */
+    public List<String> roles(Map<String, List<Object>> attributes) {
+        if (groupsAttribute == null || rolesByGroup.isEmpty()) {
+            return List.of();
+        }
+        List<Object> groups = attributes.get(groupsAttribute);
+        if (groups == null || groups.isEmpty()) {
+            return List.of();
+        }
+        List<String> granted = new ArrayList<>(1);
+        for (Object group : groups) {
+            List<String> roles = group != null ? rolesByGroup.get(String.valueOf(group)) : null;
+            if (roles == null) {
+                continue;
+            }
+            for (String role : roles) {
+                if (!granted.contains(role)) {
+                    granted.add(role);
+                }
+            }
+        }
+        return granted;
+    }
+
+    /**
+     * The authentication with the mapped roles added to its authorities, or the
+     * same authentication when the assertion maps to none
+     */
+    public Saml2Authentication grant(Saml2Authentication authentication) {
+        Saml2AuthenticatedPrincipal principal = (Saml2AuthenticatedPrincipal) authentication.getPrincipal();
+        List<String> roles = roles(principal.getAttributes());
+        if (roles.isEmpty()) {
+            return authentication;
+        }
+        List<GrantedAuthority> authorities = new ArrayList<>(authentication.getAuthorities());
+        for (String role : roles) {
+            SimpleGrantedAuthority authority = new SimpleGrantedAuthority(role);
+            if (!authorities.contains(authority)) {
+                authorities.add(authority);
+            }
+        }
+        return new Saml2Authentication(principal, authentication.getSaml2Response(), authorities);
+    }
+
+    public String getGroupsAttribute() {
+        return groupsAttribute;
+    }
+
+    public Map<String, List<String>> getMappings() {
+        return mappings;
+    }
+}
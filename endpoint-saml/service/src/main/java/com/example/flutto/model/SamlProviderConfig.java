@@ -48,6 +48,14 @@ public class SamlProviderConfig {
     private Map<String, List<String>> attributeMappings;
     private Map<String, Map<String, String>> requestedAttributes;
 
+    // Roles granted on top of ROLE_USER: the attribute listing the user's groups, and role -> groups granting it
+    private String groupsAttribute;
+    private Map<String, List<String>> roleMappings;
+
+    // Home-realm discovery: "example.com" matches that name, "*.example.com" any name below it
+    private List<String> emailDomains;
+    private List<String> hostnames;
+
     private Boolean enabled = true; // Default to enabled
 
     // Getters and setters
@@ -219,6 +227,38 @@ public class SamlProviderConfig {
         this.requestedAttributes = requestedAttributes;
     }
 
+    public String getGroupsAttribute() {
+        return groupsAttribute;
+    }
+
+    public void setGroupsAttribute(String groupsAttribute) {
+        this.groupsAttribute = groupsAttribute;
+    }
+
+    public Map<String, List<String>> getRoleMappings() {
+        return roleMappings;
+    }
+
+    public void setRoleMappings(Map<String, List<String>> roleMappings) {
+        this.roleMappings = roleMappings;
+    }
+
+    public List<String> getEmailDomains() {
+        return emailDomains;
+    }
+
+    public void setEmailDomains(List<String> emailDomains) {
+        this.emailDomains = emailDomains;
+    }
+
+    public List<String> getHostnames() {
+        return hostnames;
+    }
+
+    public void setHostnames(List<String> hostnames) {
+        this.hostnames = hostnames;
+    }
+
     public boolean isEnabled() {
         return enabled == null || enabled; // If null, default to true
     }
@@ -4,8 +4,18 @@ import java.util.ArrayList;
 import java.util.List;
 
 public class SamlProvidersConfig {
+    // Incremented on every save so nodes can tell which changes they have applied
+    private long version;
     private List<SamlProviderConfig> providers = new ArrayList<>();
 
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
     public List<SamlProviderConfig> getProviders() {
         return providers;
     }
@@ -13,4 +23,4 @@ public class SamlProvidersConfig {
     public void setProviders(List<SamlProviderConfig> providers) {
         this.providers = providers;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,203 @@
+package com.example.flutto.service;
+
+import org.opensaml.saml.saml2.core.Assertion;
+import org.opensaml.saml.saml2.core.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.security.saml2.core.Saml2Error;
+import org.springframework.security.saml2.core.Saml2ErrorCodes;
+import org.springframework.security.saml2.core.Saml2ResponseValidatorResult;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Remembers consumed SAML assertion ids until the assertions expire, so a
+ * captured response cannot be posted to the ACS endpoint a second time. An
+ * assertion counts as expired only once NotOnOrAfter plus the clock skew the
+ * assertion validator tolerates has passed, since until then it still validates.
+ * Ids are recorded only for responses that passed every other check, so forged
+ * responses cannot use up the capacity.
+ *
+ * Entries are spread over independently locked stripes. Inside a stripe they are
+ * grouped by expiry time bucket, and a bucket is dropped as a whole once it has
+ * passed. The total number of entries is capped; when a stripe is full the cache
+ * fails closed and rejects the login rather than forgetting ids early.
+ */
+@Service
+public class AssertionReplayCache {
+    private static final Logger logger = LoggerFactory.getLogger(AssertionReplayCache.class);
+
+    public enum Outcome {
+        ACCEPTED,
+        REPLAYED,
+        CAPACITY_EXCEEDED
+    }
+
+    private final Stripe[] stripes;
+    private final long bucketWidthMillis;
+    private final long maxRetentionMillis;
+    private final long clockSkewMillis;
+
+    public AssertionReplayCache(
+            @Value("${saml.replay-cache.max-entries:200000}") int maxEntries,
+            @Value("${saml.replay-cache.stripes:64}") int stripeCount,
+            @Value("${saml.replay-cache.bucket-ms:30000}") long bucketWidthMillis,
+            @Value("${saml.replay-cache.max-retention-ms:3600000}") long maxRetentionMillis,
+            @Value("${saml.assertion.clock-skew-ms:300000}") long clockSkewMillis) {
+        // Round up to a power of two so the stripe can be picked with a mask
+        int count = stripeCount <= 1 ? 1 : Integer.highestOneBit(stripeCount - 1) << 1;
+        this.stripes = new Stripe[count];
+        this.bucketWidthMillis = bucketWidthMillis;
+        this.maxRetentionMillis = maxRetentionMillis;
+        this.clockSkewMillis = clockSkewMillis;
+        long horizonMillis = maxRetentionMillis + clockSkewMillis;
+        int bucketsPerStripe = (int) ((horizonMillis + bucketWidthMillis - 1) / bucketWidthMillis) + 2;
+        int capacityPerStripe = Math.max(1, maxEntries / count);
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new Stripe(bucketsPerStripe, capacityPerStripe);
+        }
+    }
+
+    /**
+     * Clock skew the assertion validator must be configured with, so that no
+     * assertion it accepts outlives its entry here
+     */
+    public Duration getClockSkew() {
+        return Duration.ofMillis(clockSkewMillis);
+    }
+
+    /**
+     * Marks every assertion of a fully validated response as consumed. Call it
+     * only after signatures, conditions and audience have passed.
+     */
+    public Saml2ResponseValidatorResult consume(Response response, String registrationId) {
+        Saml2ResponseValidatorResult result = Saml2ResponseValidatorResult.success();
+        for (Assertion assertion : response.getAssertions()) {
+            Instant notOnOrAfter = assertion.getConditions() != null
+                ? assertion.getConditions().getNotOnOrAfter() : null;
+            Outcome outcome = markConsumed(registrationId, assertion.getID(), notOnOrAfter);
+            if (outcome == Outcome.REPLAYED) {
+                result = result.concat(new Saml2Error(Saml2ErrorCodes.INVALID_ASSERTION,
+                    "Assertion " + assertion.getID() + " has already been used"));
+            } else if (outcome == Outcome.CAPACITY_EXCEEDED) {
+                result = result.concat(new Saml2Error(Saml2ErrorCodes.INVALID_ASSERTION,
+                    "Assertion " + assertion.getID() + " could not be checked for replay"));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Records an assertion as consumed. Returns {@link Outcome#ACCEPTED} only the
+     * first time a given assertion id is seen for a registration.
+     */
+    public Outcome markConsumed(String registrationId, String assertionId, Instant notOnOrAfter) {
+        if (assertionId == null || assertionId.isEmpty()) {
+            // Schema requires an ID; without one the assertion cannot be tracked
+            return Outcome.REPLAYED;
+        }
+
+        long now = System.currentTimeMillis();
+        long expiresAt = notOnOrAfter != null ? notOnOrAfter.toEpochMilli() : now + maxRetentionMillis;
+        if (expiresAt > now + maxRetentionMillis) {
+            expiresAt = now + maxRetentionMillis;
+        }
+        // The validator still accepts the assertion for this long after NotOnOrAfter
+        expiresAt += clockSkewMillis;
+
+        String key = registrationId + '\u0000' + assertionId;
+        int h = key.hashCode();
+        h ^= h >>> 16;
+        Stripe stripe = stripes[h & (stripes.length - 1)];
+        Outcome outcome = stripe.add(key, expiresAt / bucketWidthMillis, now / bucketWidthMillis);
+        if (outcome == Outcome.CAPACITY_EXCEEDED) {
+            logger.warn("Assertion replay cache is full, rejecting assertion {} for {}", assertionId, registrationId);
+        }
+        return outcome;
+    }
+
+    /**
+     * Number of assertion ids currently retained across all stripes
+     */
+    public int size() {
+        int total = 0;
+        for (Stripe stripe : stripes) {
+            total += stripe.size();
+        }
+        return total;
+    }
+
+    private static final class Stripe {
+        private final Map<String, Long> entries = new HashMap<>();
+        private final List<String>[] buckets;
+        private final long[] bucketEpochs;
+        private final int capacity;
+
+        @SuppressWarnings("unchecked")
+        Stripe(int bucketCount, int capacity) {
+            this.buckets = new List[bucketCount];
+            this.bucketEpochs = new long[bucketCount];
+            Arrays.fill(bucketEpochs, -1);
+            this.capacity = capacity;
+        }
+
+        synchronized Outcome add(String key, long expiryEpoch, long currentEpoch) {
+            Long existing = entries.get(key);
+            if (existing != null && existing >= currentEpoch) {
+                return Outcome.REPLAYED;
+            }
+
+            if (entries.size() >= capacity) {
+                purge(currentEpoch);
+                if (entries.size() >= capacity) {
+                    return Outcome.CAPACITY_EXCEEDED;
+                }
+            }
+
+            int slot = (int) (expiryEpoch % buckets.length);
+            if (bucketEpochs[slot] != expiryEpoch) {
+                release(slot);
+                buckets[slot] = new ArrayList<>();
+                bucketEpochs[slot] = expiryEpoch;
+            }
+            buckets[slot].add(key);
+            entries.put(key, expiryEpoch);
+            return Outcome.ACCEPTED;
+        }
+
+        synchronized int size() {
+            return entries.size();
+        }
+
+        private void purge(long currentEpoch) {
+            for (int slot = 0; slot < buckets.length; slot++) {
+                if (buckets[slot] != null && bucketEpochs[slot] < currentEpoch) {
+                    release(slot);
+                }
+            }
+        }
+
+        private void release(int slot) {
+            if (buckets[slot] == null) {
+                return;
+            }
+            for (String key : buckets[slot]) {
+                Long epoch = entries.get(key);
+                // The key may have been re-added to a later bucket after expiring here
+                if (epoch != null && epoch == bucketEpochs[slot]) {
+                    entries.remove(key);
+                }
+            }
+            buckets[slot] = null;
+            bucketEpochs[slot] = -1;
+        }
+    }
+}
@@ -0,0 +1,369 @@
+package com.example.flutto.service;
+
+import com.example.flutto.model.AuditEvent;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+
+/**
+ * Structured audit trail of logins, logouts and token events.
+ *
+ * Request threads only claim a slot in a bounded ring with a compare-and-set
+ * and store the event; they never format, lock or touch the disk. When the
+ * ring is full the event is dropped and counted rather than making the caller
+ * wait. A single writer thread drains the ring in batches and appends JSON
+ * lines to a memory-mapped segment file, starting a new segment when the
+ * current one is full and deleting the oldest beyond the retention count.
+ */
+@Service
+public class AuditLog implements MeterBinder {
+    private static final Logger logger = LoggerFactory.getLogger(AuditLog.class);
+
+    private static final String SEGMENT_PREFIX = "audit-";
+    private static final String SEGMENT_SUFFIX = ".jsonl";
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+    // How far an event's timestamp can lead the events appended after it
+    private static final long APPEND_SKEW_MILLIS = 1000;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final boolean enabled;
+    private final Path directory;
+    private final int segmentBytes;
+    private final int maxSegments;
+    private final int batchSize;
+    private final long forceIntervalNanos;
+
+    private final AtomicReferenceArray<AuditEvent> slots;
+    private final int mask;
+    // Next slot producers claim
+    private final AtomicLong tail = new AtomicLong();
+    // Next slot the writer reads; only the writer advances it
+    private volatile long head;
+    // Slots the writer has finished with, written or dropped
+    private volatile long completed;
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    // Writer thread only
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private long segmentSequence;
+    private boolean unforced;
+    private boolean failing;
+
+    public AuditLog(@Value("${saml.audit.enabled:true}") boolean enabled,
+                    @Value("${saml.audit.dir:audit}") String directory,
+                    @Value("${saml.audit.segment-bytes:67108864}") int segmentBytes,
+                    @Value("${saml.audit.max-segments:16}") int maxSegments,
+                    @Value("${saml.audit.buffer-size:65536}") int bufferSize,
+                    @Value("${saml.audit.batch-size:1024}") int batchSize,
+                    @Value("${saml.audit.force-interval-ms:1000}") long forceIntervalMillis) {
+        this.enabled = enabled;
+        this.directory = Paths.get(directory);
+        this.segmentBytes = segmentBytes;
+        this.maxSegments = Math.max(1, maxSegments);
+        this.batchSize = Math.max(1, batchSize);
+        this.forceIntervalNanos = TimeUnit.MILLISECONDS.toNanos(forceIntervalMillis);
+
+        // Round up to a power of two so the slot can be picked with a mask
+        int capacity = bufferSize <= 1 ? 1 : Integer.highestOneBit(bufferSize - 1) << 1;
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.mask = capacity - 1;
+
+        if (enabled) {
+            try {
+                Files.createDirectories(this.directory);
+            } catch (IOException e) {
+                throw new RuntimeException("Cannot create audit directory " + this.directory.toAbsolutePath(), e);
+            }
+        }
+        this.writer = new Thread(this::writeLoop, "audit-writer");
+        this.writer.setDaemon(true);
+        if (enabled) {
+            this.writer.start();
+        }
+    }
+
+    /**
+     * Queues an event for the audit trail. Never blocks; if the writer has
+     * fallen a whole buffer behind, the event is dropped and counted.
+     */
+    public void record(AuditEvent.Type type, String user, String provider, String clientIp, String detail) {
+        if (!enabled) {
+            return;
+        }
+        AuditEvent event = new AuditEvent(type, user, provider, clientIp, detail);
+        while (true) {
+            long claimed = tail.get();
+            if (claimed - head >= slots.length()) {
+                dropped.incrementAndGet();
+                return;
+            }
+            if (tail.compareAndSet(claimed, claimed + 1)) {
+                slots.lazySet((int) claimed & mask, event);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Events within [fromMillis, toMillis] matching every other given filter
+     * (null matches anything), newest first, at most limit of them. Segments
+     * wholly outside the window are not read, a segment is read only up to
+     * the end of the window, and older segments are skipped once the page is
+     * full. Only events the writer has already appended are visible, which
+     * lags the request threads by a few milliseconds.
+     */
+    public List<AuditEvent> query(String user, String provider, AuditEvent.Type type,
+                                  long fromMillis, long toMillis, int limit) {
+        List<AuditEvent> results = new ArrayList<>();
+        if (!enabled || limit <= 0 || toMillis < fromMillis) {
+            return results;
+        }
+        for (Path segment : segments(Comparator.<String>reverseOrder())) {
+            long segmentStart = segmentStart(segment);
+            if (segmentStart > toMillis) {
+                continue;
+            }
+            // Only the newest matches of this segment can make the page
+            ArrayDeque<AuditEvent> matches = new ArrayDeque<>();
+            int wanted = limit - results.size();
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(Files.newInputStream(segment), StandardCharsets.UTF_8))) {
+                String line;
+                // The unwritten rest of a mapped segment reads as NUL bytes
+                while ((line = reader.readLine()) != null && !line.isEmpty() && line.charAt(0) != 0) {
+                    AuditEvent event = objectMapper.readValue(line, AuditEvent.class);
+                    // Lines are in append order, which trails timestamp order by at most a little
+                    if (event.getTimestamp() > toMillis + APPEND_SKEW_MILLIS) {
+                        break;
+                    }
+                    if (matches(event, user, provider, type, fromMillis, toMillis)) {
+                        if (matches.size() == wanted) {
+                            matches.removeFirst();
+                        }
+                        matches.addLast(event);
+                    }
+                }
+            } catch (IOException e) {
+                logger.warn("Cannot read audit segment {}: {}", segment.getFileName(), e.getMessage());
+            }
+            matches.descendingIterator().forEachRemaining(results::add);
+            // Everything in older segments predates this segment's start
+            if (results.size() >= limit || segmentStart < fromMillis) {
+                break;
+            }
+        }
+        return results;
+    }
+
+    public long getWrittenCount() {
+        return written.get();
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("saml.audit.events.written", written, AtomicLong::get)
+            .register(registry);
+        FunctionCounter.builder("saml.audit.events.dropped", dropped, AtomicLong::get)
+            .description("Audit events dropped because the writer fell behind or could not write")
+            .register(registry);
+        Gauge.builder("saml.audit.queue.depth", this, log -> log.tail.get() - log.head)
+            .register(registry);
+    }
+
+    /**
+     * Waits until every event queued so far has been written or dropped
+     */
+    boolean awaitIdle(long timeoutMillis) throws InterruptedException {
+        long target = tail.get();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (completed < target) {
+            if (System.nanoTime() - deadline > 0) {
+                return false;
+            }
+            Thread.sleep(1);
+        }
+        return true;
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        LockSupport.unpark(writer);
+        writer.join(TimeUnit.SECONDS.toMillis(5));
+    }
+
+    private void writeLoop() {
+        List<AuditEvent> batch = new ArrayList<>(batchSize);
+        long lastForce = System.nanoTime();
+        while (running || head != tail.get()) {
+            drain(batch);
+            if (batch.isEmpty()) {
+                if (!running) {
+                    // A producer claimed a slot but was stopped before publishing it
+                    break;
+                }
+                if (unforced && System.nanoTime() - lastForce >= forceIntervalNanos) {
+                    buffer.force();
+                    unforced = false;
+                    lastForce = System.nanoTime();
+                }
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+                continue;
+            }
+            for (AuditEvent event : batch) {
+                append(event);
+            }
+            completed += batch.size();
+            batch.clear();
+        }
+        closeSegment();
+    }
+
+    private void drain(List<AuditEvent> batch) {
+        long next = head;
+        while (batch.size() < batchSize) {
+            int index = (int) next & mask;
+            AuditEvent event = slots.get(index);
+            if (event == null) {
+                // Empty, or claimed and not yet published
+                break;
+            }
+            slots.lazySet(index, null);
+            batch.add(event);
+            next++;
+        }
+        head = next;
+    }
+
+    private void append(AuditEvent event) {
+        try {
+            byte[] line = objectMapper.writeValueAsBytes(event);
+            if (line.length + 1 > segmentBytes) {
+                dropped.incrementAndGet();
+                logger.warn("Audit event larger than a segment dropped: {}", event);
+                return;
+            }
+            if (buffer == null || buffer.remaining() < line.length + 1) {
+                rotate();
+            }
+            buffer.put(line);
+            buffer.put((byte) '\n');
+            unforced = true;
+            written.incrementAndGet();
+            if (failing) {
+                failing = false;
+                logger.info("Audit log is writing again");
+            }
+        } catch (IOException e) {
+            dropped.incrementAndGet();
+            closeSegment();
+            if (!failing) {
+                failing = true;
+                logger.error("Cannot write audit log in {}, dropping events until it recovers: {}",
+                    directory.toAbsolutePath(), e.getMessage());
+            }
+        }
+    }
+
+    private void rotate() throws IOException {
+        closeSegment();
+        Path path = directory.resolve(String.format("%s%013d-%06d%s",
+            SEGMENT_PREFIX, System.currentTimeMillis(), segmentSequence++ % 1_000_000, SEGMENT_SUFFIX));
+        channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+            StandardOpenOption.READ, StandardOpenOption.WRITE);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        logger.debug("Started audit segment {}", path.getFileName());
+
+        List<Path> segments = segments(Comparator.<String>naturalOrder());
+        for (int i = 0; i < segments.size() - maxSegments; i++) {
+            Files.deleteIfExists(segments.get(i));
+        }
+    }
+
+    private void closeSegment() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            buffer.force();
+            // Give the segment its real length; nothing touches the mapping after this
+            channel.truncate(buffer.position());
+            channel.close();
+        } catch (IOException e) {
+            logger.warn("Cannot close audit segment: {}", e.getMessage());
+        }
+        channel = null;
+        buffer = null;
+        unforced = false;
+    }
+
+    // Segment names start with their creation time, so name order is age order
+    private List<Path> segments(Comparator<String> order) {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files
+                .filter(path -> {
+                    String name = path.getFileName().toString();
+                    return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+                })
+                .sorted(Comparator.comparing(path -> path.getFileName().toString(), order))
+                .toList();
+        } catch (IOException e) {
+            logger.warn("Cannot list audit segments in {}: {}", directory.toAbsolutePath(), e.getMessage());
+            return List.of();
+        }
+    }
+
+    private static long segmentStart(Path segment) {
+        String name = segment.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), SEGMENT_PREFIX.length() + 13));
+        } catch (RuntimeException e) {
+            return 0;
+        }
+    }
+
+    private static boolean matches(AuditEvent event, String user, String provider, AuditEvent.Type type,
+                                   long fromMillis, long toMillis) {
+        return event.getTimestamp() >= fromMillis
+            && event.getTimestamp() <= toMillis
+            && (user == null || user.equals(event.getUser()))
+            && (provider == null || provider.equals(event.getProvider()))
+            && (type == null || type == event.getType());
+    }
+}
@@ -0,0 +1,184 @@
+package com.example.flutto.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.security.GeneralSecurityException;
+import java.security.PrivateKey;
+import java.security.Provider;
+import java.security.Signature;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Signs HTTP-Redirect AuthnRequests with each provider's configured algorithm.
+ *
+ * Every provider's key is bound once to a JCA provider, and each thread keeps
+ * its own {@link Signature} already initialized with that key; after sign() a
+ * Signature is ready for the next message, so a login costs only the update
+ * and the signature itself, not a provider lookup and key initialization.
+ */
+@Service
+public class AuthnRequestSigner {
+    private static final Logger logger = LoggerFactory.getLogger(AuthnRequestSigner.class);
+
+    /**
+     * Signature algorithms accepted in provider configuration, by their short
+     * name or XML-DSig URI
+     */
+    public enum Algorithm {
+        RSA_SHA1("RSA-SHA1", "http://www.w3.org/2000/09/xmldsig#rsa-sha1", "SHA1withRSA", "RSA"),
+        RSA_SHA256("RSA-SHA256", "http://www.w3.org/2001/04/xmldsig-more#rsa-sha256", "SHA256withRSA", "RSA"),
+        RSA_SHA384("RSA-SHA384", "http://www.w3.org/2001/04/xmldsig-more#rsa-sha384", "SHA384withRSA", "RSA"),
+        RSA_SHA512("RSA-SHA512", "http://www.w3.org/2001/04/xmldsig-more#rsa-sha512", "SHA512withRSA", "RSA"),
+        ECDSA_SHA1("ECDSA-SHA1", "http://www.w3.org/2001/04/xmldsig-more#ecdsa-sha1", "SHA1withECDSA", "EC"),
+        ECDSA_SHA256("ECDSA-SHA256", "http://www.w3.org/2001/04/xmldsig-more#ecdsa-sha256", "SHA256withECDSA", "EC"),
+        ECDSA_SHA384("ECDSA-SHA384", "http://www.w3.org/2001/04/xmldsig-more#ecdsa-sha384", "SHA384withECDSA", "EC"),
+        ECDSA_SHA512("ECDSA-SHA512", "http://www.w3.org/2001/04/xmldsig-more#ecdsa-sha512", "SHA512withECDSA", "EC");
+
+        private final String configName;
+        private final String uri;
+        private final String jcaName;
+        private final String keyAlgorithm;
+
+        Algorithm(String configName, String uri, String jcaName, String keyAlgorithm) {
+            this.configName = configName;
+            this.uri = uri;
+            this.jcaName = jcaName;
+            this.keyAlgorithm = keyAlgorithm;
+        }
+
+        public String getUri() {
+            return uri;
+        }
+
+        public String getJcaName() {
+            return jcaName;
+        }
+
+        /**
+         * The configured algorithm, or null if the value is not recognised
+         */
+        public static Algorithm fromConfig(String value) {
+            if (value == null) {
+                return null;
+            }
+            String name = value.trim();
+            for (Algorithm algorithm : values()) {
+                if (algorithm.configName.equalsIgnoreCase(name) || algorithm.uri.equals(name)) {
+                    return algorithm;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * The configured algorithm if it suits the key, otherwise the SHA-256
+         * algorithm for the key's type
+         */
+        public static Algorithm forKey(String configured, PrivateKey key) {
+            Algorithm algorithm = fromConfig(configured);
+            String keyAlgorithm = key.getAlgorithm().toUpperCase(Locale.ROOT);
+            if (algorithm != null && algorithm.keyAlgorithm.equals(keyAlgorithm)) {
+                return algorithm;
+            }
+            return "EC".equals(keyAlgorithm) || "ECDSA".equals(keyAlgorithm) ? ECDSA_SHA256 : RSA_SHA256;
+        }
+    }
+
+    private final Map<String, SigningKey> keys = new ConcurrentHashMap<>();
+
+    /**
+     * Binds the provider's signing key, replacing any previous one, and returns
+     * the algorithm that will be used
+     */
+    public Algorithm register(String providerId, String configuredAlgorithm, PrivateKey key) {
+        Algorithm algorithm = Algorithm.forKey(configuredAlgorithm, key);
+        if (Algorithm.fromConfig(configuredAlgorithm) != algorithm) {
+            logger.warn("Signature algorithm {} cannot be used with the {} signing key of SAML provider {}, using {}",
+                configuredAlgorithm, key.getAlgorithm(), providerId, algorithm.configName);
+        }
+        try {
+            keys.put(providerId, new SigningKey(algorithm, key));
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException("Cannot sign with " + algorithm.jcaName + " for provider " + providerId, e);
+        }
+        return algorithm;
+    }
+
+    /**
+     * Stops signing for the provider
+     */
+    public void remove(String providerId) {
+        keys.remove(providerId);
+    }
+
+    /**
+     * Drops the keys of providers that are no longer configured
+     */
+    public void retainOnly(Set<String> providerIds) {
+        keys.keySet().retainAll(providerIds);
+    }
+
+    public boolean isSigning(String providerId) {
+        return keys.containsKey(providerId);
+    }
+
+    /**
+     * XML-DSig URI of the provider's signature algorithm, or null if it does not sign
+     */
+    public String algorithmUri(String providerId) {
+        SigningKey signingKey = keys.get(providerId);
+        return signingKey != null ? signingKey.algorithm.uri : null;
+    }
+
+    public byte[] sign(String providerId, byte[] content) {
+        SigningKey signingKey = keys.get(providerId);
+        if (signingKey == null) {
+            throw new IllegalStateException("SAML provider " + providerId + " has no signing key");
+        }
+        return signingKey.sign(content);
+    }
+
+    private static final class SigningKey {
+        private final Algorithm algorithm;
+        private final PrivateKey key;
+        private final Provider provider;
+        private final ThreadLocal<Signature> signatures;
+
+        SigningKey(Algorithm algorithm, PrivateKey key) throws GeneralSecurityException {
+            this.algorithm = algorithm;
+            this.key = key;
+            // Resolve the JCA provider once; threads then ask it directly
+            Signature probe = Signature.getInstance(algorithm.jcaName);
+            probe.initSign(key);
+            this.provider = probe.getProvider();
+            this.signatures = ThreadLocal.withInitial(this::newSignature);
+        }
+
+        private Signature newSignature() {
+            try {
+                Signature signature = Signature.getInstance(algorithm.jcaName, provider);
+                signature.initSign(key);
+                return signature;
+            } catch (GeneralSecurityException e) {
+                throw new RuntimeException("Cannot initialize " + algorithm.jcaName + " signing", e);
+            }
+        }
+
+        byte[] sign(byte[] content) {
+            Signature signature = signatures.get();
+            try {
+                signature.update(content);
+                return signature.sign();
+            } catch (GeneralSecurityException e) {
+                // The instance may be left mid-operation; start over with a fresh one
+                signatures.remove();
+                throw new RuntimeException("Failed to sign with " + algorithm.jcaName + ": " + e.getMessage(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.example.flutto.service;
+
+import com.example.flutto.model.ConfigChangeEvent;
+
+import java.util.function.Consumer;
+
+/**
+ * Transport for provider configuration change events between nodes.
+ * Implementations deliver every published event to every subscriber, including
+ * subscribers on the publishing node; receivers filter by origin themselves.
+ */
+public interface ConfigChangeBus {
+
+    /**
+     * Publishes an event to all nodes sharing this bus
+     */
+    void publish(ConfigChangeEvent event);
+
+    /**
+     * Registers a listener for events published by any node
+     */
+    void subscribe(Consumer<ConfigChangeEvent> listener);
+}
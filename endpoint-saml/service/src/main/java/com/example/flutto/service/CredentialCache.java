@@ -0,0 +1,202 @@
+package com.example.flutto.service;
+
+import java.io.ByteArrayInputStream;
+import java.security.KeyFactory;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Decodes PEM certificates and private keys once and hands out the same instance
+ * for every provider (and every registration) using them. Many tenants of one
+ * IdP, such as Google Workspace, share a signing certificate, and tenants
+ * configured with our own SP credentials all share one key pair.
+ */
+public class CredentialCache {
+
+    private static final String PEM_BEGIN = "-----BEGIN CERTIFICATE-----";
+    private static final String PEM_END = "-----END CERTIFICATE-----";
+
+    // Object identifiers of the PKCS#8 key algorithms we sign with (1.2.840.113549.1.1.1, 1.2.840.10045.2.1)
+    private static final byte[] RSA_OID = {0x2A, (byte) 0x86, 0x48, (byte) 0x86, (byte) 0xF7, 0x0D, 0x01, 0x01, 0x01};
+    private static final byte[] EC_OID = {0x2A, (byte) 0x86, 0x48, (byte) 0xCE, 0x3D, 0x02, 0x01};
+
+    // Keyed by SHA-256 of the DER encoding
+    private final ConcurrentHashMap<String, X509Certificate> certificates = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, PrivateKey> privateKeys = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the decoded certificate, parsing it only if no provider uses it yet
+     */
+    public X509Certificate certificate(String pem) {
+        byte[] der = decodePem(pem, "CERTIFICATE");
+        return certificates.computeIfAbsent(digest(der), key -> parseCertificate(der));
+    }
+
+    /**
+     * Returns every certificate of a PEM bundle, in order; an IdP rolling its
+     * signing key publishes the old and the new certificate side by side
+     */
+    public List<X509Certificate> certificates(String pem) {
+        List<X509Certificate> decoded = new ArrayList<>(1);
+        int start = pem.indexOf(PEM_BEGIN);
+        if (start < 0) {
+            decoded.add(certificate(pem));
+            return decoded;
+        }
+        while (start >= 0) {
+            int end = pem.indexOf(PEM_END, start);
+            if (end < 0) {
+                throw new RuntimeException("Failed to load certificate: unterminated PEM block");
+            }
+            decoded.add(certificate(pem.substring(start, end + PEM_END.length())));
+            start = pem.indexOf(PEM_BEGIN, end);
+        }
+        return decoded;
+    }
+
+    /**
+     * Returns the decoded PKCS#8 RSA or EC private key, parsing it only if no provider uses it yet
+     */
+    public PrivateKey privateKey(String pem) {
+        byte[] der = decodePem(pem, "PRIVATE KEY");
+        return privateKeys.computeIfAbsent(digest(der), key -> parsePrivateKey(der));
+    }
+
+    /**
+     * Forgets everything not among the given live objects
+     */
+    public void retainOnly(Iterable<?> inUse) {
+        Set<Object> live = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Object credential : inUse) {
+            if (credential != null) {
+                live.add(credential);
+            }
+        }
+        certificates.values().removeIf(certificate -> !live.contains(certificate));
+        privateKeys.values().removeIf(key -> !live.contains(key));
+    }
+
+    /**
+     * Number of distinct certificates currently held
+     */
+    public int certificateCount() {
+        return certificates.size();
+    }
+
+    /**
+     * Strips the PEM armour and whitespace and decodes the base64 body
+     */
+    static byte[] decodePem(String pem, String type) {
+        String body = pem
+            .replace("-----BEGIN " + type + "-----", "")
+            .replace("-----END " + type + "-----", "")
+            .replaceAll("\\s", "");
+        return Base64.getDecoder().decode(body);
+    }
+
+    private static X509Certificate parseCertificate(byte[] der) {
+        try {
+            CertificateFactory factory = CertificateFactory.getInstance("X.509");
+            return (X509Certificate) factory.generateCertificate(new ByteArrayInputStream(der));
+        } catch (CertificateException e) {
+            throw new RuntimeException("Failed to load certificate: " + e.getMessage(), e);
+        }
+    }
+
+    private static PrivateKey parsePrivateKey(byte[] der) {
+        try {
+            return KeyFactory.getInstance(keyAlgorithm(der)).generatePrivate(new PKCS8EncodedKeySpec(der));
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to create signing credential: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * JCA name of the key algorithm named by the PKCS#8 AlgorithmIdentifier
+     */
+    static String keyAlgorithm(byte[] der) {
+        // PrivateKeyInfo ::= SEQUENCE { version INTEGER, privateKeyAlgorithm SEQUENCE { algorithm OID, ... }, ... }
+        DerReader reader = new DerReader(der);
+        reader.enter(0x30);
+        reader.skip(0x02);
+        reader.enter(0x30);
+        byte[] oid = reader.read(0x06);
+        if (Arrays.equals(oid, RSA_OID)) {
+            return "RSA";
+        }
+        if (Arrays.equals(oid, EC_OID)) {
+            return "EC";
+        }
+        throw new IllegalArgumentException("unsupported private key algorithm, expected an RSA or EC key");
+    }
+
+    private static String digest(byte[] der) {
+        try {
+            return Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-256").digest(der));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Just enough DER to walk to the key algorithm
+     */
+    private static final class DerReader {
+        private final byte[] der;
+        private int offset;
+
+        DerReader(byte[] der) {
+            this.der = der;
+        }
+
+        /**
+         * Steps into the next element, which must have the given tag, and
+         * returns its content length
+         */
+        int enter(int tag) {
+            if (der.length - offset < 2 || (der[offset++] & 0xFF) != tag) {
+                throw new IllegalArgumentException("malformed PKCS#8 private key");
+            }
+            int length = der[offset++] & 0xFF;
+            if (length > 0x7F) {
+                int octets = length & 0x7F;
+                if (octets == 0 || octets > 3 || octets > der.length - offset) {
+                    throw new IllegalArgumentException("malformed PKCS#8 private key");
+                }
+                length = 0;
+                for (int i = 0; i < octets; i++) {
+                    length = (length << 8) | (der[offset++] & 0xFF);
+                }
+            }
+            if (length > der.length - offset) {
+                throw new IllegalArgumentException("malformed PKCS#8 private key");
+            }
+            return length;
+        }
+
+        void skip(int tag) {
+            int length = enter(tag);
+            offset += length;
+        }
+
+        byte[] read(int tag) {
+            int length = enter(tag);
+            byte[] content = Arrays.copyOfRange(der, offset, offset + length);
+            offset += length;
+            return content;
+        }
+    }
+}
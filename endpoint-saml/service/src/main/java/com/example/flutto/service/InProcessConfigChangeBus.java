@@ -0,0 +1,35 @@
+package com.example.flutto.service;
+
+import com.example.flutto.model.ConfigChangeEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Delivers events synchronously to listeners in the same JVM. Used for
+ * single-node deployments and for wiring several nodes together in tests.
+ */
+public class InProcessConfigChangeBus implements ConfigChangeBus {
+    private static final Logger logger = LoggerFactory.getLogger(InProcessConfigChangeBus.class);
+
+    private final List<Consumer<ConfigChangeEvent>> listeners = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void publish(ConfigChangeEvent event) {
+        for (Consumer<ConfigChangeEvent> listener : listeners) {
+            try {
+                listener.accept(event);
+            } catch (Exception e) {
+                logger.error("Config change listener failed for {}: {}", event, e.getMessage(), e);
+            }
+        }
+    }
+
+    @Override
+    public void subscribe(Consumer<ConfigChangeEvent> listener) {
+        listeners.add(listener);
+    }
+}
@@ -1,67 +1,282 @@
 package com.example.flutto.service;
 
+import com.example.flutto.model.AttributeClaimResolver;
+import com.example.flutto.model.RoleDictionary;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtBuilder;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.security.Keys;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.saml2.provider.service.authentication.Saml2AuthenticatedPrincipal;
 import org.springframework.stereotype.Service;
 
 import javax.crypto.SecretKey;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
 import java.util.stream.Collectors;
 
+/**
+ * Issues and verifies access tokens.
+ *
+ * Tokens come in two profiles. The standard one carries the claims as built
+ * here: username, email, name and a roles list. The compact one, issued when
+ * jwt.claims.compact is set, leaves out username when it repeats the subject,
+ * shortens the well-known claim names, encodes roles as a {@link RoleDictionary}
+ * bitset and uses a shorter token id; its payload can also be DEFLATE-compressed.
+ * Both profiles are accepted whichever one is issued.
+ */
 @Service
 public class JwtService {
 
-    @Value("${jwt.secret}")
-    private String jwtSecret;
+    // Compact profile claims
+    static final String ROLES = "r";
+    static final String ROLE_DICTIONARY_VERSION = "rv";
+    static final String EXTRA_ROLES = "rx";
+    private static final Map<String, String> COMPACT_NAMES = Map.of(
+        "username", "u",
+        "email", "e",
+        "name", "n",
+        "firstName", "g",
+        "lastName", "f");
+    // Names no claim mapped from assertion attributes may take: a mapping named
+    // "rx" would otherwise let an IdP attribute inject roles into compact tokens
+    private static final Set<String> RESERVED_CLAIMS = reservedClaims();
 
-    @Value("${jwt.expiration}")
-    private Long jwtExpiration;
+    private final TokenRevocationService revocationService;
+    private final long jwtExpiration;
+    private final boolean compact;
+    private final boolean compress;
+    private final RoleDictionary roleDictionary;
+    private final SecretKey signingKey;
+    // Immutable and thread-safe, so built once rather than per request
+    private final JwtParser parser;
 
-    private SecretKey getSigningKey() {
-        return Keys.hmacShaKeyFor(jwtSecret.getBytes(StandardCharsets.UTF_8));
+    public JwtService(TokenRevocationService revocationService,
+                      @Value("${jwt.secret}") String jwtSecret,
+                      @Value("${jwt.expiration}") long jwtExpiration,
+                      @Value("${jwt.claims.compact:true}") boolean compact,
+                      @Value("${jwt.claims.compress:false}") boolean compress,
+                      @Value("${jwt.claims.role-dictionary.version:1}") int roleDictionaryVersion,
+                      @Value("${jwt.claims.role-dictionary.roles:ROLE_USER,ROLE_ADMIN}") List<String> roles) {
+        this.revocationService = revocationService;
+        this.jwtExpiration = jwtExpiration;
+        this.compact = compact;
+        this.compress = compress;
+        this.roleDictionary = new RoleDictionary(roleDictionaryVersion, roles);
+        this.signingKey = Keys.hmacShaKeyFor(jwtSecret.getBytes(StandardCharsets.UTF_8));
+        this.parser = Jwts.parser().verifyWith(signingKey).build();
     }
 
     public String generateToken(Authentication authentication) {
         Saml2AuthenticatedPrincipal principal = (Saml2AuthenticatedPrincipal) authentication.getPrincipal();
+        return generateAccessToken(principal.getName(), buildClaims(authentication));
+    }
+
+    /**
+     * Collects the claims carried by access tokens for a SAML-authenticated user,
+     * using the default attribute names
+     */
+    public Map<String, Object> buildClaims(Authentication authentication) {
+        return buildClaims(authentication, AttributeClaimResolver.DEFAULT);
+    }
+
+    /**
+     * Collects the claims carried by access tokens for a SAML-authenticated user,
+     * mapping assertion attributes with the provider's resolver
+     */
+    public Map<String, Object> buildClaims(Authentication authentication, AttributeClaimResolver claimResolver) {
+        Saml2AuthenticatedPrincipal principal = (Saml2AuthenticatedPrincipal) authentication.getPrincipal();
         
-        Map<String, Object> claims = new HashMap<>();
-        claims.put("username", principal.getName());
-        claims.put("email", principal.getFirstAttribute("http://schemas.xmlsoap.org/ws/2005/05/identity/claims/emailaddress"));
-        claims.put("name", principal.getFirstAttribute("http://schemas.xmlsoap.org/ws/2005/05/identity/claims/name"));
+        Map<String, Object> claims = claimResolver.resolve(principal.getAttributes());
+        claims.putIfAbsent("username", principal.getName());
+        if (!claims.containsKey("name") && (claims.containsKey("firstName") || claims.containsKey("lastName"))) {
+            claims.put("name", (claims.getOrDefault("firstName", "") + " " + claims.getOrDefault("lastName", "")).trim());
+        }
         claims.put("roles", authentication.getAuthorities().stream()
                 .map(authority -> authority.getAuthority())
                 .collect(Collectors.toList()));
+        return claims;
+    }
 
-        return Jwts.builder()
-                .claims(claims)
-                .subject(principal.getName())
+    /**
+     * Issues a short-lived access token; used both after SAML login and on refresh.
+     * Takes the claims in their standard form and compacts them if so configured.
+     */
+    public String generateAccessToken(String subject, Map<String, Object> claims) {
+        JwtBuilder builder = Jwts.builder()
+                .claims(compact ? compactClaims(subject, claims) : claims)
+                .id(compact ? shortTokenId() : UUID.randomUUID().toString())
+                .subject(subject)
                 .issuedAt(new Date())
                 .expiration(new Date(System.currentTimeMillis() + jwtExpiration))
-                .signWith(getSigningKey())
-                .compact();
+                .signWith(signingKey);
+        if (compress) {
+            builder.compressWith(Jwts.ZIP.DEF);
+        }
+        return builder.compact();
+    }
+
+    /**
+     * Whether the name is one of the compact profile's own claims, which
+     * attribute mappings must not produce
+     */
+    static boolean isReservedClaim(String name) {
+        return RESERVED_CLAIMS.contains(name);
+    }
+
+    private static Set<String> reservedClaims() {
+        Set<String> reserved = new HashSet<>(COMPACT_NAMES.values());
+        reserved.add(ROLES);
+        reserved.add(ROLE_DICTIONARY_VERSION);
+        reserved.add(EXTRA_ROLES);
+        return Set.copyOf(reserved);
+    }
+
+    private Map<String, Object> compactClaims(String subject, Map<String, Object> claims) {
+        Map<String, Object> compacted = new HashMap<>();
+        for (Map.Entry<String, Object> claim : claims.entrySet()) {
+            String name = claim.getKey();
+            if ("roles".equals(name) || ("username".equals(name) && subject.equals(claim.getValue()))) {
+                continue;
+            }
+            if (RESERVED_CLAIMS.contains(name)) {
+                // Never let a custom claim stand in for a compact one
+                continue;
+            }
+            compacted.put(COMPACT_NAMES.getOrDefault(name, name), claim.getValue());
+        }
+        if (claims.get("roles") instanceof Collection<?> roles) {
+            List<String> roleNames = roles.stream().map(String::valueOf).collect(Collectors.toList());
+            compacted.put(ROLES, roleDictionary.encode(roleNames));
+            compacted.put(ROLE_DICTIONARY_VERSION, roleDictionary.getVersion());
+            List<String> extra = roleDictionary.unknown(roleNames);
+            if (!extra.isEmpty()) {
+                compacted.put(EXTRA_ROLES, extra);
+            }
+        }
+        return compacted;
+    }
+
+    /**
+     * 128 random bits as 22 base64url characters instead of a 36-character UUID
+     */
+    private static String shortTokenId() {
+        UUID uuid = UUID.randomUUID();
+        ByteBuffer bytes = ByteBuffer.allocate(16)
+                .putLong(uuid.getMostSignificantBits())
+                .putLong(uuid.getLeastSignificantBits());
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.array());
+    }
+
+    /**
+     * Access token lifetime in milliseconds
+     */
+    public long getAccessTokenExpiration() {
+        return jwtExpiration;
     }
 
     public Claims extractClaims(String token) {
-        return Jwts.parser()
-                .verifyWith(getSigningKey())
-                .build()
-                .parseSignedClaims(token)
-                .getPayload();
+        return parser.parseSignedClaims(token).getPayload();
+    }
+
+    /**
+     * Claims of a token that verifies, has not expired or been revoked, and if
+     * compact was minted against the current role dictionary; null otherwise
+     */
+    public Claims validClaims(String token) {
+        try {
+            Claims claims = extractClaims(token);
+            if (claims.getExpiration().before(new Date()) || revocationService.isRevoked(claims.getId())) {
+                return null;
+            }
+            if (claims.containsKey(ROLES) && !isCurrentDictionary(claims.get(ROLE_DICTIONARY_VERSION))) {
+                // The bitset cannot be read; the client's refresh token mints a new access token
+                return null;
+            }
+            return claims;
+        } catch (Exception e) {
+            return null;
+        }
     }
 
     public boolean isTokenValid(String token) {
+        return validClaims(token) != null;
+    }
+
+    private boolean isCurrentDictionary(Object version) {
+        return version instanceof Number number && number.intValue() == roleDictionary.getVersion();
+    }
+
+    /**
+     * Shared authorities for the roles of a valid token, from either profile.
+     * Tokens without roles get ROLE_USER.
+     */
+    public List<GrantedAuthority> authorities(Claims claims) {
+        Object bitset = claims.get(ROLES);
+        if (bitset instanceof Number number) {
+            List<GrantedAuthority> authorities = roleDictionary.authorities(number.longValue());
+            if (claims.get(EXTRA_ROLES) instanceof Collection<?> extra) {
+                authorities = new ArrayList<>(authorities);
+                for (Object role : extra) {
+                    authorities.add(roleDictionary.authority(String.valueOf(role)));
+                }
+            }
+            return authorities;
+        }
+        if (claims.get("roles") instanceof Collection<?> roles) {
+            return roleDictionary.authorities(roles.stream().map(String::valueOf).collect(Collectors.toList()));
+        }
+        return List.of(roleDictionary.authority("ROLE_USER"));
+    }
+
+    /**
+     * The user details of a valid token under their standard claim names:
+     * username, email, name and roles
+     */
+    public Map<String, Object> userInfo(Claims claims) {
+        Map<String, Object> info = new HashMap<>();
+        info.put("username", claim(claims, "username") != null ? claim(claims, "username") : claims.getSubject());
+        info.put("email", claim(claims, "email"));
+        info.put("name", claim(claims, "name"));
+        info.put("roles", authorities(claims).stream().map(GrantedAuthority::getAuthority).collect(Collectors.toList()));
+        return info;
+    }
+
+    /**
+     * A claim by its standard name, from a token of either profile
+     */
+    private static Object claim(Claims claims, String standardName) {
+        Object value = claims.get(standardName);
+        return value != null ? value : claims.get(COMPACT_NAMES.get(standardName));
+    }
+
+    /**
+     * Revokes a token so it is rejected until it would have expired anyway.
+     * Invalid or already expired tokens are ignored.
+     *
+     * @return the subject of the revoked token, or null if nothing was revoked
+     */
+    public String revokeToken(String token) {
         try {
             Claims claims = extractClaims(token);
-            return !claims.getExpiration().before(new Date());
+            revocationService.revoke(claims.getId(), claims.getExpiration().getTime());
+            return claims.getSubject();
         } catch (Exception e) {
-            return false;
+            // Nothing to revoke: the token is already unusable
+            return null;
         }
     }
 
@@ -70,6 +285,6 @@ public class JwtService {
     }
 
     public String extractEmail(String token) {
-        return (String) extractClaims(token).get("email");
+        return (String) claim(extractClaims(token), "email");
     }
 }
\ No newline at end of file
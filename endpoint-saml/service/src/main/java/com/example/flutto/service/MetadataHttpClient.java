@@ -0,0 +1,312 @@
+package com.example.flutto.service;
+
+import com.example.flutto.jfr.MetadataFetchEvent;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Outbound client for IdP metadata. Every fetch is bounded: connect and read
+ * timeouts plus an overall deadline, a maximum body size, and at most a few
+ * concurrent fetches per host. A host that keeps failing gets its circuit
+ * opened and is not contacted again until the open period has passed, after
+ * which a single trial fetch decides whether it closes.
+ *
+ * The body is handed to the caller as a stream so it can be parsed without
+ * first being buffered into a String.
+ */
+@Service
+public class MetadataHttpClient implements MeterBinder {
+    private static final Logger logger = LoggerFactory.getLogger(MetadataHttpClient.class);
+
+    /**
+     * Consumes the response body; the stream is bounded and closed afterwards
+     */
+    @FunctionalInterface
+    public interface BodyReader<T> {
+        T read(InputStream body) throws Exception;
+    }
+
+    private final RestTemplate restTemplate;
+    private final long totalTimeoutMillis;
+    private final long maxResponseBytes;
+    private final int maxConcurrentPerHost;
+    private final long bulkheadWaitMillis;
+    private final int failureThreshold;
+    private final long openMillis;
+
+    private final Map<String, Semaphore> bulkheads = new ConcurrentHashMap<>();
+    private final Map<String, CircuitBreaker> circuits = new ConcurrentHashMap<>();
+    private final AtomicLong bulkheadRejections = new AtomicLong();
+    private final AtomicLong circuitRejections = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    public MetadataHttpClient(@Value("${saml.metadata.http.connect-timeout-ms:5000}") int connectTimeoutMillis,
+                              @Value("${saml.metadata.http.read-timeout-ms:10000}") int readTimeoutMillis,
+                              @Value("${saml.metadata.http.total-timeout-ms:30000}") long totalTimeoutMillis,
+                              @Value("${saml.metadata.http.max-response-bytes:5242880}") long maxResponseBytes,
+                              @Value("${saml.metadata.http.max-concurrent-per-host:2}") int maxConcurrentPerHost,
+                              @Value("${saml.metadata.http.bulkhead-wait-ms:0}") long bulkheadWaitMillis,
+                              @Value("${saml.metadata.http.circuit.failure-threshold:3}") int failureThreshold,
+                              @Value("${saml.metadata.http.circuit.open-ms:60000}") long openMillis) {
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout(connectTimeoutMillis);
+        requestFactory.setReadTimeout(readTimeoutMillis);
+        this.restTemplate = new RestTemplate(requestFactory);
+        // Status is checked while reading, so error bodies are never buffered
+        this.restTemplate.setErrorHandler(response -> false);
+        this.totalTimeoutMillis = totalTimeoutMillis;
+        this.maxResponseBytes = maxResponseBytes;
+        this.maxConcurrentPerHost = maxConcurrentPerHost;
+        this.bulkheadWaitMillis = bulkheadWaitMillis;
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+    }
+
+    /**
+     * Fetches the URL and passes the body to the reader. Throws if the host's
+     * circuit is open, its bulkhead is full, or the fetch fails or exceeds a limit.
+     */
+    public <T> T fetch(String url, BodyReader<T> reader) {
+        return fetch(null, url, reader);
+    }
+
+    /**
+     * Fetches metadata for a provider, recording the fetch as a JFR event
+     * under its registration id; null when no provider is involved yet
+     */
+    public <T> T fetch(String registrationId, String url, BodyReader<T> reader) {
+        URI uri = URI.create(url);
+        String host = uri.getAuthority();
+        if (host == null) {
+            throw new IllegalArgumentException("Metadata URL has no host: " + url);
+        }
+
+        MetadataFetchEvent event = new MetadataFetchEvent();
+        event.begin();
+        try {
+            T result = fetch(uri, host, reader, event);
+            event.success = true;
+            return result;
+        } finally {
+            if (event.shouldCommit()) {
+                event.registrationId = registrationId;
+                event.host = host;
+                event.commit();
+            }
+        }
+    }
+
+    private <T> T fetch(URI uri, String host, BodyReader<T> reader, MetadataFetchEvent event) {
+        CircuitBreaker circuit = circuits.computeIfAbsent(host, h -> new CircuitBreaker());
+        if (!circuit.tryAcquire()) {
+            circuitRejections.incrementAndGet();
+            throw new RuntimeException("Metadata fetches to " + host + " are suspended after repeated failures");
+        }
+
+        Semaphore bulkhead = bulkheads.computeIfAbsent(host, h -> new Semaphore(maxConcurrentPerHost));
+        boolean permitted;
+        try {
+            permitted = bulkhead.tryAcquire(bulkheadWaitMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            permitted = false;
+        }
+        if (!permitted) {
+            circuit.release();
+            bulkheadRejections.incrementAndGet();
+            throw new RuntimeException("Too many concurrent metadata fetches to " + host);
+        }
+
+        try {
+            T result = restTemplate.execute(uri, HttpMethod.GET, null, response -> read(uri, response, reader, event));
+            circuit.recordSuccess();
+            return result;
+        } catch (RuntimeException e) {
+            failures.incrementAndGet();
+            if (circuit.recordFailure()) {
+                logger.warn("Opening metadata circuit for {} for {} s after repeated failures", host, openMillis / 1000);
+            }
+            throw e;
+        } finally {
+            bulkhead.release();
+        }
+    }
+
+    private <T> T read(URI uri, ClientHttpResponse response, BodyReader<T> reader, MetadataFetchEvent event)
+            throws IOException {
+        event.status = response.getStatusCode().value();
+        if (response.getStatusCode().isError()) {
+            throw new RuntimeException("Metadata fetch from " + uri + " returned HTTP " + response.getStatusCode().value());
+        }
+        long contentLength = response.getHeaders().getContentLength();
+        if (contentLength > maxResponseBytes) {
+            throw new RuntimeException("Metadata at " + uri + " is " + contentLength
+                + " bytes, over the limit of " + maxResponseBytes);
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(totalTimeoutMillis);
+        BoundedInputStream body = new BoundedInputStream(response.getBody(), uri, maxResponseBytes, deadline);
+        try (body) {
+            return reader.read(body);
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to read metadata from " + uri + ": " + e.getMessage(), e);
+        } finally {
+            event.responseBytes = body.count;
+        }
+    }
+
+    /**
+     * Hosts whose circuit is currently open or waiting on a trial fetch
+     */
+    public Set<String> openCircuits() {
+        return circuits.entrySet().stream()
+            .filter(entry -> entry.getValue().isOpen())
+            .map(Map.Entry::getKey)
+            .collect(Collectors.toSet());
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("saml.metadata.fetch.circuits.open", this, client -> client.openCircuits().size())
+            .description("Metadata hosts currently not being contacted after repeated failures")
+            .register(registry);
+        FunctionCounter.builder("saml.metadata.fetch.rejected", circuitRejections, AtomicLong::get)
+            .tag("reason", "circuit-open")
+            .register(registry);
+        FunctionCounter.builder("saml.metadata.fetch.rejected", bulkheadRejections, AtomicLong::get)
+            .tag("reason", "bulkhead-full")
+            .register(registry);
+        FunctionCounter.builder("saml.metadata.fetch.failures", failures, AtomicLong::get)
+            .register(registry);
+    }
+
+    /**
+     * Consecutive-failure breaker. Open for a fixed period, then lets a single
+     * trial fetch through; its outcome closes or re-opens the circuit.
+     */
+    private final class CircuitBreaker {
+        private int consecutiveFailures;
+        private long openedAt;
+        private boolean open;
+        private boolean trialInFlight;
+
+        synchronized boolean tryAcquire() {
+            if (!open) {
+                return true;
+            }
+            if (trialInFlight || System.currentTimeMillis() - openedAt < openMillis) {
+                return false;
+            }
+            trialInFlight = true;
+            return true;
+        }
+
+        // The acquired call never reached the host
+        synchronized void release() {
+            trialInFlight = false;
+        }
+
+        synchronized void recordSuccess() {
+            consecutiveFailures = 0;
+            open = false;
+            trialInFlight = false;
+        }
+
+        // Returns true when this failure opened the circuit
+        synchronized boolean recordFailure() {
+            consecutiveFailures++;
+            boolean wasOpen = open;
+            if (trialInFlight || consecutiveFailures >= failureThreshold) {
+                open = true;
+                openedAt = System.currentTimeMillis();
+            }
+            trialInFlight = false;
+            return open && !wasOpen;
+        }
+
+        synchronized boolean isOpen() {
+            return open;
+        }
+    }
+
+    /**
+     * Fails the read once the body passes the size limit or the overall deadline
+     */
+    private static final class BoundedInputStream extends FilterInputStream {
+        private final URI uri;
+        private final long maxBytes;
+        private final long deadline;
+        private long count;
+
+        BoundedInputStream(InputStream in, URI uri, long maxBytes, long deadline) {
+            super(in);
+            this.uri = uri;
+            this.maxBytes = maxBytes;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public int read() throws IOException {
+            checkDeadline();
+            int b = super.read();
+            if (b >= 0) {
+                count(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            checkDeadline();
+            int n = super.read(buffer, offset, length);
+            if (n > 0) {
+                count(n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            checkDeadline();
+            long skipped = super.skip(n);
+            count(skipped);
+            return skipped;
+        }
+
+        private void count(long n) throws IOException {
+            count += n;
+            if (count > maxBytes) {
+                throw new IOException("Metadata at " + uri + " exceeds the limit of " + maxBytes + " bytes");
+            }
+        }
+
+        private void checkDeadline() throws IOException {
+            if (System.nanoTime() - deadline > 0) {
+                throw new IOException("Metadata fetch from " + uri + " took too long");
+            }
+        }
+    }
+}
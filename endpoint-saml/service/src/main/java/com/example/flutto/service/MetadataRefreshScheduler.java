@@ -0,0 +1,296 @@
+package com.example.flutto.service;
+
+import com.example.flutto.model.CompiledSamlProvider;
+import com.example.flutto.model.SamlProviderConfig;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.w3c.dom.Document;
+
+import java.security.cert.X509Certificate;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Gives every provider its own refresh schedule instead of refreshing all of
+ * them at once.
+ *
+ * Providers with a metadata URL are re-fetched when their metadata says it
+ * should be: three quarters of the way to the earlier of validUntil and
+ * cacheDuration, clamped to the configured bounds and jittered so providers
+ * (and nodes) drift apart. A failed fetch is retried with exponential backoff.
+ * When the fetched metadata carries a new certificate or endpoint, the stored
+ * provider is updated, which also propagates the change to the other nodes.
+ *
+ * Providers with pasted metadata XML cannot be re-fetched; they get a single
+ * check at their validUntil that warns the metadata has expired.
+ */
+@Service
+public class MetadataRefreshScheduler {
+    private static final Logger logger = LoggerFactory.getLogger(MetadataRefreshScheduler.class);
+
+    private final SamlConfigurationService configService;
+    private final SamlMetadataService metadataService;
+    private final long minIntervalMillis;
+    private final long maxIntervalMillis;
+    private final long defaultIntervalMillis;
+    private final long initialDelayMaxMillis;
+    private final long backoffBaseMillis;
+    private final long backoffMaxMillis;
+    private final double jitter;
+
+    private final ScheduledThreadPoolExecutor executor;
+    private final Map<String, ScheduledFuture<?>> scheduled = new ConcurrentHashMap<>();
+    // Whether each provider was scheduled for re-fetching (true) or only for an expiry check
+    private final Map<String, Boolean> fetchable = new ConcurrentHashMap<>();
+    private final Map<String, Integer> failures = new ConcurrentHashMap<>();
+    private volatile Consumer<String> updateListener = id -> { };
+
+    public MetadataRefreshScheduler(SamlConfigurationService configService,
+                                    SamlMetadataService metadataService,
+                                    @Value("${saml.metadata.refresh.min-interval-ms:300000}") long minIntervalMillis,
+                                    @Value("${saml.metadata.refresh.max-interval-ms:86400000}") long maxIntervalMillis,
+                                    @Value("${saml.metadata.refresh.default-interval-ms:14400000}") long defaultIntervalMillis,
+                                    @Value("${saml.metadata.refresh.initial-delay-max-ms:60000}") long initialDelayMaxMillis,
+                                    @Value("${saml.metadata.refresh.backoff-base-ms:30000}") long backoffBaseMillis,
+                                    @Value("${saml.metadata.refresh.backoff-max-ms:3600000}") long backoffMaxMillis,
+                                    @Value("${saml.metadata.refresh.jitter:0.1}") double jitter,
+                                    @Value("${saml.metadata.refresh.threads:2}") int threads) {
+        this.configService = configService;
+        this.metadataService = metadataService;
+        this.minIntervalMillis = minIntervalMillis;
+        this.maxIntervalMillis = maxIntervalMillis;
+        this.defaultIntervalMillis = defaultIntervalMillis;
+        this.initialDelayMaxMillis = initialDelayMaxMillis;
+        this.backoffBaseMillis = backoffBaseMillis;
+        this.backoffMaxMillis = backoffMaxMillis;
+        this.jitter = jitter;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ScheduledThreadPoolExecutor(threads, runnable -> {
+            Thread thread = new Thread(runnable, "saml-metadata-refresh-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.executor.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Called with the provider id after a refresh changed a provider's stored configuration
+     */
+    public void onProviderUpdated(Consumer<String> listener) {
+        this.updateListener = listener;
+    }
+
+    /**
+     * Schedules providers that are new and cancels those that are gone. Providers
+     * already scheduled keep their slot, so a config change does not bunch them up.
+     */
+    public void sync(List<CompiledSamlProvider> providers) {
+        Set<String> live = new HashSet<>();
+        for (CompiledSamlProvider provider : providers) {
+            String id = provider.getId();
+            live.add(id);
+            boolean canFetch = isFetchable(provider);
+            Boolean previous = fetchable.put(id, canFetch);
+            if (previous != null && previous == canFetch) {
+                continue;
+            }
+            if (previous != null) {
+                // Switched between URL and pasted metadata
+                ScheduledFuture<?> pending = scheduled.remove(id);
+                if (pending != null) {
+                    pending.cancel(false);
+                }
+            }
+            if (canFetch) {
+                schedule(id, ThreadLocalRandom.current().nextLong(Math.max(1, initialDelayMaxMillis)));
+            } else {
+                scheduleExpiryCheck(provider);
+            }
+        }
+        fetchable.keySet().stream()
+            .filter(id -> !live.contains(id))
+            .toList()
+            .forEach(this::cancel);
+    }
+
+    /**
+     * Number of providers with a pending refresh or expiry check
+     */
+    public int scheduledCount() {
+        return scheduled.size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void schedule(String providerId, long delayMillis) {
+        ScheduledFuture<?> future = executor.schedule(() -> run(providerId), delayMillis, TimeUnit.MILLISECONDS);
+        ScheduledFuture<?> previous = scheduled.put(providerId, future);
+        if (previous != null && previous != future) {
+            previous.cancel(false);
+        }
+    }
+
+    private void cancel(String providerId) {
+        ScheduledFuture<?> future = scheduled.remove(providerId);
+        if (future != null) {
+            future.cancel(false);
+        }
+        failures.remove(providerId);
+        fetchable.remove(providerId);
+    }
+
+    private void run(String providerId) {
+        Optional<CompiledSamlProvider> current = configService.getCompiledProvider(providerId);
+        if (current.isEmpty() || !current.get().isEnabled()) {
+            cancel(providerId);
+            return;
+        }
+        CompiledSamlProvider provider = current.get();
+
+        if (!isFetchable(provider)) {
+            scheduled.remove(providerId);
+            // Re-imported metadata may carry a later validUntil than the one this check was set for
+            scheduleExpiryCheck(provider);
+            return;
+        }
+
+        long nextDelay;
+        try {
+            Document metadata = metadataService.fetchMetadata(providerId, provider.getMetadataUrl());
+            applyMetadata(provider, metadata);
+            failures.remove(providerId);
+            nextDelay = refreshDelay(metadataService.metadataExpiry(metadata).orElse(null));
+        } catch (Exception e) {
+            int attempt = failures.merge(providerId, 1, Integer::sum);
+            nextDelay = backoffDelay(attempt);
+            logger.warn("Metadata refresh for SAML provider {} failed (attempt {}), retrying in {} s: {}",
+                providerId, attempt, nextDelay / 1000, e.getMessage());
+        }
+        if (!executor.isShutdown()) {
+            schedule(providerId, nextDelay);
+        }
+    }
+
+    /**
+     * Copies the IdP details from fetched metadata into the stored provider when
+     * they changed. New signing certificates are only taken from metadata that
+     * could not have been tampered with on the way; see {@link #acceptsTrustChange}.
+     */
+    private void applyMetadata(CompiledSamlProvider current, Document metadata) throws Exception {
+        String providerId = current.getId();
+        SamlProviderConfig fetched = new SamlProviderConfig();
+        fetched.setId(providerId);
+        fetched.setMetadataSource("url");
+        metadataService.parseMetadataDocument(metadata, fetched);
+
+        Optional<SamlProviderConfig> stored = configService.getProviderById(providerId);
+        if (stored.isEmpty()) {
+            return;
+        }
+        SamlProviderConfig provider = stored.get();
+        boolean changed = false;
+        if (fetched.getIdpCertificate() != null
+                && !normalize(fetched.getIdpCertificate()).equals(normalize(provider.getIdpCertificate()))) {
+            if (acceptsTrustChange(current.getMetadataUrl(), metadata, current.getIdpCertificates())) {
+                provider.setIdpCertificate(fetched.getIdpCertificate());
+                changed = true;
+            } else {
+                logger.warn("Metadata of SAML provider {} lists different IdP certificates, but it was fetched over "
+                    + "plain http without a signature from a trusted key; keeping the current certificates", providerId);
+            }
+        }
+        if (fetched.getIdpLoginUrl() != null && !fetched.getIdpLoginUrl().equals(provider.getIdpLoginUrl())) {
+            provider.setIdpLoginUrl(fetched.getIdpLoginUrl());
+            changed = true;
+        }
+        if (fetched.getIdpLogoutUrl() != null && !Objects.equals(fetched.getIdpLogoutUrl(), provider.getIdpLogoutUrl())) {
+            provider.setIdpLogoutUrl(fetched.getIdpLogoutUrl());
+            changed = true;
+        }
+
+        if (changed) {
+            logger.info("IdP metadata of SAML provider {} changed, updating", providerId);
+            configService.saveProvider(provider);
+            updateListener.accept(providerId);
+        } else {
+            logger.debug("IdP metadata of SAML provider {} unchanged", providerId);
+        }
+    }
+
+    /**
+     * Signing certificates decide whose responses are trusted, so they are only
+     * replaced from metadata fetched over https or signed by a certificate the
+     * provider already trusts, as an IdP does when announcing its next key
+     */
+    boolean acceptsTrustChange(String metadataUrl, Document metadata, List<X509Certificate> trusted) {
+        return metadataUrl.regionMatches(true, 0, "https://", 0, "https://".length())
+            || metadataService.isSignedBy(metadata, trusted);
+    }
+
+    private boolean isFetchable(CompiledSamlProvider provider) {
+        return "url".equals(provider.getMetadataSource())
+            && provider.getMetadataUrl() != null && !provider.getMetadataUrl().isEmpty();
+    }
+
+    // Pasted metadata cannot be re-fetched, so the best we can do is say when it has expired
+    private void scheduleExpiryCheck(CompiledSamlProvider provider) {
+        Instant validUntil = provider.getMetadataValidUntil();
+        if (validUntil == null) {
+            return;
+        }
+        long delay = validUntil.toEpochMilli() - System.currentTimeMillis();
+        if (delay > 0) {
+            schedule(provider.getId(), delay);
+        } else {
+            logger.warn("Metadata of SAML provider {} expired at {}; re-import it to pick up IdP changes",
+                provider.getId(), validUntil);
+        }
+    }
+
+    long refreshDelay(Instant expiry) {
+        long interval = defaultIntervalMillis;
+        if (expiry != null) {
+            interval = (expiry.toEpochMilli() - System.currentTimeMillis()) * 3 / 4;
+        }
+        interval = Math.max(minIntervalMillis, Math.min(maxIntervalMillis, interval));
+        return jittered(interval);
+    }
+
+    long backoffDelay(int attempt) {
+        long delay = backoffBaseMillis << Math.min(attempt - 1, 20);
+        return jittered(Math.min(backoffMaxMillis, delay));
+    }
+
+    private long jittered(long millis) {
+        double factor = 1 + (ThreadLocalRandom.current().nextDouble() * 2 - 1) * jitter;
+        return Math.max(0, (long) (millis * factor));
+    }
+
+    private static String normalize(String pem) {
+        if (pem == null) {
+            return "";
+        }
+        return pem.replace("-----BEGIN CERTIFICATE-----", "")
+            .replace("-----END CERTIFICATE-----", "")
+            .replaceAll("\\s", "");
+    }
+}
@@ -0,0 +1,336 @@
+package com.example.flutto.service;
+
+import com.example.flutto.model.CompiledSamlProvider;
+import com.example.flutto.model.ConfigChangeEvent;
+import com.example.flutto.model.ProviderEvent;
+import com.example.flutto.model.SamlProviderConfig;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Pushes provider changes to admin clients as server-sent events.
+ *
+ * Every event gets an id of the form "&lt;stream&gt;-&lt;sequence&gt;" and is kept
+ * in a bounded in-memory log. A client reconnecting with Last-Event-ID gets the
+ * events it missed replayed from the log; if they are no longer there (or the
+ * id is from before a restart) it gets a RESYNC event and reloads the list.
+ *
+ * Recording and replay run on one thread, so a new subscriber cannot miss an
+ * event published while its backlog is being queued. That thread only hands
+ * events to a bounded queue per subscriber, which a sender thread of its own
+ * drains; a client whose queue fills up is sent a RESYNC and disconnected, and
+ * reconnects with the RESYNC's id, so one slow client delays neither the others
+ * nor the admin request or refresh that caused an event.
+ */
+@Service
+public class ProviderEventStream {
+    private static final Logger logger = LoggerFactory.getLogger(ProviderEventStream.class);
+
+    private final SamlConfigurationService configService;
+    private final int logSize;
+    private final long emitterTimeoutMillis;
+    private final int subscriberQueue;
+    // Distinguishes this process's event ids from those of an earlier run
+    private final String streamId = Long.toString(System.currentTimeMillis(), 36);
+    private final ScheduledThreadPoolExecutor executor;
+    // Senders block on slow connections, so each busy subscriber gets a thread while it has events queued
+    private final ExecutorService senders = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "provider-events-send");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+
+    // Executor thread only
+    private final Deque<ProviderEvent> log = new ArrayDeque<>();
+    private long sequence;
+
+    public ProviderEventStream(SamlConfigurationService configService, ConfigChangeBus changeBus,
+                               @Value("${saml.admin.events.log-size:1000}") int logSize,
+                               @Value("${saml.admin.events.timeout-ms:1800000}") long emitterTimeoutMillis,
+                               @Value("${saml.admin.events.heartbeat-ms:15000}") long heartbeatMillis,
+                               @Value("${saml.admin.events.subscriber-queue:256}") int subscriberQueue) {
+        this.configService = configService;
+        this.logSize = Math.max(1, logSize);
+        this.emitterTimeoutMillis = emitterTimeoutMillis;
+        this.subscriberQueue = Math.max(2, subscriberQueue);
+        this.executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "provider-events");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Keeps idle connections open through proxies
+        this.executor.scheduleWithFixedDelay(this::heartbeat, heartbeatMillis, heartbeatMillis, TimeUnit.MILLISECONDS);
+        // Changes from every node, this one included, arrive on the bus
+        changeBus.subscribe(this::onConfigChange);
+    }
+
+    /**
+     * Opens a stream for an admin client, first replaying what it missed since lastEventId
+     */
+    public SseEmitter subscribe(String lastEventId) {
+        return subscribe(lastEventId, new SseEmitter(emitterTimeoutMillis));
+    }
+
+    SseEmitter subscribe(String lastEventId, SseEmitter emitter) {
+        Subscriber subscriber = new Subscriber(emitter);
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(() -> subscribers.remove(subscriber));
+        emitter.onError(error -> subscribers.remove(subscriber));
+        executor.execute(() -> {
+            List<ProviderEvent> backlog = lastEventId != null ? backlog(lastEventId) : List.of();
+            if (backlog.size() >= subscriberQueue) {
+                // Replaying would overflow the queue straight away; a reload is cheaper
+                backlog = List.of(resync());
+            }
+            for (ProviderEvent event : backlog) {
+                subscriber.enqueue(event);
+            }
+            subscribers.add(subscriber);
+        });
+        return emitter;
+    }
+
+    public void registrationBuilt(String providerId, long configVersion) {
+        executor.execute(() -> record(ProviderEvent.Type.REGISTRATION_BUILT, providerId, configVersion, null, null));
+    }
+
+    public void registrationFailed(String providerId, long configVersion, String error) {
+        executor.execute(() -> record(ProviderEvent.Type.REGISTRATION_FAILED, providerId, configVersion, null, error));
+    }
+
+    /**
+     * What a client resuming from lastEventId would be sent before live events
+     */
+    List<ProviderEvent> eventsAfter(String lastEventId) {
+        try {
+            return executor.submit(() -> backlog(lastEventId)).get();
+        } catch (Exception e) {
+            throw new IllegalStateException("Could not read the event log", e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+        senders.shutdownNow();
+        subscribers.forEach(subscriber -> subscriber.emitter.complete());
+    }
+
+    private void onConfigChange(ConfigChangeEvent change) {
+        executor.execute(() -> {
+            switch (change.getType()) {
+                case UPSERT -> record(ProviderEvent.Type.PROVIDER_UPSERTED, change.getProviderId(),
+                    change.getVersion(), summary(change.getProviderId(), change.getVersion()), null);
+                case DELETE -> record(ProviderEvent.Type.PROVIDER_DELETED, change.getProviderId(),
+                    change.getVersion(), null, null);
+                case RESYNC -> record(ProviderEvent.Type.RESYNC, null, change.getVersion(), null, null);
+                case TOKEN_REVOKED -> {
+                    // Not a provider change
+                }
+            }
+        });
+    }
+
+    private void record(ProviderEvent.Type type, String providerId, long configVersion,
+                        Map<String, Object> provider, String error) {
+        ProviderEvent event = new ProviderEvent(streamId + "-" + (++sequence), type, providerId,
+            configVersion, provider, error);
+        log.addLast(event);
+        while (log.size() > logSize) {
+            log.removeFirst();
+        }
+        for (Subscriber subscriber : subscribers) {
+            subscriber.enqueue(event);
+        }
+    }
+
+    // Events after lastEventId, or a lone RESYNC when they cannot all be replayed
+    private List<ProviderEvent> backlog(String lastEventId) {
+        long last = parseSequence(lastEventId);
+        ProviderEvent oldest = log.peekFirst();
+        long oldestSequence = oldest != null ? parseSequence(oldest.getId()) : sequence + 1;
+        if (last < 0 || last > sequence || last + 1 < oldestSequence) {
+            return List.of(resync());
+        }
+        List<ProviderEvent> missed = new ArrayList<>();
+        for (ProviderEvent event : log) {
+            if (parseSequence(event.getId()) > last) {
+                missed.add(event);
+            }
+        }
+        return missed;
+    }
+
+    private long parseSequence(String eventId) {
+        int dash = eventId.lastIndexOf('-');
+        if (dash < 0 || !eventId.substring(0, dash).equals(streamId)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(eventId.substring(dash + 1));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // Carries the newest id, so a client resuming from it is replayed nothing it reloaded
+    private ProviderEvent resync() {
+        return new ProviderEvent(streamId + "-" + sequence, ProviderEvent.Type.RESYNC, null,
+            configService.getConfigVersion(), null, null);
+    }
+
+    private void heartbeat() {
+        for (Subscriber subscriber : subscribers) {
+            subscriber.heartbeat();
+        }
+    }
+
+    // The fields the provider list shows; secrets and metadata are left out. The compiled
+    // provider has them all, unless this node has yet to load a change made on another node.
+    private Map<String, Object> summary(String providerId, long version) {
+        if (configService.getConfigVersion() >= version) {
+            return configService.getCompiledProvider(providerId).map(ProviderEventStream::summary).orElse(null);
+        }
+        return configService.getProviderById(providerId, version).map(ProviderEventStream::summary).orElse(null);
+    }
+
+    private static Map<String, Object> summary(CompiledSamlProvider provider) {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("id", provider.getId());
+        summary.put("displayName", provider.getDisplayName());
+        summary.put("enabled", provider.isEnabled());
+        summary.put("metadataSource", provider.getMetadataSource());
+        summary.put("idpLoginUrl", provider.getIdpLoginUrl());
+        summary.put("customIconUrl", provider.getCustomIconUrl());
+        summary.put("emailDomains", provider.getEmailDomains());
+        summary.put("hostnames", provider.getHostnames());
+        return summary;
+    }
+
+    private static Map<String, Object> summary(SamlProviderConfig provider) {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("id", provider.getId());
+        summary.put("displayName", provider.getDisplayName());
+        summary.put("enabled", provider.isEnabled());
+        summary.put("metadataSource", provider.getMetadataSource());
+        summary.put("idpLoginUrl", provider.getIdpLoginUrl());
+        summary.put("customIconUrl", provider.getCustomIconUrl());
+        summary.put("emailDomains", provider.getEmailDomains());
+        summary.put("hostnames", provider.getHostnames());
+        return summary;
+    }
+
+    /**
+     * One client's queue of unsent messages. Only the executor thread adds to
+     * it, and at most one sender task drains it at a time.
+     */
+    private final class Subscriber implements Runnable {
+        private final SseEmitter emitter;
+        private final BlockingQueue<SseEmitter.SseEventBuilder> queue;
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        // Set once the final RESYNC is queued; the sender then closes the stream
+        private volatile boolean closing;
+
+        private Subscriber(SseEmitter emitter) {
+            this.emitter = emitter;
+            this.queue = new ArrayBlockingQueue<>(subscriberQueue);
+        }
+
+        private void enqueue(ProviderEvent event) {
+            if (closing) {
+                return;
+            }
+            if (queue.offer(message(event))) {
+                schedule();
+            } else {
+                drop();
+            }
+        }
+
+        private void heartbeat() {
+            // A full queue means the client is behind anyway, so the keepalive can wait
+            if (!closing && queue.offer(SseEmitter.event().comment("keepalive"))) {
+                schedule();
+            }
+        }
+
+        // Replaces the backlog with a RESYNC and ends the stream once it is sent
+        private void drop() {
+            logger.debug("Admin event subscriber fell {} events behind, asking it to resync", subscriberQueue);
+            subscribers.remove(this);
+            queue.clear();
+            queue.offer(message(resync()));
+            closing = true;
+            schedule();
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    senders.execute(this);
+                } catch (RejectedExecutionException e) {
+                    // Shutting down
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                SseEmitter.SseEventBuilder message;
+                while ((message = queue.poll()) != null) {
+                    try {
+                        emitter.send(message);
+                    } catch (IOException | IllegalStateException e) {
+                        logger.debug("Dropping admin event subscriber: {}", e.getMessage());
+                        subscribers.remove(this);
+                        closing = true;
+                        queue.clear();
+                        emitter.completeWithError(e);
+                        return;
+                    }
+                }
+                if (closing) {
+                    // Nothing is queued after closing, but the RESYNC may have landed since the last poll
+                    if (queue.isEmpty()) {
+                        emitter.complete();
+                        return;
+                    }
+                    continue;
+                }
+                scheduled.set(false);
+                // Reclaim the task if a message arrived between the last poll and the reset
+                if (queue.isEmpty() || !scheduled.compareAndSet(false, true)) {
+                    return;
+                }
+            }
+        }
+
+        private SseEmitter.SseEventBuilder message(ProviderEvent event) {
+            return SseEmitter.event().id(event.getId()).data(event, MediaType.APPLICATION_JSON);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.example.flutto.service;
+
+import com.example.flutto.model.SamlProvidersConfig;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.zip.CRC32C;
+
+/**
+ * Binary (Smile) copy of the provider YAML, written next to it, that loads far
+ * faster than YAML once the file holds thousands of providers.
+ *
+ * The snapshot records the length and CRC32C of the YAML it was made from and is
+ * only used while both still match, so a hand-edited YAML always wins. Its own
+ * payload is checksummed too; anything that does not verify is ignored and the
+ * caller falls back to the YAML.
+ *
+ * Layout: magic, format version, YAML length, YAML CRC32C, payload length,
+ * payload CRC32C, payload.
+ */
+public class ProviderSnapshotStore {
+    private static final Logger logger = LoggerFactory.getLogger(ProviderSnapshotStore.class);
+
+    private static final int MAGIC = 0x464C5350; // "FLSP"
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 4 + 4 + 4;
+    private static final String SUFFIX = ".snapshot";
+
+    private final ObjectMapper mapper = new SmileMapper();
+
+    /**
+     * Loads the snapshot belonging to the given YAML file, or returns empty if it
+     * is missing, stale or corrupt.
+     */
+    public Optional<SamlProvidersConfig> read(Path yamlFile) {
+        Path snapshotFile = snapshotPath(yamlFile);
+        try (FileChannel channel = FileChannel.open(snapshotFile, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES || size > Integer.MAX_VALUE) {
+                logger.warn("Ignoring provider snapshot {} with invalid size {}", snapshotFile, size);
+                return Optional.empty();
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+            if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+                logger.warn("Ignoring provider snapshot {} with unknown format", snapshotFile);
+                return Optional.empty();
+            }
+            long sourceLength = buffer.getLong();
+            int sourceChecksum = buffer.getInt();
+            if (sourceLength != Files.size(yamlFile) || sourceChecksum != checksum(yamlFile)) {
+                logger.info("Provider snapshot {} is stale, loading YAML", snapshotFile);
+                return Optional.empty();
+            }
+
+            int payloadLength = buffer.getInt();
+            int payloadChecksum = buffer.getInt();
+            if (payloadLength != size - HEADER_BYTES) {
+                logger.warn("Ignoring truncated provider snapshot {}", snapshotFile);
+                return Optional.empty();
+            }
+            ByteBuffer payload = buffer.slice(HEADER_BYTES, payloadLength);
+            if (checksum(payload.duplicate()) != payloadChecksum) {
+                logger.warn("Ignoring provider snapshot {} with bad checksum", snapshotFile);
+                return Optional.empty();
+            }
+            return Optional.ofNullable(mapper.readValue(new ByteBufferBackedInputStream(payload), SamlProvidersConfig.class));
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Failed to read provider snapshot {}: {}", snapshotFile, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Writes a snapshot of the given configuration, tied to the current content of
+     * the YAML file. Failures are logged; the YAML stays the source of truth.
+     */
+    public void write(Path yamlFile, SamlProvidersConfig config) {
+        Path snapshotFile = snapshotPath(yamlFile);
+        Path temp = snapshotFile.resolveSibling("." + snapshotFile.getFileName() + "." + UUID.randomUUID() + ".tmp");
+        try {
+            byte[] payload = mapper.writeValueAsBytes(config);
+            CRC32C payloadChecksum = new CRC32C();
+            payloadChecksum.update(payload);
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES)
+                .putInt(MAGIC)
+                .putInt(FORMAT_VERSION)
+                .putLong(Files.size(yamlFile))
+                .putInt(checksum(yamlFile))
+                .putInt(payload.length)
+                .putInt((int) payloadChecksum.getValue())
+                .flip();
+
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                ByteBuffer body = ByteBuffer.wrap(payload);
+                while (header.hasRemaining() || body.hasRemaining()) {
+                    channel.write(new ByteBuffer[] {header, body});
+                }
+                channel.force(false);
+            }
+            // Rename so readers never map a partially written snapshot
+            Files.move(temp, snapshotFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            logger.debug("Wrote provider snapshot {} ({} bytes)", snapshotFile, payload.length + HEADER_BYTES);
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Failed to write provider snapshot {}: {}", snapshotFile, e.getMessage());
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException ignored) {
+                // Nothing more to do
+            }
+        }
+    }
+
+    static Path snapshotPath(Path yamlFile) {
+        return yamlFile.resolveSibling(yamlFile.getFileName() + SUFFIX);
+    }
+
+    private static int checksum(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size == 0) {
+                return 0;
+            }
+            return checksum(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        }
+    }
+
+    private static int checksum(ByteBuffer buffer) {
+        CRC32C crc = new CRC32C();
+        crc.update(buffer);
+        return (int) crc.getValue();
+    }
+}
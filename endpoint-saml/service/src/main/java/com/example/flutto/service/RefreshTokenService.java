@@ -0,0 +1,290 @@
+package com.example.flutto.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Issues opaque, rotating refresh tokens so short-lived access tokens can be
+ * renewed without another SAML round trip. Each refresh token is single use;
+ * presenting one that was already rotated revokes the whole login session,
+ * since it means the token was copied. The exception is a token rotated within
+ * the last few seconds: browser tabs sharing the cookie refresh together, so
+ * such a token is answered with the token that already replaced it. A session
+ * thus only ever has one chain of tokens, and a copy used after the grace
+ * period is still caught. Sessions keep
+ * the absolute expiry of the original SAML login, so users still go back to
+ * their IdP once per session.
+ */
+@Service
+public class RefreshTokenService {
+    private static final Logger logger = LoggerFactory.getLogger(RefreshTokenService.class);
+
+    private final JwtService jwtService;
+    private final long refreshExpiration;
+    private final long reuseGraceMillis;
+    private final int maxSessions;
+    private final SecureRandom random = new SecureRandom();
+
+    // Keyed by SHA-256 of the token so the store never holds usable tokens; oldest evicted first
+    private final LinkedHashMap<String, RefreshSession> sessions;
+    // Live token hashes of each login session, so a session is revoked without scanning
+    private final Map<String, Set<String>> families = new HashMap<>();
+    // Already rotated tokens, kept to detect reuse; each holds its successor only during the grace period
+    private final LinkedHashMap<String, Rotation> rotatedTokens;
+
+    public RefreshTokenService(JwtService jwtService,
+                               @Value("${jwt.refresh-expiration:36000000}") long refreshExpiration,
+                               @Value("${jwt.refresh-max-sessions:100000}") int maxSessions,
+                               @Value("${jwt.refresh-reuse-grace-ms:10000}") long reuseGraceMillis) {
+        this.jwtService = jwtService;
+        this.refreshExpiration = refreshExpiration;
+        this.reuseGraceMillis = reuseGraceMillis;
+        this.maxSessions = maxSessions;
+        this.sessions = new LinkedHashMap<>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, RefreshSession> eldest) {
+                if (size() <= RefreshTokenService.this.maxSessions) {
+                    return false;
+                }
+                detach(eldest.getKey(), eldest.getValue());
+                return true;
+            }
+        };
+        this.rotatedTokens = new LinkedHashMap<>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Rotation> eldest) {
+                return size() > RefreshTokenService.this.maxSessions;
+            }
+        };
+    }
+
+    /**
+     * Starts a refresh session for a freshly authenticated user
+     */
+    public String issue(String subject, Map<String, Object> claims) {
+        RefreshSession session = new RefreshSession(UUID.randomUUID().toString(), subject,
+            new HashMap<>(claims), System.currentTimeMillis() + refreshExpiration);
+        String token = newToken();
+        synchronized (this) {
+            attach(hash(token), session);
+        }
+        return token;
+    }
+
+    /**
+     * Exchanges a refresh token for a new access token and a new refresh token
+     */
+    public Optional<TokenPair> refresh(String refreshToken) {
+        String key = hash(refreshToken);
+        String issued = newToken();
+        long now = System.currentTimeMillis();
+        RefreshSession session;
+        String nextToken;
+        synchronized (this) {
+            session = sessions.remove(key);
+            if (session != null) {
+                detach(key, session);
+                if (session.expiresAt <= now) {
+                    return Optional.empty();
+                }
+                nextToken = issued;
+                rotatedTokens.put(key, new Rotation(session, now, nextToken));
+                attach(hash(nextToken), session);
+            } else {
+                Rotation rotation = rotatedTokens.get(key);
+                if (rotation == null) {
+                    return Optional.empty();
+                }
+                session = rotation.session;
+                // A session already revoked is not brought back by its grace period
+                if (!families.containsKey(session.familyId) || session.expiresAt <= now) {
+                    return Optional.empty();
+                }
+                if (now - rotation.rotatedAt > reuseGraceMillis || rotation.successor == null) {
+                    logger.warn("Refresh token reuse detected, revoking session {}", session.familyId);
+                    revokeFamily(session.familyId);
+                    return Optional.empty();
+                }
+                // Hand out the token already issued rather than starting a second chain
+                nextToken = latestSuccessor(rotation);
+            }
+        }
+
+        String accessToken = jwtService.generateAccessToken(session.subject, session.claims);
+        return Optional.of(new TokenPair(session.subject, accessToken, nextToken,
+            jwtService.getAccessTokenExpiration(), session.expiresAt - System.currentTimeMillis()));
+    }
+
+    /**
+     * Ends the refresh session the token belongs to
+     */
+    public synchronized void revoke(String refreshToken) {
+        String key = hash(refreshToken);
+        RefreshSession session = sessions.get(key);
+        if (session == null) {
+            Rotation rotation = rotatedTokens.get(key);
+            session = rotation != null ? rotation.session : null;
+        }
+        if (session != null) {
+            revokeFamily(session.familyId);
+        }
+    }
+
+    /**
+     * Drops sessions past their absolute expiry
+     */
+    @Scheduled(fixedDelayString = "${jwt.refresh-purge-interval-ms:60000}")
+    public synchronized void purgeExpired() {
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<String, RefreshSession>> live = sessions.entrySet().iterator();
+        while (live.hasNext()) {
+            Map.Entry<String, RefreshSession> entry = live.next();
+            if (entry.getValue().expiresAt <= now) {
+                live.remove();
+                detach(entry.getKey(), entry.getValue());
+            }
+        }
+        rotatedTokens.values().removeIf(rotation -> rotation.session.expiresAt <= now);
+        // Past the grace period a successor is never handed out again, so stop holding it
+        for (Rotation rotation : rotatedTokens.values()) {
+            if (now - rotation.rotatedAt > reuseGraceMillis) {
+                rotation.successor = null;
+            }
+        }
+    }
+
+    public long getRefreshExpiration() {
+        return refreshExpiration;
+    }
+
+    private String newToken() {
+        byte[] bytes = new byte[32];
+        random.nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    // Follows rotations made since, so a late tab gets the token that is live now
+    private String latestSuccessor(Rotation rotation) {
+        String token = rotation.successor;
+        Rotation next = rotatedTokens.get(hash(token));
+        while (next != null && next.successor != null) {
+            token = next.successor;
+            next = rotatedTokens.get(hash(token));
+        }
+        return token;
+    }
+
+    private void attach(String key, RefreshSession session) {
+        sessions.put(key, session);
+        families.computeIfAbsent(session.familyId, id -> new HashSet<>(2)).add(key);
+    }
+
+    private void detach(String key, RefreshSession session) {
+        Set<String> tokens = families.get(session.familyId);
+        if (tokens != null && tokens.remove(key) && tokens.isEmpty()) {
+            families.remove(session.familyId);
+        }
+    }
+
+    private void revokeFamily(String familyId) {
+        Set<String> tokens = families.remove(familyId);
+        if (tokens != null) {
+            for (String token : tokens) {
+                sessions.remove(token);
+            }
+        }
+    }
+
+    private static String hash(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static final class RefreshSession {
+        private final String familyId;
+        private final String subject;
+        private final Map<String, Object> claims;
+        private final long expiresAt;
+
+        private RefreshSession(String familyId, String subject, Map<String, Object> claims, long expiresAt) {
+            this.familyId = familyId;
+            this.subject = subject;
+            this.claims = claims;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private static final class Rotation {
+        private final RefreshSession session;
+        private final long rotatedAt;
+        // Guarded by the service's monitor
+        private String successor;
+
+        private Rotation(RefreshSession session, long rotatedAt, String successor) {
+            this.session = session;
+            this.rotatedAt = rotatedAt;
+            this.successor = successor;
+        }
+    }
+
+    /**
+     * Result of a refresh: lifetimes are in milliseconds
+     */
+    public static final class TokenPair {
+        private final String subject;
+        private final String accessToken;
+        private final String refreshToken;
+        private final long accessTokenExpiresIn;
+        private final long refreshTokenExpiresIn;
+
+        public TokenPair(String subject, String accessToken, String refreshToken,
+                         long accessTokenExpiresIn, long refreshTokenExpiresIn) {
+            this.subject = subject;
+            this.accessToken = accessToken;
+            this.refreshToken = refreshToken;
+            this.accessTokenExpiresIn = accessTokenExpiresIn;
+            this.refreshTokenExpiresIn = refreshTokenExpiresIn;
+        }
+
+        public String getSubject() {
+            return subject;
+        }
+
+        public String getAccessToken() {
+            return accessToken;
+        }
+
+        public String getRefreshToken() {
+            return refreshToken;
+        }
+
+        public long getAccessTokenExpiresIn() {
+            return accessTokenExpiresIn;
+        }
+
+        public long getRefreshTokenExpiresIn() {
+            return refreshTokenExpiresIn;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.flutto.service;
+
+import com.example.flutto.model.RefreshJob;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Runs registration rebuilds as background jobs, one at a time.
+ *
+ * At most one job runs and at most one waits behind it. A request made while a
+ * job runs becomes the waiting job, and any further requests join that one, so
+ * a burst of admin edits costs two rebuilds at most instead of one each.
+ */
+@Service
+public class RegistrationRefreshService {
+    private static final Logger logger = LoggerFactory.getLogger(RegistrationRefreshService.class);
+
+    private final ExecutorService executor;
+    private final AtomicLong ids = new AtomicLong();
+    private final Map<Long, RefreshJob> history;
+    private volatile Consumer<RefreshJob> refresh = job -> { };
+
+    // Guarded by this
+    private RefreshJob running;
+    private RefreshJob pending;
+
+    public RegistrationRefreshService(@Value("${saml.refresh.job-history:20}") int historySize) {
+        this.history = new LinkedHashMap<>(16, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, RefreshJob> eldest) {
+                return size() > Math.max(1, historySize);
+            }
+        };
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "saml-registration-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Sets the rebuild each job runs
+     */
+    public void onRefresh(Consumer<RefreshJob> refresh) {
+        this.refresh = refresh;
+    }
+
+    /**
+     * Schedules a rebuild for a change made at the given config version and
+     * returns the job that will carry it out, which is the already queued job
+     * if there is one
+     */
+    public synchronized RefreshJob submit(String reason, long configVersion) {
+        if (pending != null) {
+            pending.coalesce(reason, configVersion);
+            logger.debug("Refresh request ({}) joined queued job {}", reason, pending.getId());
+            return pending;
+        }
+        RefreshJob job = new RefreshJob(ids.incrementAndGet(), reason, configVersion);
+        history.put(job.getId(), job);
+        if (running == null) {
+            running = job;
+            executor.execute(() -> run(job));
+        } else {
+            pending = job;
+        }
+        return job;
+    }
+
+    public synchronized Optional<RefreshJob> getJob(long id) {
+        return Optional.ofNullable(history.get(id));
+    }
+
+    /**
+     * Recent jobs, newest first
+     */
+    public synchronized List<RefreshJob> getRecentJobs() {
+        List<RefreshJob> jobs = new ArrayList<>(history.values());
+        Collections.reverse(jobs);
+        return jobs;
+    }
+
+    public synchronized Optional<RefreshJob> getRunningJob() {
+        return Optional.ofNullable(running);
+    }
+
+    public synchronized Optional<RefreshJob> getPendingJob() {
+        return Optional.ofNullable(pending);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void run(RefreshJob job) {
+        try {
+            refresh.accept(job);
+            if (!job.isDone()) {
+                job.failed("Refresh did not report completion");
+            }
+        } catch (Exception e) {
+            logger.error("Registration refresh job {} failed: {}", job.getId(), e.getMessage(), e);
+            job.failed(e.getMessage());
+        } finally {
+            startNext();
+        }
+    }
+
+    private synchronized void startNext() {
+        running = pending;
+        pending = null;
+        if (running != null && !executor.isShutdown()) {
+            RefreshJob next = running;
+            executor.execute(() -> run(next));
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.flutto.service;
+
+import org.opensaml.saml.saml2.core.Assertion;
+import org.opensaml.saml.saml2.core.AttributeStatement;
+import org.opensaml.saml.saml2.core.EncryptedAssertion;
+import org.opensaml.saml.saml2.core.EncryptedAttribute;
+import org.opensaml.saml.saml2.core.NameID;
+import org.opensaml.saml.saml2.core.Response;
+import org.opensaml.saml.saml2.encryption.Decrypter;
+import org.opensaml.saml.saml2.encryption.EncryptedElementTypeEncryptedKeyResolver;
+import org.opensaml.security.credential.CredentialSupport;
+import org.opensaml.xmlsec.encryption.support.ChainingEncryptedKeyResolver;
+import org.opensaml.xmlsec.encryption.support.DecryptionException;
+import org.opensaml.xmlsec.encryption.support.EncryptedKeyResolver;
+import org.opensaml.xmlsec.encryption.support.InlineEncryptedKeyResolver;
+import org.opensaml.xmlsec.encryption.support.SimpleRetrievalMethodEncryptedKeyResolver;
+import org.opensaml.xmlsec.keyinfo.KeyInfoCredentialResolver;
+import org.opensaml.xmlsec.keyinfo.impl.CollectionKeyInfoCredentialResolver;
+import org.springframework.security.saml2.core.Saml2Error;
+import org.springframework.security.saml2.core.Saml2ErrorCodes;
+import org.springframework.security.saml2.provider.service.authentication.OpenSaml4AuthenticationProvider;
+import org.springframework.security.saml2.provider.service.authentication.Saml2AuthenticationException;
+import org.springframework.stereotype.Service;
+
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Decrypts the encrypted assertions, attributes and NameIDs of SAML responses
+ * with each provider's SP key.
+ *
+ * The framework turns a registration's decryption credentials into a new
+ * credential resolver for every response; here each provider's key is wrapped
+ * once when its registration is built, so a response only pays for the key
+ * transport and the cipher.
+ */
+@Service
+public class ResponseDecrypter {
+
+    // Same lookup order as the framework: inline EncryptedKey, EncryptedKey
+    // elements next to the EncryptedData, then RetrievalMethod references
+    private static final EncryptedKeyResolver ENCRYPTED_KEY_RESOLVER = new ChainingEncryptedKeyResolver(List.of(
+        new InlineEncryptedKeyResolver(),
+        new EncryptedElementTypeEncryptedKeyResolver(),
+        new SimpleRetrievalMethodEncryptedKeyResolver()));
+
+    private final Map<String, KeyInfoCredentialResolver> resolvers = new ConcurrentHashMap<>();
+
+    /**
+     * Binds the provider's decryption key, replacing any previous one
+     */
+    public void register(String providerId, PrivateKey key, X509Certificate certificate) {
+        resolvers.put(providerId,
+            new CollectionKeyInfoCredentialResolver(List.of(CredentialSupport.getSimpleCredential(certificate, key))));
+    }
+
+    /**
+     * Stops decrypting for the provider
+     */
+    public void remove(String providerId) {
+        resolvers.remove(providerId);
+    }
+
+    /**
+     * Drops the keys of providers that are no longer configured
+     */
+    public void retainOnly(Set<String> providerIds) {
+        resolvers.keySet().retainAll(providerIds);
+    }
+
+    public boolean isDecrypting(String providerId) {
+        return resolvers.containsKey(providerId);
+    }
+
+    /**
+     * Adds the decrypted form of every EncryptedAssertion to the response's
+     * assertions, as the framework's own decrypter does
+     */
+    public void decryptResponseElements(OpenSaml4AuthenticationProvider.ResponseToken responseToken) {
+        Response response = responseToken.getResponse();
+        if (response.getEncryptedAssertions().isEmpty()) {
+            return;
+        }
+        Decrypter decrypter = decrypter(responseToken.getToken().getRelyingPartyRegistration().getRegistrationId());
+        for (EncryptedAssertion encryptedAssertion : response.getEncryptedAssertions()) {
+            try {
+                response.getAssertions().add(decrypter.decrypt(encryptedAssertion));
+            } catch (DecryptionException e) {
+                throw decryptionError("assertion in response " + response.getID(), e);
+            }
+        }
+    }
+
+    /**
+     * Decrypts the assertion's encrypted attributes and subject NameID in place
+     */
+    public void decryptAssertionElements(OpenSaml4AuthenticationProvider.AssertionToken assertionToken) {
+        Assertion assertion = assertionToken.getAssertion();
+        boolean encryptedId = assertion.getSubject() != null && assertion.getSubject().getEncryptedID() != null;
+        boolean encryptedAttributes = assertion.getAttributeStatements()
+            .stream()
+            .anyMatch(statement -> !statement.getEncryptedAttributes().isEmpty());
+        if (!encryptedId && !encryptedAttributes) {
+            return;
+        }
+        Decrypter decrypter = decrypter(assertionToken.getToken().getRelyingPartyRegistration().getRegistrationId());
+        try {
+            for (AttributeStatement statement : assertion.getAttributeStatements()) {
+                for (EncryptedAttribute encryptedAttribute : statement.getEncryptedAttributes()) {
+                    statement.getAttributes().add(decrypter.decrypt(encryptedAttribute));
+                }
+            }
+            if (encryptedId) {
+                assertion.getSubject().setNameID((NameID) decrypter.decrypt(assertion.getSubject().getEncryptedID()));
+            }
+        } catch (DecryptionException | ClassCastException e) {
+            throw decryptionError("elements of assertion " + assertion.getID(), e);
+        }
+    }
+
+    private Decrypter decrypter(String providerId) {
+        KeyInfoCredentialResolver resolver = resolvers.get(providerId);
+        if (resolver == null) {
+            throw new Saml2AuthenticationException(new Saml2Error(Saml2ErrorCodes.DECRYPTION_ERROR,
+                "SAML provider " + providerId + " has no decryption key"));
+        }
+        // Decrypter makes no thread-safety promise; it is cheap once the resolver is shared
+        Decrypter decrypter = new Decrypter(null, resolver, ENCRYPTED_KEY_RESOLVER);
+        decrypter.setRootInNewDocument(true);
+        return decrypter;
+    }
+
+    private static Saml2AuthenticationException decryptionError(String what, Exception cause) {
+        return new Saml2AuthenticationException(new Saml2Error(Saml2ErrorCodes.DECRYPTION_ERROR,
+            "Failed to decrypt " + what + ": " + cause.getMessage()), cause);
+    }
+}
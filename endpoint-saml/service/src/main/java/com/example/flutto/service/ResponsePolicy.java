@@ -0,0 +1,43 @@
+package com.example.flutto.service;
+
+import com.example.flutto.model.CompiledSamlProvider;
+import org.opensaml.saml.saml2.core.Response;
+import org.springframework.security.saml2.core.Saml2Error;
+import org.springframework.security.saml2.core.Saml2ErrorCodes;
+import org.springframework.security.saml2.core.Saml2ResponseValidatorResult;
+
+/**
+ * Enforces requireSignedResponses and requireEncryptedResponses. The framework
+ * already insists on a signature over the response or over every assertion;
+ * these settings only narrow that.
+ */
+public final class ResponsePolicy {
+
+    private ResponsePolicy() {
+    }
+
+    /**
+     * Errors for every requirement of the provider the response does not meet;
+     * a response for an unknown provider is left to the default validation
+     */
+    public static Saml2ResponseValidatorResult check(Response response, String registrationId,
+                                                     CompiledSamlProvider provider) {
+        if (provider == null) {
+            return Saml2ResponseValidatorResult.success();
+        }
+
+        Saml2ResponseValidatorResult result = Saml2ResponseValidatorResult.success();
+        if (provider.isRequireSignedResponses() && !response.isSigned()) {
+            result = result.concat(new Saml2Error(Saml2ErrorCodes.INVALID_SIGNATURE,
+                "Response " + response.getID() + " is not signed, but provider " + registrationId + " requires signed responses"));
+        }
+        // Decrypted assertions are appended to getAssertions(), so any assertion
+        // beyond the encrypted ones arrived in plaintext
+        if (provider.isRequireEncryptedResponses() && (response.getEncryptedAssertions().isEmpty()
+                || response.getAssertions().size() > response.getEncryptedAssertions().size())) {
+            result = result.concat(new Saml2Error(Saml2ErrorCodes.INVALID_ASSERTION,
+                "Response " + response.getID() + " has unencrypted assertions, but provider " + registrationId + " requires encryption"));
+        }
+        return result;
+    }
+}
@@ -1,5 +1,9 @@
 package com.example.flutto.service;
 
+import com.example.flutto.jfr.ConfigPersistEvent;
+import com.example.flutto.model.CompiledSamlProvider;
+import com.example.flutto.model.ConfigChangeEvent;
+import com.example.flutto.model.HomeRealmIndex;
 import com.example.flutto.model.SamlProviderConfig;
 import com.example.flutto.model.SamlProvidersConfig;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -12,33 +16,73 @@ import org.springframework.stereotype.Service;
 
 import javax.annotation.PostConstruct;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
 
 @Service
 public class SamlConfigurationService {
     private static final Logger logger = LoggerFactory.getLogger(SamlConfigurationService.class);
     
-    @Value("classpath:saml-providers.yaml")
+    // A JVM may hold only one lock per file, so writers in the same process queue here
+    // before taking the file lock that serializes them with other nodes
+    private static final Map<Path, ReentrantLock> LOCAL_STORE_LOCKS = new ConcurrentHashMap<>();
+    
+    @Value("${saml.config.file:classpath:saml-providers.yaml}")
     private Resource yamlResource;
     
+    @Value("${saml.config.snapshot.enabled:true}")
+    private boolean snapshotEnabled;
+    
+    // Copy in the source tree, kept in step with the runtime file during development
+    private File sourceFile = new File(System.getProperty("user.dir"), "src/main/resources/saml-providers.yaml");
+    
     private final ObjectMapper yamlMapper = new ObjectMapper(new YAMLFactory());
+    private final ProviderSnapshotStore snapshotStore = new ProviderSnapshotStore();
+    private final ConfigChangeBus changeBus;
+    private final SamlProviderCompiler compiler;
+    private final String nodeId;
+    
+    // Replaced wholesale on every change so readers never see a list being mutated.
+    // Holds only the compiled providers; raw metadata and PEM text stay in the store.
+    private volatile LoadedProviders loaded;
     
-    private SamlProvidersConfig providersConfig;
+    // The parsed store behind raw reads, so reading one provider does not parse them all.
+    // Softly held, since the raw configuration is what the compiled form leaves out.
+    private volatile SoftReference<StoredProviders> stored = new SoftReference<>(null);
+    
+    public SamlConfigurationService(ConfigChangeBus changeBus,
+                                    SamlProviderCompiler compiler,
+                                    @Value("${saml.cluster.node-id:}") String nodeId) {
+        this.changeBus = changeBus;
+        this.compiler = compiler;
+        this.nodeId = nodeId.isEmpty() ? UUID.randomUUID().toString() : nodeId;
+    }
     
     /**
-     * Loads all SAML providers from the YAML configuration file
+     * All SAML providers, including metadata XML and PEM text, as stored at
+     * this node's config version. Meant for the admin API; runtime code uses
+     * the compiled providers. The list holds copies the caller may change.
      */
     public List<SamlProviderConfig> getAllProviders() {
         try {
-            if (providersConfig == null) {
-                loadProviders();
-            }
-            return providersConfig.getProviders();
+            return Collections.unmodifiableList(storedProviders(getConfigVersion()).providers.stream()
+                    .map(this::copy)
+                    .collect(Collectors.toList()));
         } catch (Exception e) {
             logger.error("Error loading SAML providers", e);
             return Collections.emptyList();
@@ -46,39 +90,85 @@ public class SamlConfigurationService {
     }
     
     /**
-     * Loads only enabled SAML providers
+     * A copy of a single provider with its raw configuration, as stored at this
+     * node's config version
      */
-    public List<SamlProviderConfig> getEnabledProviders() {
-        return getAllProviders().stream()
-                .filter(SamlProviderConfig::isEnabled)  // Use method reference
+    public Optional<SamlProviderConfig> getProviderById(String id) {
+        return getProviderById(id, getConfigVersion());
+    }
+    
+    /**
+     * A copy of a single provider with its raw configuration, from a store at
+     * least at the given version, for changes this node has yet to load
+     */
+    public Optional<SamlProviderConfig> getProviderById(String id, long minVersion) {
+        try {
+            return Optional.ofNullable(storedProviders(minVersion).byId.get(id)).map(this::copy);
+        } catch (Exception e) {
+            logger.error("Error loading SAML provider {}", id, e);
+            return Optional.empty();
+        }
+    }
+    
+    /**
+     * All providers in their compiled runtime form
+     */
+    public List<CompiledSamlProvider> getCompiledProviders() {
+        return loaded().providers;
+    }
+    
+    /**
+     * Only enabled providers, in their compiled runtime form
+     */
+    public List<CompiledSamlProvider> getEnabledProviders() {
+        return getCompiledProviders().stream()
+                .filter(CompiledSamlProvider::isEnabled)
                 .collect(Collectors.toList());
     }
     
     /**
-     * Find a specific provider by ID
+     * Find a compiled provider by ID without touching the store
      */
-    public Optional<SamlProviderConfig> getProviderById(String id) {
-        return getAllProviders().stream()
-                .filter(p -> p.getId().equals(id))
-                .findFirst();
+    public Optional<CompiledSamlProvider> getCompiledProvider(String id) {
+        return Optional.ofNullable(loaded().byId.get(id));
+    }
+    
+    /**
+     * Home-realm discovery: the enabled provider claiming the email domain of the
+     * login hint, else the given domain, else the host the login arrived on
+     */
+    public Optional<CompiledSamlProvider> discoverProvider(String loginHint, String domain, String host) {
+        LoadedProviders current = loaded();
+        Optional<String> id = current.realmIndex.providerForEmail(loginHint);
+        if (id.isEmpty()) {
+            id = current.realmIndex.providerForEmail(domain);
+        }
+        if (id.isEmpty()) {
+            id = current.realmIndex.providerForHost(host);
+        }
+        return id.map(current.byId::get);
     }
     
     /**
      * Saves a provider to the configuration
      */
     public synchronized SamlProviderConfig saveProvider(SamlProviderConfig provider) throws IOException {
-        if (providersConfig == null) {
-            loadProviders();
+        long version;
+        try (StoreLock lock = lockStore()) {
+            // Re-read the store first so changes written by other nodes are not lost
+            SamlProvidersConfig stored = readStore();
+            
+            // Explicitly remove the provider with the same ID first
+            List<SamlProviderConfig> providers = new ArrayList<>(stored.getProviders());
+            providers.removeIf(p -> p.getId().equals(provider.getId()));
+            
+            // Add the updated provider; a copy, since the saved list is cached for raw reads
+            providers.add(copy(provider));
+            
+            // Save to YAML file
+            version = saveProvidersToYaml(stored.getVersion() + 1, providers, provider.getId());
         }
-        
-        // Explicitly remove the provider with the same ID first
-        providersConfig.getProviders().removeIf(p -> p.getId().equals(provider.getId()));
-        
-        // Add the updated provider
-        providersConfig.getProviders().add(provider);
-        
-        // Save to YAML file
-        saveProvidersToYaml();
+        publishChange(version, ConfigChangeEvent.Type.UPSERT, provider.getId());
         
         return provider;
     }
@@ -87,56 +177,262 @@ public class SamlConfigurationService {
      * Deletes a provider from the configuration
      */
     public synchronized boolean deleteProvider(String id) throws IOException {
-        if (providersConfig == null) {
-            loadProviders();
+        long version;
+        try (StoreLock lock = lockStore()) {
+            SamlProvidersConfig stored = readStore();
+            
+            List<SamlProviderConfig> providers = new ArrayList<>(stored.getProviders());
+            if (!providers.removeIf(p -> p.getId().equals(id))) {
+                return false;
+            }
+            version = saveProvidersToYaml(stored.getVersion() + 1, providers, id);
         }
-        
-        boolean removed = providersConfig.getProviders().removeIf(p -> p.getId().equals(id));
-        
-        if (removed) {
-            saveProvidersToYaml();
+        publishChange(version, ConfigChangeEvent.Type.DELETE, id);
+        return true;
+    }
+    
+    /**
+     * Re-reads providers from the store, picking up changes made by other nodes
+     */
+    public synchronized void reloadProviders() throws IOException {
+        SamlProvidersConfig stored = readStore();
+        install(stored.getVersion(), stored.getProviders());
+        logger.info("Reloaded SAML providers at config version {}", stored.getVersion());
+    }
+    
+    /**
+     * Version of the provider set currently held in memory
+     */
+    public long getConfigVersion() {
+        LoadedProviders current = loaded;
+        return current != null ? current.version : 0;
+    }
+    
+    /**
+     * Identifies this node as the origin of the change events it publishes
+     */
+    public String getNodeId() {
+        return nodeId;
+    }
+    
+    private void publishChange(long version, ConfigChangeEvent.Type type, String providerId) {
+        changeBus.publish(new ConfigChangeEvent(version, type, providerId, nodeId));
+    }
+    
+    /**
+     * The cached parsed store when it is at least at the given version, else
+     * the store read afresh
+     */
+    private StoredProviders storedProviders(long minVersion) throws IOException {
+        StoredProviders current = stored.get();
+        if (current != null && current.version >= minVersion) {
+            return current;
         }
-        
-        return removed;
+        SamlProvidersConfig config = readStore();
+        current = new StoredProviders(config.getVersion(), config.getProviders());
+        cacheStore(current);
+        return current;
+    }
+    
+    // Keeps the newest store seen; a slow reader must not replace a newer one
+    private synchronized void cacheStore(StoredProviders store) {
+        StoredProviders current = stored.get();
+        if (current == null || current.version <= store.version) {
+            stored = new SoftReference<>(store);
+        }
+    }
+    
+    // Raw reads hand out copies, so the cached store cannot be changed through them
+    private SamlProviderConfig copy(SamlProviderConfig provider) {
+        return yamlMapper.convertValue(provider, SamlProviderConfig.class);
+    }
+    
+    private LoadedProviders loaded() {
+        LoadedProviders current = loaded;
+        if (current == null) {
+            synchronized (this) {
+                if (loaded == null) {
+                    try {
+                        reloadProviders();
+                    } catch (Exception e) {
+                        logger.error("Error loading SAML providers", e);
+                        install(0, Collections.emptyList());
+                    }
+                }
+                current = loaded;
+            }
+        }
+        return current;
+    }
+    
+    /**
+     * Compiles the providers and makes them the current set
+     */
+    private synchronized void install(long version, List<SamlProviderConfig> providers) {
+        List<CompiledSamlProvider> compiled = compiler.compileAll(providers);
+        // Only providers whose domains or hostnames changed are re-indexed
+        HomeRealmIndex previousIndex = loaded != null ? loaded.realmIndex : HomeRealmIndex.EMPTY;
+        loaded = new LoadedProviders(version, compiled, previousIndex.update(compiled));
+        compiler.retainOnly(compiled);
     }
     
     /**
-     * Loads providers from the YAML file
+     * Loads providers from the binary snapshot when it matches the YAML file,
+     * otherwise from the YAML file itself (and refreshes the snapshot)
      */
-    private synchronized void loadProviders() throws IOException {
+    private SamlProvidersConfig readStore() throws IOException {
         File file = yamlResource.getFile();
         if (!file.exists()) {
-            providersConfig = new SamlProvidersConfig();
-            return;
+            return new SamlProvidersConfig();
         }
         
-        providersConfig = yamlMapper.readValue(file, SamlProvidersConfig.class);
-        if (providersConfig == null) {
-            providersConfig = new SamlProvidersConfig();
+        if (snapshotEnabled) {
+            Optional<SamlProvidersConfig> snapshot = snapshotStore.read(file.toPath());
+            if (snapshot.isPresent()) {
+                return snapshot.get();
+            }
+        }
+        
+        SamlProvidersConfig parsed = yamlMapper.readValue(file, SamlProvidersConfig.class);
+        if (parsed == null) {
+            parsed = new SamlProvidersConfig();
+        }
+        if (snapshotEnabled) {
+            snapshotStore.write(file.toPath(), parsed);
         }
+        return parsed;
     }
     
     /**
-     * Saves providers to the YAML file
+     * Saves providers to the YAML file after a change to the given provider
      */
-    private synchronized void saveProvidersToYaml() throws IOException {
+    private synchronized long saveProvidersToYaml(long version, List<SamlProviderConfig> providers,
+                                                  String registrationId) throws IOException {
+        ConfigPersistEvent event = new ConfigPersistEvent();
+        event.begin();
+        SamlProvidersConfig updated = new SamlProvidersConfig();
+        updated.setVersion(version);
+        updated.setProviders(providers);
+        
         //Get the runtime file (in target/classes)
         File runtimeFile = yamlResource.getFile();
         
-        // Identify the source file location
-        String sourceFilePath = System.getProperty("user.dir") + 
-            "/src/main/resources/saml-providers.yaml";
-        File sourceFile = new File(sourceFilePath);
-        
         // Log both locations
         logger.info("Runtime YAML file path: {}", runtimeFile.getAbsolutePath());
         logger.info("Source YAML file path: {}", sourceFile.getAbsolutePath());
         
-        // Save to both locations
-        yamlMapper.writeValue(runtimeFile, providersConfig);
-        yamlMapper.writeValue(sourceFile, providersConfig);
+        // Save to both locations; the source tree is absent when running from a shared store
+        writeYaml(runtimeFile, updated);
+        if (snapshotEnabled) {
+            snapshotStore.write(runtimeFile.toPath(), updated);
+        }
+        if (sourceFile.getParentFile().isDirectory() && !sourceFile.equals(runtimeFile)) {
+            writeYaml(sourceFile, updated);
+        }
+        install(version, providers);
+        cacheStore(new StoredProviders(version, providers));
         
-        logger.info("SAML provider configuration saved to both runtime and source locations");
+        if (event.shouldCommit()) {
+            event.registrationId = registrationId;
+            event.version = version;
+            event.providerCount = providers.size();
+            event.yamlBytes = runtimeFile.length();
+            event.snapshot = snapshotEnabled;
+            event.commit();
+        }
+        logger.info("SAML provider configuration version {} saved to both runtime and source locations", version);
+        return version;
+    }
+    
+    /**
+     * Writes beside the target and renames over it, so a node reading the store
+     * never parses a partly written file
+     */
+    private void writeYaml(File target, SamlProvidersConfig config) throws IOException {
+        Path path = target.toPath();
+        Path temp = path.resolveSibling("." + path.getFileName() + "." + UUID.randomUUID() + ".tmp");
+        try {
+            yamlMapper.writeValue(temp.toFile(), config);
+            Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+    
+    /**
+     * Takes the store's write lock, held from reading the current version to
+     * writing the next, so two nodes never write the same version
+     */
+    private StoreLock lockStore() throws IOException {
+        Path storeFile = yamlResource.getFile().toPath().toAbsolutePath().normalize();
+        Path lockFile = storeFile.resolveSibling(storeFile.getFileName() + ".lock");
+        ReentrantLock local = LOCAL_STORE_LOCKS.computeIfAbsent(lockFile, path -> new ReentrantLock());
+        local.lock();
+        try {
+            FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            try {
+                channel.lock();
+                return new StoreLock(local, channel);
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        } catch (IOException | RuntimeException e) {
+            local.unlock();
+            throw e;
+        }
+    }
+    
+    private static final class StoreLock implements AutoCloseable {
+        private final ReentrantLock local;
+        private final FileChannel channel;
+        
+        private StoreLock(ReentrantLock local, FileChannel channel) {
+            this.local = local;
+            this.channel = channel;
+        }
+        
+        @Override
+        public void close() throws IOException {
+            try {
+                // Closing the channel releases the file lock
+                channel.close();
+            } finally {
+                local.unlock();
+            }
+        }
+    }
+    
+    private static final class StoredProviders {
+        private final long version;
+        private final List<SamlProviderConfig> providers;
+        private final Map<String, SamlProviderConfig> byId;
+        
+        private StoredProviders(long version, List<SamlProviderConfig> providers) {
+            this.version = version;
+            this.providers = providers;
+            this.byId = new HashMap<>();
+            for (SamlProviderConfig provider : providers) {
+                byId.put(provider.getId(), provider);
+            }
+        }
+    }
+    
+    private static final class LoadedProviders {
+        private final long version;
+        private final List<CompiledSamlProvider> providers;
+        private final Map<String, CompiledSamlProvider> byId;
+        private final HomeRealmIndex realmIndex;
+        
+        private LoadedProviders(long version, List<CompiledSamlProvider> providers, HomeRealmIndex realmIndex) {
+            this.version = version;
+            this.realmIndex = realmIndex;
+            this.providers = Collections.unmodifiableList(providers);
+            this.byId = new HashMap<>();
+            for (CompiledSamlProvider provider : providers) {
+                byId.put(provider.getId(), provider);
+            }
+        }
     }
     
     /**
@@ -146,9 +442,10 @@ public class SamlConfigurationService {
     public void init() {
         logger.info("Initializing SamlConfigurationService");
         try {
-            List<SamlProviderConfig> providers = getAllProviders();
+            List<CompiledSamlProvider> providers = getCompiledProviders();
             logger.info("Loaded {} providers from configuration", providers.size());
             providers.forEach(p -> logger.info("Provider: {}, Enabled: {}", p.getId(), p.isEnabled()));
+            logger.info("Holding {} distinct certificates", compiler.certificateCount());
         } catch (Exception e) {
             logger.error("Failed to load SAML providers", e);
         }
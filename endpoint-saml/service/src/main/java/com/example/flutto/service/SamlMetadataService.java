@@ -1,60 +1,345 @@
 package com.example.flutto.service;
 
+import com.example.flutto.jfr.MetadataParseEvent;
 import com.example.flutto.model.SamlProviderConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
+import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.ErrorHandler;
 import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
 
+import javax.xml.XMLConstants;
+import javax.xml.crypto.dsig.Reference;
+import javax.xml.crypto.dsig.XMLSignature;
+import javax.xml.crypto.dsig.XMLSignatureFactory;
+import javax.xml.crypto.dsig.dom.DOMValidateContext;
+import javax.xml.datatype.DatatypeConfigurationException;
+import javax.xml.datatype.DatatypeFactory;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.InputStream;
 import java.io.StringReader;
+import java.security.cert.X509Certificate;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @Service
 public class SamlMetadataService {
     private static final Logger logger = LoggerFactory.getLogger(SamlMetadataService.class);
-    private final RestTemplate restTemplate = new RestTemplate();
+
+    private static final String METADATA_NS = "urn:oasis:names:tc:SAML:2.0:metadata";
+
+    private static final DocumentBuilderFactory FACTORY = hardenedFactory();
+    // Builders are not thread-safe; each thread keeps one and resets it per parse
+    private static final ThreadLocal<DocumentBuilder> DOCUMENT_BUILDER = ThreadLocal.withInitial(() -> {
+        try {
+            return FACTORY.newDocumentBuilder();
+        } catch (ParserConfigurationException e) {
+            throw new IllegalStateException("Cannot create XML parser", e);
+        }
+    });
+    // Backstop should a DTD get past the parser features
+    private static final EntityResolver NO_ENTITIES = (publicId, systemId) -> {
+        throw new SAXException("External entities are not allowed in metadata: " + systemId);
+    };
+    // Errors surface as exceptions instead of being printed to stderr as well
+    private static final ErrorHandler THROWING = new ErrorHandler() {
+        @Override
+        public void warning(SAXParseException e) {
+        }
+
+        @Override
+        public void error(SAXParseException e) throws SAXException {
+            throw e;
+        }
+
+        @Override
+        public void fatalError(SAXParseException e) throws SAXException {
+            throw e;
+        }
+    };
+
+    private final MetadataHttpClient httpClient;
+
+    public SamlMetadataService(MetadataHttpClient httpClient) {
+        this.httpClient = httpClient;
+    }
 
     /**
      * Parses SAML metadata from a URL and pre-fills a SamlProviderConfig
      */
     public SamlProviderConfig parseMetadataFromUrl(String url) {
         try {
-            String metadataXml = restTemplate.getForObject(url, String.class);
+            Document document = fetchMetadata(url);
             SamlProviderConfig config = new SamlProviderConfig();
             config.setMetadataSource("url");
             config.setMetadataUrl(url);
             
-            return parseMetadataXml(metadataXml, config);
+            return parseMetadataDocument(document, config);
         } catch (Exception e) {
             logger.error("Error fetching or parsing metadata from URL: " + url, e);
             throw new RuntimeException("Failed to parse metadata from URL: " + e.getMessage());
         }
     }
 
+    /**
+     * Downloads the metadata document at the given URL, parsing it as it streams in
+     */
+    public Document fetchMetadata(String url) {
+        return fetchMetadata(null, url);
+    }
+
+    /**
+     * Downloads the metadata document of the given provider
+     */
+    public Document fetchMetadata(String registrationId, String url) {
+        return httpClient.fetch(registrationId, url, SamlMetadataService::parseDocument);
+    }
+
+    /**
+     * When the metadata stops being valid for caching: the earlier of its
+     * validUntil and now plus its cacheDuration, or empty if it declares neither
+     */
+    public Optional<Instant> metadataExpiry(String metadataXml) {
+        try {
+            return metadataExpiry(parseDocument(new InputSource(new StringReader(metadataXml))));
+        } catch (Exception e) {
+            logger.warn("Could not read metadata validity: {}", e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    public Optional<Instant> metadataExpiry(Document document) {
+        try {
+            Element root = document.getDocumentElement();
+            Instant validUntil = parseDateTime(root.getAttribute("validUntil"));
+            Instant cachedUntil = null;
+            String cacheDuration = root.getAttribute("cacheDuration");
+            if (!cacheDuration.isEmpty()) {
+                Date now = new Date();
+                cachedUntil = Instant.ofEpochMilli(now.getTime()
+                    + DatatypeFactory.newInstance().newDuration(cacheDuration).getTimeInMillis(now));
+            }
+            if (validUntil == null || (cachedUntil != null && cachedUntil.isBefore(validUntil))) {
+                return Optional.ofNullable(cachedUntil);
+            }
+            return Optional.of(validUntil);
+        } catch (Exception e) {
+            logger.warn("Could not read metadata validity: {}", e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Reads validUntil from the root element without parsing the whole document
+     */
+    public static Instant declaredValidUntil(String metadataXml) {
+        if (metadataXml == null) {
+            return null;
+        }
+        // Skip the XML declaration and comments to find the root start tag
+        int start = metadataXml.indexOf('<');
+        while (start >= 0 && start + 1 < metadataXml.length()
+                && (metadataXml.charAt(start + 1) == '?' || metadataXml.charAt(start + 1) == '!')) {
+            start = metadataXml.indexOf('<', start + 1);
+        }
+        if (start < 0) {
+            return null;
+        }
+        int end = metadataXml.indexOf('>', start);
+        int attribute = metadataXml.indexOf("validUntil=\"", start);
+        if (end < 0 || attribute < 0 || attribute > end) {
+            return null;
+        }
+        int valueStart = attribute + "validUntil=\"".length();
+        int valueEnd = metadataXml.indexOf('"', valueStart);
+        try {
+            return valueEnd > 0 ? parseDateTime(metadataXml.substring(valueStart, valueEnd)) : null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static Instant parseDateTime(String value) throws DatatypeConfigurationException {
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        return DatatypeFactory.newInstance().newXMLGregorianCalendar(value).toGregorianCalendar().toInstant();
+    }
+
+    private static Document parseDocument(InputStream in) throws Exception {
+        return parseDocument(new InputSource(in));
+    }
+
+    private static Document parseDocument(InputSource source) throws Exception {
+        DocumentBuilder builder = DOCUMENT_BUILDER.get();
+        builder.reset();
+        builder.setEntityResolver(NO_ENTITIES);
+        builder.setErrorHandler(THROWING);
+        return builder.parse(source);
+    }
+
+    /**
+     * Metadata comes from remote URLs and admin input, so DTDs, external
+     * entities, external schemas and XInclude are all refused
+     */
+    private static DocumentBuilderFactory hardenedFactory() {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        factory.setXIncludeAware(false);
+        factory.setExpandEntityReferences(false);
+        try {
+            factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            factory.setFeature("http://xml.org/sax/features/external-general-entities", false);
+            factory.setFeature("http://xml.org/sax/features/external-parameter-entities", false);
+            factory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+        } catch (ParserConfigurationException e) {
+            throw new IllegalStateException("XML parser does not support the features metadata parsing requires", e);
+        }
+        factory.setAttribute(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+        factory.setAttribute(XMLConstants.ACCESS_EXTERNAL_SCHEMA, "");
+        return factory;
+    }
+
     /**
      * Parses SAML metadata XML and pre-fills a SamlProviderConfig
      */
     public SamlProviderConfig parseMetadataXml(String metadataXml, SamlProviderConfig config) {
+        MetadataParseEvent event = new MetadataParseEvent();
+        event.begin();
         try {
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            factory.setNamespaceAware(true);
-            DocumentBuilder builder = factory.newDocumentBuilder();
-            Document document = builder.parse(new InputSource(new StringReader(metadataXml)));
-            
+            Document document;
+            try {
+                document = parseDocument(new InputSource(new StringReader(metadataXml)));
+            } catch (Exception e) {
+                logger.error("Error parsing metadata XML", e);
+                throw new RuntimeException("Failed to parse metadata XML: " + e.getMessage());
+            }
             // Set metadataXml if the source is 'xml'
             if ("xml".equals(config.getMetadataSource())) {
                 config.setMetadataXml(metadataXml);
             }
-            
+            SamlProviderConfig parsed = extractIdpDetails(document, config);
+            event.success = true;
+            return parsed;
+        } finally {
+            commit(event, config, metadataXml.length());
+        }
+    }
+
+    /**
+     * Pre-fills a SamlProviderConfig from an already parsed metadata document
+     */
+    public SamlProviderConfig parseMetadataDocument(Document document, SamlProviderConfig config) {
+        MetadataParseEvent event = new MetadataParseEvent();
+        event.begin();
+        try {
+            SamlProviderConfig parsed = extractIdpDetails(document, config);
+            event.success = true;
+            return parsed;
+        } finally {
+            commit(event, config, 0);
+        }
+    }
+
+    /**
+     * Whether the metadata carries an enveloped XML signature over its root
+     * element that verifies against one of the given certificates
+     */
+    public boolean isSignedBy(Document document, Collection<X509Certificate> certificates) {
+        Element root = document.getDocumentElement();
+        Element signature = null;
+        for (Node child = root.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child instanceof Element element && XMLSignature.XMLNS.equals(element.getNamespaceURI())
+                    && "Signature".equals(element.getLocalName())) {
+                signature = element;
+                break;
+            }
+        }
+        if (signature == null || certificates.isEmpty()) {
+            return false;
+        }
+        if (root.hasAttribute("ID")) {
+            root.setIdAttribute("ID", true);
+        }
+        XMLSignatureFactory factory = XMLSignatureFactory.getInstance("DOM");
+        for (X509Certificate certificate : certificates) {
+            try {
+                DOMValidateContext context = new DOMValidateContext(certificate.getPublicKey(), signature);
+                context.setProperty("org.jcp.xml.dsig.secureValidation", Boolean.TRUE);
+                XMLSignature xmlSignature = factory.unmarshalXMLSignature(context);
+                if (coversRoot(xmlSignature, root) && xmlSignature.validate(context)) {
+                    return true;
+                }
+            } catch (Exception e) {
+                logger.debug("Metadata signature does not verify with {}: {}",
+                    certificate.getSubjectX500Principal(), e.getMessage());
+            }
+        }
+        return false;
+    }
+
+    // A signature over some other element says nothing about the certificates
+    private static boolean coversRoot(XMLSignature signature, Element root) {
+        List<?> references = signature.getSignedInfo().getReferences();
+        if (references.size() != 1) {
+            return false;
+        }
+        String uri = ((Reference) references.get(0)).getURI();
+        return "".equals(uri) || (root.hasAttribute("ID") && ("#" + root.getAttribute("ID")).equals(uri));
+    }
+
+    // Base64 bodies of the signing certificates, from the IdP descriptor if there is one
+    private static List<String> signingCertificates(Document document) {
+        NodeList keyDescriptors = document.getElementsByTagNameNS(METADATA_NS, "KeyDescriptor");
+        Set<String> certificates = new LinkedHashSet<>();
+        Set<String> fallback = new LinkedHashSet<>();
+        for (int i = 0; i < keyDescriptors.getLength(); i++) {
+            Element keyDescriptor = (Element) keyDescriptors.item(i);
+            String use = keyDescriptor.getAttribute("use");
+            if (!use.isEmpty() && !"signing".equals(use)) {
+                continue;
+            }
+            boolean idp = "IDPSSODescriptor".equals(keyDescriptor.getParentNode().getLocalName());
+            NodeList certElements = keyDescriptor.getElementsByTagNameNS(XMLSignature.XMLNS, "X509Certificate");
+            for (int j = 0; j < certElements.getLength(); j++) {
+                String certValue = certElements.item(j).getTextContent().replaceAll("\\s", "");
+                if (!certValue.isEmpty()) {
+                    (idp ? certificates : fallback).add(certValue);
+                }
+            }
+        }
+        return new ArrayList<>(certificates.isEmpty() ? fallback : certificates);
+    }
+
+    private static void commit(MetadataParseEvent event, SamlProviderConfig config, long metadataBytes) {
+        if (event.shouldCommit()) {
+            event.registrationId = config.getId();
+            event.metadataBytes = metadataBytes;
+            event.commit();
+        }
+    }
+
+    private SamlProviderConfig extractIdpDetails(Document document, SamlProviderConfig config) {
+        try {
             // Extract EntityID
             Element entityDescriptor = document.getDocumentElement();
             String entityId = entityDescriptor.getAttribute("entityID");
@@ -88,15 +373,13 @@ public class SamlMetadataService {
                 }
             }
             
-            // Extract certificate
-            NodeList certElements = document.getElementsByTagNameNS(
-                    "http://www.w3.org/2000/09/xmldsig#", 
-                    "X509Certificate");
-            if (certElements.getLength() > 0) {
-                String certValue = certElements.item(0).getTextContent();
-                String formattedCert = "-----BEGIN CERTIFICATE-----\n" + 
-                        certValue + "\n-----END CERTIFICATE-----";
-                config.setIdpCertificate(formattedCert);
+            // Extract every signing certificate; during a key rollover the IdP
+            // publishes the old and the new one and either may sign responses
+            List<String> certificates = signingCertificates(document);
+            if (!certificates.isEmpty()) {
+                config.setIdpCertificate(certificates.stream()
+                    .map(certValue -> "-----BEGIN CERTIFICATE-----\n" + certValue + "\n-----END CERTIFICATE-----")
+                    .collect(Collectors.joining("\n")));
             }
             
             // Set default values
@@ -0,0 +1,124 @@
+package com.example.flutto.service;
+
+import com.example.flutto.model.AttributeClaimResolver;
+import com.example.flutto.model.CompiledSamlProvider;
+import com.example.flutto.model.SamlProviderConfig;
+import org.springframework.stereotype.Service;
+
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Turns stored provider configurations into their compact runtime form
+ */
+@Service
+public class SamlProviderCompiler {
+
+    private final CredentialCache credentials = new CredentialCache();
+    // Tenants set up from the same template share one resolver
+    private final Map<Map<String, List<String>>, AttributeClaimResolver> claimResolvers = new ConcurrentHashMap<>();
+
+    /**
+     * Decodes the provider's certificates and keys. A provider whose material
+     * cannot be decoded is still returned, with {@link CompiledSamlProvider#getError()} set.
+     */
+    public CompiledSamlProvider compile(SamlProviderConfig config) {
+        List<X509Certificate> idpCertificates = null;
+        X509Certificate spCertificate = null;
+        PrivateKey spPrivateKey = null;
+        String error = null;
+        try {
+            if (config.getIdpCertificate() != null && !config.getIdpCertificate().isEmpty()) {
+                idpCertificates = credentials.certificates(config.getIdpCertificate());
+            }
+            // SP credentials are only used when the provider signs its requests or
+            // has its assertions encrypted to the SP
+            boolean hasSpCredentials = config.getSpCertificate() != null && config.getSpPrivateKey() != null;
+            if ((config.isSignAuthnRequests() || config.isRequireEncryptedResponses()) && hasSpCredentials) {
+                spCertificate = credentials.certificate(config.getSpCertificate());
+                spPrivateKey = credentials.privateKey(config.getSpPrivateKey());
+            } else if (config.isRequireEncryptedResponses()) {
+                error = "Encrypted responses require an SP certificate and private key";
+            }
+        } catch (Exception e) {
+            error = e.getMessage();
+        }
+        if (error == null) {
+            error = reservedMappingError(config.getAttributeMappings());
+        }
+        if (error == null && config.getRoleMappings() != null && !config.getRoleMappings().isEmpty()
+                && (config.getGroupsAttribute() == null || config.getGroupsAttribute().isBlank())) {
+            error = "Role mappings require a groupsAttribute";
+        }
+        return new CompiledSamlProvider(config, idpCertificates, spCertificate, spPrivateKey,
+            claimResolver(config.getAttributeMappings()),
+            SamlMetadataService.declaredValidUntil(config.getMetadataXml()), error);
+    }
+
+    // Claims named like the compact token's own would be read back as roles or profile fields
+    private static String reservedMappingError(Map<String, List<String>> mappings) {
+        if (mappings == null) {
+            return null;
+        }
+        for (String claim : mappings.keySet()) {
+            if (JwtService.isReservedClaim(claim)) {
+                return "Attribute mapping '" + claim + "' uses a reserved token claim name";
+            }
+        }
+        return null;
+    }
+
+    private AttributeClaimResolver claimResolver(Map<String, List<String>> mappings) {
+        if (mappings == null || mappings.isEmpty()) {
+            return AttributeClaimResolver.DEFAULT;
+        }
+        AttributeClaimResolver resolver = claimResolvers.get(mappings);
+        if (resolver == null) {
+            // Keyed by the resolver's own immutable copy, not the caller's map
+            AttributeClaimResolver compiled = new AttributeClaimResolver(mappings);
+            resolver = claimResolvers.computeIfAbsent(compiled.getMappings(), key -> compiled);
+        }
+        return resolver;
+    }
+
+    public List<CompiledSamlProvider> compileAll(List<SamlProviderConfig> configs) {
+        List<CompiledSamlProvider> compiled = new ArrayList<>(configs.size());
+        for (SamlProviderConfig config : configs) {
+            compiled.add(compile(config));
+        }
+        return compiled;
+    }
+
+    /**
+     * Drops cached credentials and resolvers that none of the live providers reference any more
+     */
+    public void retainOnly(List<CompiledSamlProvider> live) {
+        List<Object> inUse = new ArrayList<>(live.size() * 3);
+        for (CompiledSamlProvider provider : live) {
+            inUse.addAll(provider.getIdpCertificates());
+            inUse.add(provider.getSpCertificate());
+            inUse.add(provider.getSpPrivateKey());
+        }
+        credentials.retainOnly(inUse);
+
+        Set<AttributeClaimResolver> liveResolvers = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (CompiledSamlProvider provider : live) {
+            liveResolvers.add(provider.getClaimResolver());
+        }
+        claimResolvers.values().removeIf(resolver -> !liveResolvers.contains(resolver));
+    }
+
+    /**
+     * Number of distinct certificates currently held
+     */
+    public int certificateCount() {
+        return credentials.certificateCount();
+    }
+}
@@ -0,0 +1,220 @@
+package com.example.flutto.service;
+
+import com.example.flutto.model.ConfigChangeEvent;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Exchanges events through a directory shared by the nodes on one host (a
+ * local directory or a volume mounted into several containers). Each event is
+ * written to its own file with an atomic rename, and the OS file watcher wakes
+ * receivers at once. Network file systems such as NFS do not report other
+ * hosts' writes to the watcher; {@link SocketConfigChangeBus} is the transport
+ * for nodes on separate hosts, though an optional poll interval makes this bus
+ * work on such a mount too, a poll interval late. Each file is dispatched once,
+ * whichever of the watcher and the poll finds it first.
+ */
+public class SharedDirectoryConfigChangeBus implements ConfigChangeBus, AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(SharedDirectoryConfigChangeBus.class);
+
+    private static final String EVENT_SUFFIX = ".event.json";
+
+    private final Path directory;
+    private final long retentionMillis;
+    private final long pollIntervalMillis;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final List<Consumer<ConfigChangeEvent>> listeners = new CopyOnWriteArrayList<>();
+    // Event files already dispatched or present at startup, tracked only when polling since
+    // the poll prunes it; only the watcher thread touches it
+    private final Set<String> seen = new HashSet<>();
+    private final WatchService watchService;
+    private final Thread watcherThread;
+
+    public SharedDirectoryConfigChangeBus(Path directory, long retentionMillis) throws IOException {
+        this(directory, retentionMillis, 0);
+    }
+
+    /**
+     * With a poll interval of 0 only the file watcher is used, which suffices
+     * when every node runs on the same host
+     */
+    public SharedDirectoryConfigChangeBus(Path directory, long retentionMillis, long pollIntervalMillis)
+            throws IOException {
+        this.directory = directory;
+        this.retentionMillis = retentionMillis;
+        this.pollIntervalMillis = pollIntervalMillis;
+        Files.createDirectories(directory);
+        if (pollIntervalMillis > 0) {
+            // Events written before we started are covered by the store we load at startup
+            seen.addAll(eventFiles());
+        }
+
+        this.watchService = directory.getFileSystem().newWatchService();
+        directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE);
+
+        this.watcherThread = new Thread(this::watchLoop, "saml-config-bus-watcher");
+        this.watcherThread.setDaemon(true);
+        this.watcherThread.start();
+        logger.info("Watching {} for SAML configuration changes", directory.toAbsolutePath());
+    }
+
+    @Override
+    public void publish(ConfigChangeEvent event) {
+        String name = String.format("%019d-%s%s", event.getVersion(), UUID.randomUUID(), EVENT_SUFFIX);
+        Path target = directory.resolve(name);
+        Path temp = directory.resolve("." + name + ".tmp");
+        try {
+            // Write then rename so watchers never observe a partially written event
+            Files.write(temp, objectMapper.writeValueAsBytes(event));
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.error("Failed to publish config change event {}: {}", event, e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void subscribe(Consumer<ConfigChangeEvent> listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+        watcherThread.interrupt();
+    }
+
+    private void watchLoop() {
+        long pollIntervalNanos = TimeUnit.MILLISECONDS.toNanos(pollIntervalMillis);
+        // Purging runs on this timer rather than per publish, so publishing stays one file write
+        // however many events the directory holds
+        long purgeIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(100, retentionMillis / 2));
+        long nextPoll = System.nanoTime() + pollIntervalNanos;
+        long nextPurge = System.nanoTime() + purgeIntervalNanos;
+        while (!Thread.currentThread().isInterrupted()) {
+            long deadline = pollIntervalMillis > 0 && nextPoll - nextPurge < 0 ? nextPoll : nextPurge;
+            WatchKey key;
+            try {
+                key = watchService.poll(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+
+            if (key != null) {
+                for (WatchEvent<?> watchEvent : key.pollEvents()) {
+                    if (watchEvent.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        // Some events were lost; ask receivers to reload from the store
+                        dispatch(new ConfigChangeEvent(Long.MAX_VALUE, ConfigChangeEvent.Type.RESYNC, null, null));
+                        continue;
+                    }
+                    String fileName = watchEvent.context().toString();
+                    if (fileName.endsWith(EVENT_SUFFIX)) {
+                        readAndDispatch(fileName);
+                    }
+                }
+
+                if (!key.reset()) {
+                    logger.error("Config change directory {} is no longer accessible", directory);
+                    return;
+                }
+            }
+
+            if (pollIntervalMillis > 0 && System.nanoTime() - nextPoll >= 0) {
+                poll();
+                nextPoll = System.nanoTime() + pollIntervalNanos;
+            }
+            if (System.nanoTime() - nextPurge >= 0) {
+                purgeExpiredEvents();
+                nextPurge = System.nanoTime() + purgeIntervalNanos;
+            }
+        }
+    }
+
+    // Picks up files the watcher was not told about, oldest version first
+    private void poll() {
+        SortedSet<String> present;
+        try {
+            present = eventFiles();
+        } catch (IOException e) {
+            logger.warn("Failed to list config change events in {}: {}", directory, e.getMessage());
+            return;
+        }
+        for (String fileName : present) {
+            readAndDispatch(fileName);
+        }
+        // Purged files cannot come back, so forgetting them keeps the set bounded
+        seen.retainAll(present);
+    }
+
+    private SortedSet<String> eventFiles() throws IOException {
+        SortedSet<String> names = new TreeSet<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + EVENT_SUFFIX)) {
+            for (Path file : stream) {
+                names.add(file.getFileName().toString());
+            }
+        }
+        return names;
+    }
+
+    private void readAndDispatch(String fileName) {
+        if (pollIntervalMillis > 0 && !seen.add(fileName)) {
+            return;
+        }
+        Path file = directory.resolve(fileName);
+        try {
+            dispatch(objectMapper.readValue(Files.readAllBytes(file), ConfigChangeEvent.class));
+        } catch (NoSuchFileException e) {
+            // Already purged by another node; the store still has the change
+        } catch (IOException e) {
+            logger.error("Failed to read config change event {}: {}", file, e.getMessage(), e);
+        }
+    }
+
+    private void dispatch(ConfigChangeEvent event) {
+        for (Consumer<ConfigChangeEvent> listener : listeners) {
+            try {
+                listener.accept(event);
+            } catch (Exception e) {
+                logger.error("Config change listener failed for {}: {}", event, e.getMessage(), e);
+            }
+        }
+    }
+
+    private void purgeExpiredEvents() {
+        long cutoff = System.currentTimeMillis() - retentionMillis;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + EVENT_SUFFIX)) {
+            for (Path file : stream) {
+                try {
+                    if (Files.getLastModifiedTime(file).toMillis() < cutoff) {
+                        Files.deleteIfExists(file);
+                    }
+                } catch (IOException e) {
+                    // Another node may be purging the same file
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to purge old config change events in {}: {}", directory, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,356 @@
+package com.example.flutto.service;
+
+import com.example.flutto.model.ConfigChangeEvent;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Pushes events straight to the other nodes over TCP, so a change reaches every
+ * node within a network round trip, on one host or across hosts, and nothing
+ * polls. Each node listens on a port and keeps a connection open to every peer
+ * it is configured with; for local testing the peers are simply other ports on
+ * the loopback address.
+ *
+ * Messages are lines of JSON, each prefixed with an HMAC-SHA256 of the JSON
+ * under a secret the cluster shares, so nothing else that can reach the port
+ * can inject changes or revocations. A peer that could not be sent an event is
+ * sent a RESYNC once it can be reached again, since it may have missed others.
+ */
+public class SocketConfigChangeBus implements ConfigChangeBus, AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(SocketConfigChangeBus.class);
+
+    private static final int MAX_MESSAGE_BYTES = 64 * 1024;
+    private static final int OUTBOX_CAPACITY = 10_000;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final List<Consumer<ConfigChangeEvent>> listeners = new CopyOnWriteArrayList<>();
+    private final SecretKeySpec key;
+    private final int connectTimeoutMillis;
+    private final long retryIntervalMillis;
+    private final ServerSocket serverSocket;
+    private final List<Peer> peers = new ArrayList<>();
+    private final Set<Socket> inbound = ConcurrentHashMap.newKeySet();
+    private final BlockingQueue<ConfigChangeEvent> outbox = new LinkedBlockingQueue<>(OUTBOX_CAPACITY);
+    // Listeners run on one thread in arrival order, as on the other buses
+    private final ExecutorService dispatcher = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "saml-config-bus-dispatch");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Thread acceptThread;
+    private final Thread senderThread;
+    private volatile boolean closed;
+
+    public SocketConfigChangeBus(InetSocketAddress listenAddress, List<InetSocketAddress> peerAddresses,
+                                 String secret, int connectTimeoutMillis, long retryIntervalMillis) throws IOException {
+        if (secret == null || secret.isBlank()) {
+            throw new IllegalArgumentException("The socket config change bus needs a shared secret");
+        }
+        this.key = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256");
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.retryIntervalMillis = retryIntervalMillis;
+        for (InetSocketAddress address : peerAddresses) {
+            peers.add(new Peer(address));
+        }
+
+        this.serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(listenAddress);
+
+        this.acceptThread = new Thread(this::acceptLoop, "saml-config-bus-accept");
+        this.acceptThread.setDaemon(true);
+        this.acceptThread.start();
+        this.senderThread = new Thread(this::sendLoop, "saml-config-bus-sender");
+        this.senderThread.setDaemon(true);
+        this.senderThread.start();
+        logger.info("Listening on {} for SAML configuration changes from {}", serverSocket.getLocalSocketAddress(),
+            peerAddresses);
+    }
+
+    /**
+     * Port the bus accepts peer connections on
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    @Override
+    public void publish(ConfigChangeEvent event) {
+        dispatcher.execute(() -> dispatch(event));
+        if (!peers.isEmpty() && !outbox.offer(event)) {
+            // The sender is stuck on a peer; everyone reloads once it gets going again
+            logger.warn("Config change outbox is full, peers will be asked to resync");
+            for (Peer peer : peers) {
+                peer.missedEvents = true;
+            }
+        }
+    }
+
+    @Override
+    public void subscribe(Consumer<ConfigChangeEvent> listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        serverSocket.close();
+        senderThread.interrupt();
+        for (Peer peer : peers) {
+            peer.disconnect();
+        }
+        for (Socket socket : inbound) {
+            socket.close();
+        }
+        dispatcher.shutdownNow();
+    }
+
+    private void sendLoop() {
+        while (!closed) {
+            ConfigChangeEvent event;
+            try {
+                // Wakes up without an event too, to reconnect peers that missed some
+                event = outbox.poll(retryIntervalMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            byte[] message = event != null ? encode(event) : null;
+            for (Peer peer : peers) {
+                peer.deliver(message);
+            }
+        }
+    }
+
+    private void acceptLoop() {
+        while (!closed) {
+            Socket connection;
+            try {
+                connection = serverSocket.accept();
+            } catch (IOException e) {
+                if (!closed) {
+                    logger.error("Config change bus stopped accepting connections: {}", e.getMessage(), e);
+                }
+                return;
+            }
+            Thread receiver = new Thread(() -> receive(connection), "saml-config-bus-receive");
+            receiver.setDaemon(true);
+            receiver.start();
+        }
+    }
+
+    private void receive(Socket connection) {
+        inbound.add(connection);
+        try (Socket socket = connection; InputStream in = new BufferedInputStream(socket.getInputStream())) {
+            byte[] line;
+            while ((line = readLine(in)) != null) {
+                ConfigChangeEvent event = decode(line);
+                if (event == null) {
+                    logger.warn("Dropping connection from {} after a message that failed verification",
+                        socket.getRemoteSocketAddress());
+                    return;
+                }
+                dispatcher.execute(() -> dispatch(event));
+            }
+        } catch (IOException e) {
+            if (!closed) {
+                logger.debug("Config change connection from {} ended: {}", connection.getRemoteSocketAddress(),
+                    e.getMessage());
+            }
+        } finally {
+            inbound.remove(connection);
+        }
+    }
+
+    private void dispatch(ConfigChangeEvent event) {
+        for (Consumer<ConfigChangeEvent> listener : listeners) {
+            try {
+                listener.accept(event);
+            } catch (Exception e) {
+                logger.error("Config change listener failed for {}: {}", event, e.getMessage(), e);
+            }
+        }
+    }
+
+    // "<base64 HMAC of the JSON> <JSON>\n"
+    private byte[] encode(ConfigChangeEvent event) {
+        try {
+            byte[] json = objectMapper.writeValueAsBytes(event);
+            byte[] mac = Base64.getEncoder().encode(mac(json));
+            byte[] message = new byte[mac.length + 1 + json.length + 1];
+            System.arraycopy(mac, 0, message, 0, mac.length);
+            message[mac.length] = ' ';
+            System.arraycopy(json, 0, message, mac.length + 1, json.length);
+            message[message.length - 1] = '\n';
+            return message;
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not serialize " + event, e);
+        }
+    }
+
+    // The event, or null when the message is malformed or not signed with the cluster secret
+    private ConfigChangeEvent decode(byte[] line) {
+        int space = -1;
+        for (int i = 0; i < line.length && space < 0; i++) {
+            if (line[i] == ' ') {
+                space = i;
+            }
+        }
+        if (space < 0) {
+            return null;
+        }
+        try {
+            byte[] mac = Base64.getDecoder().decode(Arrays.copyOfRange(line, 0, space));
+            byte[] json = Arrays.copyOfRange(line, space + 1, line.length);
+            if (!MessageDigest.isEqual(mac, mac(json))) {
+                return null;
+            }
+            return objectMapper.readValue(json, ConfigChangeEvent.class);
+        } catch (IOException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private byte[] mac(byte[] data) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(key);
+            return mac.doFinal(data);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 not available", e);
+        }
+    }
+
+    // A line without its newline, or null at the end of the stream
+    private static byte[] readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b < 0) {
+                return null;
+            }
+            if (line.size() >= MAX_MESSAGE_BYTES) {
+                throw new IOException("Config change message exceeds " + MAX_MESSAGE_BYTES + " bytes");
+            }
+            line.write(b);
+        }
+        return line.toByteArray();
+    }
+
+    /**
+     * Outbound connection to one peer. Only the sender thread uses it, apart
+     * from close and the outbox overflow flag.
+     */
+    private final class Peer {
+        private final InetSocketAddress address;
+        private Socket socket;
+        private OutputStream out;
+        private long nextAttempt = System.nanoTime();
+        // Set while the peer may have missed events; cleared by sending it a RESYNC
+        private volatile boolean missedEvents;
+
+        private Peer(InetSocketAddress address) {
+            this.address = address;
+        }
+
+        // Sends the message; with null only re-establishes a connection that missed events
+        private void deliver(byte[] message) {
+            if (message == null && !missedEvents) {
+                return;
+            }
+            if (!connect()) {
+                if (message != null) {
+                    missedEvents = true;
+                }
+                return;
+            }
+            try {
+                if (missedEvents) {
+                    missedEvents = false;
+                    out.write(encode(new ConfigChangeEvent(Long.MAX_VALUE, ConfigChangeEvent.Type.RESYNC, null, null)));
+                }
+                if (message != null) {
+                    out.write(message);
+                }
+                out.flush();
+            } catch (IOException e) {
+                logger.warn("Lost connection to config change peer {}: {}", address, e.getMessage());
+                disconnect();
+                missedEvents = true;
+            }
+        }
+
+        private boolean connect() {
+            if (socket != null) {
+                return true;
+            }
+            long now = System.nanoTime();
+            if (now - nextAttempt < 0) {
+                return false;
+            }
+            nextAttempt = now + TimeUnit.MILLISECONDS.toNanos(retryIntervalMillis);
+            Socket candidate = new Socket();
+            try {
+                candidate.setTcpNoDelay(true);
+                candidate.setKeepAlive(true);
+                // Configured host names are resolved on every attempt so a peer may change address
+                InetSocketAddress target = address.isUnresolved()
+                    ? new InetSocketAddress(address.getHostString(), address.getPort()) : address;
+                candidate.connect(target, connectTimeoutMillis);
+                out = new BufferedOutputStream(candidate.getOutputStream());
+                socket = candidate;
+                logger.info("Connected to config change peer {}", address);
+                return true;
+            } catch (IOException e) {
+                logger.debug("Could not reach config change peer {}: {}", address, e.getMessage());
+                try {
+                    candidate.close();
+                } catch (IOException ignored) {
+                    // Nothing more to do
+                }
+                return false;
+            }
+        }
+
+        private void disconnect() {
+            Socket current = socket;
+            socket = null;
+            out = null;
+            if (current != null) {
+                try {
+                    current.close();
+                } catch (IOException ignored) {
+                    // Already closed
+                }
+            }
+        }
+    }
+}
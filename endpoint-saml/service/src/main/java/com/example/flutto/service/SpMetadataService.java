@@ -0,0 +1,173 @@
+package com.example.flutto.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.saml2.provider.service.metadata.OpenSaml4MetadataResolver;
+import org.springframework.security.saml2.provider.service.registration.RelyingPartyRegistration;
+import org.springframework.security.saml2.provider.service.registration.RelyingPartyRegistrationRepository;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Renders each registration's SP metadata once and keeps the bytes until the
+ * registration is rebuilt. Registrations are replaced (never mutated) when a
+ * provider's configuration changes, so a cached document is current for as
+ * long as the repository still hands out the registration it was rendered from.
+ */
+@Service
+public class SpMetadataService {
+    private static final Logger logger = LoggerFactory.getLogger(SpMetadataService.class);
+
+    private final RelyingPartyRegistrationRepository registrations;
+    private final OpenSaml4MetadataResolver metadataResolver = new OpenSaml4MetadataResolver();
+    private final Map<String, RenderedMetadata> cache = new ConcurrentHashMap<>();
+
+    public SpMetadataService(RelyingPartyRegistrationRepository registrations,
+                             @Value("${saml.sp-metadata.sign:false}") boolean sign) {
+        this.registrations = registrations;
+        this.metadataResolver.setSignMetadata(sign);
+    }
+
+    /**
+     * The registration's metadata with URL templates resolved against the given
+     * base URL, or empty if there is no such registration
+     */
+    public Optional<RenderedMetadata> metadata(String registrationId, String baseUrl) {
+        RelyingPartyRegistration registration = registrations.findByRegistrationId(registrationId);
+        if (registration == null) {
+            cache.remove(registrationId);
+            return Optional.empty();
+        }
+        return Optional.of(metadata(registration, baseUrl));
+    }
+
+    /**
+     * Metadata of every registration, rendering only those not cached yet
+     */
+    public List<RenderedMetadata> allMetadata(String baseUrl) {
+        List<RenderedMetadata> all = new ArrayList<>();
+        Set<String> live = new HashSet<>();
+        if (registrations instanceof Iterable<?> iterable) {
+            for (Object candidate : iterable) {
+                RelyingPartyRegistration registration = (RelyingPartyRegistration) candidate;
+                live.add(registration.getRegistrationId());
+                all.add(metadata(registration, baseUrl));
+            }
+        }
+        cache.keySet().retainAll(live);
+        return all;
+    }
+
+    private RenderedMetadata metadata(RelyingPartyRegistration registration, String baseUrl) {
+        RenderedMetadata cached = cache.get(registration.getRegistrationId());
+        if (cached != null && cached.source == registration && cached.baseUrl.equals(baseUrl)) {
+            return cached;
+        }
+        RenderedMetadata rendered = render(registration, baseUrl);
+        cache.put(registration.getRegistrationId(), rendered);
+        return rendered;
+    }
+
+    private RenderedMetadata render(RelyingPartyRegistration registration, String baseUrl) {
+        RelyingPartyRegistration resolved = registration.mutate()
+            .entityId(resolveTemplate(registration.getEntityId(), registration, baseUrl))
+            .assertionConsumerServiceLocation(
+                resolveTemplate(registration.getAssertionConsumerServiceLocation(), registration, baseUrl))
+            .singleLogoutServiceLocation(
+                resolveTemplate(registration.getSingleLogoutServiceLocation(), registration, baseUrl))
+            .singleLogoutServiceResponseLocation(
+                resolveTemplate(registration.getSingleLogoutServiceResponseLocation(), registration, baseUrl))
+            .build();
+        byte[] xml = metadataResolver.resolve(resolved).getBytes(StandardCharsets.UTF_8);
+        logger.debug("Rendered SP metadata for {} ({} bytes)", registration.getRegistrationId(), xml.length);
+        return new RenderedMetadata(registration, baseUrl, xml);
+    }
+
+    // The same {baseUrl} and {registrationId} placeholders the SAML filters resolve per request
+    private static String resolveTemplate(String template, RelyingPartyRegistration registration, String baseUrl) {
+        if (template == null) {
+            return null;
+        }
+        return template.replace("{baseUrl}", baseUrl)
+            .replace("{registrationId}", registration.getRegistrationId());
+    }
+
+    /**
+     * A rendered SP metadata document and its strong ETag
+     */
+    public static final class RenderedMetadata {
+        private final RelyingPartyRegistration source;
+        private final String baseUrl;
+        private final byte[] xml;
+        private final int elementOffset;
+        private final String etag;
+
+        RenderedMetadata(RelyingPartyRegistration source, String baseUrl, byte[] xml) {
+            this.source = source;
+            this.baseUrl = baseUrl;
+            this.xml = xml;
+            this.elementOffset = rootElementOffset(xml);
+            this.etag = "\"" + digest(xml) + "\"";
+        }
+
+        public String getRegistrationId() {
+            return source.getRegistrationId();
+        }
+
+        public byte[] getXml() {
+            return xml;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        /**
+         * Writes the EntityDescriptor without its XML declaration, for embedding
+         * in an EntitiesDescriptor
+         */
+        public void writeElementTo(OutputStream out) throws IOException {
+            out.write(xml, elementOffset, xml.length - elementOffset);
+        }
+
+        private static int rootElementOffset(byte[] xml) {
+            int offset = 0;
+            if (xml.length > 1 && xml[0] == '<' && xml[1] == '?') {
+                while (offset < xml.length - 1 && !(xml[offset] == '?' && xml[offset + 1] == '>')) {
+                    offset++;
+                }
+                offset += 2;
+            }
+            while (offset < xml.length && Character.isWhitespace(xml[offset])) {
+                offset++;
+            }
+            return Math.min(offset, xml.length);
+        }
+    }
+
+    /**
+     * URL-safe SHA-256 of the given bytes, used for strong ETags
+     */
+    public static String digest(byte[] bytes) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(bytes);
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.flutto.service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Keyed token buckets that refill at a fixed rate up to a burst size.
+ *
+ * Each bucket is a single timestamp, the time at which it would be full again
+ * (the GCRA formulation of a token bucket), so taking a token is one
+ * compare-and-set and no lock is held. Buckets that have refilled completely
+ * carry no state worth keeping; once the key count reaches its cap they are
+ * swept out, by one caller and at most once per sweep interval. Keys that still
+ * do not fit are admitted untracked until a sweep makes room: sharing a bucket
+ * would let one busy client lock out every other newcomer, and callers keep
+ * their own bound on total load.
+ */
+public class TokenBucketLimiter {
+
+    private static final long MIN_SWEEP_INTERVAL_NANOS = 1_000_000_000L;
+
+    private final long intervalNanos;
+    private final long capacityNanos;
+    private final int maxKeys;
+    private final long sweepIntervalNanos;
+    private final LongSupplier nanoClock;
+    private final Map<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+    private final AtomicLong nextSweep;
+    private final AtomicLong untracked = new AtomicLong();
+
+    public TokenBucketLimiter(double tokensPerSecond, int burst, int maxKeys) {
+        this(tokensPerSecond, burst, maxKeys, System::nanoTime);
+    }
+
+    TokenBucketLimiter(double tokensPerSecond, int burst, int maxKeys, LongSupplier nanoClock) {
+        if (tokensPerSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("Rate and burst must be positive");
+        }
+        this.intervalNanos = Math.max(1, (long) (1_000_000_000L / tokensPerSecond));
+        this.capacityNanos = intervalNanos * burst;
+        this.maxKeys = Math.max(1, maxKeys);
+        // A bucket idle for its whole capacity is full again, so sweeping more often finds nothing new
+        this.sweepIntervalNanos = Math.max(MIN_SWEEP_INTERVAL_NANOS, capacityNanos);
+        this.nanoClock = nanoClock;
+        this.nextSweep = new AtomicLong(nanoClock.getAsLong());
+    }
+
+    /**
+     * Takes a token from the key's bucket. Returns 0 if one was available,
+     * otherwise the nanoseconds until one will be.
+     */
+    public long tryAcquire(String key) {
+        long now = nanoClock.getAsLong();
+        AtomicLong bucket = bucket(key, now);
+        if (bucket == null) {
+            untracked.incrementAndGet();
+            return 0;
+        }
+        while (true) {
+            long fullAt = bucket.get();
+            long next = (fullAt - now > 0 ? fullAt : now) + intervalNanos;
+            long excess = next - now - capacityNanos;
+            if (excess > 0) {
+                return excess;
+            }
+            if (bucket.compareAndSet(fullAt, next)) {
+                return 0;
+            }
+        }
+    }
+
+    public int size() {
+        return buckets.size();
+    }
+
+    /**
+     * Requests admitted without a bucket because the key cap was reached
+     */
+    public long untrackedCount() {
+        return untracked.get();
+    }
+
+    // The key's bucket, or null if there is no room for it before the next sweep
+    private AtomicLong bucket(String key, long now) {
+        AtomicLong bucket = buckets.get(key);
+        if (bucket != null) {
+            return bucket;
+        }
+        if (buckets.size() >= maxKeys) {
+            sweep(now);
+            if (buckets.size() >= maxKeys) {
+                return null;
+            }
+        }
+        return buckets.computeIfAbsent(key, k -> new AtomicLong(now));
+    }
+
+    // A full bucket behaves exactly like a missing one, so dropping it changes nothing
+    private void sweep(long now) {
+        long due = nextSweep.get();
+        if (now - due < 0 || !nextSweep.compareAndSet(due, now + sweepIntervalNanos)) {
+            return;
+        }
+        buckets.values().removeIf(bucket -> bucket.get() - now <= 0);
+    }
+}
@@ -0,0 +1,325 @@
+package com.example.flutto.service;
+
+import com.example.flutto.model.ConfigChangeEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * Tracks revoked token ids (jti) until the tokens would have expired anyway.
+ *
+ * Revoked ids are stored as 64-bit hashes in primitive open-addressing sets, one
+ * per expiry time bucket, so a whole bucket is released in O(1) once every token
+ * in it has expired. A blocked Bloom filter sits in front: a not-revoked lookup,
+ * which is almost every request, reads a single 64-byte block and takes no lock.
+ *
+ * Revocations are published on the {@link ConfigChangeBus}, so a token logged
+ * out on one node is rejected by all of them. At jwt.revocation.max-entries the
+ * ids closest to expiry are dropped to make room.
+ */
+@Service
+public class TokenRevocationService {
+    private static final Logger logger = LoggerFactory.getLogger(TokenRevocationService.class);
+
+    // 512-bit Bloom blocks, one cache line each
+    private static final int WORDS_PER_BLOCK = 8;
+    private static final int BLOOM_HASHES = 3;
+
+    private final long bucketWidthMillis;
+    private final LongSet[] buckets;
+    private final long[] bucketEpochs;
+    private final int bloomBlocks;
+    private final long maxEntries;
+    private final ConfigChangeBus changeBus;
+
+    private volatile long[] bloom;
+    private long size;
+
+    /**
+     * A revocation list local to this node
+     */
+    public TokenRevocationService(long maxTokenLifetimeMillis, long bucketWidthMillis, int expectedEntries,
+                                  long maxEntries) {
+        this(null, maxTokenLifetimeMillis, bucketWidthMillis, expectedEntries, maxEntries);
+    }
+
+    @Autowired
+    public TokenRevocationService(
+            ConfigChangeBus changeBus,
+            @Value("${jwt.expiration}") long maxTokenLifetimeMillis,
+            @Value("${jwt.revocation.bucket-ms:60000}") long bucketWidthMillis,
+            @Value("${jwt.revocation.expected-entries:100000}") int expectedEntries,
+            @Value("${jwt.revocation.max-entries:1000000}") long maxEntries) {
+        this.changeBus = changeBus;
+        this.bucketWidthMillis = bucketWidthMillis;
+        // One extra bucket for the partially elapsed current interval and one for rounding
+        int bucketCount = (int) ((maxTokenLifetimeMillis + bucketWidthMillis - 1) / bucketWidthMillis) + 2;
+        this.buckets = new LongSet[bucketCount];
+        this.bucketEpochs = new long[bucketCount];
+        Arrays.fill(bucketEpochs, -1);
+        // About 10 bits per expected entry keeps false positives near 1%
+        this.bloomBlocks = Math.max(1, (int) (((long) expectedEntries * 10 + 511) / 512));
+        this.bloom = new long[bloomBlocks * WORDS_PER_BLOCK];
+        this.maxEntries = maxEntries;
+        if (changeBus != null) {
+            // Our own revocations come back too and are already recorded
+            changeBus.subscribe(this::onConfigChange);
+        }
+    }
+
+    /**
+     * Revokes a token id until the given expiry time, on every node
+     */
+    public void revoke(String jti, long expiresAtMillis) {
+        if (record(jti, expiresAtMillis) && changeBus != null) {
+            changeBus.publish(ConfigChangeEvent.tokenRevoked(jti, expiresAtMillis));
+        }
+    }
+
+    private void onConfigChange(ConfigChangeEvent event) {
+        if (event.getType() == ConfigChangeEvent.Type.TOKEN_REVOKED) {
+            record(event.getTokenId(), event.getTokenExpiresAt());
+        }
+    }
+
+    // True if the id was not revoked here yet
+    private synchronized boolean record(String jti, long expiresAtMillis) {
+        long now = System.currentTimeMillis();
+        if (jti == null || expiresAtMillis <= now) {
+            return false;
+        }
+
+        long epoch = expiresAtMillis / bucketWidthMillis;
+        long newestEpoch = (now / bucketWidthMillis) + buckets.length - 1;
+        if (epoch > newestEpoch) {
+            // Token outlives the configured jwt.expiration; keep it as long as the ring allows
+            logger.warn("Revoked token {} expires beyond the revocation window, retaining it for {} ms only",
+                jti, (newestEpoch + 1) * bucketWidthMillis - now);
+            epoch = newestEpoch;
+        }
+
+        int slot = (int) (epoch % buckets.length);
+        if (bucketEpochs[slot] != epoch) {
+            // The slot still holds an expired bucket from an earlier lap of the ring
+            releaseBucket(slot);
+            buckets[slot] = new LongSet();
+            bucketEpochs[slot] = epoch;
+        }
+
+        long hash = hash(jti);
+        if (buckets[slot].contains(hash)) {
+            return false;
+        }
+        while (size >= maxEntries) {
+            if (!releaseSoonestExpiring(slot)) {
+                logger.warn("Token revocation list is full with {} entries, not retaining revoked token {}",
+                    size, jti);
+                return false;
+            }
+        }
+        buckets[slot].add(hash);
+        size++;
+
+        long[] filter = bloom;
+        bloomAdd(filter, hash);
+        // Volatile write publishes the new bits to lock-free readers
+        bloom = filter;
+        return true;
+    }
+
+    /**
+     * Returns true if the token id has been revoked. Tokens without an id
+     * predate revocation support and are never considered revoked.
+     */
+    public boolean isRevoked(String jti) {
+        if (jti == null) {
+            return false;
+        }
+        long hash = hash(jti);
+        if (!bloomMightContain(bloom, hash)) {
+            return false;
+        }
+        return containsExact(hash);
+    }
+
+    /**
+     * Number of revoked token ids currently retained
+     */
+    public synchronized long size() {
+        return size;
+    }
+
+    /**
+     * Drops buckets whose tokens have all expired and rebuilds the Bloom filter
+     * from what remains, since Bloom filters cannot forget individual entries.
+     */
+    @Scheduled(fixedDelayString = "${jwt.revocation.bucket-ms:60000}")
+    public synchronized void purgeExpired() {
+        long currentEpoch = System.currentTimeMillis() / bucketWidthMillis;
+        boolean released = false;
+        for (int slot = 0; slot < buckets.length; slot++) {
+            if (buckets[slot] != null && bucketEpochs[slot] < currentEpoch) {
+                releaseBucket(slot);
+                released = true;
+            }
+        }
+        if (!released) {
+            return;
+        }
+
+        long[] rebuilt = new long[bloomBlocks * WORDS_PER_BLOCK];
+        for (LongSet bucket : buckets) {
+            if (bucket != null) {
+                bucket.forEach(hash -> bloomAdd(rebuilt, hash));
+            }
+        }
+        bloom = rebuilt;
+    }
+
+    private synchronized boolean containsExact(long hash) {
+        for (LongSet bucket : buckets) {
+            if (bucket != null && bucket.contains(hash)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Drops the bucket that expires first, unless that is the one being added
+     * to; its ids stay set in the Bloom filter until the next purge, which only
+     * costs exact lookups
+     */
+    private boolean releaseSoonestExpiring(int addingTo) {
+        int soonest = -1;
+        for (int slot = 0; slot < buckets.length; slot++) {
+            if (buckets[slot] != null && (soonest < 0 || bucketEpochs[slot] < bucketEpochs[soonest])) {
+                soonest = slot;
+            }
+        }
+        if (soonest < 0 || soonest == addingTo) {
+            return false;
+        }
+        logger.warn("Token revocation list reached its maximum of {} entries, dropping {} revocations expiring by {}",
+            maxEntries, buckets[soonest].size(), (bucketEpochs[soonest] + 1) * bucketWidthMillis);
+        releaseBucket(soonest);
+        return true;
+    }
+
+    private void releaseBucket(int slot) {
+        if (buckets[slot] != null) {
+            size -= buckets[slot].size();
+            buckets[slot] = null;
+            bucketEpochs[slot] = -1;
+        }
+    }
+
+    private void bloomAdd(long[] filter, long hash) {
+        int base = blockOffset(hash);
+        for (int i = 0; i < BLOOM_HASHES; i++) {
+            int bit = (int) (hash >>> (i * 9)) & 511;
+            filter[base + (bit >>> 6)] |= 1L << (bit & 63);
+        }
+    }
+
+    private boolean bloomMightContain(long[] filter, long hash) {
+        int base = blockOffset(hash);
+        for (int i = 0; i < BLOOM_HASHES; i++) {
+            int bit = (int) (hash >>> (i * 9)) & 511;
+            if ((filter[base + (bit >>> 6)] & (1L << (bit & 63))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int blockOffset(long hash) {
+        // High bits pick the block, low bits pick the bits inside it
+        return (int) Long.remainderUnsigned(hash >>> 32, bloomBlocks) * WORDS_PER_BLOCK;
+    }
+
+    /**
+     * 64-bit FNV-1a over the id characters, finished with the MurmurHash3 mixer.
+     * Collisions between two random 64-bit hashes are negligible at our volumes.
+     */
+    static long hash(String value) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            h ^= value.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        // Zero marks an empty slot in LongSet
+        return h == 0 ? 1 : h;
+    }
+
+    /**
+     * Open-addressing set of non-zero longs with linear probing
+     */
+    private static final class LongSet {
+        private long[] table = new long[16];
+        private int size;
+
+        boolean add(long key) {
+            if ((size + 1) * 2 > table.length) {
+                grow();
+            }
+            int mask = table.length - 1;
+            int index = (int) (key ^ (key >>> 32)) & mask;
+            while (table[index] != 0) {
+                if (table[index] == key) {
+                    return false;
+                }
+                index = (index + 1) & mask;
+            }
+            table[index] = key;
+            size++;
+            return true;
+        }
+
+        boolean contains(long key) {
+            int mask = table.length - 1;
+            int index = (int) (key ^ (key >>> 32)) & mask;
+            while (table[index] != 0) {
+                if (table[index] == key) {
+                    return true;
+                }
+                index = (index + 1) & mask;
+            }
+            return false;
+        }
+
+        int size() {
+            return size;
+        }
+
+        void forEach(LongConsumer consumer) {
+            for (long key : table) {
+                if (key != 0) {
+                    consumer.accept(key);
+                }
+            }
+        }
+
+        private void grow() {
+            long[] old = table;
+            table = new long[old.length * 2];
+            size = 0;
+            for (long key : old) {
+                if (key != 0) {
+                    add(key);
+                }
+            }
+        }
+    }
+}
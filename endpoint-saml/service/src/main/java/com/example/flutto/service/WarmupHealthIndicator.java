@@ -0,0 +1,26 @@
+package com.example.flutto.service;
+
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+/**
+ * Reports OUT_OF_SERVICE until warm-up has finished. Part of the readiness
+ * group, so load balancers keep cold nodes out of rotation.
+ */
+@Component
+public class WarmupHealthIndicator implements HealthIndicator {
+
+    private final WarmupService warmupService;
+
+    public WarmupHealthIndicator(WarmupService warmupService) {
+        this.warmupService = warmupService;
+    }
+
+    @Override
+    public Health health() {
+        return warmupService.isComplete()
+            ? Health.up().build()
+            : Health.outOfService().withDetail("reason", "warm-up in progress").build();
+    }
+}
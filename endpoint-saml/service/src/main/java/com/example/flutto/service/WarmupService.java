@@ -0,0 +1,471 @@
+package com.example.flutto.service;
+
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.http.HttpServletMapping;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.MappingMatch;
+import net.shibboleth.utilities.java.support.xml.SerializeSupport;
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
+import org.opensaml.saml.common.SAMLVersion;
+import org.opensaml.saml.saml2.core.Assertion;
+import org.opensaml.saml.saml2.core.Audience;
+import org.opensaml.saml.saml2.core.AudienceRestriction;
+import org.opensaml.saml.saml2.core.Conditions;
+import org.opensaml.saml.saml2.core.Issuer;
+import org.opensaml.saml.saml2.core.NameID;
+import org.opensaml.saml.saml2.core.Response;
+import org.opensaml.saml.saml2.core.Status;
+import org.opensaml.saml.saml2.core.StatusCode;
+import org.opensaml.saml.saml2.core.Subject;
+import org.opensaml.saml.saml2.core.SubjectConfirmation;
+import org.opensaml.saml.saml2.core.SubjectConfirmationData;
+import org.opensaml.saml.saml2.encryption.Encrypter;
+import org.opensaml.security.credential.CredentialSupport;
+import org.opensaml.xmlsec.SignatureSigningParameters;
+import org.opensaml.xmlsec.encryption.support.DataEncryptionParameters;
+import org.opensaml.xmlsec.encryption.support.EncryptionConstants;
+import org.opensaml.xmlsec.encryption.support.KeyEncryptionParameters;
+import org.opensaml.xmlsec.signature.support.SignatureConstants;
+import org.opensaml.xmlsec.signature.support.SignatureSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.saml2.core.OpenSamlInitializationService;
+import org.springframework.security.saml2.core.Saml2X509Credential;
+import org.springframework.security.saml2.provider.service.authentication.Saml2AuthenticationToken;
+import org.springframework.security.saml2.provider.service.registration.RelyingPartyRegistration;
+import org.springframework.security.saml2.provider.service.registration.RelyingPartyRegistrationRepository;
+import org.springframework.security.saml2.provider.service.web.authentication.Saml2AuthenticationRequestResolver;
+import org.springframework.stereotype.Service;
+
+import javax.xml.namespace.QName;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPublicKey;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Exercises the login code paths before the node reports ready, so the first
+ * real login after a deploy does not pay for OpenSAML bootstrap, XML parser and
+ * JCA provider initialization, or JWT class loading. Both SAML legs go through
+ * the application's own beans: the AuthnRequest resolver the login filter uses,
+ * signing with each provider's configured algorithm, and the ACS authentication
+ * manager, which is handed a response it rejects at the signature check.
+ *
+ * Registrations that share a shape (the same IdP and SP key types) run the same
+ * code, so only one of each, up to saml.warmup.max-registrations, is warmed.
+ * The work runs on its own thread; startup is not held up, only readiness.
+ */
+@Service
+public class WarmupService {
+    private static final Logger logger = LoggerFactory.getLogger(WarmupService.class);
+
+    private static final String AUTHENTICATE_PATH = "/saml2/authenticate/";
+    private static final Duration RESPONSE_VALIDITY = Duration.ofMinutes(5);
+
+    private final RelyingPartyRegistrationRepository registrationRepository;
+    private final Saml2AuthenticationRequestResolver authenticationRequestResolver;
+    private final AuthenticationManager samlAuthenticationManager;
+    private final JwtService jwtService;
+    private final boolean enabled;
+    private final int iterations;
+    private final int maxRegistrations;
+    private final boolean exitWhenDone;
+    private final int serverPort;
+    // Throwaway signing keys matching each IdP key size or curve, so verification runs the real math
+    private final Map<String, KeyPair> probeKeys = new HashMap<>();
+
+    private volatile boolean complete;
+    private volatile boolean started;
+
+    public WarmupService(RelyingPartyRegistrationRepository registrationRepository,
+                         Saml2AuthenticationRequestResolver authenticationRequestResolver,
+                         AuthenticationManager samlAuthenticationManager,
+                         JwtService jwtService,
+                         @Value("${saml.warmup.enabled:true}") boolean enabled,
+                         @Value("${saml.warmup.iterations:3}") int iterations,
+                         @Value("${saml.warmup.max-registrations:20}") int maxRegistrations,
+                         @Value("${saml.warmup.exit-when-done:false}") boolean exitWhenDone,
+                         @Value("${server.port:8080}") int serverPort) {
+        this.registrationRepository = registrationRepository;
+        this.authenticationRequestResolver = authenticationRequestResolver;
+        this.samlAuthenticationManager = samlAuthenticationManager;
+        this.jwtService = jwtService;
+        this.enabled = enabled;
+        this.iterations = iterations;
+        this.maxRegistrations = maxRegistrations;
+        this.exitWhenDone = exitWhenDone;
+        this.serverPort = serverPort;
+    }
+
+    /**
+     * Starts warm-up once the registrations have been built. Readiness stays
+     * down until it finishes.
+     */
+    @EventListener
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    public void onApplicationEvent(ContextRefreshedEvent event) {
+        if (started) {
+            return;
+        }
+        started = true;
+        if (!enabled) {
+            complete = true;
+            exitIfTraining(event);
+            return;
+        }
+
+        Thread thread = new Thread(() -> {
+            warmUp();
+            exitIfTraining(event);
+        }, "saml-warmup");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void warmUp() {
+        long start = System.nanoTime();
+        try {
+            OpenSamlInitializationService.initialize();
+            List<RelyingPartyRegistration> sample = sample();
+            for (RelyingPartyRegistration registration : sample) {
+                for (int i = 0; i < iterations; i++) {
+                    warmUpRegistration(registration);
+                }
+            }
+            for (int i = 0; i < iterations; i++) {
+                warmUpJwt();
+            }
+            logger.info("Warm-up of {} SAML registrations finished in {} ms", sample.size(),
+                (System.nanoTime() - start) / 1_000_000);
+        } catch (Exception e) {
+            // A failed warm-up only costs the first logins some latency
+            logger.warn("Warm-up failed: {}", e.getMessage(), e);
+        } finally {
+            complete = true;
+        }
+    }
+
+    // One registration per shape, in repository order, up to the configured bound
+    private List<RelyingPartyRegistration> sample() {
+        List<RelyingPartyRegistration> sample = new ArrayList<>();
+        Set<String> shapes = new HashSet<>();
+        if (registrationRepository instanceof Iterable<?> iterable) {
+            for (Object candidate : iterable) {
+                if (sample.size() >= maxRegistrations) {
+                    break;
+                }
+                RelyingPartyRegistration registration = (RelyingPartyRegistration) candidate;
+                if (shapes.add(shape(registration))) {
+                    sample.add(registration);
+                }
+            }
+        }
+        return sample;
+    }
+
+    private static String shape(RelyingPartyRegistration registration) {
+        StringBuilder shape = new StringBuilder();
+        for (Saml2X509Credential credential : registration.getAssertingPartyDetails().getVerificationX509Credentials()) {
+            shape.append(keyShape(credential.getCertificate().getPublicKey())).append(',');
+        }
+        shape.append('/');
+        for (Saml2X509Credential credential : registration.getSigningX509Credentials()) {
+            shape.append(keyShape(credential.getCertificate().getPublicKey())).append(',');
+        }
+        return shape.toString();
+    }
+
+    // Key type plus modulus size or curve, which decide the verification code path
+    private static String keyShape(PublicKey key) {
+        if (key instanceof RSAPublicKey rsa) {
+            return "RSA-" + rsa.getModulus().bitLength();
+        }
+        if (key instanceof ECPublicKey ec) {
+            return "EC-" + ec.getParams().getOrder().toString(16);
+        }
+        return key.getAlgorithm();
+    }
+
+    // A CDS training run (-Pcds) stops here, once the warmed-up classes are loaded
+    private void exitIfTraining(ContextRefreshedEvent event) {
+        if (exitWhenDone) {
+            logger.info("Warm-up done, exiting as requested by saml.warmup.exit-when-done");
+            System.exit(SpringApplication.exit(event.getApplicationContext()));
+        }
+    }
+
+    /**
+     * True once warm-up has finished (or is disabled)
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    private void warmUpRegistration(RelyingPartyRegistration registration) {
+        String registrationId = registration.getRegistrationId();
+        try {
+            // Builds, encodes and signs the AuthnRequest exactly as a login start does
+            if (authenticationRequestResolver.resolve(loginRequest(registrationId)) == null) {
+                logger.warn("AuthnRequest warm-up for {} resolved no request", registrationId);
+            }
+        } catch (Exception e) {
+            logger.warn("AuthnRequest warm-up failed for {}: {}", registrationId, e.getMessage());
+        }
+
+        // Parses, decrypts and validates a response through the ACS authentication manager. It is
+        // signed with a throwaway key of the IdP's shape, so it is rejected, but only after the
+        // signature math has run, and it never reaches the replay cache.
+        List<Saml2X509Credential> idpCredentials = registration.getAssertingPartyDetails().getVerificationX509Credentials()
+            .stream().toList();
+        if (idpCredentials.isEmpty()) {
+            return;
+        }
+        try {
+            String response = syntheticResponse(registration, probeKey(idpCredentials.get(0).getCertificate().getPublicKey()));
+            samlAuthenticationManager.authenticate(new Saml2AuthenticationToken(registration,
+                Base64.getEncoder().encodeToString(response.getBytes(StandardCharsets.UTF_8))));
+            logger.warn("Warm-up response for {} was accepted", registrationId);
+        } catch (AuthenticationException e) {
+            // Expected: the probe key is not the IdP's
+        } catch (Exception e) {
+            logger.warn("Response warm-up failed for {}: {}", registrationId, e.getMessage());
+        }
+    }
+
+    // Only the warm-up thread uses the probe keys
+    private KeyPair probeKey(PublicKey like) throws Exception {
+        String shape = keyShape(like);
+        KeyPair keyPair = probeKeys.get(shape);
+        if (keyPair == null) {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance(like.getAlgorithm());
+            if (like instanceof RSAPublicKey rsa) {
+                generator.initialize(rsa.getModulus().bitLength());
+            } else if (like instanceof ECPublicKey ec) {
+                generator.initialize(ec.getParams());
+            }
+            keyPair = generator.generateKeyPair();
+            probeKeys.put(shape, keyPair);
+        }
+        return keyPair;
+    }
+
+    // GET /saml2/authenticate/{registrationId}, the request the login filter hands the resolver
+    private HttpServletRequest loginRequest(String registrationId) {
+        return (HttpServletRequest) Proxy.newProxyInstance(HttpServletRequest.class.getClassLoader(),
+            new Class<?>[] {HttpServletRequest.class}, new WarmupRequest(AUTHENTICATE_PATH + registrationId, serverPort));
+    }
+
+    /**
+     * An IdP response to the registration's ACS, signed with the given key and
+     * with its assertion encrypted to the SP when the registration decrypts
+     */
+    private static String syntheticResponse(RelyingPartyRegistration registration, KeyPair signingKey) throws Exception {
+        Instant now = Instant.now();
+        String acs = registration.getAssertionConsumerServiceLocation();
+        String idpEntityId = registration.getAssertingPartyDetails().getEntityId();
+
+        Assertion assertion = build(Assertion.DEFAULT_ELEMENT_NAME);
+        assertion.setID("WARMUP_" + UUID.randomUUID());
+        assertion.setIssueInstant(now);
+        assertion.setVersion(SAMLVersion.VERSION_20);
+        assertion.setIssuer(issuer(idpEntityId));
+        SubjectConfirmationData confirmationData = build(SubjectConfirmationData.DEFAULT_ELEMENT_NAME);
+        confirmationData.setRecipient(acs);
+        confirmationData.setNotOnOrAfter(now.plus(RESPONSE_VALIDITY));
+        SubjectConfirmation confirmation = build(SubjectConfirmation.DEFAULT_ELEMENT_NAME);
+        confirmation.setMethod(SubjectConfirmation.METHOD_BEARER);
+        confirmation.setSubjectConfirmationData(confirmationData);
+        NameID nameId = build(NameID.DEFAULT_ELEMENT_NAME);
+        nameId.setValue("warmup");
+        Subject subject = build(Subject.DEFAULT_ELEMENT_NAME);
+        subject.setNameID(nameId);
+        subject.getSubjectConfirmations().add(confirmation);
+        assertion.setSubject(subject);
+        Audience audience = build(Audience.DEFAULT_ELEMENT_NAME);
+        audience.setURI(registration.getEntityId());
+        AudienceRestriction audienceRestriction = build(AudienceRestriction.DEFAULT_ELEMENT_NAME);
+        audienceRestriction.getAudiences().add(audience);
+        Conditions conditions = build(Conditions.DEFAULT_ELEMENT_NAME);
+        conditions.setNotBefore(now);
+        conditions.setNotOnOrAfter(now.plus(RESPONSE_VALIDITY));
+        conditions.getAudienceRestrictions().add(audienceRestriction);
+        assertion.setConditions(conditions);
+
+        StatusCode statusCode = build(StatusCode.DEFAULT_ELEMENT_NAME);
+        statusCode.setValue(StatusCode.SUCCESS);
+        Status status = build(Status.DEFAULT_ELEMENT_NAME);
+        status.setStatusCode(statusCode);
+        Response response = build(Response.DEFAULT_ELEMENT_NAME);
+        response.setID("WARMUP_" + UUID.randomUUID());
+        response.setIssueInstant(now);
+        response.setVersion(SAMLVersion.VERSION_20);
+        response.setDestination(acs);
+        response.setIssuer(issuer(idpEntityId));
+        response.setStatus(status);
+
+        Iterator<Saml2X509Credential> decryption = registration.getDecryptionX509Credentials().iterator();
+        if (decryption.hasNext()) {
+            DataEncryptionParameters dataParameters = new DataEncryptionParameters();
+            dataParameters.setAlgorithm(EncryptionConstants.ALGO_ID_BLOCKCIPHER_AES256);
+            KeyEncryptionParameters keyParameters = new KeyEncryptionParameters();
+            keyParameters.setEncryptionCredential(
+                CredentialSupport.getSimpleCredential(decryption.next().getCertificate(), null));
+            keyParameters.setAlgorithm(EncryptionConstants.ALGO_ID_KEYTRANSPORT_RSAOAEP);
+            response.getEncryptedAssertions().add(new Encrypter(dataParameters, keyParameters).encrypt(assertion));
+        } else {
+            response.getAssertions().add(assertion);
+        }
+
+        SignatureSigningParameters signing = new SignatureSigningParameters();
+        signing.setSigningCredential(CredentialSupport.getSimpleCredential(signingKey.getPublic(), signingKey.getPrivate()));
+        signing.setSignatureAlgorithm("EC".equals(signingKey.getPublic().getAlgorithm())
+            ? SignatureConstants.ALGO_ID_SIGNATURE_ECDSA_SHA256 : SignatureConstants.ALGO_ID_SIGNATURE_RSA_SHA256);
+        signing.setSignatureReferenceDigestMethod(SignatureConstants.ALGO_ID_DIGEST_SHA256);
+        signing.setSignatureCanonicalizationAlgorithm(SignatureConstants.ALGO_ID_C14N_EXCL_OMIT_COMMENTS);
+        SignatureSupport.signObject(response, signing);
+        return SerializeSupport.nodeToString(response.getDOM());
+    }
+
+    private static Issuer issuer(String entityId) {
+        Issuer issuer = build(Issuer.DEFAULT_ELEMENT_NAME);
+        issuer.setValue(entityId);
+        return issuer;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T extends XMLObject> T build(QName name) {
+        return (T) XMLObjectProviderRegistrySupport.getBuilderFactory().getBuilder(name).buildObject(name);
+    }
+
+    private void warmUpJwt() {
+        try {
+            String token = jwtService.generateAccessToken("warmup", Map.of("roles", List.of("ROLE_USER")));
+            jwtService.authorities(jwtService.validClaims(token));
+        } catch (Exception e) {
+            logger.warn("JWT warm-up failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Answers the servlet request calls the login path makes; anything else
+     * gets null, false or zero
+     */
+    private static final class WarmupRequest implements InvocationHandler {
+        private static final HttpServletMapping DEFAULT_MAPPING = new HttpServletMapping() {
+            @Override
+            public String getMatchValue() {
+                return "";
+            }
+
+            @Override
+            public String getPattern() {
+                return "/";
+            }
+
+            @Override
+            public String getServletName() {
+                return "dispatcherServlet";
+            }
+
+            @Override
+            public MappingMatch getMappingMatch() {
+                return MappingMatch.DEFAULT;
+            }
+        };
+
+        private final String requestUri;
+        private final int serverPort;
+        private final Map<String, Object> attributes = new HashMap<>();
+
+        private WarmupRequest(String requestUri, int serverPort) {
+            this.requestUri = requestUri;
+            this.serverPort = serverPort;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            switch (method.getName()) {
+                case "getMethod":
+                    return "GET";
+                case "getScheme":
+                    return "http";
+                case "getServerName":
+                    return "localhost";
+                case "getServerPort":
+                    return serverPort;
+                case "getRequestURI":
+                case "getServletPath":
+                    return requestUri;
+                case "getRequestURL":
+                    return new StringBuffer("http://localhost:" + serverPort + requestUri);
+                case "getContextPath":
+                    return "";
+                case "getDispatcherType":
+                    return DispatcherType.REQUEST;
+                case "getHttpServletMapping":
+                    return DEFAULT_MAPPING;
+                case "getAttribute":
+                    return attributes.get((String) args[0]);
+                case "setAttribute":
+                    attributes.put((String) args[0], args[1]);
+                    return null;
+                case "removeAttribute":
+                    attributes.remove((String) args[0]);
+                    return null;
+                case "getAttributeNames":
+                    return Collections.enumeration(attributes.keySet());
+                case "getHeaders":
+                case "getHeaderNames":
+                case "getParameterNames":
+                case "getLocales":
+                    return Collections.emptyEnumeration();
+                case "getParameterMap":
+                    return Collections.emptyMap();
+                case "toString":
+                    return "warm-up request for " + requestUri;
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                default:
+                    Class<?> type = method.getReturnType();
+                    if (type == boolean.class) {
+                        return false;
+                    }
+                    if (type == int.class) {
+                        return 0;
+                    }
+                    if (type == long.class) {
+                        return 0L;
+                    }
+                    return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.example.flutto.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.saml2.provider.service.authentication.AbstractSaml2AuthenticationRequest;
+import org.springframework.security.saml2.provider.service.authentication.Saml2PostAuthenticationRequest;
+import org.springframework.security.saml2.provider.service.authentication.Saml2RedirectAuthenticationRequest;
+import org.springframework.security.saml2.provider.service.registration.RelyingPartyRegistration;
+import org.springframework.security.saml2.provider.service.registration.Saml2MessageBinding;
+import org.springframework.security.saml2.provider.service.web.authentication.OpenSaml4AuthenticationRequestResolver;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Base64;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.Inflater;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class AuthnRequestTemplateTests {
+
+	private static final String ID = "ARQ0123456-89ab-cdef-0123-456789abcdef";
+
+	private final Map<String, RelyingPartyRegistration> registrations = new ConcurrentHashMap<>();
+
+	private final DynamicRelyingPartyRegistrationRepository repository = new DynamicRelyingPartyRegistrationRepository(
+			registrations);
+
+	private final OpenSaml4AuthenticationRequestResolver framework = new OpenSaml4AuthenticationRequestResolver(
+			repository);
+
+	private final TemplateAuthenticationRequestResolver templates = new TemplateAuthenticationRequestResolver(framework,
+			repository);
+
+	@Test
+	void renderedRequestInflatesToTheTemplateWithIdAndInstantFilledIn() throws Exception {
+		AuthnRequestTemplate template = AuthnRequestTemplate.compile("https://idp.example.com/sso?tenant=\u00fc&x=1",
+				"https://sp.example.com/login/saml2/sso/okta", Saml2MessageBinding.POST.getUrn(), "urn:sp:\"okta\"",
+				null);
+		long midnight = Instant.parse("2026-01-01T00:00:00.007Z").toEpochMilli();
+
+		String xml = inflate(template.render(ID, midnight));
+
+		assertThat(xml).isEqualTo(template.xml(ID, midnight));
+		Element request = parse(xml);
+		assertThat(request.getAttribute("ID")).isEqualTo(ID);
+		assertThat(request.getAttribute("IssueInstant")).isEqualTo("2026-01-01T00:00:00.007Z");
+		assertThat(request.getAttribute("Destination")).isEqualTo("https://idp.example.com/sso?tenant=\u00fc&x=1");
+		assertThat(request.getTextContent()).isEqualTo("urn:sp:\"okta\"");
+	}
+
+	@Test
+	void templatedRequestMatchesTheFrameworkRequestExceptForIdAndInstant() throws Exception {
+		registrations.put("okta", registration("okta", Saml2MessageBinding.REDIRECT));
+
+		Saml2RedirectAuthenticationRequest expected = framework.resolve(authenticate("okta"));
+		Saml2RedirectAuthenticationRequest actual = templates.resolve(authenticate("okta"));
+
+		Element expectedXml = parse(inflate(expected.getSamlRequest()));
+		Element actualXml = parse(inflate(actual.getSamlRequest()));
+		assertThat(attributes(actualXml)).isEqualTo(attributes(expectedXml));
+		assertThat(actualXml.getTextContent()).isEqualTo(expectedXml.getTextContent());
+		assertThat(actualXml.getElementsByTagNameNS("*", "NameIDPolicy").item(0).getAttributes().getNamedItem("Format")
+			.getNodeValue()).isEqualTo("urn:oasis:names:tc:SAML:1.1:nameid-format:emailAddress");
+		assertThat(actualXml.getAttribute("ID")).isEqualTo(actual.getId()).isNotEqualTo(expected.getId());
+		assertThat(Instant.parse(actualXml.getAttribute("IssueInstant"))).isCloseTo(Instant.now(),
+				within(5, ChronoUnit.SECONDS));
+		assertThat(actual.getAuthenticationRequestUri()).isEqualTo(expected.getAuthenticationRequestUri());
+		assertThat(actual.getRelayState()).isNotBlank();
+	}
+
+	@Test
+	void templateFollowsReplacedRegistrations() throws Exception {
+		registrations.put("okta", registration("okta", Saml2MessageBinding.REDIRECT));
+		templates.resolve(authenticate("okta"));
+
+		registrations.put("okta", registration("okta", Saml2MessageBinding.REDIRECT).mutate()
+			.assertingPartyDetails(party -> party.singleSignOnServiceLocation("https://idp.example.com/moved"))
+			.build());
+		Saml2RedirectAuthenticationRequest request = templates.resolve(authenticate("okta"));
+
+		assertThat(parse(inflate(request.getSamlRequest())).getAttribute("Destination"))
+			.isEqualTo("https://idp.example.com/moved");
+	}
+
+	@Test
+	void otherRequestsAreLeftToTheFramework() {
+		registrations.put("post", registration("post", Saml2MessageBinding.POST));
+
+		AbstractSaml2AuthenticationRequest post = templates.resolve(authenticate("post"));
+
+		assertThat(post).isInstanceOf(Saml2PostAuthenticationRequest.class);
+		assertThat((AbstractSaml2AuthenticationRequest) templates.resolve(authenticate("missing"))).isNull();
+		assertThat((AbstractSaml2AuthenticationRequest) templates.resolve(new MockHttpServletRequest("GET", "/login")))
+			.isNull();
+	}
+
+	private static RelyingPartyRegistration registration(String id, Saml2MessageBinding ssoBinding) {
+		return RelyingPartyRegistration.withRegistrationId(id)
+			.entityId("{baseUrl}/saml2/service-provider-metadata/{registrationId}")
+			.assertionConsumerServiceLocation("{baseUrl}/login/saml2/sso/" + id)
+			.assertionConsumerServiceBinding(Saml2MessageBinding.POST)
+			.nameIdFormat("urn:oasis:names:tc:SAML:1.1:nameid-format:emailAddress")
+			.assertingPartyDetails(party -> party.entityId("https://idp.example.com")
+				.singleSignOnServiceLocation("https://idp.example.com/sso?idpid=" + id)
+				.singleSignOnServiceBinding(ssoBinding)
+				.wantAuthnRequestsSigned(false))
+			.build();
+	}
+
+	private static MockHttpServletRequest authenticate(String registrationId) {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/saml2/authenticate/" + registrationId);
+		request.setScheme("https");
+		request.setServerName("sp.example.com");
+		request.setServerPort(443);
+		return request;
+	}
+
+	private static String inflate(String samlRequest) throws Exception {
+		Inflater inflater = new Inflater(true);
+		inflater.setInput(Base64.getDecoder().decode(samlRequest));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] chunk = new byte[512];
+		while (!inflater.finished()) {
+			out.write(chunk, 0, inflater.inflate(chunk));
+		}
+		inflater.end();
+		return out.toString(StandardCharsets.UTF_8);
+	}
+
+	private static Element parse(String xml) throws Exception {
+		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+		factory.setNamespaceAware(true);
+		return factory.newDocumentBuilder()
+			.parse(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)))
+			.getDocumentElement();
+	}
+
+	// Attributes of the request element apart from the ones that differ per request
+	private static Map<String, String> attributes(Element element) {
+		Map<String, String> attributes = new TreeMap<>();
+		NamedNodeMap nodes = element.getAttributes();
+		for (int i = 0; i < nodes.getLength(); i++) {
+			String name = nodes.item(i).getNodeName();
+			if (!name.equals("ID") && !name.equals("IssueInstant") && !name.startsWith("xmlns")) {
+				attributes.put(name, nodes.item(i).getNodeValue());
+			}
+		}
+		return attributes;
+	}
+}
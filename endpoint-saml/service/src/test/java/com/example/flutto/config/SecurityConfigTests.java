@@ -0,0 +1,73 @@
+package com.example.flutto.config;
+
+import com.example.flutto.model.RoleMapper;
+import com.example.flutto.service.JwtService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.saml2.provider.service.authentication.DefaultSaml2AuthenticatedPrincipal;
+import org.springframework.security.saml2.provider.service.authentication.Saml2Authentication;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.RequestBuilder;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = { "saml.warmup.enabled=false", "saml.config.snapshot.enabled=false" })
+@AutoConfigureMockMvc
+class SecurityConfigTests {
+
+	@TempDir
+	static Path auditDirectory;
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	private JwtService jwtService;
+
+	@DynamicPropertySource
+	static void auditLog(DynamicPropertyRegistry registry) {
+		registry.add("saml.audit.dir", () -> auditDirectory.toString());
+	}
+
+	@Test
+	void tokenOfAUserInAnAdminGroupReadsTheAuditLog() throws Exception {
+		mockMvc.perform(auditEvents(tokenFor("ada", List.of("saml-admins"))))
+			.andExpect(status().isOk());
+	}
+
+	@Test
+	void tokenOfAnOrdinaryUserIsRefusedTheAuditLog() throws Exception {
+		mockMvc.perform(auditEvents(tokenFor("bob", List.of("staff"))))
+			.andExpect(status().isForbidden());
+	}
+
+	// What the ACS issues for a SAML login whose provider maps saml-admins to ADMIN
+	private String tokenFor(String user, List<Object> groups) {
+		RoleMapper roleMapper = new RoleMapper("groups", Map.of("ADMIN", List.of("saml-admins")));
+		Saml2Authentication authentication = roleMapper.grant(new Saml2Authentication(
+				new DefaultSaml2AuthenticatedPrincipal(user, Map.of("groups", groups)),
+				"<Response/>", AuthorityUtils.createAuthorityList("ROLE_USER")));
+		return jwtService.generateAccessToken(user, jwtService.buildClaims(authentication));
+	}
+
+	private static RequestBuilder auditEvents(String token) {
+		Instant to = Instant.now();
+		return get("/api/admin/audit/events")
+			.param("from", to.minusSeconds(3600).toString())
+			.param("to", to.toString())
+			.param("limit", "10")
+			.header("Authorization", "Bearer " + token);
+	}
+}
@@ -0,0 +1,97 @@
+package com.example.flutto.filter;
+
+import jakarta.servlet.ServletException;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AdmissionControlFilterTests {
+
+	private static final String LOGIN = "/api/auth/custom-login";
+
+	@Test
+	void clientOverItsRateGets429WithRetryAfter() throws Exception {
+		AdmissionControlFilter filter = filter(new MockEnvironment()
+			.withProperty("saml.admission.login.client-rate", "1")
+			.withProperty("saml.admission.login.client-burst", "1"));
+
+		MockHttpServletResponse first = admit(filter, request("10.0.0.1"));
+		MockHttpServletResponse second = admit(filter, request("10.0.0.1"));
+		MockHttpServletResponse otherClient = admit(filter, request("10.0.0.2"));
+
+		assertThat(first.getStatus()).isEqualTo(200);
+		assertThat(second.getStatus()).isEqualTo(429);
+		assertThat(Integer.parseInt(second.getHeader("Retry-After"))).isPositive();
+		assertThat(otherClient.getStatus()).isEqualTo(200);
+	}
+
+	@Test
+	void requestsOverTheConcurrencyCapAreShedWith503() throws Exception {
+		AdmissionControlFilter filter = filter(new MockEnvironment()
+			.withProperty("saml.admission.login.client-rate", "0")
+			.withProperty("saml.admission.login.max-concurrent", "1"));
+		AtomicReference<MockHttpServletResponse> concurrent = new AtomicReference<>();
+
+		// The second request arrives while the first is still in the chain
+		MockHttpServletResponse first = new MockHttpServletResponse();
+		filter.doFilter(request("10.0.0.1"), first, (req, res) ->
+			concurrent.set(admit(filter, request("10.0.0.2"))));
+
+		assertThat(first.getStatus()).isEqualTo(200);
+		assertThat(concurrent.get().getStatus()).isEqualTo(503);
+		assertThat(concurrent.get().getHeader("Retry-After")).isEqualTo("1");
+		assertThat(admit(filter, request("10.0.0.2")).getStatus()).isEqualTo(200);
+	}
+
+	@Test
+	void inFlightSlotIsReleasedWhenTheChainThrows() throws Exception {
+		AdmissionControlFilter filter = filter(new MockEnvironment()
+			.withProperty("saml.admission.login.client-rate", "0")
+			.withProperty("saml.admission.login.max-concurrent", "1"));
+
+		assertThatThrownBy(() -> filter.doFilter(request("10.0.0.1"), new MockHttpServletResponse(),
+			(req, res) -> {
+				throw new ServletException("boom");
+			})).isInstanceOf(ServletException.class);
+
+		assertThat(admit(filter, request("10.0.0.1")).getStatus()).isEqualTo(200);
+	}
+
+	@Test
+	void otherPathsAreNotLimited() throws Exception {
+		AdmissionControlFilter filter = filter(new MockEnvironment()
+			.withProperty("saml.admission.login.client-rate", "1")
+			.withProperty("saml.admission.login.client-burst", "1"));
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/me");
+
+		assertThat(filter.shouldNotFilter(request)).isTrue();
+	}
+
+	// Only the login class is exercised, which has no per-registration limit
+	private static AdmissionControlFilter filter(MockEnvironment environment) {
+		return new AdmissionControlFilter(null, environment);
+	}
+
+	private static MockHttpServletRequest request(String remoteAddr) {
+		MockHttpServletRequest request = new MockHttpServletRequest("POST", LOGIN);
+		request.setRemoteAddr(remoteAddr);
+		return request;
+	}
+
+	private static MockHttpServletResponse admit(AdmissionControlFilter filter, MockHttpServletRequest request) {
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		try {
+			filter.doFilter(request, response, new MockFilterChain());
+		} catch (Exception e) {
+			throw new IllegalStateException(e);
+		}
+		return response;
+	}
+}
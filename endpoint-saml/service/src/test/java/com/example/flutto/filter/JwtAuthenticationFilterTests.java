@@ -0,0 +1,114 @@
+package com.example.flutto.filter;
+
+import com.example.flutto.service.JwtService;
+import com.example.flutto.service.TokenRevocationService;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class JwtAuthenticationFilterTests {
+
+	private final JwtAuthenticationFilter filter = new JwtAuthenticationFilter(null,
+			new String[] { "/css/**", "/favicon.ico", "/api/auth/options" });
+
+	@AfterEach
+	void clearContext() {
+		SecurityContextHolder.clearContext();
+	}
+
+	@Test
+	void publicPathsSkipTheFilter() {
+		assertThat(filter.shouldNotFilter(request("/css/app.css"))).isTrue();
+		assertThat(filter.shouldNotFilter(request("/css"))).isTrue();
+		assertThat(filter.shouldNotFilter(request("/favicon.ico"))).isTrue();
+		assertThat(filter.shouldNotFilter(request("/api/auth/options"))).isTrue();
+
+		assertThat(filter.shouldNotFilter(request("/cssx/app.css"))).isFalse();
+		assertThat(filter.shouldNotFilter(request("/api/auth/options/extra"))).isFalse();
+		assertThat(filter.shouldNotFilter(request("/api/admin/saml/providers"))).isFalse();
+	}
+
+	@Test
+	void contextPathIsIgnoredWhenMatching() {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/app/css/app.css");
+		request.setContextPath("/app");
+
+		assertThat(filter.shouldNotFilter(request)).isTrue();
+	}
+
+	@Test
+	void bearerHeaderTakesPrecedenceOverCookie() {
+		MockHttpServletRequest request = request("/api/me");
+		request.addHeader("Cookie", "jwt=from-cookie");
+		request.addHeader("Authorization", "bearer from-header");
+
+		assertThat(JwtAuthenticationFilter.resolveToken(request)).isEqualTo("from-header");
+	}
+
+	@Test
+	void tokenIsReadFromCookieHeader() {
+		MockHttpServletRequest request = request("/api/me");
+		request.addHeader("Cookie", "JSESSIONID=abc; jwtx=wrong; jwt=eyJ.a.b ; refresh_token=r");
+
+		assertThat(JwtAuthenticationFilter.resolveToken(request)).isEqualTo("eyJ.a.b");
+		assertThat(AuthCookies.read(request, AuthCookies.REFRESH_TOKEN)).isEqualTo("r");
+		assertThat(AuthCookies.read(request, "missing")).isNull();
+	}
+
+	@Test
+	void cookieParsingHandlesQuotesAndSeveralHeaders() {
+		assertThat(AuthCookies.find("jwt=\"quoted\"", "jwt")).isEqualTo("quoted");
+		assertThat(AuthCookies.find("a=1;jwt=", "jwt")).isEmpty();
+		assertThat(AuthCookies.find("xjwt=1", "jwt")).isNull();
+
+		MockHttpServletRequest request = request("/api/me");
+		request.addHeader("Cookie", "a=1");
+		request.addHeader("Cookie", "jwt=second");
+		assertThat(AuthCookies.read(request, "jwt")).isEqualTo("second");
+	}
+
+	@Test
+	void tokenVerificationIsRecordedAsJfrEvent(@TempDir Path directory) throws Exception {
+		JwtService jwtService = new JwtService(new TokenRevocationService(900_000, 60_000, 1000, 10_000),
+				"testSecretKeyForJWTTokenGenerationMustBeAtLeast256BitsLong", 900_000, true, false, 1,
+				List.of("ROLE_USER", "ROLE_ADMIN"));
+		JwtAuthenticationFilter verifying = new JwtAuthenticationFilter(jwtService, new String[] { "/css/**" });
+		String token = jwtService.generateAccessToken("alice@example.com", Map.of("roles", List.of("ROLE_ADMIN")));
+		MockHttpServletRequest request = request("/api/me");
+		request.addHeader("Authorization", "Bearer " + token);
+
+		List<RecordedEvent> events;
+		try (Recording recording = new Recording()) {
+			recording.enable("com.example.flutto.TokenVerification");
+			recording.start();
+			verifying.doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+			recording.stop();
+			Path file = directory.resolve("verification.jfr");
+			recording.dump(file);
+			events = RecordingFile.readAllEvents(file);
+		}
+
+		assertThat(SecurityContextHolder.getContext().getAuthentication().getName()).isEqualTo("alice@example.com");
+		assertThat(events).singleElement().satisfies(event -> {
+			assertThat(event.getBoolean("valid")).isTrue();
+			assertThat(event.getLong("tokenBytes")).isEqualTo(token.length());
+		});
+	}
+
+	private static MockHttpServletRequest request(String uri) {
+		return new MockHttpServletRequest("GET", uri);
+	}
+}
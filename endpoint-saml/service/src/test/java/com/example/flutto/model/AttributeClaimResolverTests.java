@@ -0,0 +1,64 @@
+package com.example.flutto.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AttributeClaimResolverTests {
+
+	private static final String EMAIL_URI = "http://schemas.xmlsoap.org/ws/2005/05/identity/claims/emailaddress";
+
+	private final AttributeClaimResolver resolver = new AttributeClaimResolver(Map.of(
+			"username", List.of("mail", "email", EMAIL_URI),
+			"email", List.of("mail", "email", EMAIL_URI),
+			"firstName", List.of("givenName"),
+			"lastName", List.of("sn", "surname")));
+
+	@Test
+	void ldapStyleAttributesFillEveryMappedClaim() {
+		Map<String, Object> claims = resolver.resolve(Map.of(
+				"mail", List.of("ada@example.com"),
+				"givenName", List.of("Ada"),
+				"sn", List.of("Lovelace"),
+				"department", List.of("Engineering")));
+
+		assertThat(claims).containsOnly(
+				Map.entry("username", "ada@example.com"),
+				Map.entry("email", "ada@example.com"),
+				Map.entry("firstName", "Ada"),
+				Map.entry("lastName", "Lovelace"));
+	}
+
+	@Test
+	void earlierMappedAttributeWinsWhateverTheAssertionOrder() {
+		Map<String, List<Object>> attributes = new LinkedHashMap<>();
+		attributes.put(EMAIL_URI, List.of("uri@example.com"));
+		attributes.put("email", List.of("email@example.com"));
+		attributes.put("mail", List.of("mail@example.com"));
+
+		assertThat(resolver.resolve(attributes)).containsEntry("email", "mail@example.com");
+	}
+
+	@Test
+	void emptyAndMissingAttributesLeaveTheClaimOut() {
+		Map<String, List<Object>> attributes = new LinkedHashMap<>();
+		attributes.put("mail", List.of());
+		attributes.put("surname", List.of("Hopper"));
+
+		assertThat(resolver.resolve(attributes)).containsOnly(Map.entry("lastName", "Hopper"));
+	}
+
+	@Test
+	void defaultResolverReadsMicrosoftClaimUris() {
+		Map<String, Object> claims = AttributeClaimResolver.DEFAULT.resolve(Map.of(
+				EMAIL_URI, List.of("grace@example.com"),
+				"http://schemas.xmlsoap.org/ws/2005/05/identity/claims/name", List.of("Grace Hopper")));
+
+		assertThat(claims).containsEntry("email", "grace@example.com").containsEntry("name", "Grace Hopper");
+	}
+
+}
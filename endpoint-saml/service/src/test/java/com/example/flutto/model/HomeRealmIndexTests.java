@@ -0,0 +1,85 @@
+package com.example.flutto.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HomeRealmIndexTests {
+
+	private static CompiledSamlProvider provider(String id, List<String> emailDomains, List<String> hostnames) {
+		SamlProviderConfig config = new SamlProviderConfig();
+		config.setId(id);
+		config.setDisplayName(id);
+		config.setEmailDomains(emailDomains);
+		config.setHostnames(hostnames);
+		return new CompiledSamlProvider(config, null, null, null, AttributeClaimResolver.DEFAULT, null, null);
+	}
+
+	@Test
+	void emailDomainsMatchExactlyAndWildcardsCoverSubdomains() {
+		HomeRealmIndex index = HomeRealmIndex.EMPTY.update(List.of(
+			provider("acme", List.of("acme.com", "*.acme.com"), List.of()),
+			provider("acme-eu", List.of("eu.acme.com"), List.of()),
+			provider("globex", List.of("*.globex.io"), List.of())));
+
+		assertThat(index.providerForEmail("Alice@ACME.com")).contains("acme");
+		assertThat(index.providerForEmail("bob@sales.acme.com")).contains("acme");
+		assertThat(index.providerForEmail("carol@eu.acme.com")).contains("acme-eu");
+		assertThat(index.providerForEmail("dave@mail.eng.globex.io")).contains("globex");
+		// A wildcard covers names below the domain, not the domain itself
+		assertThat(index.providerForEmail("erin@globex.io")).isEmpty();
+		assertThat(index.providerForEmail("frank@initech.com")).isEmpty();
+		assertThat(index.providerForEmail("acme.com.")).contains("acme");
+	}
+
+	@Test
+	void hostnamesIgnoreThePort() {
+		HomeRealmIndex index = HomeRealmIndex.EMPTY.update(List.of(
+			provider("acme", List.of(), List.of("login.acme.com", "*.tenants.example.com"))));
+
+		assertThat(index.providerForHost("login.acme.com:8443")).contains("acme");
+		assertThat(index.providerForHost("acme.tenants.example.com")).contains("acme");
+		assertThat(index.providerForHost("example.com")).isEmpty();
+	}
+
+	@Test
+	void updatesReplaceOnlyChangedProviders() {
+		CompiledSamlProvider acme = provider("acme", List.of("acme.com"), List.of());
+		CompiledSamlProvider globex = provider("globex", List.of("*.globex.io"), List.of());
+		HomeRealmIndex first = HomeRealmIndex.EMPTY.update(List.of(acme, globex));
+
+		assertThat(first.update(List.of(provider("acme", List.of("acme.com"), List.of()), globex)))
+			.isSameAs(first);
+
+		HomeRealmIndex second = first.update(List.of(provider("acme", List.of("acme.org"), List.of()), globex));
+		assertThat(second.providerForEmail("x@acme.com")).isEmpty();
+		assertThat(second.providerForEmail("x@acme.org")).contains("acme");
+		assertThat(second.providerForEmail("x@eng.globex.io")).contains("globex");
+
+		HomeRealmIndex third = second.update(List.of(provider("acme", List.of("acme.org"), List.of())));
+		assertThat(third.providerForEmail("x@eng.globex.io")).isEmpty();
+		// The earlier index is untouched
+		assertThat(first.providerForEmail("x@acme.com")).contains("acme");
+	}
+
+	@Test
+	void disabledProvidersAreNotIndexedAndClaimsConflictDeterministically() {
+		CompiledSamlProvider disabled = provider("zeta", List.of("shared.com"), List.of());
+		SamlProviderConfig config = new SamlProviderConfig();
+		config.setId("off");
+		config.setEnabled(false);
+		config.setEmailDomains(List.of("off.com"));
+		CompiledSamlProvider off = new CompiledSamlProvider(config, null, null, null,
+			AttributeClaimResolver.DEFAULT, null, null);
+
+		HomeRealmIndex index = HomeRealmIndex.EMPTY.update(List.of(disabled,
+			provider("alpha", List.of("shared.com"), List.of()), off));
+
+		assertThat(index.providerForEmail("x@shared.com")).contains("alpha");
+		assertThat(index.providerForEmail("x@off.com")).isEmpty();
+		assertThat(index.update(List.of(disabled)).providerForEmail("x@shared.com")).contains("zeta");
+	}
+
+}
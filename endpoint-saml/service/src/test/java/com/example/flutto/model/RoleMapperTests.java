@@ -0,0 +1,47 @@
+package com.example.flutto.model;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.saml2.provider.service.authentication.DefaultSaml2AuthenticatedPrincipal;
+import org.springframework.security.saml2.provider.service.authentication.Saml2Authentication;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RoleMapperTests {
+
+	private final RoleMapper mapper = new RoleMapper("groups", Map.of(
+			"ADMIN", List.of("saml-admins", "platform"),
+			"ROLE_AUDITOR", List.of("platform")));
+
+	@Test
+	void groupsGrantTheirRolesWithTheRolePrefix() {
+		assertThat(mapper.roles(Map.of("groups", List.of("staff", "saml-admins")))).containsExactly("ROLE_ADMIN");
+		assertThat(mapper.roles(Map.of("groups", List.of("platform", "saml-admins"))))
+			.containsExactlyInAnyOrder("ROLE_ADMIN", "ROLE_AUDITOR");
+	}
+
+	@Test
+	void unmappedOrMissingGroupsGrantNothing() {
+		assertThat(mapper.roles(Map.of("groups", List.of("staff")))).isEmpty();
+		assertThat(mapper.roles(Map.of("memberOf", List.of("saml-admins")))).isEmpty();
+		assertThat(RoleMapper.NONE.roles(Map.of("groups", List.of("saml-admins")))).isEmpty();
+	}
+
+	@Test
+	void grantKeepsTheDefaultRoleAndAddsTheMappedOnes() {
+		Saml2Authentication authentication = new Saml2Authentication(
+				new DefaultSaml2AuthenticatedPrincipal("ada", Map.of("groups", List.of("saml-admins"))),
+				"<Response/>", AuthorityUtils.createAuthorityList("ROLE_USER"));
+
+		Saml2Authentication granted = mapper.grant(authentication);
+
+		assertThat(granted.getAuthorities()).extracting(GrantedAuthority::getAuthority)
+			.containsExactly("ROLE_USER", "ROLE_ADMIN");
+		assertThat(granted.getPrincipal()).isSameAs(authentication.getPrincipal());
+		assertThat(RoleMapper.NONE.grant(authentication)).isSameAs(authentication);
+	}
+}
@@ -0,0 +1,137 @@
+package com.example.flutto.service;
+
+import org.junit.jupiter.api.Test;
+import org.opensaml.security.credential.Credential;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.security.saml2.core.Saml2ErrorCodes;
+import org.springframework.security.saml2.core.Saml2ResponseValidatorResult;
+import org.springframework.security.saml2.provider.service.authentication.OpenSaml4AuthenticationProvider;
+import org.springframework.security.saml2.provider.service.authentication.Saml2Authentication;
+import org.springframework.security.saml2.provider.service.authentication.Saml2AuthenticationException;
+import org.springframework.security.saml2.provider.service.authentication.Saml2AuthenticationToken;
+import org.springframework.security.saml2.provider.service.registration.RelyingPartyRegistration;
+
+import java.security.KeyPair;
+import java.security.cert.X509Certificate;
+import java.time.Instant;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+class AssertionReplayCacheTests {
+
+	private final Instant inFiveMinutes = Instant.now().plusSeconds(300);
+
+	@Test
+	void secondUseOfAnAssertionIsRejected() {
+		AssertionReplayCache cache = new AssertionReplayCache(1000, 4, 30_000, 3_600_000, 0);
+
+		assertThat(cache.markConsumed("zenv", "_a1", inFiveMinutes)).isEqualTo(AssertionReplayCache.Outcome.ACCEPTED);
+		assertThat(cache.markConsumed("zenv", "_a1", inFiveMinutes)).isEqualTo(AssertionReplayCache.Outcome.REPLAYED);
+		// The same id issued by a different IdP is a different assertion
+		assertThat(cache.markConsumed("google", "_a1", inFiveMinutes)).isEqualTo(AssertionReplayCache.Outcome.ACCEPTED);
+	}
+
+	@Test
+	void replayWithinTheClockSkewAfterNotOnOrAfterIsRejected() {
+		AssertionReplayCache cache = new AssertionReplayCache(1000, 4, 30_000, 3_600_000, 300_000);
+		// One minute past NotOnOrAfter, which the validator still accepts with five minutes of skew
+		Instant expiredAMinuteAgo = Instant.now().minusSeconds(60);
+
+		assertThat(cache.markConsumed("zenv", "_a1", expiredAMinuteAgo)).isEqualTo(AssertionReplayCache.Outcome.ACCEPTED);
+		assertThat(cache.markConsumed("zenv", "_a1", expiredAMinuteAgo)).isEqualTo(AssertionReplayCache.Outcome.REPLAYED);
+	}
+
+	@Test
+	void responsesFailingValidationTakeNoCapacity() {
+		KeyPair idpKeys = SamlProviderFixtures.keyPair();
+		X509Certificate idpCertificate = SamlProviderFixtures.certificate(idpKeys, "idp");
+		KeyPair forgerKeys = SamlProviderFixtures.keyPair();
+		Credential forger = SamlResponseFixtures.signingCredential(forgerKeys,
+				SamlProviderFixtures.certificate(forgerKeys, "idp"));
+		RelyingPartyRegistration registration = SamlResponseFixtures.registration("zenv", idpCertificate);
+		AssertionReplayCache cache = new AssertionReplayCache(1000, 4, 30_000, 3_600_000, 300_000);
+		OpenSaml4AuthenticationProvider provider = provider(cache);
+
+		for (int i = 0; i < 10; i++) {
+			String forged = SamlResponseFixtures.response(registration, "mallory@example.com", forger, null);
+			assertThatExceptionOfType(Saml2AuthenticationException.class)
+				.isThrownBy(() -> provider.authenticate(new Saml2AuthenticationToken(registration, forged)))
+				.satisfies(e -> assertThat(e.getSaml2Error().getErrorCode()).isEqualTo(Saml2ErrorCodes.INVALID_SIGNATURE));
+		}
+		assertThat(cache.size()).isZero();
+
+		String genuine = SamlResponseFixtures.response(registration, "alice@example.com",
+				SamlResponseFixtures.signingCredential(idpKeys, idpCertificate), null);
+		assertThat(provider.authenticate(new Saml2AuthenticationToken(registration, genuine)).getName())
+			.isEqualTo("alice@example.com");
+		assertThat(cache.size()).isEqualTo(1);
+		assertThatExceptionOfType(Saml2AuthenticationException.class)
+			.isThrownBy(() -> provider.authenticate(new Saml2AuthenticationToken(registration, genuine)))
+			.satisfies(e -> assertThat(e.getSaml2Error().getErrorCode()).isEqualTo(Saml2ErrorCodes.INVALID_ASSERTION));
+	}
+
+	@Test
+	void failsClosedWhenFull() {
+		AssertionReplayCache cache = new AssertionReplayCache(2, 1, 30_000, 3_600_000, 0);
+
+		assertThat(cache.markConsumed("zenv", "_a1", inFiveMinutes)).isEqualTo(AssertionReplayCache.Outcome.ACCEPTED);
+		assertThat(cache.markConsumed("zenv", "_a2", inFiveMinutes)).isEqualTo(AssertionReplayCache.Outcome.ACCEPTED);
+		assertThat(cache.markConsumed("zenv", "_a3", inFiveMinutes))
+			.isEqualTo(AssertionReplayCache.Outcome.CAPACITY_EXCEEDED);
+	}
+
+	@Test
+	void expiredBucketsAreReclaimed() throws InterruptedException {
+		AssertionReplayCache cache = new AssertionReplayCache(2, 1, 10, 1_000, 0);
+
+		cache.markConsumed("zenv", "_a1", Instant.now().plusMillis(5));
+		cache.markConsumed("zenv", "_a2", Instant.now().plusMillis(5));
+		Thread.sleep(50);
+
+		assertThat(cache.markConsumed("zenv", "_a3", inFiveMinutes)).isEqualTo(AssertionReplayCache.Outcome.ACCEPTED);
+		assertThat(cache.size()).isEqualTo(1);
+	}
+
+	@Test
+	void concurrentReplaysAreAcceptedExactlyOnce() throws InterruptedException {
+		AssertionReplayCache cache = new AssertionReplayCache(100_000, 64, 30_000, 3_600_000, 0);
+		AtomicInteger accepted = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+
+		for (int thread = 0; thread < 8; thread++) {
+			executor.execute(() -> {
+				for (int i = 0; i < 10_000; i++) {
+					if (cache.markConsumed("zenv", "_id" + i, inFiveMinutes) == AssertionReplayCache.Outcome.ACCEPTED) {
+						accepted.incrementAndGet();
+					}
+				}
+			});
+		}
+		executor.shutdown();
+		assertThat(executor.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+
+		assertThat(accepted.get()).isEqualTo(10_000);
+	}
+
+	// Replay check in the authentication converter, as the ACS configures it
+	private static OpenSaml4AuthenticationProvider provider(AssertionReplayCache cache) {
+		OpenSaml4AuthenticationProvider provider = new OpenSaml4AuthenticationProvider();
+		Converter<OpenSaml4AuthenticationProvider.ResponseToken, Saml2Authentication> defaultConverter =
+			OpenSaml4AuthenticationProvider.createDefaultResponseAuthenticationConverter();
+		provider.setResponseAuthenticationConverter(token -> {
+			Saml2ResponseValidatorResult replay = cache.consume(token.getResponse(),
+					token.getToken().getRelyingPartyRegistration().getRegistrationId());
+			if (replay.hasErrors()) {
+				throw new Saml2AuthenticationException(replay.getErrors().iterator().next());
+			}
+			return defaultConverter.convert(token);
+		});
+		return provider;
+	}
+
+}
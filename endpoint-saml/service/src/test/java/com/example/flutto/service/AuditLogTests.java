@@ -0,0 +1,96 @@
+package com.example.flutto.service;
+
+import com.example.flutto.model.AuditEvent;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AuditLogTests {
+
+	private static final long FROM = System.currentTimeMillis() - 60_000;
+
+	private static final long TO = System.currentTimeMillis() + 3_600_000;
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void eventsAreWrittenAndQueriedNewestFirst() throws Exception {
+		AuditLog auditLog = new AuditLog(true, directory.toString(), 1 << 20, 4, 1024, 64, 1000);
+		try {
+			auditLog.record(AuditEvent.Type.LOGIN_SUCCESS, "alice", "okta", "10.0.0.1", null);
+			auditLog.record(AuditEvent.Type.LOGIN_FAILURE, null, "okta", "10.0.0.2", "Invalid signature");
+			auditLog.record(AuditEvent.Type.LOGIN_SUCCESS, "bob", "google", "10.0.0.3", null);
+			auditLog.record(AuditEvent.Type.LOGOUT, "alice", null, "10.0.0.1", null);
+			assertThat(auditLog.awaitIdle(5000)).isTrue();
+
+			assertThat(auditLog.query("alice", null, null, FROM, TO, 10))
+				.extracting(AuditEvent::getType)
+				.containsExactly(AuditEvent.Type.LOGOUT, AuditEvent.Type.LOGIN_SUCCESS);
+			assertThat(auditLog.query(null, "okta", AuditEvent.Type.LOGIN_FAILURE, FROM, TO, 10))
+				.singleElement()
+				.satisfies(event -> assertThat(event.getDetail()).isEqualTo("Invalid signature"));
+			assertThat(auditLog.query(null, null, null, FROM, TO, 2)).hasSize(2);
+			assertThat(auditLog.query(null, null, null, System.currentTimeMillis() + 60_000, TO, 10)).isEmpty();
+			assertThat(auditLog.getWrittenCount()).isEqualTo(4);
+		} finally {
+			auditLog.shutdown();
+		}
+	}
+
+	@Test
+	void pageIsTheNewestMatchesAcrossSegmentsWithinTheWindow() throws Exception {
+		AuditLog auditLog = new AuditLog(true, directory.toString(), 512, 8, 1024, 64, 1000);
+		try {
+			for (int i = 0; i < 20; i++) {
+				auditLog.record(AuditEvent.Type.TOKEN_ISSUED, "user" + i, "okta", "10.0.0.1", "refresh");
+			}
+			assertThat(auditLog.awaitIdle(5000)).isTrue();
+
+			assertThat(auditLog.query(null, null, null, FROM, TO, 5))
+				.extracting(AuditEvent::getUser)
+				.containsExactly("user19", "user18", "user17", "user16", "user15");
+			assertThat(auditLog.query(null, null, null, FROM - 120_000, FROM, 5)).isEmpty();
+			assertThat(auditLog.query(null, null, null, TO, FROM, 5)).isEmpty();
+		} finally {
+			auditLog.shutdown();
+		}
+	}
+
+	@Test
+	void fullSegmentsRotateAndOldOnesAreDeleted() throws Exception {
+		AuditLog auditLog = new AuditLog(true, directory.toString(), 512, 3, 1024, 64, 1000);
+		try {
+			for (int i = 0; i < 100; i++) {
+				auditLog.record(AuditEvent.Type.TOKEN_ISSUED, "user" + i, "okta", "10.0.0.1", "refresh");
+			}
+			assertThat(auditLog.awaitIdle(5000)).isTrue();
+		} finally {
+			auditLog.shutdown();
+		}
+
+		try (Stream<Path> files = Files.list(directory)) {
+			List<Path> segments = files.toList();
+			assertThat(segments).hasSize(3);
+			for (Path segment : segments) {
+				// Closed segments are cut to the bytes actually written
+				assertThat(Files.size(segment)).isLessThanOrEqualTo(512);
+				assertThat(Files.readString(segment)).endsWith("\n").doesNotContain("\u0000");
+			}
+		}
+		AuditLog reader = new AuditLog(true, directory.toString(), 512, 3, 1024, 64, 1000);
+		try {
+			assertThat(reader.query("user99", null, null, FROM, TO, 10)).hasSize(1);
+			assertThat(reader.query("user0", null, null, FROM, TO, 10)).isEmpty();
+		} finally {
+			reader.shutdown();
+		}
+	}
+
+}
@@ -0,0 +1,116 @@
+package com.example.flutto.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AuthnRequestSignerTests {
+
+	private static final byte[] QUERY = "SAMLRequest=abc&RelayState=xyz&SigAlg=alg".getBytes(StandardCharsets.UTF_8);
+
+	private final AuthnRequestSigner signer = new AuthnRequestSigner();
+
+	@Test
+	void signsWithTheConfiguredAlgorithm() throws Exception {
+		KeyPair rsa = SamlProviderFixtures.keyPair();
+
+		AuthnRequestSigner.Algorithm algorithm = signer.register("tenant", "RSA-SHA256", rsa.getPrivate());
+
+		assertThat(algorithm).isEqualTo(AuthnRequestSigner.Algorithm.RSA_SHA256);
+		assertThat(signer.algorithmUri("tenant")).isEqualTo("http://www.w3.org/2001/04/xmldsig-more#rsa-sha256");
+		assertThat(verify("SHA256withRSA", rsa, signer.sign("tenant", QUERY))).isTrue();
+	}
+
+	@Test
+	void signsWithEcdsaKeys() throws Exception {
+		KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+		generator.initialize(256);
+		KeyPair ec = generator.generateKeyPair();
+
+		signer.register("tenant", "ECDSA-SHA256", ec.getPrivate());
+
+		assertThat(verify("SHA256withECDSA", ec, signer.sign("tenant", QUERY))).isTrue();
+	}
+
+	@Test
+	void signsWithEcKeysLoadedFromPem() throws Exception {
+		KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+		generator.initialize(384);
+		KeyPair ec = generator.generateKeyPair();
+		CredentialCache credentials = new CredentialCache();
+
+		PrivateKey key = credentials.privateKey(SamlProviderFixtures.privateKeyPem(ec));
+		AuthnRequestSigner.Algorithm algorithm = signer.register("tenant", "ECDSA-SHA512", key);
+
+		assertThat(key.getAlgorithm()).isEqualTo("EC");
+		assertThat(algorithm).isEqualTo(AuthnRequestSigner.Algorithm.ECDSA_SHA512);
+		assertThat(verify("SHA512withECDSA", ec, signer.sign("tenant", QUERY))).isTrue();
+		assertThat(credentials.privateKey(SamlProviderFixtures.privateKeyPem(SamlProviderFixtures.keyPair())).getAlgorithm())
+			.isEqualTo("RSA");
+	}
+
+	@Test
+	void acceptsAlgorithmUrisAndFallsBackForMismatchedKeys() {
+		KeyPair rsa = SamlProviderFixtures.keyPair();
+
+		assertThat(signer.register("by-uri", "http://www.w3.org/2001/04/xmldsig-more#rsa-sha512", rsa.getPrivate()))
+			.isEqualTo(AuthnRequestSigner.Algorithm.RSA_SHA512);
+		assertThat(signer.register("mismatch", "ECDSA-SHA256", rsa.getPrivate()))
+			.isEqualTo(AuthnRequestSigner.Algorithm.RSA_SHA256);
+		assertThat(signer.register("unknown", "HMAC-SHA1", rsa.getPrivate()))
+			.isEqualTo(AuthnRequestSigner.Algorithm.RSA_SHA256);
+	}
+
+	@Test
+	void pooledSignaturesStayValidAcrossCallsAndThreads() throws Exception {
+		KeyPair rsa = SamlProviderFixtures.keyPair();
+		signer.register("tenant", "RSA-SHA1", rsa.getPrivate());
+
+		ExecutorService threads = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<byte[]>> signatures = new ArrayList<>();
+			for (int i = 0; i < 40; i++) {
+				signatures.add(threads.submit(() -> signer.sign("tenant", QUERY)));
+			}
+			for (Future<byte[]> signature : signatures) {
+				assertThat(verify("SHA1withRSA", rsa, signature.get())).isTrue();
+			}
+		} finally {
+			threads.shutdownNow();
+		}
+	}
+
+	@Test
+	void removedProvidersNoLongerSign() {
+		KeyPair rsa = SamlProviderFixtures.keyPair();
+		signer.register("kept", "RSA-SHA256", rsa.getPrivate());
+		signer.register("dropped", "RSA-SHA256", rsa.getPrivate());
+
+		signer.retainOnly(Set.of("kept"));
+
+		assertThat(signer.isSigning("kept")).isTrue();
+		assertThat(signer.isSigning("dropped")).isFalse();
+		assertThatThrownBy(() -> signer.sign("dropped", QUERY)).isInstanceOf(IllegalStateException.class);
+	}
+
+	private static boolean verify(String algorithm, KeyPair keyPair, byte[] signature) throws Exception {
+		Signature verifier = Signature.getInstance(algorithm);
+		verifier.initVerify(keyPair.getPublic());
+		verifier.update(QUERY);
+		return verifier.verify(signature);
+	}
+
+}
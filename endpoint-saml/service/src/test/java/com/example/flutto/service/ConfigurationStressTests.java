@@ -0,0 +1,277 @@
+package com.example.flutto.service;
+
+import com.example.flutto.config.DynamicSamlConfig;
+import com.example.flutto.model.CompiledSamlProvider;
+import com.example.flutto.model.RefreshJob;
+import com.example.flutto.model.SamlProviderConfig;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.security.saml2.provider.service.registration.IterableRelyingPartyRegistrationRepository;
+import org.springframework.security.saml2.provider.service.registration.RelyingPartyRegistration;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Admin writes and registration refreshes racing request-path reads. Slow, so
+ * only run with the stress profile: mvn -Pstress verify
+ */
+@Tag("stress")
+class ConfigurationStressTests {
+
+	private static final int WRITERS = 4;
+
+	private static final int READERS = 4;
+
+	private static final int WRITES_PER_WRITER = 40;
+
+	private static String idpCertificate;
+
+	@TempDir
+	Path directory;
+
+	@BeforeAll
+	static void createCertificate() {
+		idpCertificate = SamlProviderFixtures.certificatePem(SamlProviderFixtures.keyPair(), "idp");
+	}
+
+	/**
+	 * Each writer saves w-1, w-2, ... and deletes w-(k-2) after saving w-k, so any
+	 * state of the store tells exactly how many writes it reflects. A reader's
+	 * snapshot has to be one of those states, account for a config version seen
+	 * around it, and never go back in time.
+	 */
+	@Test
+	void providerSnapshotsAreLinearizable() throws Exception {
+		SamlConfigurationService configService = configService(new InProcessConfigChangeBus());
+		Queue<String> violations = new ConcurrentLinkedQueue<>();
+		AtomicBoolean writing = new AtomicBoolean(true);
+		LongAdder reads = new LongAdder();
+		CountDownLatch writersDone = new CountDownLatch(WRITERS);
+
+		List<Thread> threads = new ArrayList<>();
+		for (int w = 0; w < WRITERS; w++) {
+			int writer = w;
+			threads.add(new Thread(() -> {
+				try {
+					for (int k = 1; k <= WRITES_PER_WRITER; k++) {
+						configService.saveProvider(SamlProviderFixtures.provider("w" + writer + "-" + k, idpCertificate));
+						if (k >= 3) {
+							configService.deleteProvider("w" + writer + "-" + (k - 2));
+						}
+					}
+				} catch (Exception e) {
+					violations.add("writer " + writer + " failed: " + e);
+				} finally {
+					writersDone.countDown();
+				}
+			}));
+		}
+		for (int r = 0; r < READERS; r++) {
+			threads.add(new Thread(() -> {
+				long lastVersion = 0;
+				int[] lastSeen = new int[WRITERS];
+				while (writing.get()) {
+					long before = configService.getConfigVersion();
+					List<CompiledSamlProvider> snapshot = configService.getCompiledProviders();
+					long after = configService.getConfigVersion();
+					reads.increment();
+					if (before < lastVersion) {
+						violations.add("config version went back from " + lastVersion + " to " + before);
+					}
+					lastVersion = after;
+					checkSnapshot(snapshot, before, after, lastSeen, violations);
+				}
+			}));
+		}
+
+		threads.forEach(Thread::start);
+		writersDone.await();
+		writing.set(false);
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		assertThat(violations).isEmpty();
+		assertReadersKeptUp("provider snapshots", reads.sum(), WRITERS * (2L * WRITES_PER_WRITER - 2));
+		assertThat(configService.getConfigVersion()).isEqualTo(WRITERS * (2L * WRITES_PER_WRITER - 2));
+		assertThat(configService.getCompiledProviders()).hasSize(WRITERS * 2);
+	}
+
+	/**
+	 * Providers that are never touched must stay resolvable, and the repository
+	 * must stay iterable, while other providers churn and refreshes run both as
+	 * background jobs and directly.
+	 */
+	@Test
+	void registrationsStayReadableDuringRefreshes() throws Exception {
+		InProcessConfigChangeBus bus = new InProcessConfigChangeBus();
+		SamlConfigurationService configService = configService(bus);
+		for (int i = 0; i < 5; i++) {
+			configService.saveProvider(SamlProviderFixtures.provider("stable-" + i, idpCertificate));
+		}
+		MetadataRefreshScheduler scheduler = new MetadataRefreshScheduler(configService, new SamlMetadataService(null),
+				300_000, 86_400_000, 14_400_000, 60_000, 30_000, 3_600_000, 0.1, 1);
+		RegistrationRefreshService refreshService = new RegistrationRefreshService(20);
+		ProviderEventStream events = new ProviderEventStream(configService, bus, 100, 60_000, 60_000, 256);
+		DynamicSamlConfig samlConfig = new DynamicSamlConfig(configService, bus, scheduler, new AuthnRequestSigner(),
+				refreshService, events, new ResponseDecrypter());
+		IterableRelyingPartyRegistrationRepository repository =
+				(IterableRelyingPartyRegistrationRepository) samlConfig.relyingPartyRegistrationRepository();
+
+		Queue<String> violations = new ConcurrentLinkedQueue<>();
+		AtomicBoolean writing = new AtomicBoolean(true);
+		LongAdder reads = new LongAdder();
+		LongAdder writes = new LongAdder();
+		CountDownLatch writersDone = new CountDownLatch(WRITERS);
+
+		List<Thread> threads = new ArrayList<>();
+		for (int w = 0; w < WRITERS; w++) {
+			int writer = w;
+			threads.add(new Thread(() -> {
+				try {
+					for (int k = 0; k < WRITES_PER_WRITER; k++) {
+						String id = "churn-" + writer + "-" + (k % 3);
+						if (k % 4 == 3) {
+							configService.deleteProvider(id);
+						} else {
+							SamlProviderConfig provider = SamlProviderFixtures.provider(id, idpCertificate);
+							provider.setDisplayName("Churn " + k);
+							provider.setSpEntityId(provider.getSpEntityId() + "?revision=" + k);
+							configService.saveProvider(provider);
+						}
+						writes.increment();
+						// Half the writers queue background jobs as admin edits do, the rest refresh inline
+						if (writer % 2 == 0) {
+							refreshService.submit("stress " + writer, configService.getConfigVersion());
+						} else {
+							samlConfig.refreshRegistrations(new RefreshJob(0, "stress " + writer,
+									configService.getConfigVersion()));
+						}
+					}
+				} catch (Exception e) {
+					violations.add("writer " + writer + " failed: " + e);
+				} finally {
+					writersDone.countDown();
+				}
+			}));
+		}
+		for (int r = 0; r < READERS; r++) {
+			threads.add(new Thread(() -> {
+				while (writing.get()) {
+					try {
+						for (int i = 0; i < 5; i++) {
+							if (repository.findByRegistrationId("stable-" + i) == null) {
+								violations.add("stable-" + i + " was not resolvable");
+							}
+						}
+						int seen = 0;
+						for (RelyingPartyRegistration registration : repository) {
+							seen += registration.getRegistrationId() != null ? 1 : 0;
+						}
+						if (seen < 5) {
+							violations.add("iteration saw only " + seen + " registrations");
+						}
+						reads.increment();
+					} catch (RuntimeException e) {
+						violations.add("reader failed: " + e);
+					}
+				}
+			}));
+		}
+
+		try {
+			threads.forEach(Thread::start);
+			writersDone.await();
+			writing.set(false);
+			for (Thread thread : threads) {
+				thread.join();
+			}
+
+			RefreshJob last = refreshService.submit("final", configService.getConfigVersion());
+			while (!last.isDone()) {
+				Thread.sleep(10);
+			}
+			Set<String> served = new TreeSet<>();
+			repository.forEach(r -> served.add(r.getRegistrationId()));
+
+			assertThat(violations).isEmpty();
+			assertReadersKeptUp("registration lookups", reads.sum(), writes.sum());
+			assertThat(served).isEqualTo(configService.getEnabledProviders()
+				.stream()
+				.map(CompiledSamlProvider::getId)
+				.collect(Collectors.toCollection(TreeSet::new)));
+		} finally {
+			refreshService.shutdown();
+			scheduler.shutdown();
+			events.shutdown();
+		}
+	}
+
+	private SamlConfigurationService configService(ConfigChangeBus bus) {
+		SamlConfigurationService configService = new SamlConfigurationService(bus, new SamlProviderCompiler(), "node-1");
+		ReflectionTestUtils.setField(configService, "yamlResource",
+				new FileSystemResource(directory.resolve("saml-providers.yaml")));
+		ReflectionTestUtils.setField(configService, "snapshotEnabled", true);
+		// Keeps saves from mirroring into the project's source tree
+		ReflectionTestUtils.setField(configService, "sourceFile", directory.resolve("absent/saml-providers.yaml").toFile());
+		return configService;
+	}
+
+	private static void checkSnapshot(List<CompiledSamlProvider> snapshot, long before, long after, int[] lastSeen,
+			Queue<String> violations) {
+		Map<Integer, Set<Integer>> byWriter = new HashMap<>();
+		for (CompiledSamlProvider provider : snapshot) {
+			String[] parts = provider.getId().substring(1).split("-");
+			if (!byWriter.computeIfAbsent(Integer.parseInt(parts[0]), w -> new HashSet<>())
+				.add(Integer.parseInt(parts[1]))) {
+				violations.add("duplicate provider " + provider.getId());
+			}
+		}
+		long writes = 0;
+		for (int w = 0; w < lastSeen.length; w++) {
+			Set<Integer> seen = byWriter.getOrDefault(w, Set.of());
+			int newest = seen.stream().max(Integer::compare).orElse(0);
+			if (newest < lastSeen[w]) {
+				violations.add("writer " + w + " went back from " + lastSeen[w] + " to " + newest);
+			}
+			lastSeen[w] = newest;
+			if (newest <= 2 && seen.size() == newest) {
+				writes += newest;
+			} else if (seen.equals(Set.of(newest - 2, newest - 1, newest))) {
+				writes += 2L * newest - 3;
+			} else if (seen.equals(Set.of(newest - 1, newest))) {
+				writes += 2L * newest - 2;
+			} else {
+				violations.add("writer " + w + " state " + seen + " is not one it passed through");
+			}
+		}
+		if (writes < before || writes > after) {
+			violations.add("snapshot reflects " + writes + " writes, outside versions " + before + ".." + after);
+		}
+	}
+
+	// Reads never wait on a write, while every write goes to disk, so readers that
+	// fall behind the writers were being blocked by them
+	private static void assertReadersKeptUp(String name, long reads, long writes) {
+		assertThat(reads).as("%s completed during %d writes", name, writes).isGreaterThanOrEqualTo(writes);
+	}
+}
@@ -0,0 +1,140 @@
+package com.example.flutto.service;
+
+import io.jsonwebtoken.Claims;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.GrantedAuthority;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class JwtServiceTests {
+
+	private static final String SECRET = "testSecretKeyForJWTTokenGenerationMustBeAtLeast256BitsLong";
+
+	private static final List<String> ROLES = List.of("ROLE_USER", "ROLE_ADMIN");
+
+	private final TokenRevocationService revocationService = new TokenRevocationService(900_000, 60_000, 1000, 10_000);
+
+	private JwtService service(boolean compact, boolean compress, int dictionaryVersion) {
+		return new JwtService(revocationService, SECRET, 900_000, compact, compress, dictionaryVersion, ROLES);
+	}
+
+	private static Map<String, Object> claims(String... roles) {
+		Map<String, Object> claims = new HashMap<>();
+		claims.put("username", "alice@example.com");
+		claims.put("email", "alice@example.com");
+		claims.put("name", "Alice Example");
+		claims.put("department", "Engineering");
+		claims.put("roles", new ArrayList<>(List.of(roles)));
+		return claims;
+	}
+
+	@Test
+	void compactTokenRoundTripsWithSharedAuthorities() {
+		JwtService jwtService = service(true, false, 1);
+
+		Claims first = jwtService.validClaims(jwtService.generateAccessToken("alice@example.com", claims("ROLE_USER", "ROLE_ADMIN")));
+		Claims second = jwtService.validClaims(jwtService.generateAccessToken("alice@example.com", claims("ROLE_USER", "ROLE_ADMIN")));
+
+		assertThat(first).containsKeys(JwtService.ROLES, JwtService.ROLE_DICTIONARY_VERSION).doesNotContainKeys("roles", "username");
+		assertThat(first.get("department")).isEqualTo("Engineering");
+		assertThat(jwtService.authorities(first)).extracting(GrantedAuthority::getAuthority)
+			.containsExactly("ROLE_USER", "ROLE_ADMIN");
+		assertThat(jwtService.authorities(first)).isSameAs(jwtService.authorities(second));
+		assertThat(jwtService.userInfo(first))
+			.containsEntry("username", "alice@example.com")
+			.containsEntry("email", "alice@example.com")
+			.containsEntry("name", "Alice Example")
+			.containsEntry("roles", List.of("ROLE_USER", "ROLE_ADMIN"));
+	}
+
+	@Test
+	void compactTokenIsSmallerThanStandard() {
+		String standard = service(false, false, 1).generateAccessToken("alice@example.com", claims("ROLE_USER", "ROLE_ADMIN"));
+		String compact = service(true, false, 1).generateAccessToken("alice@example.com", claims("ROLE_USER", "ROLE_ADMIN"));
+
+		assertThat(compact.length()).isLessThan(standard.length());
+	}
+
+	@Test
+	void rolesOutsideTheDictionaryAreCarriedByName() {
+		JwtService jwtService = service(true, false, 1);
+
+		Claims claims = jwtService.validClaims(jwtService.generateAccessToken("alice@example.com", claims("ROLE_USER", "ROLE_AUDITOR")));
+
+		assertThat(claims.get(JwtService.EXTRA_ROLES)).isEqualTo(List.of("ROLE_AUDITOR"));
+		assertThat(jwtService.authorities(claims)).extracting(GrantedAuthority::getAuthority)
+			.containsExactly("ROLE_USER", "ROLE_AUDITOR");
+	}
+
+	@Test
+	void customClaimsCannotStandInForCompactClaims() {
+		JwtService jwtService = service(true, false, 1);
+		Map<String, Object> claims = claims("ROLE_USER");
+		claims.put(JwtService.EXTRA_ROLES, List.of("ROLE_ADMIN"));
+
+		Claims issued = jwtService.validClaims(jwtService.generateAccessToken("alice@example.com", claims));
+
+		assertThat(issued).doesNotContainKey(JwtService.EXTRA_ROLES);
+		assertThat(jwtService.authorities(issued)).extracting(GrantedAuthority::getAuthority)
+			.containsExactly("ROLE_USER");
+	}
+
+	@Test
+	void compactTokenFromAnotherDictionaryVersionIsRejected() {
+		String token = service(true, false, 1).generateAccessToken("alice@example.com", claims("ROLE_ADMIN"));
+
+		assertThat(service(true, false, 2).validClaims(token)).isNull();
+		assertThat(service(true, false, 2).isTokenValid(token)).isFalse();
+	}
+
+	@Test
+	void standardTokensAreStillAccepted() {
+		String token = service(false, false, 1).generateAccessToken("alice@example.com", claims("ROLE_ADMIN"));
+		JwtService jwtService = service(true, false, 1);
+
+		Claims claims = jwtService.validClaims(token);
+
+		assertThat(claims).isNotNull();
+		assertThat(jwtService.authorities(claims)).extracting(GrantedAuthority::getAuthority).containsExactly("ROLE_ADMIN");
+		assertThat(jwtService.userInfo(claims)).containsEntry("email", "alice@example.com");
+		assertThat(jwtService.extractEmail(token)).isEqualTo("alice@example.com");
+	}
+
+	@Test
+	void tokenWithoutRolesGetsRoleUser() {
+		Map<String, Object> claims = claims();
+		claims.remove("roles");
+		JwtService jwtService = service(true, false, 1);
+
+		Claims parsed = jwtService.validClaims(jwtService.generateAccessToken("alice@example.com", claims));
+
+		assertThat(jwtService.authorities(parsed)).extracting(GrantedAuthority::getAuthority).containsExactly("ROLE_USER");
+	}
+
+	@Test
+	void compressedTokenRoundTrips() {
+		JwtService jwtService = service(true, true, 1);
+
+		String token = jwtService.generateAccessToken("alice@example.com", claims("ROLE_USER"));
+		Claims claims = jwtService.validClaims(token);
+
+		assertThat(claims).isNotNull();
+		assertThat(claims.getSubject()).isEqualTo("alice@example.com");
+		assertThat(jwtService.authorities(claims)).extracting(GrantedAuthority::getAuthority).containsExactly("ROLE_USER");
+	}
+
+	@Test
+	void revokedTokenIsRejected() {
+		JwtService jwtService = service(true, false, 1);
+		String token = jwtService.generateAccessToken("alice@example.com", claims("ROLE_USER"));
+
+		assertThat(jwtService.revokeToken(token)).isEqualTo("alice@example.com");
+		assertThat(jwtService.validClaims(token)).isNull();
+	}
+
+}
@@ -0,0 +1,237 @@
+package com.example.flutto.service;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.w3c.dom.Document;
+
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MetadataHttpClientTests {
+
+	private static final String METADATA = "<md:EntityDescriptor xmlns:md=\"urn:oasis:names:tc:SAML:2.0:metadata\""
+			+ " entityID=\"https://idp.example.com\"/>";
+
+	private HttpServer server;
+
+	private ExecutorService serverThreads;
+
+	@BeforeEach
+	void startServer() throws Exception {
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		serverThreads = Executors.newCachedThreadPool();
+		server.setExecutor(serverThreads);
+		server.start();
+	}
+
+	@AfterEach
+	void stopServer() {
+		server.stop(0);
+		serverThreads.shutdownNow();
+	}
+
+	// 200 ms connect/read timeouts, 500 ms overall, 1 KiB limit, 1 fetch per host, circuit opens after 2 failures for 300 ms
+	private MetadataHttpClient client() {
+		return new MetadataHttpClient(200, 200, 500, 1024, 1, 0, 2, 300);
+	}
+
+	private String url(String path) {
+		return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + path;
+	}
+
+	@Test
+	void metadataIsParsedFromTheStream() {
+		server.createContext("/metadata", exchange -> {
+			byte[] body = METADATA.getBytes(StandardCharsets.UTF_8);
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		});
+		SamlMetadataService metadataService = new SamlMetadataService(client());
+
+		Document document = metadataService.fetchMetadata(url("/metadata"));
+
+		assertThat(document.getDocumentElement().getAttribute("entityID")).isEqualTo("https://idp.example.com");
+	}
+
+	@Test
+	void fetchIsRecordedAsJfrEvent(@TempDir Path directory) throws Exception {
+		server.createContext("/metadata", exchange -> {
+			byte[] body = METADATA.getBytes(StandardCharsets.UTF_8);
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		});
+		SamlMetadataService metadataService = new SamlMetadataService(client());
+
+		List<RecordedEvent> events;
+		try (Recording recording = new Recording()) {
+			recording.enable("com.example.flutto.MetadataFetch");
+			recording.start();
+			metadataService.fetchMetadata("tenant", url("/metadata"));
+			recording.stop();
+			Path file = directory.resolve("fetch.jfr");
+			recording.dump(file);
+			events = RecordingFile.readAllEvents(file);
+		}
+
+		assertThat(events).singleElement().satisfies(event -> {
+			assertThat(event.getString("registrationId")).isEqualTo("tenant");
+			assertThat(event.getInt("status")).isEqualTo(200);
+			assertThat(event.getLong("responseBytes")).isEqualTo(METADATA.getBytes(StandardCharsets.UTF_8).length);
+			assertThat(event.getBoolean("success")).isTrue();
+		});
+	}
+
+	@Test
+	void slowServerTimesOut() {
+		server.createContext("/slow", exchange -> {
+			sleep(2000);
+			exchange.sendResponseHeaders(200, -1);
+			exchange.close();
+		});
+
+		long start = System.nanoTime();
+		assertThatThrownBy(() -> client().fetch(url("/slow"), body -> body.readAllBytes()))
+			.isInstanceOf(RuntimeException.class);
+		assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(1500);
+	}
+
+	@Test
+	void tricklingBodyHitsTheOverallDeadline() {
+		server.createContext("/trickle", exchange -> {
+			exchange.sendResponseHeaders(200, 0);
+			try (OutputStream out = exchange.getResponseBody()) {
+				for (int i = 0; i < 40; i++) {
+					out.write(' ');
+					out.flush();
+					sleep(100);
+				}
+			}
+		});
+
+		long start = System.nanoTime();
+		assertThatThrownBy(() -> client().fetch(url("/trickle"), body -> body.readAllBytes()))
+			.hasMessageContaining("took too long");
+		assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(1500);
+	}
+
+	@Test
+	void oversizedResponseIsRejected() {
+		byte[] large = new byte[4096];
+		server.createContext("/declared", exchange -> {
+			exchange.sendResponseHeaders(200, large.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(large);
+			}
+		});
+		// Chunked, so the size is only known while reading
+		server.createContext("/chunked", exchange -> {
+			exchange.sendResponseHeaders(200, 0);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(large);
+			}
+		});
+		MetadataHttpClient client = client();
+
+		assertThatThrownBy(() -> client.fetch(url("/declared"), body -> body.readAllBytes()))
+			.hasMessageContaining("over the limit");
+		assertThatThrownBy(() -> client.fetch(url("/chunked"), body -> body.readAllBytes()))
+			.hasMessageContaining("exceeds the limit");
+	}
+
+	@Test
+	void circuitOpensAfterRepeatedFailuresAndClosesAfterATrial() throws Exception {
+		AtomicInteger requests = new AtomicInteger();
+		AtomicInteger status = new AtomicInteger(500);
+		server.createContext("/flaky", exchange -> {
+			requests.incrementAndGet();
+			exchange.sendResponseHeaders(status.get(), -1);
+			exchange.close();
+		});
+		MetadataHttpClient client = client();
+
+		for (int i = 0; i < 2; i++) {
+			assertThatThrownBy(() -> client.fetch(url("/flaky"), body -> body.readAllBytes()))
+				.hasMessageContaining("HTTP 500");
+		}
+		assertThatThrownBy(() -> client.fetch(url("/flaky"), body -> body.readAllBytes()))
+			.hasMessageContaining("suspended");
+		assertThat(requests).hasValue(2);
+		assertThat(client.openCircuits()).hasSize(1);
+
+		status.set(200);
+		Thread.sleep(400);
+		client.fetch(url("/flaky"), body -> body.readAllBytes());
+
+		assertThat(requests).hasValue(3);
+		assertThat(client.openCircuits()).isEmpty();
+	}
+
+	@Test
+	void bulkheadLimitsConcurrentFetchesToOneHost() throws Exception {
+		CountDownLatch entered = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		server.createContext("/blocking", exchange -> {
+			entered.countDown();
+			await(release);
+			exchange.sendResponseHeaders(200, -1);
+			exchange.close();
+		});
+		MetadataHttpClient client = new MetadataHttpClient(200, 5000, 5000, 1024, 1, 0, 2, 300);
+		ExecutorService caller = Executors.newSingleThreadExecutor();
+		try {
+			Future<byte[]> first = caller.submit(() -> client.fetch(url("/blocking"), body -> body.readAllBytes()));
+			assertThat(entered.await(5, TimeUnit.SECONDS)).isTrue();
+
+			assertThatThrownBy(() -> client.fetch(url("/blocking"), body -> body.readAllBytes()))
+				.hasMessageContaining("Too many concurrent");
+
+			release.countDown();
+			assertThat(first.get(5, TimeUnit.SECONDS)).isEmpty();
+			// Bulkhead rejections say nothing about the host's health
+			assertThat(client.openCircuits()).isEmpty();
+		} finally {
+			release.countDown();
+			caller.shutdownNow();
+		}
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await(10, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
@@ -0,0 +1,100 @@
+package com.example.flutto.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+
+import java.security.KeyPair;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MetadataRefreshSchedulerTests {
+
+	private static final long MINUTE = 60_000;
+
+	private final SamlMetadataService metadataService = new SamlMetadataService(null);
+
+	// 5 min floor, 24 h ceiling, 4 h default, 30 s backoff base doubling up to 1 h, +/-10% jitter
+	private final MetadataRefreshScheduler scheduler = new MetadataRefreshScheduler(null, metadataService,
+			5 * MINUTE, 24 * 60 * MINUTE, 4 * 60 * MINUTE, MINUTE, 30_000, 60 * MINUTE, 0.1, 1);
+
+	@AfterEach
+	void shutdown() {
+		scheduler.shutdown();
+	}
+
+	@Test
+	void refreshHappensThreeQuartersOfTheWayToExpiry() {
+		long delay = scheduler.refreshDelay(Instant.now().plus(Duration.ofHours(8)));
+
+		assertThat(delay).isBetween(323 * MINUTE, 397 * MINUTE);
+	}
+
+	@Test
+	void refreshDelayIsClampedAndDefaulted() {
+		assertThat(scheduler.refreshDelay(Instant.now().plusSeconds(30))).isBetween(4 * MINUTE, 6 * MINUTE);
+		assertThat(scheduler.refreshDelay(Instant.now().plus(Duration.ofDays(30))))
+			.isBetween(1296 * MINUTE, 1584 * MINUTE);
+		assertThat(scheduler.refreshDelay(null)).isBetween(216 * MINUTE, 264 * MINUTE);
+	}
+
+	@Test
+	void failuresBackOffExponentiallyUpToTheCap() {
+		assertThat(scheduler.backoffDelay(1)).isBetween(27_000L, 33_000L);
+		assertThat(scheduler.backoffDelay(3)).isBetween(108_000L, 132_000L);
+		assertThat(scheduler.backoffDelay(30)).isBetween(54 * MINUTE, 66 * MINUTE);
+	}
+
+	@Test
+	void jitterSpreadsProvidersApart() {
+		long first = scheduler.refreshDelay(null);
+		boolean differs = false;
+		for (int i = 0; i < 20 && !differs; i++) {
+			differs = scheduler.refreshDelay(null) != first;
+		}
+		assertThat(differs).isTrue();
+	}
+
+	@Test
+	void metadataExpiryIsTheEarlierOfValidUntilAndCacheDuration() {
+		Instant validUntil = Instant.now().plus(Duration.ofDays(2)).truncatedTo(ChronoUnit.SECONDS);
+		String metadata = "<md:EntityDescriptor xmlns:md=\"urn:oasis:names:tc:SAML:2.0:metadata\" entityID=\"idp\" "
+				+ "validUntil=\"" + validUntil + "\" cacheDuration=\"PT6H\"/>";
+
+		Instant expiry = metadataService.metadataExpiry(metadata).orElseThrow();
+
+		assertThat(expiry).isBetween(Instant.now().plus(Duration.ofHours(5)), Instant.now().plus(Duration.ofHours(7)));
+		assertThat(SamlMetadataService.declaredValidUntil("<?xml version=\"1.0\"?>\n" + metadata)).isEqualTo(validUntil);
+	}
+
+	@Test
+	void metadataWithoutValidityHasNoExpiry() {
+		String metadata = "<md:EntityDescriptor xmlns:md=\"urn:oasis:names:tc:SAML:2.0:metadata\" entityID=\"idp\">"
+				+ "<md:Extensions validUntil=\"2020-01-01T00:00:00Z\"/></md:EntityDescriptor>";
+
+		assertThat(metadataService.metadataExpiry(metadata)).isEmpty();
+		assertThat(SamlMetadataService.declaredValidUntil(metadata)).isNull();
+	}
+
+	@Test
+	void signingCertificatesChangeOnlyFromHttpsOrSignedMetadata() throws Exception {
+		KeyPair trustedKeys = SamlProviderFixtures.keyPair();
+		X509Certificate trusted = SamlProviderFixtures.certificate(trustedKeys, "trusted");
+		String metadata = SamlProviderFixtures.metadataXml("https://idp.example.com/sso",
+				SamlProviderFixtures.certificatePem(SamlProviderFixtures.keyPair(), "next"));
+		Document unsigned = SamlMetadataServiceTests.document(metadata);
+
+		assertThat(scheduler.acceptsTrustChange("https://idp.example.com/metadata", unsigned, List.of(trusted))).isTrue();
+		assertThat(scheduler.acceptsTrustChange("http://idp.example.com/metadata", unsigned, List.of(trusted))).isFalse();
+		assertThat(scheduler.acceptsTrustChange("http://idp.example.com/metadata",
+				SamlProviderFixtures.signedMetadata(metadata, trustedKeys), List.of(trusted))).isTrue();
+		assertThat(scheduler.acceptsTrustChange("http://idp.example.com/metadata",
+				SamlProviderFixtures.signedMetadata(metadata, SamlProviderFixtures.keyPair()), List.of(trusted))).isFalse();
+	}
+
+}
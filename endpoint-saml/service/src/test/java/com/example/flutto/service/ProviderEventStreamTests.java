@@ -0,0 +1,128 @@
+package com.example.flutto.service;
+
+import com.example.flutto.model.ConfigChangeEvent;
+import com.example.flutto.model.ProviderEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ProviderEventStreamTests {
+
+	private final InProcessConfigChangeBus bus = new InProcessConfigChangeBus();
+
+	private final ProviderEventStream stream = new ProviderEventStream(
+			new SamlConfigurationService(bus, null, "node-1"), bus, 3, 60000, 60000, 4);
+
+	@AfterEach
+	void shutdown() {
+		stream.shutdown();
+	}
+
+	@Test
+	void resumingReplaysOnlyTheEventsAfterTheLastSeenId() {
+		String start = streamStart();
+		bus.publish(new ConfigChangeEvent(1, ConfigChangeEvent.Type.UPSERT, "okta", "node-2"));
+		String first = stream.eventsAfter(start).get(0).getId();
+		bus.publish(new ConfigChangeEvent(2, ConfigChangeEvent.Type.DELETE, "okta", "node-2"));
+		stream.registrationFailed("azure", 2, "bad certificate");
+
+		List<ProviderEvent> missed = stream.eventsAfter(first);
+
+		assertThat(missed).extracting(ProviderEvent::getType)
+				.containsExactly(ProviderEvent.Type.PROVIDER_DELETED, ProviderEvent.Type.REGISTRATION_FAILED);
+		assertThat(missed.get(1).getError()).isEqualTo("bad certificate");
+		assertThat(stream.eventsAfter(missed.get(1).getId())).isEmpty();
+	}
+
+	@Test
+	void resumingFromAnEvictedEventAsksForAResync() {
+		String start = streamStart();
+		for (int i = 1; i <= 4; i++) {
+			stream.registrationBuilt("okta", i);
+		}
+
+		List<ProviderEvent> missed = stream.eventsAfter(start);
+
+		assertThat(missed).extracting(ProviderEvent::getType).containsExactly(ProviderEvent.Type.RESYNC);
+		// The resync carries the newest id, so resuming from it replays nothing old
+		assertThat(stream.eventsAfter(missed.get(0).getId())).isEmpty();
+	}
+
+	@Test
+	void resumingFromAnotherStreamAsksForAResync() {
+		stream.registrationBuilt("okta", 1);
+
+		assertThat(stream.eventsAfter("previous-run-1")).extracting(ProviderEvent::getType)
+				.containsExactly(ProviderEvent.Type.RESYNC);
+	}
+
+	@Test
+	void aSlowSubscriberIsAskedToResyncWithoutHoldingUpTheOthers() throws Exception {
+		CountDownLatch unblock = new CountDownLatch(1);
+		RecordingEmitter slow = new RecordingEmitter(unblock);
+		RecordingEmitter fast = new RecordingEmitter(new CountDownLatch(0));
+		stream.subscribe(null, slow);
+		stream.subscribe(null, fast);
+
+		for (int i = 1; i <= 10; i++) {
+			stream.registrationBuilt("okta", i);
+		}
+
+		for (int i = 1; i <= 10; i++) {
+			ProviderEvent event = fast.events.poll(1, TimeUnit.SECONDS);
+			assertThat(event).isNotNull();
+			assertThat(event.getConfigVersion()).isEqualTo(i);
+		}
+		unblock.countDown();
+		assertThat(slow.completed.await(1, TimeUnit.SECONDS)).isTrue();
+		List<ProviderEvent> received = new ArrayList<>(slow.events);
+		assertThat(received.get(received.size() - 1).getType()).isEqualTo(ProviderEvent.Type.RESYNC);
+		assertThat(fast.completed.getCount()).isEqualTo(1);
+	}
+
+	// Id of a resync at sequence 0, i.e. the position before any event
+	private String streamStart() {
+		return stream.eventsAfter("unknown").get(0).getId();
+	}
+
+	// Records the provider events it is sent, each send waiting until the latch opens
+	private static final class RecordingEmitter extends SseEmitter {
+		private final CountDownLatch unblocked;
+		private final BlockingQueue<ProviderEvent> events = new LinkedBlockingQueue<>();
+		private final CountDownLatch completed = new CountDownLatch(1);
+
+		private RecordingEmitter(CountDownLatch unblocked) {
+			this.unblocked = unblocked;
+		}
+
+		@Override
+		public void send(SseEventBuilder builder) throws IOException {
+			try {
+				unblocked.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException(e);
+			}
+			for (DataWithMediaType data : builder.build()) {
+				if (data.getData() instanceof ProviderEvent) {
+					events.add((ProviderEvent) data.getData());
+				}
+			}
+		}
+
+		@Override
+		public void complete() {
+			completed.countDown();
+		}
+	}
+}
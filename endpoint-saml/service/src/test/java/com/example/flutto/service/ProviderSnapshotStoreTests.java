@@ -0,0 +1,89 @@
+package com.example.flutto.service;
+
+import com.example.flutto.model.SamlProviderConfig;
+import com.example.flutto.model.SamlProvidersConfig;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ProviderSnapshotStoreTests {
+
+	@TempDir
+	Path directory;
+
+	private final ProviderSnapshotStore store = new ProviderSnapshotStore();
+
+	@Test
+	void snapshotRoundTripsWhileTheYamlIsUnchanged() throws Exception {
+		Path yaml = writeYaml("providers: []\n");
+		store.write(yaml, config(7, "tenant-a", "tenant-b"));
+
+		Optional<SamlProvidersConfig> loaded = store.read(yaml);
+
+		assertThat(loaded).isPresent();
+		assertThat(loaded.get().getVersion()).isEqualTo(7);
+		assertThat(loaded.get().getProviders()).extracting(SamlProviderConfig::getId)
+			.containsExactly("tenant-a", "tenant-b");
+		assertThat(loaded.get().getProviders().get(0).getAttributeMappings())
+			.containsEntry("email", List.of("email"));
+	}
+
+	@Test
+	void editedYamlMakesTheSnapshotStale() throws Exception {
+		Path yaml = writeYaml("providers: []\n");
+		store.write(yaml, config(1, "tenant-a"));
+
+		// Same length, different content
+		Files.writeString(yaml, "providers: {}\n");
+
+		assertThat(store.read(yaml)).isEmpty();
+	}
+
+	@Test
+	void corruptSnapshotIsIgnored() throws Exception {
+		Path yaml = writeYaml("providers: []\n");
+		store.write(yaml, config(1, "tenant-a"));
+		Path snapshot = ProviderSnapshotStore.snapshotPath(yaml);
+		byte[] bytes = Files.readAllBytes(snapshot);
+		bytes[bytes.length - 1] ^= 0x5A;
+		Files.write(snapshot, bytes);
+
+		assertThat(store.read(yaml)).isEmpty();
+	}
+
+	@Test
+	void truncatedSnapshotIsIgnored() throws Exception {
+		Path yaml = writeYaml("providers: []\n");
+		store.write(yaml, config(1, "tenant-a"));
+		Path snapshot = ProviderSnapshotStore.snapshotPath(yaml);
+		byte[] bytes = Files.readAllBytes(snapshot);
+		Files.write(snapshot, Arrays.copyOf(bytes, bytes.length - 10));
+
+		assertThat(store.read(yaml)).isEmpty();
+	}
+
+	@Test
+	void missingSnapshotIsNotAnError() throws Exception {
+		assertThat(store.read(writeYaml("providers: []\n"))).isEmpty();
+	}
+
+	private Path writeYaml(String content) throws Exception {
+		return Files.writeString(directory.resolve("saml-providers.yaml"), content);
+	}
+
+	private static SamlProvidersConfig config(long version, String... ids) {
+		SamlProvidersConfig config = new SamlProvidersConfig();
+		config.setVersion(version);
+		for (String id : ids) {
+			config.getProviders().add(SamlProviderFixtures.provider(id, "-----BEGIN CERTIFICATE-----\nAAAA\n-----END CERTIFICATE-----"));
+		}
+		return config;
+	}
+}
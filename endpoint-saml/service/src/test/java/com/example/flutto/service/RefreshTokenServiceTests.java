@@ -0,0 +1,89 @@
+package com.example.flutto.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RefreshTokenServiceTests {
+
+	private static final String SECRET = "testSecretKeyForJWTTokenGenerationMustBeAtLeast256BitsLong";
+
+	private static final Map<String, Object> CLAIMS = Map.of("email", "alice@example.com", "roles", List.of("ROLE_USER"));
+
+	private final JwtService jwtService = new JwtService(new TokenRevocationService(900_000, 60_000, 1000, 10_000),
+			SECRET, 900_000, true, false, 1, List.of("ROLE_USER", "ROLE_ADMIN"));
+
+	private RefreshTokenService service(long reuseGraceMillis) {
+		return new RefreshTokenService(jwtService, 3_600_000, 1000, reuseGraceMillis);
+	}
+
+	@Test
+	void refreshRotatesTheToken() {
+		RefreshTokenService service = service(0);
+		String token = service.issue("alice@example.com", CLAIMS);
+
+		RefreshTokenService.TokenPair pair = service.refresh(token).orElseThrow();
+
+		assertThat(pair.getSubject()).isEqualTo("alice@example.com");
+		assertThat(pair.getRefreshToken()).isNotEqualTo(token);
+		assertThat(service.refresh(pair.getRefreshToken())).isPresent();
+	}
+
+	@Test
+	void reusedTokenRevokesTheWholeSession() {
+		RefreshTokenService service = service(0);
+		String stolen = service.issue("alice@example.com", CLAIMS);
+		String current = service.refresh(stolen).orElseThrow().getRefreshToken();
+		String other = service.issue("bob@example.com", CLAIMS);
+
+		assertThat(service.refresh(stolen)).isEmpty();
+
+		assertThat(service.refresh(current)).isEmpty();
+		assertThat(service.refresh(other)).isPresent();
+	}
+
+	@Test
+	void tabsRefreshingTogetherBothKeepTheSession() {
+		RefreshTokenService service = service(60_000);
+		String shared = service.issue("alice@example.com", CLAIMS);
+
+		String first = service.refresh(shared).orElseThrow().getRefreshToken();
+		String second = service.refresh(shared).orElseThrow().getRefreshToken();
+
+		assertThat(service.refresh(first)).isPresent();
+		assertThat(service.refresh(second)).isPresent();
+	}
+
+	@Test
+	void reuseWithinTheGracePeriodSharesTheSuccessorInsteadOfForking() throws InterruptedException {
+		RefreshTokenService service = service(200);
+		String stolen = service.issue("alice@example.com", CLAIMS);
+		String legitimate = service.refresh(stolen).orElseThrow().getRefreshToken();
+
+		// The copy gets the same successor, not a chain of its own
+		assertThat(service.refresh(stolen).orElseThrow().getRefreshToken()).isEqualTo(legitimate);
+
+		String next = service.refresh(legitimate).orElseThrow().getRefreshToken();
+		Thread.sleep(300);
+
+		// So the copy's holder can only reuse a rotated token, which is caught once the grace period ends
+		assertThat(service.refresh(legitimate)).isEmpty();
+		assertThat(service.refresh(next)).isEmpty();
+	}
+
+	@Test
+	void revokeEndsEveryTokenOfTheSession() {
+		RefreshTokenService service = service(60_000);
+		String shared = service.issue("alice@example.com", CLAIMS);
+		String first = service.refresh(shared).orElseThrow().getRefreshToken();
+		String second = service.refresh(shared).orElseThrow().getRefreshToken();
+
+		service.revoke(first);
+
+		assertThat(service.refresh(second)).isEmpty();
+		assertThat(service.refresh(shared)).isEmpty();
+	}
+}
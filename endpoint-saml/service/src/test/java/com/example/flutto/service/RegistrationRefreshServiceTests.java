@@ -0,0 +1,98 @@
+package com.example.flutto.service;
+
+import com.example.flutto.model.RefreshJob;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RegistrationRefreshServiceTests {
+
+	private final RegistrationRefreshService service = new RegistrationRefreshService(20);
+
+	@AfterEach
+	void shutdown() {
+		service.shutdown();
+	}
+
+	@Test
+	void requestsDuringARunningJobCoalesceIntoOneFollowUp() throws Exception {
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		List<Long> ran = new CopyOnWriteArrayList<>();
+		service.onRefresh(job -> {
+			job.started(job.getRequestedConfigVersion(), 0);
+			ran.add(job.getId());
+			started.countDown();
+			await(release);
+			job.succeeded(ran.size());
+		});
+
+		RefreshJob first = service.submit("first", 1);
+		assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+		RefreshJob second = service.submit("second", 2);
+		RefreshJob third = service.submit("third", 3);
+
+		assertThat(third).isSameAs(second);
+		assertThat(second.getRequests()).isEqualTo(2);
+		assertThat(second.getRequestedConfigVersion()).isEqualTo(3);
+		assertThat(service.getPendingJob()).containsSame(second);
+
+		release.countDown();
+		waitUntilDone(second);
+
+		assertThat(ran).containsExactly(first.getId(), second.getId());
+		assertThat(first.getState()).isEqualTo(RefreshJob.State.SUCCEEDED);
+		assertThat(second.getState()).isEqualTo(RefreshJob.State.SUCCEEDED);
+		assertThat(service.getRunningJob()).isEmpty();
+		assertThat(service.getRecentJobs()).extracting(RefreshJob::getId)
+			.containsExactly(second.getId(), first.getId());
+	}
+
+	@Test
+	void failedRefreshIsReportedAndDoesNotStallTheQueue() throws Exception {
+		service.onRefresh(job -> {
+			if (job.getId() == 1) {
+				throw new IllegalStateException("store unreadable");
+			}
+			job.started(job.getRequestedConfigVersion(), 1);
+			job.providerFailed("okta", "bad certificate");
+			job.succeeded(7);
+		});
+
+		RefreshJob failed = service.submit("first", 1);
+		waitUntilDone(failed);
+		RefreshJob next = service.submit("second", 2);
+		waitUntilDone(next);
+
+		assertThat(failed.getState()).isEqualTo(RefreshJob.State.FAILED);
+		assertThat(failed.getError()).isEqualTo("store unreadable");
+		assertThat(next.getState()).isEqualTo(RefreshJob.State.SUCCEEDED);
+		assertThat(next.getProviderErrors()).containsEntry("okta", "bad certificate");
+		assertThat(next.getProvidersCompleted()).isEqualTo(1);
+		assertThat(next.getGeneration()).isEqualTo(7);
+		assertThat(service.getJob(failed.getId())).containsSame(failed);
+	}
+
+	private static void waitUntilDone(RefreshJob job) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (!job.isDone() && System.nanoTime() < deadline) {
+			Thread.sleep(10);
+		}
+		assertThat(job.isDone()).isTrue();
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
@@ -0,0 +1,106 @@
+package com.example.flutto.service;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.opensaml.security.credential.Credential;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.saml2.core.Saml2ErrorCodes;
+import org.springframework.security.saml2.core.Saml2X509Credential;
+import org.springframework.security.saml2.provider.service.authentication.OpenSaml4AuthenticationProvider;
+import org.springframework.security.saml2.provider.service.authentication.Saml2AuthenticationException;
+import org.springframework.security.saml2.provider.service.authentication.Saml2AuthenticationToken;
+import org.springframework.security.saml2.provider.service.registration.RelyingPartyRegistration;
+
+import java.security.KeyPair;
+import java.security.cert.X509Certificate;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+class ResponseDecrypterTests {
+
+	private static Credential idpCredential;
+
+	private static X509Certificate idpCertificate;
+
+	private static KeyPair spKeys;
+
+	private static X509Certificate spCertificate;
+
+	@BeforeAll
+	static void createCredentials() {
+		KeyPair idpKeys = SamlProviderFixtures.keyPair();
+		idpCertificate = SamlProviderFixtures.certificate(idpKeys, "idp");
+		idpCredential = SamlResponseFixtures.signingCredential(idpKeys, idpCertificate);
+		spKeys = SamlProviderFixtures.keyPair();
+		spCertificate = SamlProviderFixtures.certificate(spKeys, "sp");
+	}
+
+	private static OpenSaml4AuthenticationProvider provider(ResponseDecrypter decrypter) {
+		OpenSaml4AuthenticationProvider provider = new OpenSaml4AuthenticationProvider();
+		provider.setResponseElementsDecrypter(decrypter::decryptResponseElements);
+		provider.setAssertionElementsDecrypter(decrypter::decryptAssertionElements);
+		return provider;
+	}
+
+	private static RelyingPartyRegistration encryptedRegistration(String id) {
+		return SamlResponseFixtures.registration(id, idpCertificate)
+			.mutate()
+			.decryptionX509Credentials(c -> c.add(Saml2X509Credential.decryption(spKeys.getPrivate(), spCertificate)))
+			.build();
+	}
+
+	@Test
+	void encryptedAssertionIsDecryptedWithTheBoundKey() {
+		ResponseDecrypter decrypter = new ResponseDecrypter();
+		decrypter.register("tenant", spKeys.getPrivate(), spCertificate);
+		RelyingPartyRegistration registration = encryptedRegistration("tenant");
+		String response = SamlResponseFixtures.response(registration, "alice@example.com", idpCredential, spCertificate);
+
+		Authentication authentication = provider(decrypter)
+			.authenticate(new Saml2AuthenticationToken(registration, response));
+
+		assertThat(authentication.getName()).isEqualTo("alice@example.com");
+	}
+
+	@Test
+	void plaintextAssertionNeedsNoKey() {
+		RelyingPartyRegistration registration = SamlResponseFixtures.registration("tenant", idpCertificate);
+		String response = SamlResponseFixtures.response(registration, "bob@example.com", idpCredential, null);
+
+		Authentication authentication = provider(new ResponseDecrypter())
+			.authenticate(new Saml2AuthenticationToken(registration, response));
+
+		assertThat(authentication.getName()).isEqualTo("bob@example.com");
+	}
+
+	@Test
+	void removedProviderCannotDecrypt() {
+		ResponseDecrypter decrypter = new ResponseDecrypter();
+		decrypter.register("tenant", spKeys.getPrivate(), spCertificate);
+		decrypter.register("other", spKeys.getPrivate(), spCertificate);
+		decrypter.retainOnly(Set.of("other"));
+		RelyingPartyRegistration registration = encryptedRegistration("tenant");
+		String response = SamlResponseFixtures.response(registration, "alice@example.com", idpCredential, spCertificate);
+
+		assertThat(decrypter.isDecrypting("tenant")).isFalse();
+		assertThatExceptionOfType(Saml2AuthenticationException.class)
+			.isThrownBy(() -> provider(decrypter).authenticate(new Saml2AuthenticationToken(registration, response)))
+			.satisfies(e -> assertThat(e.getSaml2Error().getErrorCode()).isEqualTo(Saml2ErrorCodes.DECRYPTION_ERROR));
+	}
+
+	@Test
+	void assertionEncryptedToAnotherKeyIsRejected() {
+		ResponseDecrypter decrypter = new ResponseDecrypter();
+		decrypter.register("tenant", spKeys.getPrivate(), spCertificate);
+		RelyingPartyRegistration registration = encryptedRegistration("tenant");
+		X509Certificate otherCertificate = SamlProviderFixtures.certificate(SamlProviderFixtures.keyPair(), "other");
+		String response = SamlResponseFixtures.response(registration, "alice@example.com", idpCredential, otherCertificate);
+
+		assertThatExceptionOfType(Saml2AuthenticationException.class)
+			.isThrownBy(() -> provider(decrypter).authenticate(new Saml2AuthenticationToken(registration, response)))
+			.satisfies(e -> assertThat(e.getSaml2Error().getErrorCode()).isEqualTo(Saml2ErrorCodes.DECRYPTION_ERROR));
+	}
+
+}
@@ -0,0 +1,118 @@
+package com.example.flutto.service;
+
+import com.example.flutto.model.CompiledSamlProvider;
+import com.example.flutto.model.SamlProviderConfig;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.opensaml.security.credential.Credential;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.saml2.core.Saml2ErrorCodes;
+import org.springframework.security.saml2.core.Saml2ResponseValidatorResult;
+import org.springframework.security.saml2.core.Saml2X509Credential;
+import org.springframework.security.saml2.provider.service.authentication.OpenSaml4AuthenticationProvider;
+import org.springframework.security.saml2.provider.service.authentication.Saml2AuthenticationException;
+import org.springframework.security.saml2.provider.service.authentication.Saml2AuthenticationToken;
+import org.springframework.security.saml2.provider.service.registration.RelyingPartyRegistration;
+
+import java.security.KeyPair;
+import java.security.cert.X509Certificate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+class ResponsePolicyTests {
+
+	private static Credential idpCredential;
+
+	private static X509Certificate idpCertificate;
+
+	private static String idpCertificatePem;
+
+	private static KeyPair spKeys;
+
+	private static X509Certificate spCertificate;
+
+	@BeforeAll
+	static void createCredentials() {
+		KeyPair idpKeys = SamlProviderFixtures.keyPair();
+		idpCertificate = SamlProviderFixtures.certificate(idpKeys, "idp");
+		idpCertificatePem = SamlProviderFixtures.certificatePem(idpKeys, "idp");
+		idpCredential = SamlResponseFixtures.signingCredential(idpKeys, idpCertificate);
+		spKeys = SamlProviderFixtures.keyPair();
+		spCertificate = SamlProviderFixtures.certificate(spKeys, "sp");
+	}
+
+	// Default validation plus the provider's policy, as the ACS configures it
+	private static OpenSaml4AuthenticationProvider provider(CompiledSamlProvider compiled, ResponseDecrypter decrypter) {
+		OpenSaml4AuthenticationProvider provider = new OpenSaml4AuthenticationProvider();
+		provider.setResponseElementsDecrypter(decrypter::decryptResponseElements);
+		provider.setAssertionElementsDecrypter(decrypter::decryptAssertionElements);
+		Converter<OpenSaml4AuthenticationProvider.ResponseToken, Saml2ResponseValidatorResult> defaultValidator =
+			OpenSaml4AuthenticationProvider.createDefaultResponseValidator();
+		provider.setResponseValidator(token -> defaultValidator.convert(token)
+			.concat(ResponsePolicy.check(token.getResponse(), compiled.getId(), compiled)));
+		return provider;
+	}
+
+	private static CompiledSamlProvider compiled(boolean requireSigned, boolean requireEncrypted) {
+		SamlProviderConfig config = SamlProviderFixtures.provider("tenant", idpCertificatePem);
+		config.setRequireSignedResponses(requireSigned);
+		config.setRequireEncryptedResponses(requireEncrypted);
+		return new SamlProviderCompiler().compile(config);
+	}
+
+	@Test
+	void unsignedResponseWithSignedAssertionFailsWhenSignedResponsesAreRequired() {
+		RelyingPartyRegistration registration = SamlResponseFixtures.registration("tenant", idpCertificate);
+		String response = SamlResponseFixtures.response(registration, "alice@example.com", idpCredential, null, false);
+
+		// The framework alone accepts a signature over the assertion
+		Authentication authentication = provider(compiled(false, false), new ResponseDecrypter())
+			.authenticate(new Saml2AuthenticationToken(registration, response));
+		assertThat(authentication.getName()).isEqualTo("alice@example.com");
+
+		assertThatExceptionOfType(Saml2AuthenticationException.class)
+			.isThrownBy(() -> provider(compiled(true, false), new ResponseDecrypter())
+				.authenticate(new Saml2AuthenticationToken(registration, response)))
+			.satisfies(e -> assertThat(e.getSaml2Error().getErrorCode()).isEqualTo(Saml2ErrorCodes.INVALID_SIGNATURE));
+	}
+
+	@Test
+	void signedResponseMeetsTheSignedResponsePolicy() {
+		RelyingPartyRegistration registration = SamlResponseFixtures.registration("tenant", idpCertificate);
+		String response = SamlResponseFixtures.response(registration, "alice@example.com", idpCredential, null);
+
+		Authentication authentication = provider(compiled(true, false), new ResponseDecrypter())
+			.authenticate(new Saml2AuthenticationToken(registration, response));
+
+		assertThat(authentication.getName()).isEqualTo("alice@example.com");
+	}
+
+	@Test
+	void plaintextAssertionFailsWhenEncryptedResponsesAreRequired() {
+		RelyingPartyRegistration registration = SamlResponseFixtures.registration("tenant", idpCertificate);
+		String response = SamlResponseFixtures.response(registration, "alice@example.com", idpCredential, null);
+
+		assertThatExceptionOfType(Saml2AuthenticationException.class)
+			.isThrownBy(() -> provider(compiled(false, true), new ResponseDecrypter())
+				.authenticate(new Saml2AuthenticationToken(registration, response)))
+			.satisfies(e -> assertThat(e.getSaml2Error().getErrorCode()).isEqualTo(Saml2ErrorCodes.INVALID_ASSERTION));
+	}
+
+	@Test
+	void encryptedAssertionMeetsTheEncryptionPolicy() {
+		ResponseDecrypter decrypter = new ResponseDecrypter();
+		decrypter.register("tenant", spKeys.getPrivate(), spCertificate);
+		RelyingPartyRegistration registration = SamlResponseFixtures.registration("tenant", idpCertificate)
+			.mutate()
+			.decryptionX509Credentials(c -> c.add(Saml2X509Credential.decryption(spKeys.getPrivate(), spCertificate)))
+			.build();
+		String response = SamlResponseFixtures.response(registration, "alice@example.com", idpCredential, spCertificate);
+
+		Authentication authentication = provider(compiled(false, true), decrypter)
+			.authenticate(new Saml2AuthenticationToken(registration, response));
+
+		assertThat(authentication.getName()).isEqualTo("alice@example.com");
+	}
+}
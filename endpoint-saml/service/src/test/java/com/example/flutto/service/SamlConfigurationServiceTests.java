@@ -0,0 +1,143 @@
+package com.example.flutto.service;
+
+import com.example.flutto.model.SamlProviderConfig;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SamlConfigurationServiceTests {
+
+	private static final int SAVES_PER_WRITER = 10;
+
+	private static String idpCertificate;
+
+	@TempDir
+	Path directory;
+
+	@BeforeAll
+	static void createCertificate() {
+		idpCertificate = SamlProviderFixtures.certificatePem(SamlProviderFixtures.keyPair(), "idp");
+	}
+
+	/**
+	 * Two nodes sharing one store, each saving from two threads, while a third
+	 * node keeps reading it: no save may be lost and no read may see a partly
+	 * written file.
+	 */
+	@Test
+	void concurrentSavesFromTwoNodesAreAllKept() throws Exception {
+		SamlConfigurationService nodeA = node("node-a");
+		SamlConfigurationService nodeB = node("node-b");
+		SamlConfigurationService reader = node("node-c");
+		Queue<String> failures = new ConcurrentLinkedQueue<>();
+		AtomicBoolean writing = new AtomicBoolean(true);
+		CountDownLatch writersDone = new CountDownLatch(4);
+
+		List<Thread> threads = new ArrayList<>();
+		for (int w = 0; w < 4; w++) {
+			SamlConfigurationService node = w % 2 == 0 ? nodeA : nodeB;
+			int writer = w;
+			threads.add(new Thread(() -> {
+				try {
+					for (int k = 0; k < SAVES_PER_WRITER; k++) {
+						node.saveProvider(SamlProviderFixtures.provider("w" + writer + "-" + k, idpCertificate));
+					}
+				} catch (Exception e) {
+					failures.add("writer " + writer + " failed: " + e);
+				} finally {
+					writersDone.countDown();
+				}
+			}));
+		}
+		threads.add(new Thread(() -> {
+			int lastSeen = 0;
+			while (writing.get()) {
+				try {
+					// Saves only add providers, so a shorter list means a truncated read
+					reader.reloadProviders();
+					int seen = reader.getAllProviders().size();
+					if (seen < lastSeen) {
+						failures.add("read " + seen + " providers after " + lastSeen);
+					}
+					lastSeen = seen;
+				} catch (Exception e) {
+					failures.add("reader failed: " + e);
+				}
+			}
+		}));
+
+		threads.forEach(Thread::start);
+		writersDone.await();
+		writing.set(false);
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		assertThat(failures).isEmpty();
+		reader.reloadProviders();
+		assertThat(reader.getAllProviders()).hasSize(4 * SAVES_PER_WRITER);
+		assertThat(reader.getConfigVersion()).isEqualTo(4 * SAVES_PER_WRITER);
+	}
+
+	@Test
+	void rawReadsComeFromTheStoreAtTheNodesConfigVersion() throws Exception {
+		SamlConfigurationService writer = node("node-a");
+		SamlConfigurationService reader = node("node-b");
+		writer.saveProvider(provider("okta", "Okta"));
+		reader.reloadProviders();
+
+		SamlProviderConfig read = reader.getProviderById("okta").orElseThrow();
+		read.setDisplayName("changed by the caller");
+		assertThat(reader.getProviderById("okta")).hasValueSatisfying(
+				provider -> assertThat(provider.getDisplayName()).isEqualTo("Okta"));
+
+		// Until the reader loads version 2 it keeps answering from version 1
+		writer.saveProvider(provider("okta", "Okta Workforce"));
+		assertThat(reader.getProviderById("okta")).hasValueSatisfying(
+				provider -> assertThat(provider.getDisplayName()).isEqualTo("Okta"));
+		assertThat(reader.getProviderById("okta", 2)).hasValueSatisfying(
+				provider -> assertThat(provider.getDisplayName()).isEqualTo("Okta Workforce"));
+
+		reader.reloadProviders();
+		assertThat(reader.getProviderById("okta")).hasValueSatisfying(
+				provider -> assertThat(provider.getDisplayName()).isEqualTo("Okta Workforce"));
+		assertThat(reader.getAllProviders()).hasSize(1);
+	}
+
+	@Test
+	void deletingAnUnknownProviderLeavesTheVersionAlone() throws Exception {
+		SamlConfigurationService node = node("node-a");
+		node.saveProvider(SamlProviderFixtures.provider("okta", idpCertificate));
+
+		assertThat(node.deleteProvider("missing")).isFalse();
+		assertThat(node.getConfigVersion()).isEqualTo(1);
+	}
+
+	private static SamlProviderConfig provider(String id, String displayName) {
+		SamlProviderConfig provider = SamlProviderFixtures.provider(id, idpCertificate);
+		provider.setDisplayName(displayName);
+		return provider;
+	}
+
+	private SamlConfigurationService node(String nodeId) {
+		SamlConfigurationService node = new SamlConfigurationService(new InProcessConfigChangeBus(),
+				new SamlProviderCompiler(), nodeId);
+		ReflectionTestUtils.setField(node, "yamlResource", new FileSystemResource(directory.resolve("saml-providers.yaml")));
+		ReflectionTestUtils.setField(node, "snapshotEnabled", true);
+		// Keeps saves from mirroring into the project's source tree
+		ReflectionTestUtils.setField(node, "sourceFile", directory.resolve("absent/saml-providers.yaml").toFile());
+		return node;
+	}
+}
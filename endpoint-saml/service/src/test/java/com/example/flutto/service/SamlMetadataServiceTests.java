@@ -0,0 +1,113 @@
+package com.example.flutto.service;
+
+import com.example.flutto.model.CompiledSamlProvider;
+import com.example.flutto.model.SamlProviderConfig;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.w3c.dom.Document;
+import org.xml.sax.InputSource;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.cert.X509Certificate;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SamlMetadataServiceTests {
+
+	private final SamlMetadataService metadataService = new SamlMetadataService(null);
+
+	private static String keyDescriptor(String certificatePem) {
+		String body = certificatePem.replace("-----BEGIN CERTIFICATE-----", "")
+			.replace("-----END CERTIFICATE-----", "")
+			.replaceAll("\\s", "");
+		return "    <md:KeyDescriptor use=\"signing\"><ds:KeyInfo xmlns:ds=\"http://www.w3.org/2000/09/xmldsig#\">"
+				+ "<ds:X509Data><ds:X509Certificate>" + body + "</ds:X509Certificate></ds:X509Data></ds:KeyInfo>"
+				+ "</md:KeyDescriptor>\n";
+	}
+
+	static Document document(String xml) throws Exception {
+		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+		factory.setNamespaceAware(true);
+		return factory.newDocumentBuilder().parse(new InputSource(new StringReader(xml)));
+	}
+
+	@Test
+	void metadataIsParsed() {
+		SamlProviderConfig config = metadataService.parseMetadataXml(
+				"<md:EntityDescriptor xmlns:md=\"urn:oasis:names:tc:SAML:2.0:metadata\" entityID=\"https://idp.example.com\"/>",
+				new SamlProviderConfig());
+
+		assertThat(config.getSpEntityId()).isEqualTo("https://idp.example.com");
+	}
+
+	@Test
+	void everySigningCertificateIsKeptDuringRollover() {
+		String current = SamlProviderFixtures.certificatePem(SamlProviderFixtures.keyPair(), "current");
+		String next = SamlProviderFixtures.certificatePem(SamlProviderFixtures.keyPair(), "next");
+		String metadata = SamlProviderFixtures.metadataXml("https://idp.example.com/sso", current)
+			.replaceFirst("    <md:NameIDFormat>", keyDescriptor(next) + "    <md:NameIDFormat>");
+
+		SamlProviderConfig config = metadataService.parseMetadataXml(metadata, new SamlProviderConfig());
+		config.setId("tenant");
+		CompiledSamlProvider compiled = new SamlProviderCompiler().compile(config);
+
+		assertThat(compiled.getError()).isNull();
+		assertThat(compiled.getIdpCertificates()).extracting(c -> c.getSubjectX500Principal().getName())
+			.containsExactly("CN=current", "CN=next");
+	}
+
+	@Test
+	void metadataSignatureVerifiesOnlyWithTheSigningKey() {
+		KeyPair signer = SamlProviderFixtures.keyPair();
+		X509Certificate signerCertificate = SamlProviderFixtures.certificate(signer, "signer");
+		X509Certificate other = SamlProviderFixtures.certificate(SamlProviderFixtures.keyPair(), "other");
+		String metadata = SamlProviderFixtures.metadataXml("https://idp.example.com/sso",
+				SamlProviderFixtures.certificatePem(signer, "signer"));
+
+		Document signed = SamlProviderFixtures.signedMetadata(metadata, signer);
+		assertThat(metadataService.isSignedBy(signed, List.of(other, signerCertificate))).isTrue();
+		assertThat(metadataService.isSignedBy(signed, List.of(other))).isFalse();
+
+		signed.getDocumentElement().setAttribute("entityID", "https://attacker.example.com");
+		assertThat(metadataService.isSignedBy(signed, List.of(signerCertificate))).isFalse();
+	}
+
+	@Test
+	void unsignedMetadataIsNotSigned() throws Exception {
+		X509Certificate certificate = SamlProviderFixtures.certificate(SamlProviderFixtures.keyPair(), "idp");
+		String metadata = SamlProviderFixtures.metadataXml("https://idp.example.com/sso",
+				SamlProviderFixtures.certificatePem(SamlProviderFixtures.keyPair(), "idp"));
+
+		assertThat(metadataService.isSignedBy(document(metadata), List.of(certificate))).isFalse();
+	}
+
+	@Test
+	void externalEntitiesAreRefused(@TempDir Path directory) throws Exception {
+		Path secret = Files.writeString(directory.resolve("secret.txt"), "top-secret");
+		String xml = "<?xml version=\"1.0\"?>"
+				+ "<!DOCTYPE md:EntityDescriptor [<!ENTITY leak SYSTEM \"" + secret.toUri() + "\">]>"
+				+ "<md:EntityDescriptor xmlns:md=\"urn:oasis:names:tc:SAML:2.0:metadata\" entityID=\"&leak;\"/>";
+
+		assertThatThrownBy(() -> metadataService.parseMetadataXml(xml, new SamlProviderConfig()))
+			.isInstanceOf(RuntimeException.class)
+			.hasMessageNotContaining("top-secret");
+		assertThat(metadataService.metadataExpiry(xml)).isEmpty();
+	}
+
+	@Test
+	void internalEntityExpansionIsRefused() {
+		String xml = "<?xml version=\"1.0\"?>"
+				+ "<!DOCTYPE md:EntityDescriptor [<!ENTITY a \"aaaaaaaaaa\"><!ENTITY b \"&a;&a;&a;&a;&a;&a;&a;&a;&a;&a;\">]>"
+				+ "<md:EntityDescriptor xmlns:md=\"urn:oasis:names:tc:SAML:2.0:metadata\" entityID=\"&b;\"/>";
+
+		assertThatThrownBy(() -> metadataService.parseMetadataXml(xml, new SamlProviderConfig()))
+			.isInstanceOf(RuntimeException.class);
+	}
+
+}
@@ -0,0 +1,70 @@
+package com.example.flutto.service;
+
+import com.example.flutto.model.CompiledSamlProvider;
+import com.example.flutto.model.SamlProviderConfig;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Reference;
+import java.security.KeyPair;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Heap footprint of compiled providers, measured around forced collections.
+ * Depends on the collector, so only run with the stress profile: mvn -Pstress verify
+ */
+@Tag("stress")
+class SamlProviderCompilerStressTests {
+
+	@Test
+	void compiledProvidersUseAFractionOfTheHeap() {
+		int providerCount = 2_000;
+		int idpCount = 10;
+		List<String> idpCertificates = new ArrayList<>();
+		for (int i = 0; i < idpCount; i++) {
+			idpCertificates.add(SamlProviderFixtures.certificatePem(SamlProviderFixtures.keyPair(), "idp-" + i));
+		}
+		KeyPair spKeyPair = SamlProviderFixtures.keyPair();
+		String spCertificate = SamlProviderFixtures.certificatePem(spKeyPair, "sp");
+		String spPrivateKey = SamlProviderFixtures.privateKeyPem(spKeyPair);
+		SamlProviderCompiler compiler = new SamlProviderCompiler();
+
+		long baseline = usedHeap();
+		List<SamlProviderConfig> raw = new ArrayList<>(providerCount);
+		for (int i = 0; i < providerCount; i++) {
+			SamlProviderConfig provider = SamlProviderFixtures.provider("tenant-" + i, idpCertificates.get(i % idpCount));
+			if (i % 4 == 0) {
+				provider.setSignAuthnRequests(true);
+				provider.setSpCertificate(new String(spCertificate.toCharArray()));
+				provider.setSpPrivateKey(new String(spPrivateKey.toCharArray()));
+			}
+			raw.add(provider);
+		}
+		long rawBytes = usedHeap() - baseline;
+
+		List<CompiledSamlProvider> compiled = compiler.compileAll(raw);
+		raw = null;
+		long compiledBytes = usedHeap() - baseline;
+		Reference.reachabilityFence(compiled);
+
+		assertThat(compiled).hasSize(providerCount);
+		assertThat(compiler.certificateCount()).isEqualTo(idpCount + 1);
+		assertThat(compiledBytes).isLessThan(rawBytes / 3);
+	}
+
+	private static long usedHeap() {
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+			try {
+				Thread.sleep(50);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+	}
+}
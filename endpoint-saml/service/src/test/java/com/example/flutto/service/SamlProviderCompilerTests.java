@@ -0,0 +1,117 @@
+package com.example.flutto.service;
+
+import com.example.flutto.model.AttributeClaimResolver;
+import com.example.flutto.model.CompiledSamlProvider;
+import com.example.flutto.model.SamlProviderConfig;
+import org.junit.jupiter.api.Test;
+
+import java.security.KeyPair;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SamlProviderCompilerTests {
+
+	@Test
+	void providersOfOneIdpShareTheDecodedCertificate() {
+		String pem = SamlProviderFixtures.certificatePem(SamlProviderFixtures.keyPair(), "idp");
+		SamlProviderCompiler compiler = new SamlProviderCompiler();
+
+		CompiledSamlProvider first = compiler.compile(SamlProviderFixtures.provider("tenant-a", pem));
+		CompiledSamlProvider second = compiler.compile(SamlProviderFixtures.provider("tenant-b", pem));
+
+		assertThat(first.getError()).isNull();
+		assertThat(first.getIdpCertificate()).isSameAs(second.getIdpCertificate());
+		assertThat(compiler.certificateCount()).isEqualTo(1);
+	}
+
+	@Test
+	void providersWithTheSameMappingsShareOneClaimResolver() {
+		String pem = SamlProviderFixtures.certificatePem(SamlProviderFixtures.keyPair(), "idp");
+		SamlProviderCompiler compiler = new SamlProviderCompiler();
+		SamlProviderConfig unmapped = SamlProviderFixtures.provider("tenant-c", pem);
+		unmapped.setAttributeMappings(null);
+
+		CompiledSamlProvider first = compiler.compile(SamlProviderFixtures.provider("tenant-a", pem));
+		CompiledSamlProvider second = compiler.compile(SamlProviderFixtures.provider("tenant-b", pem));
+
+		assertThat(first.getClaimResolver()).isSameAs(second.getClaimResolver());
+		assertThat(compiler.compile(unmapped).getClaimResolver()).isSameAs(AttributeClaimResolver.DEFAULT);
+	}
+
+	@Test
+	void undecodableCertificateIsReportedOnTheProvider() {
+		SamlProviderCompiler compiler = new SamlProviderCompiler();
+		SamlProviderConfig config = SamlProviderFixtures.provider("broken", "-----BEGIN CERTIFICATE-----\nAAAA\n-----END CERTIFICATE-----");
+
+		CompiledSamlProvider compiled = compiler.compile(config);
+
+		assertThat(compiled.getError()).isNotNull();
+		assertThat(compiled.getIdpCertificate()).isNull();
+	}
+
+	@Test
+	void encryptedResponsesNeedSpCredentials() {
+		String pem = SamlProviderFixtures.certificatePem(SamlProviderFixtures.keyPair(), "idp");
+		SamlProviderCompiler compiler = new SamlProviderCompiler();
+		SamlProviderConfig config = SamlProviderFixtures.provider("tenant", pem);
+		config.setRequireEncryptedResponses(true);
+
+		assertThat(compiler.compile(config).getError()).contains("SP certificate");
+
+		KeyPair spKeys = SamlProviderFixtures.keyPair();
+		config.setSpCertificate(SamlProviderFixtures.certificatePem(spKeys, "sp"));
+		config.setSpPrivateKey(SamlProviderFixtures.privateKeyPem(spKeys));
+		CompiledSamlProvider compiled = compiler.compile(config);
+
+		assertThat(compiled.getError()).isNull();
+		assertThat(compiled.getSpPrivateKey()).isNotNull();
+		assertThat(compiled.getSpCertificate().getPublicKey()).isEqualTo(spKeys.getPublic());
+	}
+
+	@Test
+	void mappingsMayNotUseCompactClaimNames() {
+		String pem = SamlProviderFixtures.certificatePem(SamlProviderFixtures.keyPair(), "idp");
+		SamlProviderCompiler compiler = new SamlProviderCompiler();
+		SamlProviderConfig config = SamlProviderFixtures.provider("tenant", pem);
+		config.setAttributeMappings(Map.of("rx", List.of("groups")));
+
+		assertThat(compiler.compile(config).getError()).contains("'rx'");
+
+		config.setAttributeMappings(Map.of("groups", List.of("groups")));
+
+		assertThat(compiler.compile(config).getError()).isNull();
+	}
+
+	@Test
+	void fingerprintFollowsConfigurationChanges() {
+		String pem = SamlProviderFixtures.certificatePem(SamlProviderFixtures.keyPair(), "idp");
+		SamlProviderCompiler compiler = new SamlProviderCompiler();
+		SamlProviderConfig config = SamlProviderFixtures.provider("tenant", pem);
+
+		CompiledSamlProvider original = compiler.compile(config);
+		config.setDisplayName("Renamed");
+		CompiledSamlProvider renamed = compiler.compile(config);
+		assertThat(renamed.getFingerprint()).isEqualTo(original.getFingerprint());
+		assertThat(renamed.hasSameRegistrationSettings(original)).isTrue();
+
+		config.setIdpLoginUrl("https://idp.example.com/other");
+		CompiledSamlProvider moved = compiler.compile(config);
+		assertThat(moved.getFingerprint()).isNotEqualTo(original.getFingerprint());
+		assertThat(moved.hasSameRegistrationSettings(original)).isFalse();
+	}
+
+	@Test
+	void unreferencedCertificatesAreReleased() {
+		SamlProviderCompiler compiler = new SamlProviderCompiler();
+		CompiledSamlProvider kept = compiler.compile(SamlProviderFixtures.provider("kept",
+				SamlProviderFixtures.certificatePem(SamlProviderFixtures.keyPair(), "kept")));
+		compiler.compile(SamlProviderFixtures.provider("removed",
+				SamlProviderFixtures.certificatePem(SamlProviderFixtures.keyPair(), "removed")));
+
+		compiler.retainOnly(List.of(kept));
+
+		assertThat(compiler.certificateCount()).isEqualTo(1);
+	}
+}
@@ -0,0 +1,212 @@
+package com.example.flutto.service;
+
+import com.example.flutto.model.SamlProviderConfig;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.xml.sax.InputSource;
+
+import javax.xml.crypto.dsig.CanonicalizationMethod;
+import javax.xml.crypto.dsig.DigestMethod;
+import javax.xml.crypto.dsig.Reference;
+import javax.xml.crypto.dsig.SignatureMethod;
+import javax.xml.crypto.dsig.SignedInfo;
+import javax.xml.crypto.dsig.Transform;
+import javax.xml.crypto.dsig.XMLSignatureFactory;
+import javax.xml.crypto.dsig.dom.DOMSignContext;
+import javax.xml.crypto.dsig.spec.C14NMethodParameterSpec;
+import javax.xml.crypto.dsig.spec.TransformParameterSpec;
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.StringReader;
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Builds provider configurations shaped like the ones the admin UI stores:
+ * PEM certificates plus the full IdP metadata document they were parsed from.
+ */
+final class SamlProviderFixtures {
+
+	private SamlProviderFixtures() {
+	}
+
+	static KeyPair keyPair() {
+		try {
+			KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+			generator.initialize(2048);
+			return generator.generateKeyPair();
+		} catch (Exception e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	static X509Certificate certificate(KeyPair keyPair, String commonName) {
+		try {
+			long now = System.currentTimeMillis();
+			JcaX509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(new X500Name("CN=" + commonName),
+					BigInteger.valueOf(now), new Date(now - 60_000), new Date(now + 365L * 24 * 3600 * 1000),
+					new X500Name("CN=" + commonName), keyPair.getPublic());
+			return new JcaX509CertificateConverter()
+				.getCertificate(builder.build(new JcaContentSignerBuilder("SHA256withRSA").build(keyPair.getPrivate())));
+		} catch (Exception e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	static String certificatePem(KeyPair keyPair, String commonName) {
+		try {
+			return pem("CERTIFICATE", certificate(keyPair, commonName).getEncoded());
+		} catch (Exception e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	static String privateKeyPem(KeyPair keyPair) {
+		return pem("PRIVATE KEY", keyPair.getPrivate().getEncoded());
+	}
+
+	/**
+	 * A provider for one tenant of an IdP. Every string is a fresh instance, as
+	 * it would be after parsing the YAML store.
+	 */
+	static SamlProviderConfig provider(String id, String idpCertificatePem) {
+		String idpUrl = "https://idp.example.com/saml2/sso?idpid=" + id;
+		SamlProviderConfig provider = new SamlProviderConfig();
+		provider.setId(id);
+		provider.setDisplayName("Tenant " + id);
+		provider.setMetadataSource("xml");
+		provider.setMetadataXml(metadataXml(idpUrl, idpCertificatePem));
+		provider.setSpEntityId("http://localhost:8080/saml2/service-provider-metadata/" + id);
+		provider.setIdpLoginUrl(idpUrl);
+		provider.setIdpCertificate(new String(idpCertificatePem.toCharArray()));
+		provider.setNameIdFormat(new String("urn:oasis:names:tc:SAML:1.1:nameid-format:unspecified".toCharArray()));
+		provider.setAttributeMappings(Map.of("email", List.of("email"), "name", List.of("displayName")));
+		return provider;
+	}
+
+	/**
+	 * A synthetic tenant population for scaling runs. Tenants are spread over the
+	 * login URL shapes of the common IdPs, each with its own metadata document,
+	 * email domain and hostname; every tenth signs its AuthnRequests and every
+	 * twentieth is disabled. Certificates come from a pool of the given size,
+	 * since generating a key pair per tenant would dominate large sets.
+	 */
+	static List<SamlProviderConfig> providerSet(int count, int certificatePoolSize) {
+		List<KeyPair> keyPairs = new ArrayList<>();
+		List<String> certificates = new ArrayList<>();
+		for (int i = 0; i < Math.max(1, Math.min(count, certificatePoolSize)); i++) {
+			KeyPair keyPair = keyPair();
+			keyPairs.add(keyPair);
+			certificates.add(certificatePem(keyPair, "idp-" + i));
+		}
+		List<Map<String, List<String>>> mappingTemplates = List.of(
+				Map.of("email", List.of("email"), "name", List.of("displayName")),
+				Map.of("email", List.of("http://schemas.xmlsoap.org/ws/2005/05/identity/claims/emailaddress"),
+						"name", List.of("http://schemas.microsoft.com/identity/claims/displayname"),
+						"groups", List.of("http://schemas.microsoft.com/ws/2008/06/identity/claims/groups")),
+				Map.of("email", List.of("urn:oid:0.9.2342.19200300.100.1.3", "mail"),
+						"name", List.of("urn:oid:2.16.840.1.113730.3.1.241")));
+
+		List<SamlProviderConfig> providers = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			String id = "tenant-" + i;
+			String idpUrl = switch (i % 4) {
+				case 0 -> "https://accounts.google.com/o/saml2/idp?idpid=C0" + Integer.toString(1_000_000 + i, 36);
+				case 1 -> "https://" + id + ".okta.com/app/" + id + "_saml/exk" + Integer.toHexString(i) + "/sso/saml";
+				case 2 -> "https://login.microsoftonline.com/" + new UUID(i, i) + "/saml2";
+				default -> "https://sso." + id + ".example.org/adfs/ls/";
+			};
+			String certificate = certificates.get(i % certificates.size());
+			SamlProviderConfig provider = provider(id, certificate);
+			provider.setDisplayName("Tenant " + i + " SSO");
+			provider.setMetadataXml(metadataXml(idpUrl, certificate));
+			provider.setIdpLoginUrl(idpUrl);
+			provider.setAttributeMappings(mappingTemplates.get(i % mappingTemplates.size()));
+			provider.setEmailDomains(List.of(id + ".example.com", "mail." + id + ".example.com"));
+			provider.setHostnames(List.of(id + ".login.example.com"));
+			if (i % 3 == 0) {
+				provider.setCustomIconUrl("https://cdn.example.com/icons/" + id + ".svg");
+			}
+			if (i % 10 == 0) {
+				KeyPair spKeyPair = keyPairs.get((i / 10) % keyPairs.size());
+				provider.setSignAuthnRequests(true);
+				provider.setSpCertificate(certificatePem(spKeyPair, "sp-" + i));
+				provider.setSpPrivateKey(privateKeyPem(spKeyPair));
+				provider.setSignatureAlgorithm("RSA-SHA256");
+			}
+			provider.setEnabled(i % 20 != 19);
+			providers.add(provider);
+		}
+		return providers;
+	}
+
+	static String metadataXml(String ssoUrl, String certificatePem) {
+		String body = certificatePem.replace("-----BEGIN CERTIFICATE-----", "")
+			.replace("-----END CERTIFICATE-----", "")
+			.replaceAll("\\s", "");
+		StringBuilder xml = new StringBuilder();
+		xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+			.append("<md:EntityDescriptor xmlns:md=\"urn:oasis:names:tc:SAML:2.0:metadata\" entityID=\"")
+			.append(ssoUrl)
+			.append("\">\n  <md:IDPSSODescriptor WantAuthnRequestsSigned=\"false\" ")
+			.append("protocolSupportEnumeration=\"urn:oasis:names:tc:SAML:2.0:protocol\">\n");
+		for (String use : new String[] { "signing", "encryption" }) {
+			xml.append("    <md:KeyDescriptor use=\"").append(use).append("\">\n")
+				.append("      <ds:KeyInfo xmlns:ds=\"http://www.w3.org/2000/09/xmldsig#\"><ds:X509Data><ds:X509Certificate>")
+				.append(body)
+				.append("</ds:X509Certificate></ds:X509Data></ds:KeyInfo>\n    </md:KeyDescriptor>\n");
+		}
+		xml.append("    <md:NameIDFormat>urn:oasis:names:tc:SAML:1.1:nameid-format:unspecified</md:NameIDFormat>\n")
+			.append("    <md:NameIDFormat>urn:oasis:names:tc:SAML:1.1:nameid-format:emailAddress</md:NameIDFormat>\n")
+			.append("    <md:SingleSignOnService Binding=\"urn:oasis:names:tc:SAML:2.0:bindings:HTTP-Redirect\" Location=\"")
+			.append(ssoUrl)
+			.append("\"/>\n    <md:SingleSignOnService Binding=\"urn:oasis:names:tc:SAML:2.0:bindings:HTTP-POST\" Location=\"")
+			.append(ssoUrl)
+			.append("\"/>\n  </md:IDPSSODescriptor>\n</md:EntityDescriptor>\n");
+		return xml.toString();
+	}
+
+	/**
+	 * Parses metadata and adds an enveloped RSA-SHA256 signature over the
+	 * whole document, as IdPs that sign their metadata do
+	 */
+	static Document signedMetadata(String metadataXml, KeyPair keyPair) {
+		try {
+			DocumentBuilderFactory documentFactory = DocumentBuilderFactory.newInstance();
+			documentFactory.setNamespaceAware(true);
+			Document document = documentFactory.newDocumentBuilder()
+				.parse(new InputSource(new StringReader(metadataXml)));
+			XMLSignatureFactory factory = XMLSignatureFactory.getInstance("DOM");
+			Reference reference = factory.newReference("", factory.newDigestMethod(DigestMethod.SHA256, null),
+					List.of(factory.newTransform(Transform.ENVELOPED, (TransformParameterSpec) null),
+							factory.newTransform(CanonicalizationMethod.EXCLUSIVE, (TransformParameterSpec) null)),
+					null, null);
+			SignedInfo signedInfo = factory.newSignedInfo(
+					factory.newCanonicalizationMethod(CanonicalizationMethod.EXCLUSIVE, (C14NMethodParameterSpec) null),
+					factory.newSignatureMethod(SignatureMethod.RSA_SHA256, null), List.of(reference));
+			Element root = document.getDocumentElement();
+			factory.newXMLSignature(signedInfo, null).sign(new DOMSignContext(keyPair.getPrivate(), root, root.getFirstChild()));
+			return document;
+		} catch (Exception e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static String pem(String type, byte[] der) {
+		return "-----BEGIN " + type + "-----\n"
+				+ Base64.getMimeEncoder(64, "\n".getBytes()).encodeToString(der)
+				+ "\n-----END " + type + "-----\n";
+	}
+}
@@ -0,0 +1,179 @@
+package com.example.flutto.service;
+
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
+import org.opensaml.saml.common.SAMLVersion;
+import org.opensaml.saml.saml2.core.Assertion;
+import org.opensaml.saml.saml2.core.Audience;
+import org.opensaml.saml.saml2.core.AudienceRestriction;
+import org.opensaml.saml.saml2.core.Conditions;
+import org.opensaml.saml.saml2.core.Issuer;
+import org.opensaml.saml.saml2.core.NameID;
+import org.opensaml.saml.saml2.core.Response;
+import org.opensaml.saml.saml2.core.Status;
+import org.opensaml.saml.saml2.core.StatusCode;
+import org.opensaml.saml.saml2.core.Subject;
+import org.opensaml.saml.saml2.core.SubjectConfirmation;
+import org.opensaml.saml.saml2.core.SubjectConfirmationData;
+import org.opensaml.saml.saml2.encryption.Encrypter;
+import org.opensaml.security.credential.Credential;
+import org.opensaml.security.credential.CredentialSupport;
+import org.opensaml.xmlsec.SignatureSigningParameters;
+import org.opensaml.xmlsec.encryption.support.DataEncryptionParameters;
+import org.opensaml.xmlsec.encryption.support.EncryptionConstants;
+import org.opensaml.xmlsec.encryption.support.KeyEncryptionParameters;
+import org.opensaml.xmlsec.signature.support.SignatureConstants;
+import org.opensaml.xmlsec.signature.support.SignatureSupport;
+import org.springframework.security.saml2.core.OpenSamlInitializationService;
+import org.springframework.security.saml2.core.Saml2X509Credential;
+import org.springframework.security.saml2.provider.service.registration.RelyingPartyRegistration;
+
+import javax.xml.namespace.QName;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import java.io.StringWriter;
+import java.security.KeyPair;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Builds IdP responses the way an IdP sends them to the ACS: a signed Response
+ * (or a signed assertion) in plaintext or encrypted to the SP certificate.
+ */
+final class SamlResponseFixtures {
+
+	static final String IDP_ENTITY_ID = "https://idp.example.com/saml2";
+
+	private static final Duration VALIDITY = Duration.ofMinutes(30);
+
+	static {
+		OpenSamlInitializationService.initialize();
+	}
+
+	private SamlResponseFixtures() {
+	}
+
+	static RelyingPartyRegistration registration(String id, X509Certificate idpCertificate) {
+		return RelyingPartyRegistration.withRegistrationId(id)
+			.entityId("https://sp.example.com/saml2/service-provider-metadata/" + id)
+			.assertionConsumerServiceLocation("https://sp.example.com/login/saml2/sso/" + id)
+			.assertingPartyDetails(party -> party.entityId(IDP_ENTITY_ID)
+				.singleSignOnServiceLocation("https://idp.example.com/sso")
+				.verificationX509Credentials(c -> c.add(Saml2X509Credential.verification(idpCertificate))))
+			.build();
+	}
+
+	static Credential signingCredential(KeyPair keyPair, X509Certificate certificate) {
+		return CredentialSupport.getSimpleCredential(certificate, keyPair.getPrivate());
+	}
+
+	/**
+	 * Serialized Response for the registration, signed with the IdP credential;
+	 * the assertion is encrypted when an SP certificate is given
+	 */
+	static String response(RelyingPartyRegistration registration, String nameId, Credential idpCredential,
+			X509Certificate encryptTo) {
+		return response(registration, nameId, idpCredential, encryptTo, true);
+	}
+
+	/**
+	 * As above, but with the signature over the assertion instead of the
+	 * Response when signResponse is false
+	 */
+	static String response(RelyingPartyRegistration registration, String nameId, Credential idpCredential,
+			X509Certificate encryptTo, boolean signResponse) {
+		Instant now = Instant.now();
+		String acs = registration.getAssertionConsumerServiceLocation();
+
+		Assertion assertion = build(Assertion.DEFAULT_ELEMENT_NAME);
+		assertion.setID("_" + UUID.randomUUID());
+		assertion.setIssueInstant(now);
+		assertion.setVersion(SAMLVersion.VERSION_20);
+		assertion.setIssuer(issuer());
+		SubjectConfirmationData confirmationData = build(SubjectConfirmationData.DEFAULT_ELEMENT_NAME);
+		confirmationData.setRecipient(acs);
+		confirmationData.setNotOnOrAfter(now.plus(VALIDITY));
+		SubjectConfirmation confirmation = build(SubjectConfirmation.DEFAULT_ELEMENT_NAME);
+		confirmation.setMethod(SubjectConfirmation.METHOD_BEARER);
+		confirmation.setSubjectConfirmationData(confirmationData);
+		NameID name = build(NameID.DEFAULT_ELEMENT_NAME);
+		name.setValue(nameId);
+		Subject subject = build(Subject.DEFAULT_ELEMENT_NAME);
+		subject.setNameID(name);
+		subject.getSubjectConfirmations().add(confirmation);
+		assertion.setSubject(subject);
+		Audience audience = build(Audience.DEFAULT_ELEMENT_NAME);
+		audience.setURI(registration.getEntityId());
+		AudienceRestriction audienceRestriction = build(AudienceRestriction.DEFAULT_ELEMENT_NAME);
+		audienceRestriction.getAudiences().add(audience);
+		Conditions conditions = build(Conditions.DEFAULT_ELEMENT_NAME);
+		conditions.setNotBefore(now.minusSeconds(60));
+		conditions.setNotOnOrAfter(now.plus(VALIDITY));
+		conditions.getAudienceRestrictions().add(audienceRestriction);
+		assertion.setConditions(conditions);
+
+		StatusCode statusCode = build(StatusCode.DEFAULT_ELEMENT_NAME);
+		statusCode.setValue(StatusCode.SUCCESS);
+		Status status = build(Status.DEFAULT_ELEMENT_NAME);
+		status.setStatusCode(statusCode);
+		Response response = build(Response.DEFAULT_ELEMENT_NAME);
+		response.setID("_" + UUID.randomUUID());
+		response.setIssueInstant(now);
+		response.setVersion(SAMLVersion.VERSION_20);
+		response.setDestination(acs);
+		response.setIssuer(issuer());
+		response.setStatus(status);
+
+		try {
+			if (!signResponse) {
+				SignatureSupport.signObject(assertion, signing(idpCredential));
+			}
+			if (encryptTo != null) {
+				DataEncryptionParameters dataParameters = new DataEncryptionParameters();
+				dataParameters.setAlgorithm(EncryptionConstants.ALGO_ID_BLOCKCIPHER_AES256);
+				KeyEncryptionParameters keyParameters = new KeyEncryptionParameters();
+				keyParameters.setEncryptionCredential(CredentialSupport.getSimpleCredential(encryptTo, null));
+				keyParameters.setAlgorithm(EncryptionConstants.ALGO_ID_KEYTRANSPORT_RSAOAEP);
+				response.getEncryptedAssertions().add(new Encrypter(dataParameters, keyParameters).encrypt(assertion));
+			} else {
+				response.getAssertions().add(assertion);
+			}
+
+			if (signResponse) {
+				SignatureSupport.signObject(response, signing(idpCredential));
+			} else {
+				XMLObjectProviderRegistrySupport.getMarshallerFactory().getMarshaller(response).marshall(response);
+			}
+
+			StringWriter xml = new StringWriter();
+			TransformerFactory.newInstance().newTransformer()
+				.transform(new DOMSource(response.getDOM()), new StreamResult(xml));
+			return xml.toString();
+		} catch (Exception e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static SignatureSigningParameters signing(Credential idpCredential) {
+		SignatureSigningParameters signing = new SignatureSigningParameters();
+		signing.setSigningCredential(idpCredential);
+		signing.setSignatureAlgorithm(SignatureConstants.ALGO_ID_SIGNATURE_RSA_SHA256);
+		signing.setSignatureReferenceDigestMethod(SignatureConstants.ALGO_ID_DIGEST_SHA256);
+		signing.setSignatureCanonicalizationAlgorithm(SignatureConstants.ALGO_ID_C14N_EXCL_OMIT_COMMENTS);
+		return signing;
+	}
+
+	private static Issuer issuer() {
+		Issuer issuer = build(Issuer.DEFAULT_ELEMENT_NAME);
+		issuer.setValue(IDP_ENTITY_ID);
+		return issuer;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T extends XMLObject> T build(QName name) {
+		return (T) XMLObjectProviderRegistrySupport.getBuilderFactory().getBuilder(name).buildObject(name);
+	}
+}
@@ -0,0 +1,110 @@
+package com.example.flutto.service;
+
+import com.example.flutto.model.ConfigChangeEvent;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SharedDirectoryConfigChangeBusTests {
+
+	@TempDir
+	Path sharedDirectory;
+
+	@Test
+	void eventPublishedOnOneNodeReachesTheOtherWithinASecond() throws Exception {
+		try (SharedDirectoryConfigChangeBus nodeA = new SharedDirectoryConfigChangeBus(sharedDirectory, 60_000);
+			 SharedDirectoryConfigChangeBus nodeB = new SharedDirectoryConfigChangeBus(sharedDirectory, 60_000)) {
+
+			BlockingQueue<ConfigChangeEvent> received = new LinkedBlockingQueue<>();
+			nodeB.subscribe(received::add);
+
+			long start = System.nanoTime();
+			nodeA.publish(new ConfigChangeEvent(42, ConfigChangeEvent.Type.UPSERT, "zenv", "node-a"));
+
+			ConfigChangeEvent event = received.poll(1, TimeUnit.SECONDS);
+			long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+			assertThat(event).isNotNull();
+			assertThat(event.getVersion()).isEqualTo(42);
+			assertThat(event.getType()).isEqualTo(ConfigChangeEvent.Type.UPSERT);
+			assertThat(event.getProviderId()).isEqualTo("zenv");
+			assertThat(event.getOriginNodeId()).isEqualTo("node-a");
+			assertThat(elapsedMillis).isLessThan(1000);
+		}
+	}
+
+	@Test
+	void pollingDeliversEachEventOnceEvenWhenTheWatcherAlsoSeesIt() throws Exception {
+		try (SharedDirectoryConfigChangeBus nodeA = new SharedDirectoryConfigChangeBus(sharedDirectory, 60_000);
+			 SharedDirectoryConfigChangeBus nodeB = new SharedDirectoryConfigChangeBus(sharedDirectory, 60_000, 50)) {
+
+			BlockingQueue<ConfigChangeEvent> received = new LinkedBlockingQueue<>();
+			nodeB.subscribe(received::add);
+
+			nodeA.publish(new ConfigChangeEvent(1, ConfigChangeEvent.Type.UPSERT, "zenv", "node-a"));
+			nodeA.publish(new ConfigChangeEvent(2, ConfigChangeEvent.Type.DELETE, "zenv", "node-a"));
+
+			assertThat(received.poll(1, TimeUnit.SECONDS).getVersion()).isEqualTo(1);
+			assertThat(received.poll(1, TimeUnit.SECONDS).getVersion()).isEqualTo(2);
+			// Several poll intervals pass without the same files being dispatched again
+			assertThat(received.poll(300, TimeUnit.MILLISECONDS)).isNull();
+		}
+	}
+
+	@Test
+	void pollingDoesNotReplayEventsWrittenBeforeStartup() throws Exception {
+		try (SharedDirectoryConfigChangeBus nodeA = new SharedDirectoryConfigChangeBus(sharedDirectory, 60_000)) {
+			nodeA.publish(new ConfigChangeEvent(1, ConfigChangeEvent.Type.UPSERT, "zenv", "node-a"));
+		}
+
+		try (SharedDirectoryConfigChangeBus nodeB = new SharedDirectoryConfigChangeBus(sharedDirectory, 60_000, 50)) {
+			BlockingQueue<ConfigChangeEvent> received = new LinkedBlockingQueue<>();
+			nodeB.subscribe(received::add);
+
+			assertThat(received.poll(300, TimeUnit.MILLISECONDS)).isNull();
+		}
+	}
+
+	@Test
+	void expiredEventsArePurgedWithoutFurtherPublishing() throws Exception {
+		try (SharedDirectoryConfigChangeBus bus = new SharedDirectoryConfigChangeBus(sharedDirectory, 100)) {
+			for (int i = 1; i <= 3; i++) {
+				bus.publish(ConfigChangeEvent.tokenRevoked("jti-" + i, System.currentTimeMillis() + 60_000));
+			}
+			assertThat(eventFiles()).hasSize(3);
+
+			long deadline = System.currentTimeMillis() + 2000;
+			while (eventFiles().length > 0 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(50);
+			}
+
+			assertThat(eventFiles()).isEmpty();
+		}
+	}
+
+	@Test
+	void inProcessBusDeliversToEverySubscriber() {
+		InProcessConfigChangeBus bus = new InProcessConfigChangeBus();
+		BlockingQueue<ConfigChangeEvent> first = new LinkedBlockingQueue<>();
+		BlockingQueue<ConfigChangeEvent> second = new LinkedBlockingQueue<>();
+		bus.subscribe(first::add);
+		bus.subscribe(second::add);
+
+		bus.publish(new ConfigChangeEvent(1, ConfigChangeEvent.Type.DELETE, "old", "node-a"));
+
+		assertThat(first).hasSize(1);
+		assertThat(second).hasSize(1);
+	}
+
+	private File[] eventFiles() {
+		return sharedDirectory.toFile().listFiles((directory, name) -> name.endsWith(".event.json"));
+	}
+
+}
@@ -0,0 +1,104 @@
+package com.example.flutto.service;
+
+import com.example.flutto.model.ConfigChangeEvent;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SocketConfigChangeBusTests {
+
+	private static final String SECRET = "cluster-secret";
+
+	@Test
+	void eventPublishedOnOneNodeReachesTheOtherWithinASecond() throws Exception {
+		int portA = freePort();
+		int portB = freePort();
+		try (SocketConfigChangeBus nodeA = node(portA, portB, SECRET);
+			 SocketConfigChangeBus nodeB = node(portB, portA, SECRET)) {
+
+			BlockingQueue<ConfigChangeEvent> receivedByA = new LinkedBlockingQueue<>();
+			BlockingQueue<ConfigChangeEvent> receivedByB = new LinkedBlockingQueue<>();
+			nodeA.subscribe(receivedByA::add);
+			nodeB.subscribe(receivedByB::add);
+
+			long start = System.nanoTime();
+			nodeA.publish(new ConfigChangeEvent(42, ConfigChangeEvent.Type.UPSERT, "zenv", "node-a"));
+
+			ConfigChangeEvent event = receivedByB.poll(1, TimeUnit.SECONDS);
+			long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+			assertThat(event).isNotNull();
+			assertThat(event.getVersion()).isEqualTo(42);
+			assertThat(event.getType()).isEqualTo(ConfigChangeEvent.Type.UPSERT);
+			assertThat(event.getProviderId()).isEqualTo("zenv");
+			assertThat(event.getOriginNodeId()).isEqualTo("node-a");
+			assertThat(elapsedMillis).isLessThan(1000);
+			// The publishing node hears its own events too, as on every bus
+			assertThat(receivedByA.poll(1, TimeUnit.SECONDS)).isNotNull();
+		}
+	}
+
+	@Test
+	void messagesNotSignedWithTheClusterSecretAreIgnored() throws Exception {
+		int portA = freePort();
+		int portB = freePort();
+		try (SocketConfigChangeBus intruder = node(portA, portB, "guessed-secret");
+			 SocketConfigChangeBus nodeB = node(portB, portA, SECRET)) {
+
+			BlockingQueue<ConfigChangeEvent> received = new LinkedBlockingQueue<>();
+			nodeB.subscribe(received::add);
+
+			intruder.publish(ConfigChangeEvent.tokenRevoked("victim", System.currentTimeMillis() + 60_000));
+			try (Socket raw = new Socket(InetAddress.getLoopbackAddress(), portB)) {
+				OutputStream out = raw.getOutputStream();
+				out.write("AAAA {\"type\":\"RESYNC\"}\n".getBytes(StandardCharsets.UTF_8));
+				out.flush();
+			}
+
+			assertThat(received.poll(500, TimeUnit.MILLISECONDS)).isNull();
+		}
+	}
+
+	@Test
+	void peerThatMissedEventsIsAskedToResyncOnceReachable() throws Exception {
+		int portA = freePort();
+		int portB = freePort();
+		try (SocketConfigChangeBus nodeA = node(portA, portB, SECRET)) {
+			// Nobody listens on B's port yet
+			nodeA.publish(new ConfigChangeEvent(1, ConfigChangeEvent.Type.DELETE, "zenv", "node-a"));
+
+			try (SocketConfigChangeBus nodeB = node(portB, portA, SECRET)) {
+				BlockingQueue<ConfigChangeEvent> received = new LinkedBlockingQueue<>();
+				nodeB.subscribe(received::add);
+
+				ConfigChangeEvent event = received.poll(2, TimeUnit.SECONDS);
+				assertThat(event).isNotNull();
+				assertThat(event.getType()).isEqualTo(ConfigChangeEvent.Type.RESYNC);
+			}
+		}
+	}
+
+	private static SocketConfigChangeBus node(int port, int peerPort, String secret) throws IOException {
+		InetAddress loopback = InetAddress.getLoopbackAddress();
+		return new SocketConfigChangeBus(new InetSocketAddress(loopback, port),
+				List.of(new InetSocketAddress(loopback, peerPort)), secret, 200, 100);
+	}
+
+	private static int freePort() throws IOException {
+		try (ServerSocket socket = new ServerSocket(0)) {
+			return socket.getLocalPort();
+		}
+	}
+}
@@ -0,0 +1,78 @@
+package com.example.flutto.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.security.saml2.provider.service.registration.InMemoryRelyingPartyRegistrationRepository;
+import org.springframework.security.saml2.provider.service.registration.RelyingPartyRegistration;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SpMetadataServiceTests {
+
+	private static final String BASE_URL = "https://sp.example.com";
+
+	private static RelyingPartyRegistration registration(String id) {
+		return RelyingPartyRegistration.withRegistrationId(id)
+			.entityId("{baseUrl}/saml2/service-provider-metadata/{registrationId}")
+			.assertionConsumerServiceLocation("{baseUrl}/login/saml2/sso/{registrationId}")
+			.assertingPartyDetails(party -> party.entityId("https://idp.example.com/" + id)
+				.singleSignOnServiceLocation("https://idp.example.com/sso/" + id))
+			.build();
+	}
+
+	@Test
+	void metadataIsRenderedOncePerRegistration() {
+		Map<String, RelyingPartyRegistration> live = new ConcurrentHashMap<>();
+		live.put("tenant", registration("tenant"));
+		SpMetadataService service = new SpMetadataService(live::get, false);
+
+		SpMetadataService.RenderedMetadata first = service.metadata("tenant", BASE_URL).orElseThrow();
+		SpMetadataService.RenderedMetadata second = service.metadata("tenant", BASE_URL).orElseThrow();
+
+		assertThat(second).isSameAs(first);
+		assertThat(first.getEtag()).startsWith("\"").endsWith("\"");
+		assertThat(new String(first.getXml(), StandardCharsets.UTF_8))
+			.contains("https://sp.example.com/saml2/service-provider-metadata/tenant")
+			.contains("https://sp.example.com/login/saml2/sso/tenant")
+			.doesNotContain("{baseUrl}");
+	}
+
+	@Test
+	void rebuiltRegistrationIsRenderedAgain() {
+		Map<String, RelyingPartyRegistration> live = new ConcurrentHashMap<>();
+		live.put("tenant", registration("tenant"));
+		SpMetadataService service = new SpMetadataService(live::get, false);
+		SpMetadataService.RenderedMetadata before = service.metadata("tenant", BASE_URL).orElseThrow();
+
+		live.put("tenant", registration("tenant").mutate()
+			.assertionConsumerServiceLocation("{baseUrl}/acs/{registrationId}").build());
+
+		SpMetadataService.RenderedMetadata after = service.metadata("tenant", BASE_URL).orElseThrow();
+		assertThat(after).isNotSameAs(before);
+		assertThat(after.getEtag()).isNotEqualTo(before.getEtag());
+		live.remove("tenant");
+		assertThat(service.metadata("tenant", BASE_URL)).isEmpty();
+	}
+
+	@Test
+	void aggregateEmbedsDescriptorsWithoutTheirXmlDeclaration() throws Exception {
+		SpMetadataService service = new SpMetadataService(
+				new InMemoryRelyingPartyRegistrationRepository(registration("a"), registration("b")), false);
+
+		List<SpMetadataService.RenderedMetadata> all = service.allMetadata(BASE_URL);
+
+		assertThat(all).extracting(SpMetadataService.RenderedMetadata::getRegistrationId)
+			.containsExactlyInAnyOrder("a", "b");
+		for (SpMetadataService.RenderedMetadata metadata : all) {
+			ByteArrayOutputStream element = new ByteArrayOutputStream();
+			metadata.writeElementTo(element);
+			assertThat(element.toString(StandardCharsets.UTF_8)).startsWith("<").doesNotContain("<?xml");
+		}
+	}
+
+}
@@ -0,0 +1,105 @@
+package com.example.flutto.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenBucketLimiterTests {
+
+	private final AtomicLong now = new AtomicLong(1_000_000_000L);
+
+	@Test
+	void burstIsAdmittedThenRequestsWaitForRefill() {
+		TokenBucketLimiter limiter = new TokenBucketLimiter(10, 3, 100, now::get);
+
+		assertThat(limiter.tryAcquire("10.0.0.1")).isZero();
+		assertThat(limiter.tryAcquire("10.0.0.1")).isZero();
+		assertThat(limiter.tryAcquire("10.0.0.1")).isZero();
+		assertThat(limiter.tryAcquire("10.0.0.1")).isEqualTo(TimeUnit.MILLISECONDS.toNanos(100));
+
+		now.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+		assertThat(limiter.tryAcquire("10.0.0.1")).isZero();
+		assertThat(limiter.tryAcquire("10.0.0.1")).isPositive();
+	}
+
+	@Test
+	void keysHaveSeparateBuckets() {
+		TokenBucketLimiter limiter = new TokenBucketLimiter(1, 1, 100, now::get);
+
+		assertThat(limiter.tryAcquire("10.0.0.1")).isZero();
+		assertThat(limiter.tryAcquire("10.0.0.1")).isPositive();
+		assertThat(limiter.tryAcquire("10.0.0.2")).isZero();
+	}
+
+	@Test
+	void keysBeyondTheCapAreAdmittedUntilASweepMakesRoom() {
+		TokenBucketLimiter limiter = new TokenBucketLimiter(1, 1, 2, now::get);
+		limiter.tryAcquire("a");
+		limiter.tryAcquire("b");
+
+		// Both buckets are still draining, so c and d get no bucket and are not held back
+		assertThat(limiter.tryAcquire("c")).isZero();
+		assertThat(limiter.tryAcquire("d")).isZero();
+		assertThat(limiter.tryAcquire("d")).isZero();
+		assertThat(limiter.untrackedCount()).isEqualTo(3);
+		assertThat(limiter.size()).isEqualTo(2);
+
+		now.addAndGet(TimeUnit.SECONDS.toNanos(2));
+		assertThat(limiter.tryAcquire("e")).isZero();
+		assertThat(limiter.tryAcquire("e")).isPositive();
+		assertThat(limiter.size()).isEqualTo(1);
+	}
+
+	@Test
+	void fullMapIsSweptAtMostOncePerInterval() {
+		TokenBucketLimiter limiter = new TokenBucketLimiter(1, 1, 1, now::get);
+		limiter.tryAcquire("a");
+		now.addAndGet(TimeUnit.MILLISECONDS.toNanos(500));
+		limiter.tryAcquire("b");
+
+		// a refills after the sweep that b triggered, but the next sweep is not due yet
+		now.addAndGet(TimeUnit.MILLISECONDS.toNanos(600));
+		assertThat(limiter.tryAcquire("c")).isZero();
+		assertThat(limiter.tryAcquire("c")).isZero();
+		assertThat(limiter.untrackedCount()).isEqualTo(3);
+
+		now.addAndGet(TimeUnit.MILLISECONDS.toNanos(500));
+		assertThat(limiter.tryAcquire("c")).isZero();
+		assertThat(limiter.tryAcquire("c")).isPositive();
+	}
+
+	@Test
+	void concurrentCallersNeverGetMoreThanTheBurst() throws Exception {
+		TokenBucketLimiter limiter = new TokenBucketLimiter(1, 50, 100, now::get);
+		AtomicInteger admitted = new AtomicInteger();
+		CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		for (int i = 0; i < 8; i++) {
+			executor.execute(() -> {
+				try {
+					start.await();
+				} catch (InterruptedException e) {
+					return;
+				}
+				for (int j = 0; j < 100; j++) {
+					if (limiter.tryAcquire("10.0.0.1") == 0) {
+						admitted.incrementAndGet();
+					}
+				}
+			});
+		}
+		start.countDown();
+		executor.shutdown();
+		assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+		assertThat(admitted.get()).isEqualTo(50);
+	}
+
+}
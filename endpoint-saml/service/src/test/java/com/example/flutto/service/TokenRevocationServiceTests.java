@@ -0,0 +1,57 @@
+package com.example.flutto.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenRevocationServiceTests {
+
+	@Test
+	void revokedIdsAreKeptUntilTheyExpire() {
+		TokenRevocationService service = new TokenRevocationService(900_000, 60_000, 1000, 10_000);
+
+		service.revoke("live", System.currentTimeMillis() + 300_000);
+		service.revoke("expired", System.currentTimeMillis() - 1);
+
+		assertThat(service.isRevoked("live")).isTrue();
+		assertThat(service.isRevoked("expired")).isFalse();
+		assertThat(service.isRevoked(null)).isFalse();
+		assertThat(service.size()).isEqualTo(1);
+	}
+
+	@Test
+	void idsClosestToExpiryMakeRoomAtTheMaximum() {
+		TokenRevocationService service = new TokenRevocationService(900_000, 60_000, 1000, 2);
+		long soon = System.currentTimeMillis() + 120_000;
+		long later = System.currentTimeMillis() + 600_000;
+		service.revoke("a", soon);
+		service.revoke("b", soon);
+
+		service.revoke("c", later);
+
+		assertThat(service.isRevoked("a")).isFalse();
+		assertThat(service.isRevoked("b")).isFalse();
+		assertThat(service.isRevoked("c")).isTrue();
+
+		// With nothing expiring sooner, a revocation is refused rather than growing the list
+		service.revoke("d", later);
+		service.revoke("e", later);
+
+		assertThat(service.isRevoked("d")).isTrue();
+		assertThat(service.isRevoked("e")).isFalse();
+		assertThat(service.size()).isEqualTo(2);
+	}
+
+	@Test
+	void revocationsReachEveryNodeOnTheBus() {
+		InProcessConfigChangeBus bus = new InProcessConfigChangeBus();
+		TokenRevocationService first = new TokenRevocationService(bus, 900_000, 60_000, 1000, 10_000);
+		TokenRevocationService second = new TokenRevocationService(bus, 900_000, 60_000, 1000, 10_000);
+
+		first.revoke("logged-out", System.currentTimeMillis() + 300_000);
+
+		assertThat(second.isRevoked("logged-out")).isTrue();
+		assertThat(first.size()).isEqualTo(1);
+		assertThat(second.size()).isEqualTo(1);
+	}
+}